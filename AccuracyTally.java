@@ -0,0 +1,184 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+/**This class keeps count of how the guesses went during one trial of the
+ * k-nearest neighbor algorithm: how many tumors were tested, how many guesses
+ * were right, and how often the neighbors were unanimous. At the end it turns
+ * the counts into the array of four percentages that NearestNeighbor.Accuracy
+ * returns.
+ */
+public class AccuracyTally {
+	// Initialize counters for the number of tumors tested and guessed right
+	private int countTested = 0, countCorrect = 0;
+	// Initialize counters for the number of times the neighbors were
+	// unanimous and the number of right guesses when they were and weren't
+	private int countUnanimous = 0, countUnanimousCorrect = 0;
+	private int countNotUnanimousCorrect = 0;
+	// Initialize counters for how many of the true nearest neighbors an
+	// approximate search found, out of how many it could have found
+	private long countNeighborsFound = 0, countNeighborsPossible = 0;
+
+	/**Has the neighbors vote on a test tumor and records whether the guess
+	 * was right
+	 * @param neighbors The nearest neighbors of the test tumor
+	 * @param actualType The actual type of the test tumor (true for
+	 * malignant, false for benign)
+	 * @return The guess (true for malignant, false for benign)
+	 */
+	public boolean record(NeighborResult neighbors, boolean actualType) {
+		// Count the malignant and benign tumors among the neighbors
+		int numMalignant = neighbors.countMalignant();
+		return record(numMalignant, neighbors.size() - numMalignant,
+				actualType);
+	}
+
+	/**Makes a guess from the votes of the neighbors on a test tumor and
+	 * records whether the guess was right
+	 * @param numMalignant How many of the neighbors were malignant
+	 * @param numBenign How many of the neighbors were benign
+	 * @param actualType The actual type of the test tumor (true for
+	 * malignant, false for benign)
+	 * @return The guess (true for malignant, false for benign)
+	 */
+	public boolean record(int numMalignant, int numBenign,
+			boolean actualType) {
+		countTested++;
+		// If there were more malignants than benigns among the neighbors,
+		// then guess malignant; otherwise guess benign
+		boolean guess = Diagnosis.guess(numMalignant, numBenign);
+		// Check whether the neighbors were all of one type
+		boolean unanimous = (numMalignant == 0) || (numBenign == 0);
+		if (unanimous) countUnanimous++;
+		// If we were correct, count it as a right guess and as a right guess
+		// for unanimous or not unanimous neighbors
+		if (guess == actualType) {
+			countCorrect++;
+			if (unanimous) countUnanimousCorrect++;
+			else countNotUnanimousCorrect++;
+		}
+		return guess;
+	}
+
+	/**Has the closest neighbors of a test tumor vote once for each of
+	 * several values of k, adding the votes up one neighbor at a time, and
+	 * records each value of k's guess in its own tally (if there are fewer
+	 * neighbors than some value of k, they all vote for it)
+	 * @param tallies The AccuracyTally for each value of k
+	 * @param ks The values of k, smallest first
+	 * @param neighbors The nearest neighbors of the test tumor, closest
+	 * first (at least the biggest k of them, if there are that many)
+	 * @param actualType The actual type of the test tumor (true for
+	 * malignant, false for benign)
+	 */
+	public static void recordEachK(AccuracyTally[] tallies, int[] ks,
+			NeighborResult neighbors, boolean actualType) {
+		int numMalignant = 0, n = 0;
+		for (int i = 0; i < ks.length; i++) {
+			int k = Math.min(ks[i], neighbors.size());
+			for (; n < k; n++) {
+				if (neighbors.getType(n)) numMalignant++;
+			}
+			tallies[i].record(numMalignant, n - numMalignant, actualType);
+		}
+	}
+
+	/**Records how many of the true nearest neighbors of a test tumor an
+	 * approximate search found
+	 * @param approximate The neighbors the approximate search found
+	 * @param exact The true nearest neighbors, from an exact search
+	 */
+	public void recordRecall(NeighborResult approximate,
+			NeighborResult exact) {
+		recordRecall(approximate, exact, exact.size());
+	}
+
+	/**Records how many of the k true nearest neighbors of a test tumor an
+	 * approximate search found among its k closest
+	 * @param approximate The neighbors the approximate search found
+	 * @param exact The true nearest neighbors, from an exact search
+	 * @param k How many of the closest neighbors in each to compare
+	 */
+	public void recordRecall(NeighborResult approximate,
+			NeighborResult exact, int k) {
+		int numApproximate = Math.min(k, approximate.size());
+		int numExact = Math.min(k, exact.size());
+		// Count the ID numbers in the approximate result that are also in
+		// the exact one (k is small, so just compare them all)
+		for (int i = 0; i < numApproximate; i++) {
+			for (int j = 0; j < numExact; j++) {
+				if (approximate.getID(i) == exact.getID(j)) {
+					countNeighborsFound++;
+					break;
+				}
+			}
+		}
+		countNeighborsPossible += numExact;
+	}
+
+	/**Adds the counts from another tally onto this one
+	 * @param other The tally to add
+	 */
+	public void add(AccuracyTally other) {
+		countTested += other.countTested;
+		countCorrect += other.countCorrect;
+		countUnanimous += other.countUnanimous;
+		countUnanimousCorrect += other.countUnanimousCorrect;
+		countNotUnanimousCorrect += other.countNotUnanimousCorrect;
+		countNeighborsFound += other.countNeighborsFound;
+		countNeighborsPossible += other.countNeighborsPossible;
+	}
+
+	/**This simple accessor method returns how many tumors were tested
+	 * @return The number of tumors tested
+	 */
+	public int getNumTested() {
+		return countTested;
+	}
+
+	/**Makes an empty AccuracyTally for each of several values of k,
+	 * checking that the values are in order
+	 * @param ks The values of k, smallest first
+	 * @return The array of tallies, one for each value of k
+	 */
+	public static AccuracyTally[] forEachK(int[] ks) {
+		if (ks.length == 0 || ks[0] < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		AccuracyTally[] tallies = new AccuracyTally[ks.length];
+		for (int i = 0; i < ks.length; i++) {
+			if (i > 0 && ks[i] <= ks[i - 1])
+				throw new IllegalArgumentException("the values of k must "
+						+ "be in increasing order");
+			tallies[i] = new AccuracyTally();
+		}
+		return tallies;
+	}
+
+	/**Turns the counts into percentages
+	 * @return An array of four doubles: the percent accuracy, the percent of
+	 * the time the neighbors were unanimous, the percent accuracy when they
+	 * were unanimous, and the percent accuracy when they were not
+	 */
+	public double[] getResults() {
+		double[] results = new double[4];
+		// Overall percent accuracy: times we were correct divided by the
+		// number of tumors we checked (times 100)
+		results[0] = 100 * ((double) countCorrect / (double) countTested);
+		// Percent of the time all the neighbors had the same type
+		results[1] = 100 * ((double) countUnanimous / (double) countTested);
+		// Percent accuracy when the neighbors were unanimous
+		results[2] = 100 *
+			((double) countUnanimousCorrect / (double) countUnanimous);
+		// Percent accuracy when the neighbors were not unanimous
+		results[3] = 100 * ((double) countNotUnanimousCorrect /
+				(double) (countTested - countUnanimous));
+		return results;
+	}
+
+	/**Turns the recall counts into a percentage
+	 * @return The percent of the true nearest neighbors that were found
+	 */
+	public double getRecall() {
+		return 100 * ((double) countNeighborsFound /
+				(double) countNeighborsPossible);
+	}
+} // End of class
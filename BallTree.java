@@ -0,0 +1,275 @@
+/**This class is a NeighborIndex that finds the exact k nearest neighbors
+ * without looking at every training row. It is built once from a
+ * FeatureMatrix by splitting the rows in half again and again (along the
+ * characteristic they are most spread out in) until each group has only a few
+ * rows, and it keeps a ball -- a center and a radius that every row in the
+ * group fits inside -- around each group. A query then works down the tree,
+ * closer half first, and skips any ball whose nearest edge is farther away
+ * than the kth nearest neighbor found so far, since nothing inside it can be
+ * closer. Balls suit the 30 WDBC characteristics better than the boxes of a
+ * k-d tree, because the edge of a ball is one distance away no matter how many
+ * characteristics there are.
+ *
+ * The rows of each group are copied next to each other in tree order, so the
+ * rows of a leaf are scanned straight through memory, but the heap is given
+ * each row's original row number, so ties are broken the same way as a
+ * LinearScanIndex breaks them and the results are exactly the same.
+ */
+public class BallTree implements NeighborIndex {
+	// Initialize a final int for the most rows a leaf of the tree holds
+	public static final int DEFAULT_LEAF_SIZE = 16;
+	// Initialize a final double for how much rounding error to allow for
+	// when deciding a ball is too far away to search
+	private static final double PRUNE_SLACK = 1e-9;
+
+	// Initialize the FeatureMatrix the tree was built from (row numbers in
+	// results refer to this)
+	private final FeatureMatrix data;
+	// Initialize an int for the number of characteristics of each row
+	private final int numFeatures;
+	// Initialize an array of the original row numbers in tree order, and an
+	// array of the characteristics of the rows in tree order
+	private final int[] rowOrder;
+	private final double[] sortedData;
+	// Initialize arrays describing the nodes of the tree: the range of
+	// positions in rowOrder each node covers, its two children (-1 for a
+	// leaf), the center of its ball (numFeatures values per node) and the
+	// radius of its ball
+	private int[] nodeStart, nodeEnd, leftChild, rightChild;
+	private double[] centers, radii;
+	// Initialize an int for the number of nodes made so far
+	private int numNodes = 0;
+	// Initialize an int for the most rows a leaf holds
+	private final int leafSize;
+
+	/**This constructor builds a BallTree over some training tumors with
+	 * leaves of DEFAULT_LEAF_SIZE rows
+	 * @param train The FeatureMatrix of training tumors
+	 */
+	public BallTree(FeatureMatrix train) {
+		this(train, DEFAULT_LEAF_SIZE);
+	}
+
+	/**This second constructor builds a BallTree over some training tumors
+	 * @param train The FeatureMatrix of training tumors
+	 * @param leafSizeIn The most rows a leaf holds
+	 */
+	public BallTree(FeatureMatrix train, int leafSizeIn) {
+		data = train;
+		numFeatures = train.getNumFeatures();
+		leafSize = Math.max(1, leafSizeIn);
+		int numRows = train.getNumRows();
+
+		// Every leaf ends up with at least (leafSize + 1) / 2 rows, so there
+		// are at most numRows / ((leafSize + 1) / 2) leaves and fewer than
+		// twice that many nodes
+		int maxNodes = 2 * (numRows / ((leafSize + 1) / 2) + 1);
+		nodeStart = new int[maxNodes];
+		nodeEnd = new int[maxNodes];
+		leftChild = new int[maxNodes];
+		rightChild = new int[maxNodes];
+		centers = new double[maxNodes * numFeatures];
+		radii = new double[maxNodes];
+
+		// Start with the rows in their original order and build the tree,
+		// which rearranges rowOrder so each node's rows are together
+		rowOrder = new int[numRows];
+		for (int r = 0; r < numRows; r++) rowOrder[r] = r;
+		if (numRows > 0) build(0, numRows);
+
+		// Copy the rows' characteristics into tree order
+		sortedData = new double[numRows * numFeatures];
+		double[] trainData = train.getData();
+		for (int i = 0; i < numRows; i++)
+			System.arraycopy(trainData, train.offset(rowOrder[i]), sortedData,
+					i * numFeatures, numFeatures);
+	}
+
+	/**Builds the node of the tree covering positions start to end - 1 of
+	 * rowOrder, and all the nodes under it
+	 * @param start The first position the node covers
+	 * @param end One past the last position the node covers
+	 * @return The number of the new node
+	 */
+	private int build(int start, int end) {
+		int node = numNodes++;
+		nodeStart[node] = start;
+		nodeEnd[node] = end;
+		leftChild[node] = -1;
+		rightChild[node] = -1;
+		double[] trainData = data.getData();
+		int centerOffset = node * numFeatures;
+
+		// The center of the ball is the average of the rows
+		for (int i = start; i < end; i++) {
+			int offset = data.offset(rowOrder[i]);
+			for (int f = 0; f < numFeatures; f++)
+				centers[centerOffset + f] += trainData[offset + f];
+		}
+		for (int f = 0; f < numFeatures; f++)
+			centers[centerOffset + f] /= (double) (end - start);
+
+		// The radius is the distance to the farthest row from the center
+		double radiusSquared = 0;
+		for (int i = start; i < end; i++) {
+			radiusSquared = Math.max(radiusSquared, FeatureMatrix.distSquared(
+					centers, centerOffset, trainData, data.offset(rowOrder[i]),
+					numFeatures));
+		}
+		radii[node] = Math.sqrt(radiusSquared);
+
+		// If there are few enough rows, this node is a leaf
+		if (end - start <= leafSize) return node;
+
+		// Otherwise find the characteristic the rows are most spread out in
+		int splitFeature = 0;
+		double widestSpread = -1;
+		for (int f = 0; f < numFeatures; f++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = start; i < end; i++) {
+				double value = trainData[data.offset(rowOrder[i]) + f];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			if (max - min > widestSpread) {
+				widestSpread = max - min;
+				splitFeature = f;
+			}
+		}
+
+		// Put the rows with the smaller half of the values of that
+		// characteristic first, then build a child node for each half
+		int middle = (start + end) >>> 1;
+		selectNth(start, end, middle, splitFeature);
+		leftChild[node] = build(start, middle);
+		rightChild[node] = build(middle, end);
+		return node;
+	}
+
+	/**Rearranges positions start to end - 1 of rowOrder so that the row at
+	 * position n has the value of the given characteristic it would have if
+	 * they were sorted by it, with smaller-or-equal values before it and
+	 * larger-or-equal values after it (quickselect)
+	 * @param start The first position to rearrange
+	 * @param end One past the last position to rearrange
+	 * @param n The position to put in its sorted place
+	 * @param feature Which characteristic to compare by
+	 */
+	private void selectNth(int start, int end, int n, int feature) {
+		double[] trainData = data.getData();
+		int low = start, high = end - 1;
+		while (low < high) {
+			// Use the value in the middle of the range as the pivot and
+			// split the range around it
+			double pivot =
+				trainData[data.offset(rowOrder[(low + high) >>> 1]) + feature];
+			int i = low, j = high;
+			while (i <= j) {
+				while (trainData[data.offset(rowOrder[i]) + feature] < pivot)
+					i++;
+				while (trainData[data.offset(rowOrder[j]) + feature] > pivot)
+					j--;
+				if (i <= j) {
+					int temp = rowOrder[i];
+					rowOrder[i] = rowOrder[j];
+					rowOrder[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			// Keep going in whichever part n is in
+			if (n <= j) high = j;
+			else if (n >= i) low = i;
+			else return;
+		}
+	}
+
+	public FeatureMatrix getData() {
+		return data;
+	}
+
+	/**This simple accessor method returns the number of nodes in the tree
+	 * @return The number of nodes
+	 */
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		// Get this thread's heap, emptied and ready to keep the k closest
+		// rows, then search from the root of the tree
+		KnnHeap heap = NeighborScratch.forCurrentThread().heap(
+				Math.min(k, data.getNumRows()));
+		if (numNodes > 0 && k > 0) search(0, query, queryOffset, heap);
+		heap.drainRootsInto(data, out);
+	}
+
+	/**Searches a node of the tree for rows closer than the farthest row in
+	 * the heap, skipping it if its ball is too far away
+	 * @param node The node to search
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param heap The heap of the closest rows found so far (by squared
+	 * distance)
+	 */
+	private void search(int node, double[] query, int queryOffset,
+			KnnHeap heap) {
+		// The closest any row in this node's ball can be is the distance to
+		// its center minus its radius
+		double centerDist = Math.sqrt(FeatureMatrix.distSquared(query,
+				queryOffset, centers, node * numFeatures, numFeatures));
+		searchWithin(node, centerDist, query, queryOffset, heap);
+	}
+
+	/**Searches a node of the tree whose distance from the query to the
+	 * center of its ball has already been worked out
+	 * @param node The node to search
+	 * @param centerDist The distance from the query to the node's center
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param heap The heap of the closest rows found so far (by squared
+	 * distance)
+	 */
+	private void searchWithin(int node, double centerDist, double[] query,
+			int queryOffset, KnnHeap heap) {
+		// Skip this node if even the nearest edge of its ball is farther than
+		// the farthest row kept (a row exactly as far could still win a tie,
+		// so those are searched). The heap holds squared distances, so this
+		// takes one square root per node instead of one per row.
+		double worst = Math.sqrt(heap.worstDistance());
+		if (centerDist - radii[node] > worst + PRUNE_SLACK * worst) return;
+
+		// If this is a leaf, offer each of its rows' squared distances to the
+		// heap, under its original row number, giving up on a row as soon as
+		// it is farther than the farthest row kept
+		if (leftChild[node] < 0) {
+			int kept = 0;
+			for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+				if (heap.offer(DistanceKernels.distSquaredBounded(query,
+						queryOffset, sortedData, i * numFeatures, numFeatures,
+						heap.worstDistance()), rowOrder[i]))
+					kept++;
+			}
+			PipelineMetrics.countScan(nodeEnd[node] - nodeStart[node], kept);
+			return;
+		}
+
+		// Otherwise search the child whose center is closer first, since it
+		// is more likely to have close rows that let us skip the other one
+		int left = leftChild[node], right = rightChild[node];
+		double leftDist = Math.sqrt(FeatureMatrix.distSquared(query,
+				queryOffset, centers, left * numFeatures, numFeatures));
+		double rightDist = Math.sqrt(FeatureMatrix.distSquared(query,
+				queryOffset, centers, right * numFeatures, numFeatures));
+		if (leftDist <= rightDist) {
+			searchWithin(left, leftDist, query, queryOffset, heap);
+			searchWithin(right, rightDist, query, queryOffset, heap);
+		}
+		else {
+			searchWithin(right, rightDist, query, queryOffset, heap);
+			searchWithin(left, leftDist, query, queryOffset, heap);
+		}
+	}
+} // End of class
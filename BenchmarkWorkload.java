@@ -0,0 +1,98 @@
+/**This class carries out the operations the JMH benchmarks in bench/knnbench
+ * measure (see knnbench.KnnWorkload for why the benchmarks reach the program
+ * through it). It holds the data set to benchmark on both as a FeatureMatrix
+ * and as an array of Tumors, plus a set of query tumors that it cycles
+ * through, one per call.
+ */
+public class BenchmarkWorkload implements knnbench.KnnWorkload {
+	// Initialize a final int for the number of query tumors to cycle through
+	private static final int NUM_OF_QUERIES = 64;
+
+	// Initialize the data set as a FeatureMatrix and as Tumors, and the
+	// query tumors the same two ways
+	private FeatureMatrix data, queries;
+	private Tumor[] tumors, queryTumors;
+	// Initialize ints for k and for the next query to use
+	private int k, nextQuery = 0;
+	// Initialize a NeighborResult for kNearest to write into
+	private NeighborResult neighbors;
+	// Initialize BlockedDistanceEngines over the data set without and with
+	// the norm identity, and NeighborResults for a batch of all the queries
+	private BlockedDistanceEngine direct, withNorms;
+	private NeighborResult[] batch;
+
+	public void setUp(String dataFile, int numRows, int numFeatures, int kIn,
+			long seed) throws Exception {
+		FeatureMatrix base = SyntheticData.withNumFeatures(
+				NearestNeighbor.ImportMatrix(dataFile), numFeatures);
+		// Use the real rows as they are if that's how many are wanted
+		data = (numRows == base.getNumRows()) ? base :
+			SyntheticData.scale(base, numRows, seed);
+		queries = SyntheticData.scale(base, NUM_OF_QUERIES, seed + 1);
+		tumors = data.toTumors();
+		queryTumors = queries.toTumors();
+		k = kIn;
+		neighbors = new NeighborResult(k);
+		direct = new BlockedDistanceEngine(data, false);
+		withNorms = new BlockedDistanceEngine(data, true);
+		batch = new NeighborResult[NUM_OF_QUERIES];
+		for (int q = 0; q < NUM_OF_QUERIES; q++)
+			batch[q] = new NeighborResult(k);
+	}
+
+	/**Moves on to the next query tumor
+	 * @return The row number of the query tumor to use
+	 */
+	private int nextQuery() {
+		int query = nextQuery;
+		nextQuery = (nextQuery + 1) % NUM_OF_QUERIES;
+		return query;
+	}
+
+	public double dist() {
+		int query = nextQuery();
+		return queryTumors[query].Dist(tumors[query % tumors.length]);
+	}
+
+	public double distSquared() {
+		int query = nextQuery();
+		return DistanceKernels.distSquared(queries.getData(),
+				queries.offset(query), data.getData(),
+				data.offset(query % data.getNumRows()), data.getNumFeatures());
+	}
+
+	public Object sortByDistanceFrom() {
+		return NearestNeighbor.sortByDistanceFrom(queryTumors[nextQuery()],
+				tumors);
+	}
+
+	public boolean findTypeOfNthNearestNeighbor() {
+		return NearestNeighbor.FindTypeOfNthNearestNeighbor(k,
+				queryTumors[nextQuery()], tumors);
+	}
+
+	public Object kNearest() {
+		int query = nextQuery();
+		NearestNeighbor.kNearest(queries.getData(), queries.offset(query),
+				data, k, neighbors);
+		return neighbors;
+	}
+
+	public Object kNearestBatch() {
+		direct.kNearest(queries, 0, NUM_OF_QUERIES, k, batch);
+		return batch;
+	}
+
+	public Object kNearestBatchWithNorms() {
+		withNorms.kNearest(queries, 0, NUM_OF_QUERIES, k, batch);
+		return batch;
+	}
+
+	public double[] accuracy() {
+		return NearestNeighbor.Accuracy(k, data);
+	}
+
+	public double[] accuracy100Trials() {
+		return NearestNeighbor.Accuracy100Trials(data, k, nextQuery());
+	}
+} // End of class
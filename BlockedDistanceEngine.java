@@ -0,0 +1,238 @@
+/**This class finds the k nearest neighbors of a whole batch of query tumors
+ * at once, instead of one query at a time. Scanning the training rows for one
+ * query after another reads the whole training matrix from memory once per
+ * query; here the queries are taken a block at a time and the training rows a
+ * block at a time, and every query in the query block is compared with every
+ * row in the training block before moving on, so a training block is read
+ * from memory once and then used from the cache by the rest of the queries.
+ * Each query keeps its own KnnHeap while this goes on.
+ *
+ * It can also use the squared norms of the training rows (worked out once,
+ * when the engine is made) to find squared distances with the identity
+ * ||q - t||^2 = ||q||^2 + ||t||^2 - 2 q.t, which only needs a dot product.
+ * The subtraction loses precision when the norms are big next to the
+ * distance, so the identity is only used to rule rows out: a row is skipped
+ * when even the identity's value minus the most its rounding error could be
+ * is farther than the k-th nearest row so far, and any row that might make
+ * it into the heap has its distance worked out the direct way.
+ * Either way the neighbors, and their distances, come out exactly the same as
+ * from NearestNeighbor.kNearest. On this data the identity is slower, not
+ * quicker: a full dot product costs more than the direct distance, which
+ * usually gives up partway, so LinearScanIndex and LocalShard don't use it
+ * (NeighborSearchBenchmark times both ways).
+ */
+public class BlockedDistanceEngine {
+	// Initialize final ints for the default number of queries and training
+	// rows in a block (128 rows of 30 doubles is 30 KB, which fits in the
+	// level 1 cache)
+	public static final int QUERY_BLOCK = 16;
+	public static final int TRAIN_BLOCK = 128;
+	// Initialize a final double for the unit roundoff of a double
+	private static final double ROUNDOFF = 0x1p-53;
+
+	// Initialize the FeatureMatrix of training tumors, its squared row norms,
+	// whether the norm identity is used, and the sizes of the blocks
+	private final FeatureMatrix train;
+	private final double[] trainNorms;
+	private final boolean useNormIdentity;
+	private final int queryBlock, trainBlock;
+	// Initialize a final double for how big the rounding error of the
+	// identity can be, as a fraction of the norms added together
+	private final double slack;
+
+	/**This constructor creates a BlockedDistanceEngine over some training
+	 * tumors with the default block sizes
+	 * @param train The FeatureMatrix of training tumors
+	 * @param useNormIdentity Whether to rule rows out with the norm identity
+	 * before working out their distances directly
+	 */
+	public BlockedDistanceEngine(FeatureMatrix train, boolean useNormIdentity) {
+		this(train, useNormIdentity, QUERY_BLOCK, TRAIN_BLOCK);
+	}
+
+	/**This constructor creates a BlockedDistanceEngine over some training
+	 * tumors with the given block sizes
+	 * @param train The FeatureMatrix of training tumors
+	 * @param useNormIdentity Whether to rule rows out with the norm identity
+	 * before working out their distances directly
+	 * @param queryBlock How many queries to compare at a time
+	 * @param trainBlock How many training rows to compare them with at a
+	 * time
+	 */
+	public BlockedDistanceEngine(FeatureMatrix train, boolean useNormIdentity,
+			int queryBlock, int trainBlock) {
+		if (queryBlock < 1 || trainBlock < 1)
+			throw new IllegalArgumentException("block sizes must be positive");
+		this.train = train;
+		this.useNormIdentity = useNormIdentity;
+		this.queryBlock = queryBlock;
+		this.trainBlock = trainBlock;
+		int numFeatures = train.getNumFeatures();
+		// Each of the norms and the dot product is off by at most
+		// numFeatures roundoffs times the norms, and the additions add a few
+		// more; this is four times that, to be safe
+		slack = 4 * (numFeatures + 4) * ROUNDOFF;
+		if (!useNormIdentity) {
+			trainNorms = null;
+			return;
+		}
+		trainNorms = new double[train.getNumRows()];
+		double[] data = train.getData();
+		for (int r = 0; r < trainNorms.length; r++) {
+			int offset = train.offset(r);
+			trainNorms[r] = DistanceKernels.dot(data, offset, data, offset,
+					numFeatures);
+		}
+	}
+
+	/**This simple accessor method returns the FeatureMatrix of training
+	 * tumors the engine searches
+	 * @return The FeatureMatrix of training tumors
+	 */
+	public FeatureMatrix getData() {
+		return train;
+	}
+
+	/**Finds the k nearest neighbors of a range of rows of a FeatureMatrix of
+	 * queries, using the calling thread's NeighborScratch for the heaps
+	 * @param queries The FeatureMatrix holding the query tumors
+	 * @param from The first query row
+	 * @param to One past the last query row
+	 * @param k How many nearest neighbors to find for each query
+	 * @param out The NeighborResults to write the neighbors into, one for
+	 * each query, with the neighbors of row from in out[0]
+	 */
+	public void kNearest(FeatureMatrix queries, int from, int to, int k,
+			NeighborResult[] out) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		int heapSize = Math.min(k, train.getNumRows());
+		// For loop to go through the queries a block at a time
+		for (int qStart = from; qStart < to; qStart += queryBlock) {
+			int qEnd = Math.min(to, qStart + queryBlock);
+			KnnHeap[] heaps = scratch.heaps(qEnd - qStart, heapSize);
+			searchBlock(queries, qStart, qEnd, heaps, scratch);
+			for (int q = qStart; q < qEnd; q++) {
+				heaps[q - qStart].drainRootsInto(train, out[q - from]);
+			}
+		} // End of for loop through the query blocks
+	}
+
+	/**Finds the k nearest neighbors of a range of rows of a FeatureMatrix of
+	 * queries like kNearest, but writes them into a ShardHits, with their
+	 * squared distances, for when these training tumors are one shard of a
+	 * ShardedIndex
+	 * @param queries The FeatureMatrix holding the query tumors
+	 * @param from The first query row
+	 * @param to One past the last query row
+	 * @param k How many nearest neighbors to find for each query
+	 * @param out The ShardHits to write them into (reset for to - from
+	 * queries)
+	 * @param firstRow The row number of the first training tumor in the
+	 * whole data set
+	 */
+	public void kNearest(FeatureMatrix queries, int from, int to, int k,
+			ShardHits out, int firstRow) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		int heapSize = Math.min(k, train.getNumRows());
+		out.reset(to - from, k);
+		for (int qStart = from; qStart < to; qStart += queryBlock) {
+			int qEnd = Math.min(to, qStart + queryBlock);
+			KnnHeap[] heaps = scratch.heaps(qEnd - qStart, heapSize);
+			searchBlock(queries, qStart, qEnd, heaps, scratch);
+			for (int q = qStart; q < qEnd; q++)
+				out.take(q - from, heaps[q - qStart], train, firstRow);
+		}
+	}
+
+	/**Offers every training row to the heaps of one block of queries
+	 * @param queries The FeatureMatrix holding the query tumors
+	 * @param qStart The first query row of the block
+	 * @param qEnd One past the last query row of the block
+	 * @param heaps The queries' emptied heaps, one for each
+	 * @param scratch The calling thread's NeighborScratch
+	 */
+	private void searchBlock(FeatureMatrix queries, int qStart, int qEnd,
+			KnnHeap[] heaps, NeighborScratch scratch) {
+		int numRows = train.getNumRows();
+		double[] queryNorms = null;
+		if (useNormIdentity) {
+			queryNorms = scratch.buffer(qEnd - qStart);
+			double[] queryData = queries.getData();
+			for (int q = qStart; q < qEnd; q++) {
+				int offset = queries.offset(q);
+				queryNorms[q - qStart] = DistanceKernels.dot(queryData,
+						offset, queryData, offset, queries.getNumFeatures());
+			}
+		}
+		// For loop to go through the training rows a block at a time,
+		// comparing each with every query in the block
+		for (int tStart = 0; tStart < numRows; tStart += trainBlock) {
+			int tEnd = Math.min(numRows, tStart + trainBlock);
+			for (int q = qStart; q < qEnd; q++) {
+				if (useNormIdentity)
+					scanWithNorms(queries, q, queryNorms[q - qStart],
+							tStart, tEnd, heaps[q - qStart]);
+				else
+					scan(queries, q, tStart, tEnd, heaps[q - qStart]);
+			}
+		} // End of for loop through the training blocks
+	}
+
+	/**Offers a run of training rows to a query's heap, working out each
+	 * distance directly (giving up on a row once it is farther than the
+	 * heap's worst)
+	 * @param queries The FeatureMatrix holding the query
+	 * @param q The query's row
+	 * @param tStart The first training row
+	 * @param tEnd One past the last training row
+	 * @param heap The query's heap
+	 */
+	private void scan(FeatureMatrix queries, int q, int tStart, int tEnd,
+			KnnHeap heap) {
+		double[] queryData = queries.getData();
+		int queryOffset = queries.offset(q);
+		double[] data = train.getData();
+		int numFeatures = train.getNumFeatures();
+		int kept = 0;
+		for (int r = tStart; r < tEnd; r++) {
+			if (heap.offer(DistanceKernels.distSquaredBounded(queryData,
+					queryOffset, data, train.offset(r), numFeatures,
+					heap.worstDistance()), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(tEnd - tStart, kept);
+	}
+
+	/**Offers a run of training rows to a query's heap, skipping the ones
+	 * the norm identity shows can't get in and working out the distances of
+	 * the rest directly
+	 * @param queries The FeatureMatrix holding the query
+	 * @param q The query's row
+	 * @param queryNorm The query's squared norm
+	 * @param tStart The first training row
+	 * @param tEnd One past the last training row
+	 * @param heap The query's heap
+	 */
+	private void scanWithNorms(FeatureMatrix queries, int q, double queryNorm,
+			int tStart, int tEnd, KnnHeap heap) {
+		double[] queryData = queries.getData();
+		int queryOffset = queries.offset(q);
+		double[] data = train.getData();
+		int numFeatures = train.getNumFeatures();
+		int kept = 0;
+		for (int r = tStart; r < tEnd; r++) {
+			int offset = train.offset(r);
+			double worst = heap.worstDistance();
+			double norms = queryNorm + trainNorms[r];
+			double approx = norms - 2 * DistanceKernels.dot(queryData,
+					queryOffset, data, offset, numFeatures);
+			// Skip the row if it is farther than the worst even allowing for
+			// the rounding error (worst is infinite until the heap fills)
+			if (approx - slack * (norms + worst) > worst) continue;
+			if (heap.offer(DistanceKernels.distSquaredBounded(queryData,
+					queryOffset, data, offset, numFeatures, worst), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(tEnd - tStart, kept);
+	}
+} // End of class
@@ -0,0 +1,182 @@
+// Importing classes for IO (to read and write the tumors) and channels
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**This class diagnoses new tumors as they come in, instead of running the
+ * accuracy trials: it loads the training data once, builds a BallTree over
+ * it (or, for a binary data file whose characteristics aren't rescaled,
+ * maps the file and searches it where it is, with no copy; see
+ * MappedDataset), and then reads tumors to diagnose from standard input or a
+ * file, in the same comma-separated form as the data file (the M or B can
+ * be left out, since the point is that the type isn't known). For each tumor it
+ * prints a line with the ID number, the guess (M or B), how many of the k
+ * nearest neighbors were malignant and benign, and whether they were
+ * unanimous. The tumors are read and diagnosed in batches of whatever has
+ * already arrived (up to a maximum), and each batch is diagnosed in parallel
+ * and printed in one go, so a big file goes through quickly while a tumor
+ * typed in by hand is answered right away. At the end it prints how many
+ * tumors it diagnosed and how fast, plus the accuracy on the ones whose
+ * lines did give a type. The characteristics can be rescaled first (see
+ * FeatureScaler), fitted on the training data; the tumors to diagnose are
+ * then rescaled the same way. A DiagnosisCache of a given size can be put in
+ * front of the searches, so a tumor sent in again is answered from it, and
+ * how it did is printed at the end, along with where the time went (see
+ * PipelineMetrics, which can also be watched through JMX while it runs).
+ *
+ *   java ClassifyStream trainingFile [k] [queryFile or -] [batchSize]
+ *       [none, zscore or minmax] [cacheSize]
+ */
+public class ClassifyStream {
+	// Initialize a final int for the default most tumors in one batch
+	private static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**Main method for the ClassifyStream class
+	 * @param args The command-line arguments for the method: the training
+	 * data file, then optionally k (5 if left out), the file of tumors to
+	 * diagnose ("-" or left out for standard input) and the most tumors in
+	 * one batch, how to rescale the characteristics (none if left out), and
+	 * how many diagnoses to cache (none if left out or 0)
+	 * @throws IOException This exception gets thrown if a file can't be read
+	 * or a line of the tumors to diagnose isn't in the right form
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java ClassifyStream trainingFile [k] "
+					+ "[queryFile or -] [batchSize] [none, zscore or minmax] "
+					+ "[cacheSize]");
+			return;
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		String queryFile = (args.length > 2) ? args[2] : "-";
+		int batchSize = (args.length > 3) ? Integer.parseInt(args[3]) :
+			DEFAULT_BATCH_SIZE;
+		int scaling = (args.length > 4) ? FeatureScaler.methodFor(args[4]) :
+			FeatureScaler.NONE;
+		int cacheSize = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+		if (k < 1 || batchSize < 1) {
+			System.err.println("k and the batch size must be at least 1");
+			return;
+		}
+
+		// Load the training data and build the index once: a binary file
+		// that doesn't need rescaling is searched where it is mapped, and
+		// anything else is read into a FeatureMatrix for a BallTree
+		PipelineMetrics.registerMBean();
+		long start = System.nanoTime();
+		NeighborIndex index;
+		// The tumors to diagnose have as many characteristics as were read
+		int numRows, numFeatures;
+		String loaded;
+		if (scaling == FeatureScaler.NONE && MappedDataset.isBinary(args[0])) {
+			long loadStart = PipelineMetrics.start();
+			PipelineMetrics.StageEvent loadEvent = PipelineMetrics.beginEvent();
+			MappedDataset mapped = MappedDataset.open(args[0]);
+			PipelineMetrics.stop(PipelineMetrics.LOAD, loadStart, loadEvent);
+			numRows = mapped.getNumRows();
+			numFeatures = mapped.getNumFeatures();
+			index = mapped;
+			loaded = "Mapped ";
+		}
+		else {
+			FeatureMatrix train = NearestNeighbor.ImportMatrix(args[0]);
+			numRows = train.getNumRows();
+			numFeatures = train.getNumFeatures();
+			if (scaling != FeatureScaler.NONE)
+				train = FeatureScaler.fit(train, scaling).transform(train);
+			index = new BallTree(train);
+			loaded = "Loaded ";
+		}
+		KnnClassifier classifier = new KnnClassifier(index, k);
+		if (cacheSize > 0) classifier.setCache(new DiagnosisCache(cacheSize));
+		System.err.println(loaded + numRows + " training tumors in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				StandardCharsets.ISO_8859_1), 1 << 16);
+		// Diagnose the tumors, stopping with a message saying which line
+		// was wrong if one can't be read
+		try {
+			if (queryFile.equals("-")) {
+				classifyAll(classifier, Channels.newChannel(System.in),
+						"stdin", numFeatures, batchSize, out);
+			}
+			else {
+				try (FileChannel in = FileChannel.open(Paths.get(queryFile),
+						StandardOpenOption.READ)) {
+					classifyAll(classifier, in, queryFile, numFeatures,
+							batchSize, out);
+				}
+			}
+		}
+		catch (MalformedDataException e) {
+			out.flush();
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**Reads tumors from a channel a batch at a time, diagnoses each batch
+	 * and writes the diagnoses, until the channel runs out, then prints a
+	 * summary to standard error
+	 * @param classifier The KnnClassifier to diagnose the tumors with
+	 * @param in The channel to read the tumors from
+	 * @param sourceName The name of what is being read, for error messages
+	 * @param numFeatures How many characteristics each tumor must have
+	 * @param batchSize The most tumors in one batch
+	 * @param out Where to write the diagnoses
+	 * @throws IOException If the tumors can't be read or the diagnoses can't
+	 * be written
+	 */
+	public static void classifyAll(KnnClassifier classifier,
+			ReadableByteChannel in, String sourceName, int numFeatures,
+			int batchSize, Writer out) throws IOException {
+		TumorDataLoader reader =
+			TumorDataLoader.streaming(in, sourceName, numFeatures);
+		// Make the Diagnosis objects once and fill them in again for each
+		// batch
+		Diagnosis[] diagnoses = new Diagnosis[batchSize];
+		for (int i = 0; i < batchSize; i++) diagnoses[i] = new Diagnosis();
+		// Keep count of the accuracy on the tumors that came with a type
+		AccuracyTally tally = new AccuracyTally();
+		long numDiagnosed = 0;
+		long start = System.nanoTime();
+
+		// While loop to diagnose one batch each time through, until there
+		// are no more tumors
+		int count;
+		while ((count = reader.readBatch(batchSize)) > 0) {
+			FeatureMatrix batch = reader.batch();
+			classifier.classifyBatch(batch, diagnoses);
+			for (int r = 0; r < count; r++) {
+				out.write(diagnoses[r].toString());
+				out.write('\n');
+				if (reader.hasType(r))
+					tally.record(diagnoses[r].getNumMalignant(),
+							diagnoses[r].getNumBenign(), batch.getType(r));
+			}
+			// Send the whole batch's diagnoses out at once
+			out.flush();
+			numDiagnosed += count;
+		} // End of while loop diagnosing batches
+
+		// Print how it went
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format("Diagnosed %d tumors in %.3f s "
+				+ "(%.0f per second) with k = %d", numDiagnosed, seconds,
+				numDiagnosed / Math.max(seconds, 1e-9), classifier.getK()));
+		double[] results = tally.getResults();
+		if (tally.getNumTested() > 0)
+			System.err.println(String.format("%d of them gave their type; "
+					+ "%.2f%% of those were diagnosed correctly",
+					tally.getNumTested(), results[0]));
+		if (classifier.getCache() != null)
+			System.err.println("Cache: " + classifier.getCache());
+		if (PipelineMetrics.ENABLED)
+			System.err.print(PipelineMetrics.summary());
+	}
+} // End of class
@@ -0,0 +1,374 @@
+// Importing classes for IO (to read file), Scanner, SplittableRandom (for the
+// random splits) and the fork-join classes (to fill in the cache in parallel)
+import java.io.*;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**This class tests the k-nearest neighbor algorithm on a FeatureMatrix of
+ * tumors without working out any distance more than once. The distances
+ * between the tumors don't change from one split of the data to the next, so
+ * when it is made it works out the squared distance between every pair of
+ * tumors once and keeps them in a triangular array (half of the symmetric
+ * matrix, without the diagonal), and then sorts every tumor's list of the
+ * other tumors from closest to farthest. After that a split of the data is
+ * tested just by marking which tumors are training tumors and walking down
+ * each testing tumor's list, skipping the ones that aren't, until k have been
+ * found; and since the votes are added up one neighbor at a time, every
+ * value of k up to the biggest is tested in the same walk.
+ *
+ * It can test leave-one-out (each tumor against all the others), k-fold
+ * cross-validation, and the same random 80-20 splits TrialRunner makes from a
+ * seed. Tumors at the same distance are ordered the way the training data of
+ * a split would order them, so the random splits give exactly the same
+ * results as NearestNeighbor.Accuracy100Trials with the same seed.
+ *
+ * The cache takes 8 bytes for each pair of tumors and 4 more for each entry
+ * in the sorted lists, which is about 2.6 MB for the 569 tumors of the data
+ * file, but it grows with the square of the number of tumors.
+ *
+ *   java CrossValidator dataFile [maxK] [seed]
+ */
+public class CrossValidator {
+	// Initialize a final int for the fewest rows worth giving to a task of
+	// their own while the cache is filled in
+	private static final int MIN_ROWS_PER_TASK = 16;
+
+	// Initialize the FeatureMatrix of tumors and the number of them
+	private final FeatureMatrix data;
+	private final int numRows;
+	// Initialize the array of squared distances between pairs of tumors:
+	// the distance between rows i and j, for j < i, is at i(i-1)/2 + j
+	private final double[] distances;
+	// Initialize the array of each row's list of the other rows, closest
+	// first: row i's list starts at i(numRows-1)
+	private final int[] neighbors;
+
+	/**This constructor creates a CrossValidator for some tumors, working out
+	 * the distances between them and sorting them on the common
+	 * ForkJoinPool
+	 * @param dataIn The FeatureMatrix of tumors
+	 */
+	public CrossValidator(FeatureMatrix dataIn) {
+		data = dataIn;
+		numRows = data.getNumRows();
+		if ((long) numRows * (numRows - 1) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many tumors (" + numRows
+					+ ") to keep the distance between every pair");
+		distances = new double[numRows * (numRows - 1) / 2];
+		neighbors = new int[numRows * (numRows - 1)];
+		// Work out the distances first, since each row's list needs the
+		// distances from the rows after it as well as before it
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		pool.invoke(new RowsTask(false, 0, numRows));
+		pool.invoke(new RowsTask(true, 0, numRows));
+	}
+
+	/**This simple accessor method returns how many tumors there are
+	 * @return The number of tumors
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**Looks up the squared distance between two tumors in the cache
+	 * @param i The row of one tumor
+	 * @param j The row of the other tumor
+	 * @return The squared distance between them
+	 */
+	public double distSquared(int i, int j) {
+		if (i == j) return 0;
+		if (i < j) {
+			int temp = i;
+			i = j;
+			j = temp;
+		}
+		return distances[i * (i - 1) / 2 + j];
+	}
+
+	/**Tests each tumor against all of the others (leave-one-out)
+	 * @param ks The values of k to test, smallest first
+	 * @return An array with the four results of NearestNeighbor.Accuracy for
+	 * each value of k, in the same order as ks
+	 */
+	public double[][] leaveOneOut(int[] ks) {
+		// Every other tumor is a training tumor, in its own row order
+		int[] rank = new int[numRows];
+		int[] testRows = new int[numRows];
+		for (int r = 0; r < numRows; r++) {
+			rank[r] = r;
+			testRows[r] = r;
+		}
+		AccuracyTally[] tallies = AccuracyTally.forEachK(ks);
+		testRows(rank, testRows, 0, numRows, ks, tallies);
+		return results(tallies);
+	}
+
+	/**Tests the tumors with k-fold cross-validation: the tumors are shuffled
+	 * and cut into folds, and each fold is tested against the rest. The
+	 * counts from all the folds are added together.
+	 * @param numFolds How many folds to cut the tumors into
+	 * @param ks The values of k to test, smallest first
+	 * @param random The random number generator to shuffle the tumors with
+	 * @return An array with the four results of NearestNeighbor.Accuracy for
+	 * each value of k, in the same order as ks
+	 */
+	public double[][] kFold(int numFolds, int[] ks, SplittableRandom random) {
+		if (numFolds < 2 || numFolds > numRows)
+			throw new IllegalArgumentException("can't cut " + numRows
+					+ " tumors into " + numFolds + " folds");
+		int[] order = DataSplitter.permutation(numRows, random);
+		int[] rank = new int[numRows];
+		AccuracyTally[] tallies = AccuracyTally.forEachK(ks);
+		// For loop to test each fold against the other folds
+		for (int f = 0; f < numFolds; f++) {
+			int start = (int) ((long) f * numRows / numFolds);
+			int end = (int) ((long) (f + 1) * numRows / numFolds);
+			// The training tumors are the rest of the shuffled order, with
+			// the fold taken out
+			for (int p = 0; p < numRows; p++) {
+				if (p < start) rank[order[p]] = p;
+				else if (p < end) rank[order[p]] = -1;
+				else rank[order[p]] = p - (end - start);
+			}
+			testRows(rank, order, start, end, ks, tallies);
+		} // End of for loop through the folds
+		return results(tallies);
+	}
+
+	/**Tests the tumors on the same random 80-20 splits as
+	 * TrialRunner.runTrials with a TrialRunner made from the same seed, and
+	 * averages the trials' results
+	 * @param numTrials How many random splits to test
+	 * @param ks The values of k to test, smallest first
+	 * @param seed The seed for the random splits
+	 * @param stratified True to split each type 80-20 separately, false to
+	 * split all the tumors 80-20 without looking at their types
+	 * @return An array with the four averaged results of
+	 * NearestNeighbor.Accuracy for each value of k, in the same order as ks
+	 */
+	public double[][] randomSplits(int numTrials, int[] ks, long seed,
+			boolean stratified) {
+		SplittableRandom[] randoms = new TrialRunner(seed)
+			.trialRandoms(numTrials);
+		int[] rank = new int[numRows];
+		// The results of each trial, for each value of k
+		double[][][] trialResults = new double[ks.length][numTrials][];
+		// For loop to test each split
+		for (int t = 0; t < numTrials; t++) {
+			DataSplitter.Split split =
+				DataSplitter.split(data, randoms[t], stratified);
+			int[] order = split.getOrder();
+			int numTraining = split.getNumTraining();
+			// A training tumor's rank is its row in the split's training
+			// data, which is where ties are broken
+			for (int p = 0; p < numRows; p++)
+				rank[order[p]] = (p < numTraining) ? p : -1;
+			AccuracyTally[] tallies = AccuracyTally.forEachK(ks);
+			testRows(rank, order, numTraining, numRows, ks, tallies);
+			for (int i = 0; i < ks.length; i++)
+				trialResults[i][t] = tallies[i].getResults();
+		} // End of for loop through the splits
+		double[][] results = new double[ks.length][];
+		for (int i = 0; i < ks.length; i++)
+			results[i] = TrialRunner.average(trialResults[i]);
+		return results;
+	}
+
+	/**Tests some rows against the training rows, walking down each testing
+	 * row's list and letting the neighbors vote for every value of k
+	 * @param rank Each row's row in the training data, or -1 if it isn't a
+	 * training row (rows at the same distance are taken lowest rank first)
+	 * @param testRows An array holding the rows to test
+	 * @param from The first position in testRows to test
+	 * @param to One past the last position in testRows to test
+	 * @param ks The values of k to test, smallest first
+	 * @param tallies The AccuracyTally for each value of k
+	 */
+	private void testRows(int[] rank, int[] testRows, int from, int to,
+			int[] ks, AccuracyTally[] tallies) {
+		int maxK = ks[ks.length - 1];
+		int listLength = numRows - 1;
+		// An array for the training rows at one distance
+		int[] group = new int[listLength];
+		// For loop to test each row
+		for (int j = from; j < to; j++) {
+			int row = testRows[j];
+			int listStart = row * listLength;
+			int found = 0, numMalignant = 0, nextK = 0;
+			int p = 0;
+			// While loop to take the neighbors a distance at a time until
+			// the biggest k have been found
+			while (found < maxK && p < listLength) {
+				// Collect the training rows at the same distance as the next
+				// row in the list, and put them in training order
+				double dist = distSquared(row, neighbors[listStart + p]);
+				int groupSize = 0;
+				for (; p < listLength; p++) {
+					int other = neighbors[listStart + p];
+					if (distSquared(row, other) != dist) break;
+					if (rank[other] >= 0) group[groupSize++] = other;
+				}
+				sortByRank(group, groupSize, rank);
+				// Let them vote one at a time, recording the votes whenever
+				// there are as many neighbors as one of the values of k
+				for (int g = 0; g < groupSize && found < maxK; g++) {
+					found++;
+					if (data.getType(group[g])) numMalignant++;
+					while (nextK < ks.length && ks[nextK] == found) {
+						tallies[nextK++].record(numMalignant,
+								found - numMalignant, data.getType(row));
+					}
+				}
+			} // End of while loop through the distances
+			// If there were fewer training rows than some of the values of
+			// k, they all vote for those
+			while (nextK < ks.length) {
+				tallies[nextK++].record(numMalignant, found - numMalignant,
+						data.getType(row));
+			}
+		} // End of for loop through the rows to test
+	}
+
+	/**Sorts the first count rows of an array by their rank with an
+	 * insertion sort (there are almost never more than one or two)
+	 * @param rows The array of rows
+	 * @param count How many of them to sort
+	 * @param rank Each row's rank
+	 */
+	private static void sortByRank(int[] rows, int count, int[] rank) {
+		for (int i = 1; i < count; i++) {
+			int row = rows[i];
+			int n = i - 1;
+			while (n >= 0 && rank[rows[n]] > rank[row]) {
+				rows[n + 1] = rows[n];
+				n--;
+			}
+			rows[n + 1] = row;
+		}
+	}
+
+	/**Turns each value of k's tally into its four results
+	 * @param tallies The AccuracyTally for each value of k
+	 * @return The four results for each value of k
+	 */
+	private static double[][] results(AccuracyTally[] tallies) {
+		double[][] results = new double[tallies.length][];
+		for (int i = 0; i < tallies.length; i++)
+			results[i] = tallies[i].getResults();
+		return results;
+	}
+
+	/**Main method for the CrossValidator class: prints the accuracy of every
+	 * value of k from 1 up to a maximum with leave-one-out, 10-fold
+	 * cross-validation and 100 random 80-20 splits, and how long each took
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally the biggest k (50 if left out)
+	 * and a seed for the random splits
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int maxK = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) :
+			new SplittableRandom().nextLong();
+		final int NUM_OF_FOLDS = 10;
+		final int NUM_OF_TRIALS = 100;
+		int[] ks = new int[maxK];
+		for (int i = 0; i < maxK; i++) ks[i] = i + 1;
+
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(fileName);
+		long start = System.nanoTime();
+		CrossValidator validator = new CrossValidator(data);
+		double cacheMillis = (System.nanoTime() - start) / 1e6;
+		start = System.nanoTime();
+		double[][] looResults = validator.leaveOneOut(ks);
+		double looMillis = (System.nanoTime() - start) / 1e6;
+		start = System.nanoTime();
+		double[][] foldResults = validator.kFold(NUM_OF_FOLDS, ks,
+				new SplittableRandom(seed));
+		double foldMillis = (System.nanoTime() - start) / 1e6;
+		start = System.nanoTime();
+		double[][] splitResults = validator.randomSplits(NUM_OF_TRIALS, ks,
+				seed, true);
+		double splitMillis = (System.nanoTime() - start) / 1e6;
+
+		System.out.println(String.format("%d tumors, seed %d; the distance "
+				+ "cache took %.1f ms", data.getNumRows(), seed, cacheMillis));
+		System.out.println(String.format("%4s %14s %14s %14s", "k",
+				"leave-one-out", NUM_OF_FOLDS + "-fold",
+				NUM_OF_TRIALS + " splits"));
+		for (int i = 0; i < maxK; i++) {
+			System.out.println(String.format("%4d %13.2f%% %13.2f%% "
+					+ "%13.2f%%", ks[i], looResults[i][0], foldResults[i][0],
+					splitResults[i][0]));
+		}
+		System.out.println(String.format("%4s %11.1f ms %11.1f ms "
+				+ "%11.1f ms", "time", looMillis, foldMillis, splitMillis));
+	} // End of main method
+
+	/**A task that fills in the cache for a range of rows, splitting the
+	 * range in half and doing the halves in parallel until it is small:
+	 * either the distances from each row to the rows before it, or each
+	 * row's sorted list of the other rows
+	 */
+	private class RowsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final boolean sorting;
+		private final int from, to;
+
+		RowsTask(boolean sorting, int from, int to) {
+			this.sorting = sorting;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > MIN_ROWS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RowsTask(sorting, from, middle),
+						new RowsTask(sorting, middle, to));
+				return;
+			}
+			if (!sorting) {
+				// Work out each row's distances to the rows before it, the
+				// same way a scan would
+				double[] features = data.getData();
+				int numFeatures = data.getNumFeatures();
+				for (int i = from; i < to; i++) {
+					int base = i * (i - 1) / 2;
+					for (int j = 0; j < i; j++) {
+						distances[base + j] = DistanceKernels
+							.distSquaredBounded(features, data.offset(i),
+									features, data.offset(j), numFeatures,
+									Double.POSITIVE_INFINITY);
+					}
+				}
+				return;
+			}
+			// Sort each row's list of the other rows with a KnnHeap big
+			// enough to hold them all
+			int listLength = numRows - 1;
+			KnnHeap heap = new KnnHeap(listLength);
+			double[] sortedDistances = new double[listLength];
+			int[] sortedRows = new int[listLength];
+			for (int i = from; i < to; i++) {
+				for (int j = 0; j < numRows; j++) {
+					if (j != i) heap.offer(distSquared(i, j), j);
+				}
+				heap.drainSorted(sortedDistances, sortedRows);
+				System.arraycopy(sortedRows, 0, neighbors, i * listLength,
+						listLength);
+			}
+		}
+	}
+} // End of class
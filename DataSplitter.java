@@ -0,0 +1,144 @@
+// Importing SplittableRandom (for random numbers that can be split into
+// independent streams and repeated from a seed)
+import java.util.SplittableRandom;
+
+/**This class splits a FeatureMatrix of tumors into training and testing data
+ * for a trial. It shuffles arrays of row numbers with the Fisher-Yates
+ * shuffle, which takes one swap per row no matter how many rows there are,
+ * using a SplittableRandom passed in by the caller, so each trial can have
+ * its own stream of random numbers (no waiting on a shared generator) and a
+ * trial run from the same seed always splits the data the same way. The
+ * split can be stratified, which puts 80% of the malignant tumors and 80% of
+ * the benign tumors in the training data so both always have the same mix of
+ * types as the whole data file.
+ */
+public class DataSplitter {
+	// Initialize a final double for the fraction of the tumors used for
+	// training (the rest are used for testing)
+	public static final double TRAINING_FRACTION = .8;
+
+	/**This class holds one split of the rows: an array of row numbers with
+	 * the training rows first and the testing rows after them
+	 */
+	public static class Split {
+		// Initialize an array for the row numbers, training rows first
+		private final int[] order;
+		// Initialize an int for how many of the rows are for training
+		private final int numTraining;
+
+		/**This constructor creates a Split
+		 * @param orderIn The row numbers, training rows first
+		 * @param numTrainingIn How many of the rows are for training
+		 */
+		public Split(int[] orderIn, int numTrainingIn) {
+			order = orderIn;
+			numTraining = numTrainingIn;
+		}
+
+		/**This simple accessor method returns the row numbers, training
+		 * rows first
+		 * @return The array of row numbers
+		 */
+		public int[] getOrder() {
+			return order;
+		}
+
+		/**This simple accessor method returns how many rows are for training
+		 * @return The number of training rows
+		 */
+		public int getNumTraining() {
+			return numTraining;
+		}
+	}
+
+	/**Shuffles part of an array of ints in place with the Fisher-Yates
+	 * shuffle: going from the end toward the start, each position is swapped
+	 * with a random position at or before it, so every order is equally
+	 * likely
+	 * @param values The array to shuffle
+	 * @param from The first position to shuffle
+	 * @param to One past the last position to shuffle
+	 * @param random The random number generator to use
+	 */
+	public static void shuffle(int[] values, int from, int to,
+			SplittableRandom random) {
+		for (int i = to - 1; i > from; i--) {
+			int j = from + random.nextInt(i - from + 1);
+			int temp = values[i];
+			values[i] = values[j];
+			values[j] = temp;
+		}
+	}
+
+	/**Makes a shuffled array of the numbers from 0 to n - 1
+	 * @param n How many numbers to shuffle
+	 * @param random The random number generator to use
+	 * @return The shuffled numbers
+	 */
+	public static int[] permutation(int n, SplittableRandom random) {
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) order[i] = i;
+		shuffle(order, 0, n, random);
+		return order;
+	}
+
+	/**Returns how many of count rows go into the training data
+	 * @param count The number of rows
+	 * @return The number of training rows
+	 */
+	public static int trainingSize(int count) {
+		return (int) (count * TRAINING_FRACTION);
+	}
+
+	/**Splits the rows of a FeatureMatrix into training and testing rows at
+	 * random
+	 * @param data The FeatureMatrix to split
+	 * @param random The random number generator to use
+	 * @param stratified True to take 80% of the malignant rows and 80% of the
+	 * benign rows for training, false to take 80% of all the rows without
+	 * looking at their types
+	 * @return The Split of the rows
+	 */
+	public static Split split(FeatureMatrix data, SplittableRandom random,
+			boolean stratified) {
+		int numRows = data.getNumRows();
+		// Without stratifying, just shuffle all the rows and take the first
+		// 80% for training
+		if (!stratified)
+			return new Split(permutation(numRows, random),
+					trainingSize(numRows));
+
+		// Otherwise put the malignant rows at the start of an array and the
+		// benign rows at the end
+		int[] byType = new int[numRows];
+		int numMalignant = 0, nextBenign = numRows;
+		for (int r = 0; r < numRows; r++) {
+			if (data.getType(r)) byType[numMalignant++] = r;
+			else byType[--nextBenign] = r;
+		}
+		int numBenign = numRows - numMalignant;
+		// Shuffle the malignant rows and the benign rows separately
+		shuffle(byType, 0, numMalignant, random);
+		shuffle(byType, numMalignant, numRows, random);
+
+		// Take the first 80% of each type for training and the rest of each
+		// type for testing
+		int malignantTraining = trainingSize(numMalignant);
+		int benignTraining = trainingSize(numBenign);
+		int numTraining = malignantTraining + benignTraining;
+		int[] order = new int[numRows];
+		System.arraycopy(byType, 0, order, 0, malignantTraining);
+		System.arraycopy(byType, numMalignant, order, malignantTraining,
+				benignTraining);
+		System.arraycopy(byType, malignantTraining, order, numTraining,
+				numMalignant - malignantTraining);
+		System.arraycopy(byType, numMalignant + benignTraining, order,
+				numTraining + numMalignant - malignantTraining,
+				numBenign - benignTraining);
+		// Shuffle the training rows and the testing rows so the types are
+		// mixed together inside each
+		shuffle(order, 0, numTraining, random);
+		shuffle(order, numTraining, numRows, random);
+		return new Split(order, numTraining);
+	}
+} // End of class
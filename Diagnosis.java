@@ -0,0 +1,84 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+/**This class holds the diagnosis KnnClassifier makes for one tumor: its ID
+ * number and how many of its k nearest neighbors were malignant and benign.
+ * The guess is made from those votes the same way NearestNeighbor.Accuracy
+ * makes it (see guess), so a diagnosis here agrees with what the accuracy
+ * trials measure. Diagnosis objects can be filled in again with set, so a
+ * batch of them can be reused from one batch of tumors to the next.
+ */
+public class Diagnosis {
+	// Initialize ints for the ID number of the tumor and the votes of its
+	// neighbors
+	private int id, numMalignant, numBenign;
+
+	/**Makes a guess from the votes of a tumor's nearest neighbors: malignant
+	 * if more of them were malignant than benign, benign otherwise (so a tie
+	 * counts as benign)
+	 * @param numMalignant How many of the neighbors were malignant
+	 * @param numBenign How many of the neighbors were benign
+	 * @return The guess (true for malignant, false for benign)
+	 */
+	public static boolean guess(int numMalignant, int numBenign) {
+		return numMalignant > numBenign;
+	}
+
+	/**Fills in this diagnosis
+	 * @param idIn The ID number of the tumor
+	 * @param numMalignantIn How many of its neighbors were malignant
+	 * @param numBenignIn How many of its neighbors were benign
+	 */
+	public void set(int idIn, int numMalignantIn, int numBenignIn) {
+		id = idIn;
+		numMalignant = numMalignantIn;
+		numBenign = numBenignIn;
+	}
+
+	/**This simple accessor method returns the ID number of the tumor
+	 * @return The ID number
+	 */
+	public int getID() {
+		return id;
+	}
+
+	/**This simple accessor method returns how many of the neighbors were
+	 * malignant
+	 * @return The number of malignant neighbors
+	 */
+	public int getNumMalignant() {
+		return numMalignant;
+	}
+
+	/**This simple accessor method returns how many of the neighbors were
+	 * benign
+	 * @return The number of benign neighbors
+	 */
+	public int getNumBenign() {
+		return numBenign;
+	}
+
+	/**Returns the guess from the neighbors' votes
+	 * @return True if the tumor is guessed to be malignant
+	 */
+	public boolean isMalignant() {
+		return guess(numMalignant, numBenign);
+	}
+
+	/**Checks whether the neighbors were all of one type
+	 * @return True if the neighbors were unanimous
+	 */
+	public boolean isUnanimous() {
+		return numMalignant == 0 || numBenign == 0;
+	}
+
+	/**Writes this diagnosis as a line of comma-separated values: the ID
+	 * number, M or B for the guess, the malignant and benign votes, and
+	 * "unanimous" or "split"
+	 * @return The line (without a line break)
+	 */
+	public String toString() {
+		return id + (isMalignant() ? ",M," : ",B,") + numMalignant + ","
+			+ numBenign + (isUnanimous() ? ",unanimous" : ",split");
+	}
+} // End of class
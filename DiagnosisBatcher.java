@@ -0,0 +1,218 @@
+// Importing the classes for the queue of requests and for waiting on them
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**This class puts together the tumors of requests that arrive at about the
+ * same time into one batch for KnnClassifier.classifyBatch (micro-batching),
+ * so that many small requests get the speed of a big batch search. Each
+ * request thread hands its tumors to diagnose and waits; one thread of the
+ * batcher's own takes every request that is already waiting (up to a most
+ * tumors per batch), diagnoses them all at once, and wakes their threads.
+ * Like ClassifyStream's batches, it doesn't wait for a batch to fill up:
+ * when requests come in slowly each one goes on its own right away, and
+ * when they come in quickly, the ones that arrive while a batch is being
+ * diagnosed make up the next batch. It can also be told to wait a little
+ * for more requests before starting a batch.
+ */
+public class DiagnosisBatcher implements AutoCloseable {
+	// Initialize the classifier, the most tumors in a batch and how long to
+	// wait for more requests
+	private final KnnClassifier classifier;
+	private final int maxBatch;
+	private final long maxWaitNanos;
+	// Initialize the queue of requests waiting for the next batch, and the
+	// thread that makes the batches
+	private final LinkedBlockingQueue<Request> queue =
+		new LinkedBlockingQueue<>();
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+	// Initialize counters for the requests, tumors and batches
+	private final AtomicLong numRequests = new AtomicLong();
+	private final AtomicLong numTumors = new AtomicLong();
+	private final AtomicLong numBatches = new AtomicLong();
+
+	/**This constructor creates a DiagnosisBatcher and starts its thread
+	 * @param classifierIn The KnnClassifier to diagnose the batches with
+	 * @param maxBatchIn The most tumors to put in one batch (a request with
+	 * more than that still goes in one batch, on its own)
+	 * @param maxWaitMicros How long to wait for more requests after the
+	 * first one of a batch arrives, in microseconds (0 to not wait)
+	 */
+	public DiagnosisBatcher(KnnClassifier classifierIn, int maxBatchIn,
+			long maxWaitMicros) {
+		classifier = classifierIn;
+		maxBatch = Math.max(1, maxBatchIn);
+		maxWaitNanos = Math.max(0, maxWaitMicros) * 1000;
+		dispatcher = new Thread(this::run, "diagnosis-batcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**Diagnoses some tumors in the next batch, waiting until it is done
+	 * @param tumors The tumors to diagnose (with their characteristics as
+	 * they were read)
+	 * @return A Diagnosis for each tumor, in order
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting
+	 */
+	public Diagnosis[] diagnose(FeatureMatrix tumors)
+			throws InterruptedException {
+		if (closed) throw new IllegalStateException("the batcher is closed");
+		Request request = new Request(tumors);
+		queue.add(request);
+		// If the batcher was closed while the request was being added, its
+		// thread may already have failed what was waiting, so take the
+		// request back out (unless the thread got to it first)
+		if (closed && queue.remove(request))
+			request.done.completeExceptionally(
+					new IllegalStateException("the batcher was closed"));
+		try {
+			request.done.get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("diagnosing the batch failed",
+					e.getCause());
+		}
+		return request.out;
+	}
+
+	/**The batcher's thread: takes the waiting requests, diagnoses them as
+	 * one batch and wakes their threads, over and over until closed
+	 */
+	private void run() {
+		List<Request> batch = new ArrayList<>();
+		List<FeatureMatrix> parts = new ArrayList<>();
+		// A request taken off the queue that didn't fit in the last batch
+		Request carried = null;
+		while (!closed) {
+			batch.clear();
+			parts.clear();
+			try {
+				// Wait for a request, then take any others already waiting
+				// (or that arrive within maxWaitNanos), up to maxBatch tumors
+				Request first = (carried != null) ? carried : queue.take();
+				carried = null;
+				batch.add(first);
+				int count = first.tumors.getNumRows();
+				long deadline = System.nanoTime() + maxWaitNanos;
+				while (count < maxBatch) {
+					Request next = queue.poll();
+					if (next == null && maxWaitNanos > 0) {
+						long left = deadline - System.nanoTime();
+						if (left <= 0) break;
+						next = queue.poll(left, TimeUnit.NANOSECONDS);
+					}
+					if (next == null) break;
+					if (count + next.tumors.getNumRows() > maxBatch) {
+						carried = next;
+						break;
+					}
+					batch.add(next);
+					count += next.tumors.getNumRows();
+				}
+			}
+			catch (InterruptedException e) {
+				// The requests already taken off the queue have to be
+				// answered: failed if the batcher was closed, or diagnosed
+				// as far as the batch got otherwise
+				if (closed) {
+					for (Request request : batch)
+						request.done.completeExceptionally(
+								new IllegalStateException("the batcher was "
+										+ "closed"));
+					break;
+				}
+				if (batch.isEmpty()) continue;
+			}
+
+			// Diagnose all of the tumors at once and hand each request its
+			// share of the diagnoses
+			try {
+				Diagnosis[] out;
+				FeatureMatrix tumors;
+				if (batch.size() == 1) {
+					tumors = batch.get(0).tumors;
+					out = batch.get(0).out;
+				}
+				else {
+					for (Request request : batch) parts.add(request.tumors);
+					tumors = FeatureMatrix.concat(parts);
+					out = new Diagnosis[tumors.getNumRows()];
+					int row = 0;
+					for (Request request : batch) {
+						System.arraycopy(request.out, 0, out, row,
+								request.out.length);
+						row += request.out.length;
+					}
+				}
+				classifier.classifyBatch(tumors, out);
+				numBatches.incrementAndGet();
+				numRequests.addAndGet(batch.size());
+				numTumors.addAndGet(tumors.getNumRows());
+				for (Request request : batch) request.done.complete(null);
+			}
+			catch (RuntimeException e) {
+				for (Request request : batch)
+					request.done.completeExceptionally(e);
+			}
+		} // End of while loop making batches
+
+		// Let anything still waiting know it won't be diagnosed
+		if (carried != null) queue.add(carried);
+		Request left;
+		while ((left = queue.poll()) != null)
+			left.done.completeExceptionally(
+					new IllegalStateException("the batcher was closed"));
+	}
+
+	/**Stops the batcher's thread (requests already waiting are failed)
+	 */
+	public void close() {
+		closed = true;
+		dispatcher.interrupt();
+	}
+
+	/**This simple accessor method returns how many requests have been
+	 * diagnosed
+	 * @return The number of requests
+	 */
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	/**This simple accessor method returns how many tumors have been
+	 * diagnosed
+	 * @return The number of tumors
+	 */
+	public long getNumTumors() {
+		return numTumors.get();
+	}
+
+	/**This simple accessor method returns how many batches have been
+	 * diagnosed
+	 * @return The number of batches
+	 */
+	public long getNumBatches() {
+		return numBatches.get();
+	}
+
+	/**This class is one request waiting in the queue: its tumors, the
+	 * Diagnosis objects for them, and what its thread waits on
+	 */
+	private static final class Request {
+		private final FeatureMatrix tumors;
+		private final Diagnosis[] out;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Request(FeatureMatrix tumorsIn) {
+			tumors = tumorsIn;
+			out = new Diagnosis[tumors.getNumRows()];
+			for (int i = 0; i < out.length; i++) out[i] = new Diagnosis();
+		}
+	}
+} // End of class
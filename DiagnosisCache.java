@@ -0,0 +1,338 @@
+// Importing Arrays (to compare and hash keys) and LinkedHashMap (to keep
+// the entries in order of use)
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**This class remembers the votes KnnClassifier worked out for the tumors it
+ * diagnosed most recently, so that the same tumor sent in again (for a
+ * second opinion, say) is answered with a lookup instead of a search. It is
+ * handed to KnnClassifier.setCache, which looks every tumor up here first.
+ *
+ * An entry is found by the tumor's characteristics (after any transform the
+ * training tumors had) together with k. The characteristics can be matched
+ * exactly, or rounded to a multiple of a step first, so that tumors whose
+ * measurements differ by less than the step share an entry (and get the
+ * votes of whichever of them was diagnosed first). Matching compares the
+ * whole key, not just its hash, so different tumors never share an entry by
+ * accident.
+ *
+ * It holds at most a fixed number of entries and throws out the one that
+ * was used longest ago when it needs room. Every entry belongs to one version
+ * of the training tumors (NeighborIndex.getVersion), and as soon as a lookup
+ * or a new entry comes with a later version everything is thrown out (a
+ * lookup with an earlier one just misses). When the training tumors are in a
+ * TrainingStore, the cache can listen to it instead (addListener), and then
+ * only the entries a change could affect are thrown out: each entry knows
+ * the ID numbers of its neighbors and how far the farthest of them is, so a
+ * removed tumor only affects the entries it was a neighbor in, and an
+ * appended one only the entries it is close enough to get into.
+ * The methods are synchronized, so the threads of a batch can share it.
+ */
+public class DiagnosisCache implements TrainingStore.Listener {
+	// Initialize the most entries to keep and the rounding step (0 to match
+	// exactly)
+	private final int capacity;
+	private final double step;
+	// Initialize the map of entries, kept in order from least to most
+	// recently used
+	private final LinkedHashMap<Key, Entry> entries;
+	// Initialize the version of the training tumors the entries belong to
+	private long version = 0;
+	// Initialize counters for how the lookups went, and how many entries
+	// changes to a TrainingStore threw out
+	private long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+	private long dropped = 0;
+
+	/**This constructor creates an empty DiagnosisCache that matches the
+	 * characteristics exactly
+	 * @param capacityIn The most entries to keep
+	 */
+	public DiagnosisCache(int capacityIn) {
+		this(capacityIn, 0);
+	}
+
+	/**This constructor creates an empty DiagnosisCache
+	 * @param capacityIn The most entries to keep
+	 * @param stepIn The step to round each characteristic to before matching
+	 * (0 to match them exactly)
+	 */
+	public DiagnosisCache(int capacityIn, double stepIn) {
+		if (capacityIn < 1)
+			throw new IllegalArgumentException("a cache needs room for at "
+					+ "least one entry");
+		if (!(stepIn >= 0))
+			throw new IllegalArgumentException("the rounding step can't be "
+					+ "negative");
+		capacity = capacityIn;
+		step = stepIn;
+		// A LinkedHashMap in access order moves an entry to the end each
+		// time it is used, so the first entry is always the one used longest
+		// ago
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> e) {
+				if (size() <= capacity) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**Looks a tumor up and, if it is there, fills in its diagnosis
+	 * @param query The array holding the tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param length How many characteristics there are
+	 * @param k How many nearest neighbors voted
+	 * @param indexVersion The version of the training tumors being searched
+	 * (an earlier version than the entries' always misses)
+	 * @param id The ID number to give the diagnosis
+	 * @param out The Diagnosis to fill in if the tumor is found
+	 * @return True if the tumor was found (and out was filled in)
+	 */
+	public synchronized boolean lookup(double[] query, int queryOffset,
+			int length, int k, long indexVersion, int id, Diagnosis out) {
+		checkVersion(indexVersion);
+		Entry entry = (indexVersion < version) ? null :
+			entries.get(new Key(query, queryOffset, length, k));
+		if (entry == null) {
+			misses++;
+			return false;
+		}
+		hits++;
+		out.set(id, entry.numMalignant, entry.numBenign);
+		return true;
+	}
+
+	/**Remembers the votes for a tumor
+	 * @param query The array holding the tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param length How many characteristics there are
+	 * @param k How many nearest neighbors voted
+	 * @param indexVersion The version of the training tumors that was
+	 * searched (if the entries already belong to a later one, the votes are
+	 * out of date and aren't kept)
+	 * @param neighbors The k nearest neighbors that were found
+	 */
+	public synchronized void store(double[] query, int queryOffset,
+			int length, int k, long indexVersion, NeighborResult neighbors) {
+		if (indexVersion < version) return;
+		checkVersion(indexVersion);
+		entries.put(new Key(query, queryOffset, length, k),
+				new Entry(neighbors, k));
+	}
+
+	/**Throws out every entry if the training tumors have moved on to a
+	 * later version than the entries belong to
+	 * @param indexVersion The version of the training tumors now
+	 */
+	private void checkVersion(long indexVersion) {
+		if (indexVersion > version) {
+			if (!entries.isEmpty()) invalidations++;
+			entries.clear();
+			version = indexVersion;
+		}
+	}
+
+	/**Throws out the entries that tumors appended to a TrainingStore could
+	 * get into: those whose farthest neighbor is at least as far as one of
+	 * the new tumors (or farther than it, less the rounding step, when the
+	 * characteristics are rounded). The rest move on to the new version.
+	 * @param after The Snapshot with the new tumors
+	 * @param fromRow The first new row
+	 * @param toRow One past the last new row
+	 */
+	public synchronized void appended(TrainingStore.Snapshot after,
+			int fromRow, int toRow) {
+		if (!followChange(after)) return;
+		double[] data = after.getData();
+		int numFeatures = after.getNumFeatures();
+		double[] center = new double[numFeatures];
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Entry> e = it.next();
+			Key key = e.getKey();
+			if (key.values.length != numFeatures) continue;
+			key.decode(center);
+			// A rounded key stands for every tumor in its step, so allow
+			// for the farthest of them from the middle (twice over, to be
+			// safe about which of them was searched for)
+			double reach = e.getValue().radius * (1 + 1e-9)
+				+ ((step > 0) ? step * Math.sqrt(numFeatures) : 0);
+			for (int r = fromRow; r < toRow; r++) {
+				if (Math.sqrt(FeatureMatrix.distSquared(center, 0, data,
+						after.offset(r), numFeatures)) <= reach) {
+					it.remove();
+					dropped++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**Throws out the entries a tumor removed from a TrainingStore was one
+	 * of the neighbors of. The rest move on to the new version.
+	 * @param after The Snapshot without the tumor
+	 * @param id The ID number of the tumor removed
+	 */
+	public synchronized void removed(TrainingStore.Snapshot after, int id) {
+		if (!followChange(after)) return;
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			for (int neighborId : it.next().neighborIds) {
+				if (neighborId == id) {
+					it.remove();
+					dropped++;
+					break;
+				}
+			}
+		}
+	}
+
+	/**Moves the entries on to the version of a change to a TrainingStore,
+	 * throwing them all out instead if they weren't up to date with the
+	 * version before it (so some change was missed)
+	 * @param after The Snapshot after the change
+	 * @return True if the entries were up to date and should be checked
+	 * one by one
+	 */
+	private boolean followChange(TrainingStore.Snapshot after) {
+		boolean upToDate = (version == after.getVersion() - 1);
+		if (!upToDate) checkVersion(after.getVersion());
+		version = after.getVersion();
+		return upToDate;
+	}
+
+	/**Throws out every entry
+	 */
+	public synchronized void clear() {
+		if (!entries.isEmpty()) invalidations++;
+		entries.clear();
+	}
+
+	/**This simple accessor method returns how many entries there are
+	 * @return The number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**This simple accessor method returns how many lookups found their
+	 * tumor
+	 * @return The number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**This simple accessor method returns how many lookups didn't find
+	 * their tumor
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**This simple accessor method returns how many entries were thrown out
+	 * to make room
+	 * @return The number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**This simple accessor method returns how many times all the entries
+	 * were thrown out because the training tumors changed (or clear was
+	 * called)
+	 * @return The number of invalidations
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/**This simple accessor method returns how many entries were thrown out
+	 * one at a time because of changes to a TrainingStore
+	 * @return The number of entries dropped
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	/**Describes how the lookups went
+	 * @return A line with the counters and the fraction of hits
+	 */
+	public synchronized String toString() {
+		long lookups = hits + misses;
+		return String.format("%d hits, %d misses (%.1f%% hits), %d evictions,"
+				+ " %d invalidations, %d dropped, %d entries", hits, misses,
+				(lookups == 0) ? 0.0 : 100.0 * hits / lookups, evictions,
+				invalidations, dropped, entries.size());
+	}
+
+	/**This class is the key of an entry: the characteristics (their bits,
+	 * or how many steps they are if they are rounded) and k, with the hash
+	 * worked out once
+	 */
+	private final class Key {
+		private final long[] values;
+		private final int k;
+		private final int hash;
+
+		Key(double[] query, int queryOffset, int length, int kIn) {
+			values = new long[length];
+			for (int i = 0; i < length; i++) {
+				double value = query[queryOffset + i];
+				// Adding 0.0 turns -0.0 into 0.0, so they match
+				values[i] = (step > 0) ? Math.round(value / step) :
+					Double.doubleToLongBits(value + 0.0);
+			}
+			k = kIn;
+			hash = 31 * Arrays.hashCode(values) + k;
+		}
+
+		/**Turns the key back into characteristics (the middle of the step,
+		 * if they were rounded)
+		 * @param out The array to write them into
+		 */
+		void decode(double[] out) {
+			for (int i = 0; i < values.length; i++)
+				out[i] = (step > 0) ? values[i] * step :
+					Double.longBitsToDouble(values[i]);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return hash == key.hash && k == key.k
+				&& Arrays.equals(values, key.values);
+		}
+	}
+
+	/**This class is what an entry remembers: the votes, the ID numbers of
+	 * the neighbors that voted, and how far the farthest of them was (or
+	 * infinity if fewer than k were found, since then any tumor appended
+	 * would get in)
+	 */
+	private static final class Entry {
+		private final int numMalignant, numBenign;
+		private final int[] neighborIds;
+		private final double radius;
+
+		Entry(NeighborResult neighbors, int k) {
+			numMalignant = neighbors.countMalignant();
+			numBenign = neighbors.size() - numMalignant;
+			neighborIds = new int[neighbors.size()];
+			for (int n = 0; n < neighborIds.length; n++)
+				neighborIds[n] = neighbors.getID(n);
+			radius = (neighbors.size() < k || neighbors.size() == 0) ?
+				Double.POSITIVE_INFINITY :
+				neighbors.getDistance(neighbors.size() - 1);
+		}
+	}
+} // End of class
@@ -0,0 +1,164 @@
+// Importing classes for IO (to read file), the JDK's HTTP client, and
+// running the clients on threads
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**This class sends a DiagnosisServer many requests from many clients at once
+ * and reports how long they took: the requests per second and tumors per
+ * second it answered, and the median, 90th, 99th and 99.9th percentile and
+ * longest time for one request. Each request is a JSON list of tumors taken
+ * from the data file in turn. Without a URL it starts its own server on the
+ * data file (with the default settings) and asks it afterwards how big its
+ * batches were.
+ *
+ *   java DiagnosisLoadTest dataFile [clients] [requests] [tumorsPerRequest]
+ *       [url]
+ */
+public class DiagnosisLoadTest {
+
+	/**Main method for the DiagnosisLoadTest class
+	 * @param args The command-line arguments for the method: the data file,
+	 * then optionally how many clients send requests at once, how many
+	 * requests they send altogether, how many tumors are in each request,
+	 * and the URL of a DiagnosisServer that is already running
+	 * @throws Exception If the data file can't be read or a request fails
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: java DiagnosisLoadTest dataFile "
+					+ "[clients] [requests] [tumorsPerRequest] [url]");
+			return;
+		}
+		int clients = (args.length > 1) ? Integer.parseInt(args[1]) : 32;
+		int numRequests = (args.length > 2) ? Integer.parseInt(args[2]) :
+			20000;
+		int perRequest = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+
+		FeatureMatrix tumors = NearestNeighbor.ImportMatrix(args[0]);
+		DiagnosisServer server = null;
+		String url;
+		if (args.length > 4) url = args[4];
+		else {
+			server = DiagnosisServer.load(args[0], null, 0, 5,
+					FeatureScaler.NONE, DiagnosisServer.DEFAULT_MAX_BATCH, 0,
+					0);
+			server.start();
+			String host = server.getAddress().getAddress().getHostAddress();
+			if (host.contains(":")) host = "[" + host + "]";
+			url = "http://" + host + ":" + server.getPort();
+		}
+
+		// Make the bodies of the requests ahead of time, taking the tumors
+		// from the data file in turn
+		String[] bodies = new String[Math.min(numRequests, 1000)];
+		for (int i = 0; i < bodies.length; i++) {
+			StringBuilder body = new StringBuilder("[");
+			for (int j = 0; j < perRequest; j++) {
+				int row = (i * perRequest + j) % tumors.getNumRows();
+				body.append((j == 0) ? "{\"id\":" : ",{\"id\":")
+					.append(tumors.getID(row)).append(",\"features\":[");
+				for (int f = 0; f < tumors.getNumFeatures(); f++) {
+					if (f > 0) body.append(',');
+					body.append(tumors.getData()[tumors.offset(row) + f]);
+				}
+				body.append("]}");
+			}
+			bodies[i] = body.append(']').toString();
+		}
+
+		HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1).build();
+		URI diagnose = URI.create(url + "/diagnose");
+		// Send a tenth of the requests first so the JIT compiler has done
+		// its work (on both sides) before we time them
+		run(client, diagnose, bodies, clients, Math.max(1, numRequests / 10));
+		long start = System.nanoTime();
+		long[] latencies = run(client, diagnose, bodies, clients,
+				numRequests);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Arrays.sort(latencies);
+		System.out.println(String.format("%d clients, %d requests of %d "
+				+ "tumor(s): %.0f requests/s, %.0f tumors/s", clients,
+				numRequests, perRequest, numRequests / seconds,
+				numRequests * perRequest / seconds));
+		System.out.println(String.format("latency (ms): p50 %.3f, p90 %.3f, "
+				+ "p99 %.3f, p99.9 %.3f, max %.3f",
+				percentile(latencies, 0.5), percentile(latencies, 0.9),
+				percentile(latencies, 0.99), percentile(latencies, 0.999),
+				latencies[latencies.length - 1] / 1e6));
+		if (server != null) {
+			HttpResponse<String> stats = client.send(HttpRequest.newBuilder(
+					URI.create(url + "/stats")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			System.out.print("server stats: " + stats.body());
+			server.stop();
+		}
+	} // End of main method
+
+	/**Sends requests from several clients at once until a number of them
+	 * have been answered
+	 * @param client The HttpClient to send them with
+	 * @param diagnose The URI of /diagnose
+	 * @param bodies The bodies of the requests, sent in turn
+	 * @param clients How many clients send requests at once
+	 * @param numRequests How many requests to send altogether
+	 * @return How long each request took, in nanoseconds
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting for the clients
+	 */
+	static long[] run(HttpClient client, URI diagnose, String[] bodies,
+			int clients, int numRequests) throws InterruptedException {
+		long[] latencies = new long[numRequests];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger failures = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(clients);
+		// Each client sends a request, waits for its answer, and then sends
+		// the next, until all of them have been sent
+		for (int c = 0; c < clients; c++) {
+			Thread thread = new Thread(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < numRequests) {
+					HttpRequest request = HttpRequest.newBuilder(diagnose)
+						.header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(
+								bodies[i % bodies.length])).build();
+					long start = System.nanoTime();
+					try {
+						HttpResponse<String> response = client.send(request,
+								HttpResponse.BodyHandlers.ofString());
+						if (response.statusCode() != 200)
+							failures.incrementAndGet();
+					}
+					catch (IOException | InterruptedException e) {
+						failures.incrementAndGet();
+					}
+					latencies[i] = System.nanoTime() - start;
+				}
+				done.countDown();
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+		if (failures.get() > 0)
+			System.err.println(failures.get() + " requests failed");
+		return latencies;
+	}
+
+	/**Finds a percentile of some sorted times
+	 * @param sorted The times in nanoseconds, from shortest to longest
+	 * @param fraction The fraction of times at or below the percentile
+	 * @return The percentile in milliseconds
+	 */
+	static double percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+} // End of class
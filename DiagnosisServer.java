@@ -0,0 +1,491 @@
+// Importing classes for IO, the JDK's built-in HTTP server, and running the
+// requests on threads
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**This class diagnoses tumors sent to it over HTTP, so the classifier can be
+ * run as a service instead of through the interactive main methods. It loads
+ * the training data once into a TrainingStore, searches it with a
+ * StoreIndex, and answers:
+ *
+ *   POST /diagnose   one or more tumors, as JSON or as lines of the data
+ *                    file's form (see below); answers with a diagnosis for
+ *                    each: its guess, the malignant and benign votes, and
+ *                    whether they were unanimous
+ *   POST /tumors     newly confirmed tumors to add to the training tumors,
+ *                    as lines of the data file's form (with M or B)
+ *   DELETE /tumors/ID   takes the tumor with that ID number back out
+ *   GET /stats       how many requests, tumors and batches there have been
+ *   GET /metrics     where the time went (PipelineMetrics.summary; the same
+ *                    numbers can be read through JMX)
+ *   GET /health      "ok"
+ *
+ * A JSON body is one tumor's characteristics as an array, an array of such
+ * arrays, an object {"id": 1, "features": [...]} (the ID number can be left
+ * out), or an object {"tumors": [...]} listing tumors in either form; the
+ * answer is JSON. Any other body is read like ClassifyStream reads tumors,
+ * one per line (ID number, optionally M or B, then the characteristics), and
+ * the answer is one line per tumor in ClassifyStream's form.
+ *
+ * Each request runs on a virtual thread when the Java running it has them
+ * (Java 21 and later; they are looked up by reflection, since this program is
+ * built for Java 17), and on a pool of ordinary threads otherwise. Requests
+ * don't search on their own: they hand their tumors to a DiagnosisBatcher,
+ * which puts the tumors of requests arriving together into one batch.
+ * Tumors added or taken out are seen by the diagnoses that start afterward;
+ * a diagnosis already running finishes with the training tumors it started
+ * with, and the cache (if there is one) only forgets the diagnoses the
+ * change affects.
+ *
+ * Nothing checks who is asking, and POST /tumors and DELETE /tumors change
+ * the tumors every diagnosis is made from, so the server only listens on the
+ * loopback address (this machine) unless it is given a host to listen on,
+ * as host:port (0.0.0.0:8080 for every address, say).
+ *
+ *   java DiagnosisServer trainingFile [[host:]port] [k]
+ *       [none, zscore or minmax] [maxBatch] [maxWaitMicros] [cacheSize]
+ */
+public class DiagnosisServer {
+	// Initialize final ints for the defaults and the biggest body accepted
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_MAX_BATCH = 256;
+	private static final int MAX_BODY_BYTES = 16 << 20;
+
+	// Unless told otherwise, the JDK's server leaves Nagle's algorithm on,
+	// which holds back each small response until the client acknowledges
+	// the last one (some 40 ms later), so turn it off before making one
+	static {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null)
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	// Initialize the HTTP server, the threads it runs requests on, and the
+	// batcher the requests hand their tumors to
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+	private final DiagnosisBatcher batcher;
+	private final KnnClassifier classifier;
+	// Initialize the TrainingStore tumors are added to and taken out of
+	// (null if they can't be), and how many characteristics each tumor must
+	// have
+	private final TrainingStore store;
+	private final int numFeatures;
+
+	/**This constructor creates a DiagnosisServer (start it with start)
+	 * @param classifierIn The KnnClassifier to diagnose the tumors with
+	 * @param storeIn The TrainingStore the classifier searches, to add tumors
+	 * to and take them out of (or null if they can't be)
+	 * @param numFeaturesIn How many characteristics each tumor must have (as
+	 * they are read, before any transform)
+	 * @param host The host name or address to listen on, or null for the
+	 * loopback address
+	 * @param port The port to listen on (0 to pick any free one)
+	 * @param maxBatch The most tumors in one batch
+	 * @param maxWaitMicros How long a batch waits for more requests, in
+	 * microseconds
+	 * @throws IOException If the port can't be listened on
+	 */
+	public DiagnosisServer(KnnClassifier classifierIn, TrainingStore storeIn,
+			int numFeaturesIn, String host, int port, int maxBatch,
+			long maxWaitMicros) throws IOException {
+		classifier = classifierIn;
+		store = storeIn;
+		numFeatures = numFeaturesIn;
+		batcher = new DiagnosisBatcher(classifier, maxBatch, maxWaitMicros);
+		ExecutorService virtual = virtualThreadExecutor();
+		virtualThreads = virtual != null;
+		executor = virtualThreads ? virtual : Executors.newCachedThreadPool();
+		InetAddress address = (host == null) ?
+			InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+		server = HttpServer.create(new InetSocketAddress(address, port),
+				1024);
+		server.setExecutor(executor);
+		server.createContext("/diagnose", this::handleDiagnose);
+		server.createContext("/tumors", this::handleTumors);
+		server.createContext("/stats", this::handleStats);
+		server.createContext("/metrics", exchange -> respond(exchange, 200,
+				"text/plain", PipelineMetrics.summary()));
+		server.createContext("/health",
+				exchange -> respond(exchange, 200, "text/plain", "ok\n"));
+	}
+
+	/**Main method for the DiagnosisServer class
+	 * @param args The command-line arguments for the method: the training
+	 * data file, then optionally the port (with the host to listen on in
+	 * front of it, as host:port, to listen on more than the loopback
+	 * address), k, how to rescale the
+	 * characteristics, the most tumors in a batch, how long a batch waits for
+	 * more requests in microseconds, and how many diagnoses to cache
+	 * @throws IOException If the training data can't be read or the port
+	 * can't be listened on
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java DiagnosisServer trainingFile "
+					+ "[[host:]port] [k] [none, zscore or minmax] [maxBatch] "
+					+ "[maxWaitMicros] [cacheSize]");
+			return;
+		}
+		String host = null;
+		int port = DEFAULT_PORT;
+		if (args.length > 1) {
+			int colon = args[1].lastIndexOf(':');
+			if (colon >= 0) host = args[1].substring(0, colon);
+			port = Integer.parseInt(args[1].substring(colon + 1));
+		}
+		int k = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		int scaling = (args.length > 3) ? FeatureScaler.methodFor(args[3]) :
+			FeatureScaler.NONE;
+		int maxBatch = (args.length > 4) ? Integer.parseInt(args[4]) :
+			DEFAULT_MAX_BATCH;
+		long maxWait = (args.length > 5) ? Long.parseLong(args[5]) : 0;
+		int cacheSize = (args.length > 6) ? Integer.parseInt(args[6]) : 0;
+
+		PipelineMetrics.registerMBean();
+		DiagnosisServer server =
+			load(args[0], host, port, k, scaling, maxBatch, maxWait,
+					cacheSize);
+		server.start();
+		System.err.println("Diagnosing on " + server.getAddress()
+				.getAddress().getHostAddress() + " port " + server.getPort()
+				+ " with k = " + k + " on "
+				+ (server.usesVirtualThreads() ? "virtual threads" :
+					"a thread pool"));
+	}
+
+	/**Loads the training data and makes a DiagnosisServer for it. A binary
+	 * data file is copied into the TrainingStore like a text one, since
+	 * tumors can be added to it and taken out of it.
+	 * @param fileName The training data file
+	 * @param host The host name or address to listen on, or null for the
+	 * loopback address
+	 * @param port The port to listen on (0 to pick any free one)
+	 * @param k How many nearest neighbors vote
+	 * @param scaling How to rescale the characteristics (FeatureScaler.NONE,
+	 * Z_SCORE or MIN_MAX)
+	 * @param maxBatch The most tumors in one batch
+	 * @param maxWaitMicros How long a batch waits for more requests
+	 * @param cacheSize How many diagnoses to cache (0 for none)
+	 * @return The DiagnosisServer, not yet started
+	 * @throws IOException If the file can't be read or the port can't be
+	 * listened on
+	 */
+	public static DiagnosisServer load(String fileName, String host,
+			int port, int k, int scaling, int maxBatch, long maxWaitMicros,
+			int cacheSize) throws IOException {
+		FeatureMatrix train = NearestNeighbor.ImportMatrix(fileName);
+		int numFeatures = train.getNumFeatures();
+		if (scaling != FeatureScaler.NONE)
+			train = FeatureScaler.fit(train, scaling).transform(train);
+		TrainingStore store = new TrainingStore(train);
+		KnnClassifier classifier =
+			new KnnClassifier(new StoreIndex(store), k);
+		if (cacheSize > 0) {
+			DiagnosisCache cache = new DiagnosisCache(cacheSize);
+			store.addListener(cache);
+			classifier.setCache(cache);
+		}
+		return new DiagnosisServer(classifier, store, numFeatures, host,
+				port, maxBatch, maxWaitMicros);
+	}
+
+	/**Makes an executor that runs each task on a new virtual thread, if the
+	 * Java running this has them
+	 * @return The executor, or null if there are no virtual threads
+	 */
+	static ExecutorService virtualThreadExecutor() {
+		try {
+			Method method =
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			// Before Java 21 the method is missing (or, as a preview, throws
+			// UnsupportedOperationException)
+			return null;
+		}
+	}
+
+	/**Starts answering requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**Stops answering requests and stops the batcher
+	 */
+	public void stop() {
+		server.stop(0);
+		batcher.close();
+		executor.shutdownNow();
+	}
+
+	/**Returns the port the server is listening on
+	 * @return The port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**Returns the address and port the server listens on
+	 * @return The address
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**Checks whether requests run on virtual threads
+	 * @return True if they do, false if they run on a thread pool
+	 */
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**Answers POST /diagnose
+	 * @param exchange The request and its response
+	 * @throws IOException If the response can't be sent
+	 */
+	private void handleDiagnose(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			respond(exchange, 405, "text/plain", "use POST\n");
+			return;
+		}
+		byte[] body = readBody(exchange);
+		if (body == null) {
+			respond(exchange, 413, "text/plain", "the body is too big\n");
+			return;
+		}
+		String text = new String(body, StandardCharsets.UTF_8).trim();
+		boolean json = text.startsWith("[") || text.startsWith("{");
+		FeatureMatrix tumors;
+		try {
+			tumors = json ? parseJson(text) : parseLines(body, false);
+		}
+		catch (IllegalArgumentException | IOException e) {
+			respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+			return;
+		}
+		if (tumors.getNumRows() == 0) {
+			respond(exchange, 400, "text/plain", "there are no tumors\n");
+			return;
+		}
+
+		Diagnosis[] diagnoses;
+		try {
+			diagnoses = batcher.diagnose(tumors);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, "text/plain", "interrupted\n");
+			return;
+		}
+		StringBuilder answer = new StringBuilder();
+		if (json) {
+			answer.append("{\"diagnoses\":[");
+			for (int i = 0; i < diagnoses.length; i++) {
+				Diagnosis d = diagnoses[i];
+				answer.append((i == 0) ? "{" : ",{").append("\"id\":")
+					.append(d.getID()).append(",\"diagnosis\":\"")
+					.append(d.isMalignant() ? 'M' : 'B')
+					.append("\",\"malignant\":").append(d.getNumMalignant())
+					.append(",\"benign\":").append(d.getNumBenign())
+					.append(",\"unanimous\":").append(d.isUnanimous())
+					.append('}');
+			}
+			answer.append("]}\n");
+		}
+		else {
+			for (Diagnosis d : diagnoses) answer.append(d).append('\n');
+		}
+		respond(exchange, 200, json ? "application/json" : "text/csv",
+				answer.toString());
+	}
+
+	/**Answers POST /tumors and DELETE /tumors/ID
+	 * @param exchange The request and its response
+	 * @throws IOException If the response can't be sent
+	 */
+	private void handleTumors(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (store == null
+				|| !(method.equals("POST") || method.equals("DELETE"))) {
+			respond(exchange, 405, "text/plain", "use POST or DELETE\n");
+			return;
+		}
+		if (method.equals("DELETE")) {
+			// Take the ID number off the end of the path
+			String path = exchange.getRequestURI().getPath();
+			int id;
+			try {
+				id = Integer.parseInt(
+						path.substring(path.lastIndexOf('/') + 1));
+			}
+			catch (NumberFormatException e) {
+				respond(exchange, 400, "text/plain", "use DELETE /tumors/ID\n");
+				return;
+			}
+			boolean removed = store.remove(id);
+			respond(exchange, removed ? 200 : 404, "application/json",
+					"{\"removed\":" + removed + ",\"version\":"
+					+ store.getVersion() + "}\n");
+			return;
+		}
+
+		byte[] body = readBody(exchange);
+		if (body == null) {
+			respond(exchange, 413, "text/plain", "the body is too big\n");
+			return;
+		}
+		try {
+			FeatureMatrix tumors = parseLines(body, true);
+			store.appendAll(tumors);
+			respond(exchange, 200, "application/json", "{\"appended\":"
+					+ tumors.getNumRows() + ",\"version\":"
+					+ store.getVersion() + "}\n");
+		}
+		catch (IllegalArgumentException | IOException e) {
+			respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+		}
+	}
+
+	/**Answers GET /stats
+	 * @param exchange The request and its response
+	 * @throws IOException If the response can't be sent
+	 */
+	private void handleStats(HttpExchange exchange) throws IOException {
+		long batches = batcher.getNumBatches();
+		String stats = String.format("{\"requests\":%d,\"tumors\":%d,"
+				+ "\"batches\":%d,\"tumorsPerBatch\":%.2f,"
+				+ "\"virtualThreads\":%b", batcher.getNumRequests(),
+				batcher.getNumTumors(), batches, (batches == 0) ? 0.0 :
+					(double) batcher.getNumTumors() / batches,
+				virtualThreads);
+		if (store != null) {
+			TrainingStore.Snapshot snapshot = store.snapshot();
+			stats += String.format(",\"trainingTumors\":%d,\"version\":%d",
+					snapshot.getNumLive(), snapshot.getVersion());
+		}
+		DiagnosisCache cache = classifier.getCache();
+		if (cache != null)
+			stats += String.format(",\"cacheHits\":%d,\"cacheMisses\":%d,"
+					+ "\"cacheDropped\":%d", cache.getHits(),
+					cache.getMisses(), cache.getDropped());
+		respond(exchange, 200, "application/json", stats + "}\n");
+	}
+
+	/**Reads the body of a request
+	 * @param exchange The request
+	 * @return The body, or null if it is bigger than MAX_BODY_BYTES
+	 * @throws IOException If it can't be read
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+			return (body.length > MAX_BODY_BYTES) ? null : body;
+		}
+	}
+
+	/**Reads tumors from lines in the data file's form
+	 * @param body The lines
+	 * @param needTypes True if every line must give its type (M or B)
+	 * @return A FeatureMatrix of the tumors
+	 * @throws IOException If a line isn't in the right form
+	 * @throws IllegalArgumentException If needTypes is true and a line
+	 * doesn't give its type
+	 */
+	private FeatureMatrix parseLines(byte[] body, boolean needTypes)
+			throws IOException {
+		TumorDataLoader reader = TumorDataLoader.streaming(
+				Channels.newChannel(new ByteArrayInputStream(body)),
+				"request", numFeatures);
+		List<FeatureMatrix> parts = new ArrayList<>();
+		int count;
+		while ((count = reader.readBatch(Integer.MAX_VALUE)) > 0) {
+			// The batch shares the reader's arrays, so copy it out
+			int[] rows = new int[count];
+			for (int r = 0; r < count; r++) {
+				if (needTypes && !reader.hasType(r))
+					throw new IllegalArgumentException("tumor "
+							+ reader.batch().getID(r) + " doesn't say M or B");
+				rows[r] = r;
+			}
+			parts.add(reader.batch().subset(rows, 0, count));
+		}
+		return FeatureMatrix.concat(parts);
+	}
+
+	/**Reads tumors from JSON in one of the forms the class describes
+	 * @param text The JSON
+	 * @return A FeatureMatrix of the tumors
+	 * @throws IllegalArgumentException If the JSON isn't in one of the forms
+	 */
+	private FeatureMatrix parseJson(String text) {
+		Object value = JsonReader.parse(text);
+		List<?> list;
+		if (value instanceof Map && ((Map<?, ?>) value).containsKey("tumors"))
+			value = ((Map<?, ?>) value).get("tumors");
+		// A single tumor (an array of numbers or an object) becomes a list
+		// of one
+		if (value instanceof List && !((List<?>) value).isEmpty()
+				&& ((List<?>) value).get(0) instanceof Number)
+			list = List.of(value);
+		else if (value instanceof List) list = (List<?>) value;
+		else list = List.of(value);
+
+		double[] data = new double[list.size() * numFeatures];
+		int[] ids = new int[list.size()];
+		for (int r = 0; r < list.size(); r++) {
+			Object tumor = list.get(r);
+			ids[r] = r;
+			if (tumor instanceof Map) {
+				Map<?, ?> object = (Map<?, ?>) tumor;
+				if (object.get("id") instanceof Number)
+					ids[r] = ((Number) object.get("id")).intValue();
+				tumor = object.get("features");
+			}
+			if (!(tumor instanceof List)
+					|| ((List<?>) tumor).size() != numFeatures)
+				throw new IllegalArgumentException("tumor " + r + " doesn't "
+						+ "have a list of " + numFeatures + " characteristics");
+			List<?> features = (List<?>) tumor;
+			for (int f = 0; f < numFeatures; f++) {
+				if (!(features.get(f) instanceof Number))
+					throw new IllegalArgumentException("characteristic " + f
+							+ " of tumor " + r + " isn't a number");
+				data[r * numFeatures + f] =
+					((Number) features.get(f)).doubleValue();
+			}
+		}
+		return new FeatureMatrix(list.size(), numFeatures, data, ids,
+				new long[FeatureMatrix.wordsFor(list.size())]);
+	}
+
+	/**Sends a response
+	 * @param exchange The request to answer
+	 * @param status The HTTP status code
+	 * @param contentType The type of the body
+	 * @param body The body
+	 * @throws IOException If it can't be sent
+	 */
+	private static void respond(HttpExchange exchange, int status,
+			String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+} // End of class
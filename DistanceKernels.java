@@ -0,0 +1,402 @@
+// Importing ByteBuffer for rows read straight out of a mapped file
+import java.nio.ByteBuffer;
+
+/**This class holds the squared-distance kernels the rest of the program
+ * uses. When the jdk.incubator.vector module is available (the program is run
+ * with "--add-modules jdk.incubator.vector") they use the SIMD versions in
+ * VectorKernels; otherwise, or if the program is run with
+ * -Dknn.vector=false, they fall back to plain loops. The choice is made once,
+ * when the class is loaded, and kept in a final field, so the JIT compiler
+ * drops the branch that isn't used. Either way the results match
+ * Tumor.Dist (squared) to within rounding.
+ *
+ * Besides comparing two rows, there is an early-abandoning kernel that gives
+ * up on a row once it is known to be farther than a bound (which is what the
+ * searches call), and a batch kernel that compares one query against a run
+ * of rows stored next to each other, writing all the squared distances into
+ * an array. The dot product kernel is for BlockedDistanceEngine, the
+ * kernels for blocks of floats or bytes are for QuantizedIndex, and the
+ * Manhattan, Chebyshev and cosine kernels (plain loops) are for the other
+ * kinds of DistanceMetric.
+ */
+public final class DistanceKernels {
+	// Initialize a final boolean for whether the SIMD kernels are used
+	public static final boolean VECTORIZED = vectorApiAvailable();
+	// Initialize a final int for how many characteristics the plain-loop
+	// early-abandoning kernel adds up between checks
+	private static final int ABANDON_STRIDE = 4;
+	// Initialize a final int for the shortest rows of doubles the SIMD
+	// kernels are used for (a shorter row doesn't fill even one vector, so
+	// the plain loop, which adds up the same numbers in the same order, is
+	// quicker)
+	private static final int MIN_VECTOR_LENGTH =
+		VECTORIZED ? VectorKernels.doubleLanes() : Integer.MAX_VALUE;
+	// Initialize a final int for the shortest rows the early-abandoning
+	// kernels check partway through (on a shorter row, such as one projected
+	// onto a few principal components, the check costs more than it saves)
+	private static final int MIN_ABANDON_LENGTH = 2 * ABANDON_STRIDE;
+	// Initialize a final boolean for whether the SIMD kernel for blocks of
+	// bytes is used (it needs vectors of at least 8 floats)
+	private static final boolean VECTORIZED_BYTES =
+		VECTORIZED && VectorKernels.hasByteKernel();
+
+	private DistanceKernels() {
+	}
+
+	/**Checks whether the Vector API module was loaded and hasn't been
+	 * turned off with -Dknn.vector=false
+	 * @return True if the SIMD kernels can be used
+	 */
+	private static boolean vectorApiAvailable() {
+		if (!Boolean.parseBoolean(System.getProperty("knn.vector", "true")))
+			return false;
+		return ModuleLayer.boot().findModule("jdk.incubator.vector")
+			.isPresent();
+	}
+
+	/**Calculates the square of the distance between two rows of
+	 * characteristics stored anywhere in two arrays of doubles
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The sum of the squares of the differences
+	 */
+	public static double distSquared(double[] a, int aOffset, double[] b,
+			int bOffset, int length) {
+		if (length >= MIN_VECTOR_LENGTH)
+			return VectorKernels.distSquared(a, aOffset, b, bOffset, length);
+		return scalarDistSquared(a, aOffset, b, bOffset, length);
+	}
+
+	/**Calculates the square of the distance between two rows of
+	 * characteristics stored anywhere in two arrays of floats
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The sum of the squares of the differences
+	 */
+	public static float distSquared(float[] a, int aOffset, float[] b,
+			int bOffset, int length) {
+		if (VECTORIZED)
+			return VectorKernels.distSquared(a, aOffset, b, bOffset, length);
+		return scalarDistSquared(a, aOffset, b, bOffset, length);
+	}
+
+	/**Calculates the squared distances from a query to a block of
+	 * floatLanes() rows of floats stored a characteristic at a time (so
+	 * characteristic f of the block's row j is at blockOffset +
+	 * f * floatLanes() + j), which lets the SIMD kernel work out one row in
+	 * each lane
+	 * @param query The array holding the query's characteristics, starting
+	 * at position 0
+	 * @param block The array holding the block
+	 * @param blockOffset The position in block where the block starts
+	 * @param numFeatures The number of characteristics in each row
+	 * @param out The array to write the floatLanes() squared distances into
+	 * @return The smallest of the squared distances
+	 */
+	public static float distSquaredBlock(float[] query, float[] block,
+			int blockOffset, int numFeatures, float[] out) {
+		if (VECTORIZED)
+			return VectorKernels.distSquaredBlock(query, block, blockOffset,
+					numFeatures, out);
+		// Without the SIMD kernels a block is just one row
+		float distSquared = 0;
+		for (int f = 0; f < numFeatures; f++) {
+			float diff = block[blockOffset + f] - query[f];
+			distSquared += diff * diff;
+		}
+		out[0] = distSquared;
+		return distSquared;
+	}
+
+	/**Calculates the squared distances from a query to a block of rows of
+	 * bytes laid out like distSquaredBlock's floats, where each byte stands
+	 * for itself times the scale of its characteristic (so the difference
+	 * for characteristic f is the byte times scales[f], rounded to a float,
+	 * minus query[f])
+	 * @param query The array holding the query's characteristics, starting
+	 * at position 0
+	 * @param block The array holding the block
+	 * @param blockOffset The position in block where the block starts
+	 * @param scales The scale of each characteristic
+	 * @param numFeatures The number of characteristics in each row
+	 * @param out The array to write the floatLanes() squared distances into
+	 * @return The smallest of the squared distances
+	 */
+	public static float distSquaredBlock(float[] query, byte[] block,
+			int blockOffset, float[] scales, int numFeatures, float[] out) {
+		if (VECTORIZED_BYTES)
+			return VectorKernels.distSquaredBlock(query, block, blockOffset,
+					scales, numFeatures, out);
+		// Without the SIMD kernel for bytes, each lane's row is added up on
+		// its own
+		int lanes = floatLanes();
+		float smallest = Float.POSITIVE_INFINITY;
+		for (int j = 0; j < lanes; j++) {
+			float distSquared = 0;
+			for (int f = 0, at = blockOffset + j; f < numFeatures;
+					f++, at += lanes) {
+				float diff = block[at] * scales[f] - query[f];
+				distSquared += diff * diff;
+			}
+			out[j] = distSquared;
+			smallest = Math.min(smallest, distSquared);
+		}
+		return smallest;
+	}
+
+	/**Calculates the square of the distance between two rows of doubles,
+	 * but stops adding up the squared differences as soon as the running sum
+	 * is bigger than bound (early abandoning), since the row is then too far
+	 * away to matter. With a tight bound most rows are given up on after only
+	 * a few characteristics.
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @param bound The squared distance beyond which the exact value doesn't
+	 * matter
+	 * @return Exactly what distSquared returns if that is no more than bound;
+	 * otherwise some number bigger than bound
+	 */
+	public static double distSquaredBounded(double[] a, int aOffset,
+			double[] b, int bOffset, int length, double bound) {
+		if (length >= MIN_VECTOR_LENGTH)
+			return VectorKernels.distSquaredBounded(a, aOffset, b, bOffset,
+					length, bound);
+		if (length < MIN_ABANDON_LENGTH)
+			return scalarDistSquared(a, aOffset, b, bOffset, length);
+		return scalarDistSquaredBounded(a, aOffset, b, bOffset, length, bound);
+	}
+
+	/**Calculates the square of the distance between a row of doubles in an
+	 * array and a row of doubles stored in a ByteBuffer (such as a file
+	 * mapped by MappedDataset) in little-endian order, giving up early like
+	 * distSquaredBounded, and giving exactly the same answer as
+	 * distSquaredBounded would for the same numbers in an array
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The ByteBuffer holding the second row (its byte order must be
+	 * little-endian)
+	 * @param bByteOffset The byte in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @param bound The squared distance beyond which the exact value doesn't
+	 * matter
+	 * @return The squared distance if it is no more than bound; otherwise
+	 * some number bigger than bound
+	 */
+	public static double distSquaredBounded(double[] a, int aOffset,
+			ByteBuffer b, int bByteOffset, int length, double bound) {
+		if (length >= MIN_VECTOR_LENGTH)
+			return VectorKernels.distSquaredBounded(a, aOffset, b, bByteOffset,
+					length, bound);
+		double distSquared = 0;
+		int i = 0;
+		int checkedLength = (length < MIN_ABANDON_LENGTH) ? 0 : length;
+		for (int stop = ABANDON_STRIDE; stop <= checkedLength;
+				stop += ABANDON_STRIDE) {
+			for (; i < stop; i++) {
+				double diff = a[aOffset + i] - b.getDouble(bByteOffset
+						+ i * Double.BYTES);
+				distSquared += diff * diff;
+			}
+			if (distSquared > bound) return distSquared;
+		}
+		for (; i < length; i++) {
+			double diff = a[aOffset + i] - b.getDouble(bByteOffset
+					+ i * Double.BYTES);
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**Calculates the dot product of two rows of characteristics (the sum
+	 * of the products of matching characteristics), which is what
+	 * BlockedDistanceEngine needs to work out squared distances as
+	 * ||a||^2 + ||b||^2 - 2 a.b
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The dot product
+	 */
+	public static double dot(double[] a, int aOffset, double[] b, int bOffset,
+			int length) {
+		if (length >= MIN_VECTOR_LENGTH)
+			return VectorKernels.dot(a, aOffset, b, bOffset, length);
+		double dot = 0;
+		for (int i = 0; i < length; i++) {
+			dot += a[aOffset + i] * b[bOffset + i];
+		}
+		return dot;
+	}
+
+	/**Returns how many floats the SIMD kernels work on at once (1 if they
+	 * aren't used), which is how many rows distSquaredBlock compares at once
+	 * @return The number of floats in a vector
+	 */
+	public static int floatLanes() {
+		return VECTORIZED ? VectorKernels.floatLanes() : 1;
+	}
+
+	/**Calculates the squared distances from one query to a run of rows
+	 * stored one after another in an array of doubles (each gets exactly the
+	 * same value distSquared would give it)
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param rows The array holding the rows
+	 * @param firstRow The number of the first row to compare against
+	 * @param numRows How many rows to compare against
+	 * @param numFeatures The number of characteristics in each row
+	 * @param out The array to write the squared distances into, starting at
+	 * position 0
+	 */
+	public static void distSquaredBatch(double[] query, int queryOffset,
+			double[] rows, int firstRow, int numRows, int numFeatures,
+			double[] out) {
+		int offset = firstRow * numFeatures;
+		if (VECTORIZED) {
+			for (int r = 0; r < numRows; r++, offset += numFeatures)
+				out[r] = VectorKernels.distSquared(query, queryOffset, rows,
+						offset, numFeatures);
+		}
+		else {
+			for (int r = 0; r < numRows; r++, offset += numFeatures)
+				out[r] = scalarDistSquared(query, queryOffset, rows, offset,
+						numFeatures);
+		}
+	}
+
+	/**Calculates the Manhattan distance between two rows of doubles (the
+	 * sum of the sizes of the differences), giving up early like
+	 * distSquaredBounded
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @param bound The distance beyond which the exact value doesn't matter
+	 * @return The distance if it is no more than bound; otherwise some
+	 * number bigger than bound
+	 */
+	public static double manhattanBounded(double[] a, int aOffset,
+			double[] b, int bOffset, int length, double bound) {
+		double dist = 0;
+		int i = 0;
+		int checkedLength = (length < MIN_ABANDON_LENGTH) ? 0 : length;
+		for (int stop = ABANDON_STRIDE; stop <= checkedLength;
+				stop += ABANDON_STRIDE) {
+			for (; i < stop; i++)
+				dist += Math.abs(a[aOffset + i] - b[bOffset + i]);
+			if (dist > bound) return dist;
+		}
+		for (; i < length; i++)
+			dist += Math.abs(a[aOffset + i] - b[bOffset + i]);
+		return dist;
+	}
+
+	/**Calculates the Chebyshev distance between two rows of doubles (the
+	 * biggest of the sizes of the differences), giving up as soon as one
+	 * difference is bigger than bound
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @param bound The distance beyond which the exact value doesn't matter
+	 * @return The distance if it is no more than bound; otherwise some
+	 * number bigger than bound
+	 */
+	public static double chebyshevBounded(double[] a, int aOffset,
+			double[] b, int bOffset, int length, double bound) {
+		double dist = 0;
+		for (int i = 0; i < length; i++) {
+			double diff = Math.abs(a[aOffset + i] - b[bOffset + i]);
+			if (diff > dist) {
+				dist = diff;
+				if (dist > bound) return dist;
+			}
+		}
+		return dist;
+	}
+
+	/**Calculates the cosine distance between two rows of doubles, 1 minus
+	 * the cosine of the angle between them, adding up the dot product and
+	 * both squared norms in one pass
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The cosine distance, from 0 (same direction) to 2 (opposite
+	 * directions), taken to be 1 if either row is all 0s
+	 */
+	public static double cosineDistance(double[] a, int aOffset, double[] b,
+			int bOffset, int length) {
+		double dot = 0, normA = 0, normB = 0;
+		for (int i = 0; i < length; i++) {
+			double x = a[aOffset + i];
+			double y = b[bOffset + i];
+			dot += x * y;
+			normA += x * x;
+			normB += y * y;
+		}
+		if (normA == 0 || normB == 0) return 1;
+		return 1 - dot / Math.sqrt(normA * normB);
+	}
+
+	/**The plain-loop version of distSquared for doubles
+	 */
+	static double scalarDistSquared(double[] a, int aOffset, double[] b,
+			int bOffset, int length) {
+		double distSquared = 0;
+		for (int i = 0; i < length; i++) {
+			// Multiply instead of calling Math.pow, which is much slower
+			double diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**The plain-loop version of distSquaredBounded, which checks the running
+	 * sum against bound after every ABANDON_STRIDE characteristics (checking
+	 * after every one would cost more than it saves)
+	 */
+	static double scalarDistSquaredBounded(double[] a, int aOffset,
+			double[] b, int bOffset, int length, double bound) {
+		double distSquared = 0;
+		int i = 0;
+		for (int stop = ABANDON_STRIDE; stop <= length; 
+				stop += ABANDON_STRIDE) {
+			for (; i < stop; i++) {
+				double diff = a[aOffset + i] - b[bOffset + i];
+				distSquared += diff * diff;
+			}
+			if (distSquared > bound) return distSquared;
+		}
+		for (; i < length; i++) {
+			double diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**The plain-loop version of distSquared for floats
+	 */
+	static float scalarDistSquared(float[] a, int aOffset, float[] b,
+			int bOffset, int length) {
+		float distSquared = 0;
+		for (int i = 0; i < length; i++) {
+			float diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+} // End of class
@@ -0,0 +1,221 @@
+/**This interface is for a way of measuring how far apart two tumors are,
+ * for a MetricScanIndex (or Tumor.Dist) to use instead of the plain
+ * Euclidean distance. Each kind is its own final class with its own scan
+ * loop, which calls its DistanceKernels kernel directly, so the JIT compiler
+ * sees only one kind of distance in each loop and can inline it, instead of
+ * making a call it can't see through for every row.
+ *
+ * A scan puts a key for each row into a KnnHeap, which only has to be in the
+ * same order as the distances (EUCLIDEAN keeps the squared distance, like
+ * the rest of the program), and drainInto turns the keys of the k nearest
+ * rows back into distances.
+ *
+ * Weighted Euclidean and Mahalanobis distances are not kinds of
+ * DistanceMetric: they are the plain Euclidean distance after the
+ * characteristics are transformed, once, when the tumors are loaded (a
+ * FeatureScaler with weights, or a MahalanobisWhitening), so the search
+ * still runs the Euclidean kernels.
+ */
+public interface DistanceMetric {
+	/**The Euclidean distance (the square root of the sum of the squared
+	 * differences), the one the rest of the program uses
+	 */
+	DistanceMetric EUCLIDEAN = new Euclidean();
+	/**The Manhattan distance (the sum of the sizes of the differences)
+	 */
+	DistanceMetric MANHATTAN = new Manhattan();
+	/**The Chebyshev distance (the biggest of the sizes of the differences)
+	 */
+	DistanceMetric CHEBYSHEV = new Chebyshev();
+	/**The cosine distance (1 minus the cosine of the angle between the
+	 * tumors' characteristics), which only looks at their directions
+	 */
+	DistanceMetric COSINE = new Cosine();
+
+	/**Returns the metric's name, as metricFor takes it
+	 * @return The name
+	 */
+	String getName();
+
+	/**Calculates the distance between two rows of characteristics
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The distance
+	 */
+	double distance(double[] a, int aOffset, double[] b, int bOffset,
+			int length);
+
+	/**Offers every row of some training tumors to a heap, keyed so that
+	 * closer rows have smaller keys
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param train The FeatureMatrix of training tumors
+	 * @param heap The emptied KnnHeap to offer them to
+	 * @return How many rows the heap kept (for PipelineMetrics.countScan)
+	 */
+	int scan(double[] query, int queryOffset, FeatureMatrix train,
+			KnnHeap heap);
+
+	/**Takes the rows out of a heap filled by scan and writes them into a
+	 * NeighborResult with their distances, closest first
+	 * @param heap The KnnHeap
+	 * @param train The tumors the row numbers refer to
+	 * @param out The NeighborResult to write into
+	 */
+	default void drainInto(KnnHeap heap, TumorLabels train,
+			NeighborResult out) {
+		heap.drainInto(train, out);
+	}
+
+	/**Turns the name of a metric into the metric
+	 * @param name "euclidean", "manhattan", "chebyshev" or "cosine"
+	 * @return The DistanceMetric
+	 */
+	static DistanceMetric metricFor(String name) {
+		switch (name.toLowerCase()) {
+		case "euclidean":
+			return EUCLIDEAN;
+		case "manhattan":
+			return MANHATTAN;
+		case "chebyshev":
+			return CHEBYSHEV;
+		case "cosine":
+			return COSINE;
+		default:
+			throw new IllegalArgumentException("unknown metric \"" + name
+					+ "\" (use euclidean, manhattan, chebyshev or cosine)");
+		}
+	}
+
+	/**The Euclidean distance, keyed by its square in the heap like
+	 * NearestNeighbor.kNearest, so it finds exactly the same neighbors as a
+	 * LinearScanIndex
+	 */
+	final class Euclidean implements DistanceMetric {
+		public String getName() {
+			return "euclidean";
+		}
+
+		public double distance(double[] a, int aOffset, double[] b,
+				int bOffset, int length) {
+			return Math.sqrt(DistanceKernels.distSquared(a, aOffset, b,
+					bOffset, length));
+		}
+
+		public int scan(double[] query, int queryOffset, FeatureMatrix train,
+				KnnHeap heap) {
+			int numRows = train.getNumRows();
+			int numFeatures = train.getNumFeatures();
+			double[] data = train.getData();
+			int kept = 0;
+			for (int r = 0, offset = 0; r < numRows;
+					r++, offset += numFeatures) {
+				if (heap.offer(DistanceKernels.distSquaredBounded(query,
+						queryOffset, data, offset, numFeatures,
+						heap.worstDistance()), r))
+					kept++;
+			}
+			return kept;
+		}
+
+		public void drainInto(KnnHeap heap, TumorLabels train,
+				NeighborResult out) {
+			heap.drainRootsInto(train, out);
+		}
+	} // End of class
+
+	/**The Manhattan distance, giving up on a row once it is farther than the
+	 * k-th nearest so far
+	 */
+	final class Manhattan implements DistanceMetric {
+		public String getName() {
+			return "manhattan";
+		}
+
+		public double distance(double[] a, int aOffset, double[] b,
+				int bOffset, int length) {
+			return DistanceKernels.manhattanBounded(a, aOffset, b, bOffset,
+					length, Double.POSITIVE_INFINITY);
+		}
+
+		public int scan(double[] query, int queryOffset, FeatureMatrix train,
+				KnnHeap heap) {
+			int numRows = train.getNumRows();
+			int numFeatures = train.getNumFeatures();
+			double[] data = train.getData();
+			int kept = 0;
+			for (int r = 0, offset = 0; r < numRows;
+					r++, offset += numFeatures) {
+				if (heap.offer(DistanceKernels.manhattanBounded(query,
+						queryOffset, data, offset, numFeatures,
+						heap.worstDistance()), r))
+					kept++;
+			}
+			return kept;
+		}
+	} // End of class
+
+	/**The Chebyshev distance, giving up on a row as soon as one difference
+	 * is bigger than the k-th nearest distance so far
+	 */
+	final class Chebyshev implements DistanceMetric {
+		public String getName() {
+			return "chebyshev";
+		}
+
+		public double distance(double[] a, int aOffset, double[] b,
+				int bOffset, int length) {
+			return DistanceKernels.chebyshevBounded(a, aOffset, b, bOffset,
+					length, Double.POSITIVE_INFINITY);
+		}
+
+		public int scan(double[] query, int queryOffset, FeatureMatrix train,
+				KnnHeap heap) {
+			int numRows = train.getNumRows();
+			int numFeatures = train.getNumFeatures();
+			double[] data = train.getData();
+			int kept = 0;
+			for (int r = 0, offset = 0; r < numRows;
+					r++, offset += numFeatures) {
+				if (heap.offer(DistanceKernels.chebyshevBounded(query,
+						queryOffset, data, offset, numFeatures,
+						heap.worstDistance()), r))
+					kept++;
+			}
+			return kept;
+		}
+	} // End of class
+
+	/**The cosine distance. It can't give up early, since the dot product
+	 * can still go either way until the last characteristic.
+	 */
+	final class Cosine implements DistanceMetric {
+		public String getName() {
+			return "cosine";
+		}
+
+		public double distance(double[] a, int aOffset, double[] b,
+				int bOffset, int length) {
+			return DistanceKernels.cosineDistance(a, aOffset, b, bOffset,
+					length);
+		}
+
+		public int scan(double[] query, int queryOffset, FeatureMatrix train,
+				KnnHeap heap) {
+			int numRows = train.getNumRows();
+			int numFeatures = train.getNumFeatures();
+			double[] data = train.getData();
+			int kept = 0;
+			for (int r = 0, offset = 0; r < numRows;
+					r++, offset += numFeatures) {
+				if (heap.offer(DistanceKernels.cosineDistance(query,
+						queryOffset, data, offset, numFeatures), r))
+					kept++;
+			}
+			return kept;
+		}
+	} // End of class
+}
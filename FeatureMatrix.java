@@ -0,0 +1,329 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+// Importing Arrays (to copy rows) and List (for concat)
+import java.util.Arrays;
+import java.util.List;
+
+/**This class stores a whole set of tumors in columns of primitives instead of
+ * as an array of Tumor objects: all of the characteristics are kept in one
+ * long array of doubles, row after row (so the characteristics of row r start
+ * at position r * numFeatures), next to an array of ID numbers and a packed
+ * array of bits for the types. Scanning over the tumors then reads straight
+ * through memory without jumping from object to object, and the distance
+ * methods work on positions in the arrays instead of on Tumor objects. A copy
+ * of the characteristics as floats can be made for scans that trade precision
+ * for half the memory traffic. A matrix made by a FeatureTransform (such as
+ * a FeatureScaler) remembers it, so queries can be transformed the same way.
+ */
+public class FeatureMatrix implements TumorLabels {
+	// Initialize an integer for the number of tumors (rows) in the matrix
+	private int numRows;
+	// Initialize an integer for the number of characteristics (features) of
+	// each tumor
+	private int numFeatures;
+	// Initialize an array of doubles to store the characteristics of all the
+	// tumors, one row after another
+	private double[] data;
+	// Initialize an array of floats for the optional float copy of data
+	// (null until withFloatData is called)
+	private float[] floatData;
+	// Initialize an array of integers to store the ID number of each row
+	private int[] ids;
+	// Initialize an array of longs to store the type of each row as one bit
+	// (bit r % 64 of typeBits[r / 64] is set if row r is malignant)
+	private long[] typeBits;
+	// Initialize the FeatureTransform that made the characteristics (null
+	// if they are as they were read)
+	private FeatureTransform transform;
+
+	/**This constructor creates a FeatureMatrix from arrays that have already
+	 * been filled in
+	 * @param numRowsIn The number of tumors
+	 * @param numFeaturesIn The number of characteristics of each tumor
+	 * @param dataIn The characteristics of all the tumors, row after row
+	 * (must have at least numRowsIn * numFeaturesIn values)
+	 * @param idsIn The ID number of each tumor
+	 * @param typeBitsIn The type of each tumor packed into bits (must have at
+	 * least (numRowsIn + 63) / 64 values)
+	 */
+	public FeatureMatrix(int numRowsIn, int numFeaturesIn, double[] dataIn,
+			int[] idsIn, long[] typeBitsIn) {
+		numRows = numRowsIn;
+		numFeatures = numFeaturesIn;
+		data = dataIn;
+		ids = idsIn;
+		typeBits = typeBitsIn;
+	}
+
+	/**Creates a FeatureMatrix by copying the ID numbers, types and
+	 * characteristics out of an array of Tumor objects
+	 * @param tList The array of Tumors to copy (all must have the same number
+	 * of characteristics)
+	 * @return A new FeatureMatrix with one row for each Tumor, in order
+	 */
+	public static FeatureMatrix fromTumors(Tumor[] tList) {
+		// Take the number of characteristics from the first tumor
+		int numFeatures =
+			(tList.length == 0) ? 0 : tList[0].getCharacteristics().length;
+		double[] data = new double[tList.length * numFeatures];
+		int[] ids = new int[tList.length];
+		long[] typeBits = new long[wordsFor(tList.length)];
+		// For loop to copy each tumor into its row
+		for (int r = 0; r < tList.length; r++) {
+			System.arraycopy(tList[r].getCharacteristics(), 0, data,
+					r * numFeatures, numFeatures);
+			ids[r] = tList[r].getID();
+			if (tList[r].getType())
+				typeBits[r >>> 6] |= 1L << r;
+		}
+		return new FeatureMatrix(tList.length, numFeatures, data, ids,
+				typeBits);
+	}
+
+	/**Makes an array of Tumor objects with the same contents as this matrix
+	 * (each Tumor gets its own copy of its row of characteristics)
+	 * @return An array with one Tumor for each row, in order
+	 */
+	public Tumor[] toTumors() {
+		Tumor[] tList = new Tumor[numRows];
+		for (int r = 0; r < numRows; r++) {
+			tList[r] = new Tumor(ids[r], getType(r), Arrays.copyOfRange(data,
+					offset(r), offset(r) + numFeatures));
+		}
+		return tList;
+	}
+
+	/**Makes a new FeatureMatrix out of some of the rows of this one, copied
+	 * next to each other in the order they are listed, so that a scan over
+	 * the new matrix still reads straight through memory
+	 * @param rows An array of row numbers of this matrix
+	 * @param from The first position in rows to copy
+	 * @param to One past the last position in rows to copy
+	 * @return A new FeatureMatrix with to - from rows
+	 */
+	public FeatureMatrix subset(int[] rows, int from, int to) {
+		int count = to - from;
+		double[] subData = new double[count * numFeatures];
+		int[] subIds = new int[count];
+		long[] subTypeBits = new long[wordsFor(count)];
+		// For loop to copy each of the chosen rows into the new arrays
+		for (int r = 0; r < count; r++) {
+			int source = rows[from + r];
+			System.arraycopy(data, offset(source), subData, r * numFeatures,
+					numFeatures);
+			subIds[r] = ids[source];
+			if (getType(source))
+				subTypeBits[r >>> 6] |= 1L << r;
+		}
+		FeatureMatrix subset =
+			new FeatureMatrix(count, numFeatures, subData, subIds, subTypeBits);
+		subset.transform = transform;
+		// Keep the float copy if this matrix has one
+		if (floatData != null) subset.withFloatData();
+		return subset;
+	}
+
+	/**Makes a new FeatureMatrix with the rows of several others, one after
+	 * another (they must all have the same number of characteristics, and if
+	 * they were transformed, the same transform)
+	 * @param parts The FeatureMatrices to put together, in order
+	 * @return A new FeatureMatrix with all of their rows
+	 */
+	public static FeatureMatrix concat(List<FeatureMatrix> parts) {
+		int numRows = 0;
+		int numFeatures = parts.isEmpty() ? 0 : parts.get(0).numFeatures;
+		for (FeatureMatrix part : parts) {
+			if (part.numFeatures != numFeatures)
+				throw new IllegalArgumentException("can't put together rows "
+						+ "with " + part.numFeatures + " and " + numFeatures
+						+ " characteristics");
+			numRows += part.numRows;
+		}
+		double[] data = new double[numRows * numFeatures];
+		int[] ids = new int[numRows];
+		long[] typeBits = new long[wordsFor(numRows)];
+		int row = 0;
+		// For loop to copy each part in after the ones before it
+		for (FeatureMatrix part : parts) {
+			System.arraycopy(part.data, 0, data, row * numFeatures,
+					part.numRows * numFeatures);
+			System.arraycopy(part.ids, 0, ids, row, part.numRows);
+			for (int r = 0; r < part.numRows; r++, row++) {
+				if (part.getType(r))
+					typeBits[row >>> 6] |= 1L << row;
+			}
+		}
+		FeatureMatrix joined =
+			new FeatureMatrix(numRows, numFeatures, data, ids, typeBits);
+		if (!parts.isEmpty()) joined.transform = parts.get(0).transform;
+		return joined;
+	}
+
+	/**Makes a FeatureMatrix of the same tumors (sharing the ID numbers and
+	 * types) with different characteristics, made from these by a
+	 * FeatureTransform
+	 * @param numFeaturesIn The number of characteristics of each tumor
+	 * @param dataIn The new characteristics, row after row
+	 * @param transformIn The FeatureTransform that made them
+	 * @return The new FeatureMatrix
+	 */
+	FeatureMatrix withData(int numFeaturesIn, double[] dataIn,
+			FeatureTransform transformIn) {
+		FeatureMatrix transformed =
+			new FeatureMatrix(numRows, numFeaturesIn, dataIn, ids, typeBits);
+		transformed.transform = transformIn;
+		return transformed;
+	}
+
+	/**Fills in the float copy of the characteristics if it hasn't been made
+	 * yet, so that distSquaredFloat can be used
+	 * @return This FeatureMatrix
+	 */
+	public FeatureMatrix withFloatData() {
+		if (floatData == null) {
+			floatData = new float[numRows * numFeatures];
+			for (int i = 0; i < floatData.length; i++)
+				floatData[i] = (float) data[i];
+		}
+		return this;
+	}
+
+	/**Returns how many longs are needed to hold one bit for each of count
+	 * rows
+	 * @param count The number of rows
+	 * @return The number of longs needed
+	 */
+	static int wordsFor(int count) {
+		return (count + 63) >>> 6;
+	}
+
+	/**This simple accessor method returns the number of rows (tumors)
+	 * @return The number of rows
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**This simple accessor method returns the number of characteristics of
+	 * each tumor
+	 * @return The number of features in each row
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**This accessor method returns the array holding all the
+	 * characteristics, row after row (it is not copied)
+	 * @return The array of characteristics
+	 */
+	public double[] getData() {
+		return data;
+	}
+
+	/**This accessor method returns the float copy of the characteristics, or
+	 * null if withFloatData hasn't been called
+	 * @return The float array of characteristics
+	 */
+	public float[] getFloatData() {
+		return floatData;
+	}
+
+	/**This accessor method returns the FeatureTransform that made the
+	 * characteristics, or null if they are as they were read
+	 * @return The FeatureTransform
+	 */
+	public FeatureTransform getTransform() {
+		return transform;
+	}
+
+	/**Returns the position in the data array where a row starts
+	 * @param row The row number
+	 * @return The position of the first characteristic of that row
+	 */
+	public int offset(int row) {
+		return row * numFeatures;
+	}
+
+	/**This accessor method returns the ID number of a row
+	 * @param row The row number
+	 * @return The ID number of the tumor in that row
+	 */
+	public int getID(int row) {
+		return ids[row];
+	}
+
+	/**This accessor method returns the type of a row
+	 * @param row The row number
+	 * @return True if the tumor in that row is malignant, false if it is
+	 * benign
+	 */
+	public boolean getType(int row) {
+		return (typeBits[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**Calculates the square of the distance between two rows of
+	 * characteristics stored anywhere in two arrays of doubles
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The sum of the squares of the differences
+	 */
+	public static double distSquared(double[] a, int aOffset, double[] b,
+			int bOffset, int length) {
+		// DistanceKernels uses SIMD instructions when it can
+		return DistanceKernels.distSquared(a, aOffset, b, bOffset, length);
+	}
+
+	/**Calculates the square of the distance between two rows of
+	 * characteristics stored anywhere in two arrays of floats
+	 * @param a The array holding the first row
+	 * @param aOffset The position in a where the first row starts
+	 * @param b The array holding the second row
+	 * @param bOffset The position in b where the second row starts
+	 * @param length The number of characteristics in each row
+	 * @return The sum of the squares of the differences
+	 */
+	public static float distSquared(float[] a, int aOffset, float[] b,
+			int bOffset, int length) {
+		return DistanceKernels.distSquared(a, aOffset, b, bOffset, length);
+	}
+
+	/**Calculates the square of the distance between a query tumor's
+	 * characteristics and one row of this matrix
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param row The row of this matrix to compare against
+	 * @return The square of the distance between them
+	 */
+	public double distSquared(double[] query, int queryOffset, int row) {
+		return distSquared(query, queryOffset, data, offset(row),
+				numFeatures);
+	}
+
+	/**Calculates the distance between a query tumor's characteristics and
+	 * one row of this matrix
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param row The row of this matrix to compare against
+	 * @return The distance between them
+	 */
+	public double dist(double[] query, int queryOffset, int row) {
+		return Math.sqrt(distSquared(query, queryOffset, row));
+	}
+
+	/**Calculates the square of the distance between a query tumor's float
+	 * characteristics and one row of the float copy of this matrix (which
+	 * must have been made with withFloatData)
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param row The row of this matrix to compare against
+	 * @return The square of the distance between them
+	 */
+	public float distSquaredFloat(float[] query, int queryOffset, int row) {
+		return distSquared(query, queryOffset, floatData, offset(row),
+				numFeatures);
+	}
+} // End of class
@@ -0,0 +1,278 @@
+/**This class rescales the characteristics of tumors before their distances
+ * are worked out. The characteristics of the data file have very different
+ * sizes (the areas are in the hundreds or thousands, the smoothnesses are
+ * around 0.1), so without rescaling the distance is almost all area and the
+ * other characteristics barely count. A FeatureScaler is fitted on some
+ * training tumors and can then:
+ *   - shift and divide each characteristic by its mean and standard
+ *     deviation (Z_SCORE) or by its smallest value and its range (MIN_MAX),
+ *     or leave it as it is (NONE)
+ *   - multiply each characteristic by a weight, so it counts for more or
+ *     less in the distance
+ *   - keep only some of the characteristics, which also makes every
+ *     distance cheaper to work out
+ * It is fitted on the training tumors only (so nothing about the testing
+ * tumors leaks into it), and transform makes a new FeatureMatrix with the
+ * rescaled characteristics packed together, so the distance kernels run on
+ * them as they are and no rescaling is done for each pair of tumors. The
+ * new FeatureMatrix remembers the FeatureScaler that made it
+ * (getTransform), so queries can be rescaled the same way before they are
+ * compared with it.
+ */
+public class FeatureScaler implements FeatureTransform {
+	/**The method code for leaving the characteristics as they are (they can
+	 * still be weighted and picked out)
+	 */
+	public static final int NONE = 0;
+	/**The method code for subtracting each characteristic's mean and
+	 * dividing by its standard deviation
+	 */
+	public static final int Z_SCORE = 1;
+	/**The method code for subtracting each characteristic's smallest value
+	 * and dividing by its range, so the training tumors run from 0 to 1
+	 */
+	public static final int MIN_MAX = 2;
+
+	// Initialize the method, how many characteristics the tumors it rescales
+	// have, and which of them it keeps
+	private final int method;
+	private final int numFeaturesIn;
+	private final int[] features;
+	// Initialize arrays for what is subtracted from each kept characteristic
+	// and what it is then multiplied by (the weight divided by the spread)
+	private final double[] shift, scale;
+
+	/**This constructor creates a FeatureScaler from its fitted values
+	 * @param methodIn The method code
+	 * @param numFeaturesInIn How many characteristics the tumors have
+	 * @param featuresIn Which characteristics to keep, in order
+	 * @param shiftIn What to subtract from each kept characteristic
+	 * @param scaleIn What to multiply each kept characteristic by after that
+	 */
+	private FeatureScaler(int methodIn, int numFeaturesInIn, int[] featuresIn,
+			double[] shiftIn, double[] scaleIn) {
+		method = methodIn;
+		numFeaturesIn = numFeaturesInIn;
+		features = featuresIn;
+		shift = shiftIn;
+		scale = scaleIn;
+	}
+
+	/**Fits a FeatureScaler that rescales all of the characteristics, with
+	 * no weights
+	 * @param train The FeatureMatrix of training tumors to fit it on
+	 * @param method NONE, Z_SCORE or MIN_MAX
+	 * @return The FeatureScaler
+	 */
+	public static FeatureScaler fit(FeatureMatrix train, int method) {
+		return fit(train, method, null, null);
+	}
+
+	/**Fits a FeatureScaler on some training tumors. A characteristic that
+	 * is the same for all of them is shifted but not divided.
+	 * @param train The FeatureMatrix of training tumors to fit it on
+	 * @param method NONE, Z_SCORE or MIN_MAX
+	 * @param features Which characteristics to keep, in the order they
+	 * should be kept in (null to keep them all)
+	 * @param weights What to multiply each kept characteristic by after it
+	 * is rescaled, in the same order as features (null for all 1s)
+	 * @return The FeatureScaler
+	 */
+	public static FeatureScaler fit(FeatureMatrix train, int method,
+			int[] features, double[] weights) {
+		if (method != NONE && method != Z_SCORE && method != MIN_MAX)
+			throw new IllegalArgumentException("unknown scaling method "
+					+ method);
+		int numFeatures = train.getNumFeatures();
+		if (features == null) {
+			features = new int[numFeatures];
+			for (int f = 0; f < numFeatures; f++) features[f] = f;
+		}
+		else {
+			features = features.clone();
+			for (int f : features) {
+				if (f < 0 || f >= numFeatures)
+					throw new IllegalArgumentException("there is no "
+							+ "characteristic " + f);
+			}
+		}
+		if (weights != null && weights.length != features.length)
+			throw new IllegalArgumentException("there must be one weight "
+					+ "for each kept characteristic");
+
+		double[] shift = new double[features.length];
+		double[] scale = new double[features.length];
+		double[] data = train.getData();
+		int numRows = train.getNumRows();
+		// For loop to fit each kept characteristic
+		for (int i = 0; i < features.length; i++) {
+			double spread = 1;
+			if (method == Z_SCORE && numRows > 0) {
+				// Work out the mean first and then the squared differences
+				// from it, which loses less to rounding than adding up the
+				// squares
+				double sum = 0;
+				for (int r = 0; r < numRows; r++)
+					sum += data[train.offset(r) + features[i]];
+				shift[i] = sum / numRows;
+				double sumSquares = 0;
+				for (int r = 0; r < numRows; r++) {
+					double diff = data[train.offset(r) + features[i]]
+						- shift[i];
+					sumSquares += diff * diff;
+				}
+				spread = Math.sqrt(sumSquares / numRows);
+			}
+			else if (method == MIN_MAX && numRows > 0) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int r = 0; r < numRows; r++) {
+					double value = data[train.offset(r) + features[i]];
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+				shift[i] = min;
+				spread = max - min;
+			}
+			if (spread == 0) spread = 1;
+			double weight = (weights == null) ? 1 : weights[i];
+			scale[i] = weight / spread;
+		} // End of for loop through the characteristics
+		return new FeatureScaler(method, numFeatures, features, shift, scale);
+	}
+
+	/**Makes a Fitter that fits FeatureScalers with the given settings
+	 * @param method NONE, Z_SCORE or MIN_MAX
+	 * @param features Which characteristics to keep (null to keep them all)
+	 * @param weights The weight of each kept characteristic (null for all
+	 * 1s)
+	 * @return The Fitter
+	 */
+	public static FeatureTransform.Fitter fitter(int method, int[] features,
+			double[] weights) {
+		return train -> fit(train, method, features, weights);
+	}
+
+	/**Works out a weight for each characteristic from how well it tells
+	 * the two types of training tumor apart on its own: the square root of
+	 * its Fisher score, the squared difference of the two types' means over
+	 * the sum of their variances. Given as weights to fit, these make the
+	 * distance a weighted Euclidean distance in which each characteristic's
+	 * squared difference is multiplied by its Fisher score. The score
+	 * doesn't change when a characteristic is rescaled, so it doesn't matter
+	 * which method the weights are used with.
+	 * @param train The FeatureMatrix of training tumors
+	 * @return The weights, one for each characteristic (1 for one that
+	 * doesn't vary within either type)
+	 */
+	public static double[] fisherWeights(FeatureMatrix train) {
+		int numFeatures = train.getNumFeatures();
+		int numRows = train.getNumRows();
+		double[] data = train.getData();
+		double[] weights = new double[numFeatures];
+		int numMalignant = 0;
+		for (int r = 0; r < numRows; r++)
+			if (train.getType(r)) numMalignant++;
+		int numBenign = numRows - numMalignant;
+		// For loop to score each characteristic
+		for (int f = 0; f < numFeatures; f++) {
+			double sumM = 0, sumB = 0;
+			for (int r = 0; r < numRows; r++) {
+				if (train.getType(r)) sumM += data[train.offset(r) + f];
+				else sumB += data[train.offset(r) + f];
+			}
+			double meanM = sumM / Math.max(numMalignant, 1);
+			double meanB = sumB / Math.max(numBenign, 1);
+			double squaresM = 0, squaresB = 0;
+			for (int r = 0; r < numRows; r++) {
+				if (train.getType(r)) {
+					double diff = data[train.offset(r) + f] - meanM;
+					squaresM += diff * diff;
+				}
+				else {
+					double diff = data[train.offset(r) + f] - meanB;
+					squaresB += diff * diff;
+				}
+			}
+			double spread = squaresM / Math.max(numMalignant, 1)
+				+ squaresB / Math.max(numBenign, 1);
+			weights[f] = (spread == 0) ? 1 :
+				Math.abs(meanM - meanB) / Math.sqrt(spread);
+		} // End of for loop through the characteristics
+		return weights;
+	}
+
+	/**Makes a Fitter that fits FeatureScalers of all the characteristics
+	 * weighted by fisherWeights, worked out on the same training tumors
+	 * @param method NONE, Z_SCORE or MIN_MAX
+	 * @return The Fitter
+	 */
+	public static FeatureTransform.Fitter fisherFitter(int method) {
+		return train -> fit(train, method, null, fisherWeights(train));
+	}
+
+	/**Turns the name of a method into its code
+	 * @param name "none", "zscore" or "minmax"
+	 * @return NONE, Z_SCORE or MIN_MAX
+	 */
+	public static int methodFor(String name) {
+		switch (name.toLowerCase()) {
+		case "none":
+			return NONE;
+		case "zscore":
+			return Z_SCORE;
+		case "minmax":
+			return MIN_MAX;
+		default:
+			throw new IllegalArgumentException("unknown scaling method \""
+					+ name + "\" (use none, zscore or minmax)");
+		}
+	}
+
+	/**This simple accessor method returns the method code
+	 * @return NONE, Z_SCORE or MIN_MAX
+	 */
+	public int getMethod() {
+		return method;
+	}
+
+	public int getNumFeaturesIn() {
+		return numFeaturesIn;
+	}
+
+	public int getNumFeaturesOut() {
+		return features.length;
+	}
+
+	/**Returns which characteristics it keeps
+	 * @return A copy of the array of kept characteristics, in order
+	 */
+	public int[] getFeatures() {
+		return features.clone();
+	}
+
+	/**Returns what is subtracted from one of the kept characteristics
+	 * @param i Which kept characteristic (counting in the kept order)
+	 * @return What is subtracted from it
+	 */
+	double getShift(int i) {
+		return shift[i];
+	}
+
+	/**Returns what one of the kept characteristics is multiplied by, after
+	 * the shift is subtracted
+	 * @param i Which kept characteristic (counting in the kept order)
+	 * @return What it is multiplied by
+	 */
+	double getScale(int i) {
+		return scale[i];
+	}
+
+	public void transform(double[] in, int inOffset, double[] out,
+			int outOffset) {
+		for (int i = 0; i < features.length; i++) {
+			out[outOffset + i] =
+				(in[inOffset + features[i]] - shift[i]) * scale[i];
+		}
+	}
+} // End of class
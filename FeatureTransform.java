@@ -0,0 +1,61 @@
+/**This interface is for anything that turns the characteristics of a tumor
+ * into a new set of characteristics before distances are worked out: a
+ * FeatureScaler, which rescales them and can drop some of them, or a
+ * PcaProjection, which projects them onto a few principal components. A
+ * FeatureTransform is fitted on training tumors only (with a Fitter), and the
+ * FeatureMatrix it makes remembers it (FeatureMatrix.getTransform), so that
+ * queries can be transformed the same way before they are searched for.
+ */
+public interface FeatureTransform {
+
+	/**This interface is for something that fits a FeatureTransform on a
+	 * FeatureMatrix of training tumors (for example
+	 * FeatureScaler.fitter(FeatureScaler.Z_SCORE, null, null))
+	 */
+	public interface Fitter {
+		/**Fits a FeatureTransform on some training tumors
+		 * @param train The FeatureMatrix of training tumors
+		 * @return The FeatureTransform
+		 */
+		FeatureTransform fit(FeatureMatrix train);
+	}
+
+	/**Returns how many characteristics the tumors it transforms have
+	 * @return The number of characteristics before transforming
+	 */
+	int getNumFeaturesIn();
+
+	/**Returns how many characteristics it turns them into
+	 * @return The number of characteristics after transforming
+	 */
+	int getNumFeaturesOut();
+
+	/**Transforms one tumor's characteristics
+	 * @param in The array holding the tumor's characteristics
+	 * @param inOffset The position in in where they start
+	 * @param out The array to write the new characteristics into
+	 * @param outOffset The position in out to start writing at
+	 */
+	void transform(double[] in, int inOffset, double[] out, int outOffset);
+
+	/**Transforms every tumor of a FeatureMatrix
+	 * @param data The FeatureMatrix to transform (with getNumFeaturesIn
+	 * characteristics)
+	 * @return A new FeatureMatrix of the same tumors with the new
+	 * characteristics packed together, which remembers this transform
+	 */
+	default FeatureMatrix transform(FeatureMatrix data) {
+		if (data.getNumFeatures() != getNumFeaturesIn())
+			throw new IllegalArgumentException("the tumors have "
+					+ data.getNumFeatures() + " characteristics, not "
+					+ getNumFeaturesIn());
+		int numRows = data.getNumRows();
+		int numFeaturesOut = getNumFeaturesOut();
+		double[] transformed = new double[numRows * numFeaturesOut];
+		for (int r = 0; r < numRows; r++) {
+			transform(data.getData(), data.offset(r), transformed,
+					r * numFeaturesOut);
+		}
+		return data.withData(numFeaturesOut, transformed, this);
+	}
+}
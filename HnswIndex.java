@@ -0,0 +1,510 @@
+// Importing Arrays (to grow arrays) and SplittableRandom (to pick levels)
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**This class is a NeighborIndex that finds approximate nearest neighbors
+ * with a hierarchical navigable small world (HNSW) graph. Every tumor is a
+ * node linked to a few of its close neighbors; a few nodes are also put on
+ * higher levels with longer links, like express stops. A query starts at the
+ * top, hops greedily toward the query on each level, and then on the bottom
+ * level explores outward from there, keeping the efSearch closest nodes it has
+ * seen. It doesn't promise to find the true k nearest neighbors, but it looks
+ * at only a small part of the data, and raising efSearch trades speed back for
+ * recall. The three settings are:
+ *   M              how many links each node keeps on each level (twice as
+ *                  many on the bottom level)
+ *   efConstruction how many candidates are kept while linking a new node
+ *   efSearch       how many candidates are kept while answering a query
+ *
+ * New labeled tumors can be added at any time with insert, which links them
+ * into the graph without rebuilding it. Inserts must not run at the same time
+ * as queries, but any number of queries can run at once. The distances in the
+ * results are the same ones the exact search would report, and tumors at the
+ * same distance are ordered by row number, so when the graph does find the
+ * true neighbors the result is exactly the same.
+ */
+public class HnswIndex implements NeighborIndex {
+	// Initialize final ints for the default settings
+	public static final int DEFAULT_M = 16;
+	public static final int DEFAULT_EF_CONSTRUCTION = 200;
+	public static final int DEFAULT_EF_SEARCH = 50;
+
+	// Initialize a ThreadLocal that gives each thread its own working space
+	// for searching the graph
+	private static final ThreadLocal<Scratch> SCRATCH =
+		ThreadLocal.withInitial(Scratch::new);
+
+	// Initialize ints for the number of characteristics and the settings
+	private final int numFeatures, m, maxLinksBottom, efConstruction;
+	private int efSearch;
+	// Initialize a double for the factor that spreads nodes over the levels
+	private final double levelFactor;
+	// Initialize the random number generator for picking nodes' levels
+	private final SplittableRandom random;
+
+	// Initialize growable arrays for the rows in the graph: their
+	// characteristics (row after row), ID numbers and types (as bits)
+	private double[] data;
+	private int[] ids;
+	private long[] typeBits;
+	private int numRows = 0;
+	// Initialize an array for the links of each node on each of its levels:
+	// links[node][level][0] is how many links there are, and the links
+	// themselves follow it
+	private int[][][] links;
+	// Initialize ints for the node every search starts from and its level
+	private int entryPoint = -1, maxLevel = -1;
+	// Initialize a long for the version of the rows, which goes up with
+	// each insert
+	private volatile long version = 0;
+
+	/**This constructor creates an empty HnswIndex
+	 * @param numFeaturesIn How many characteristics each tumor has
+	 * @param mIn How many links each node keeps per level
+	 * @param efConstructionIn How many candidates to keep while inserting
+	 * @param efSearchIn How many candidates to keep while querying
+	 * @param seed The seed for picking the levels of new nodes
+	 */
+	public HnswIndex(int numFeaturesIn, int mIn, int efConstructionIn,
+			int efSearchIn, long seed) {
+		numFeatures = numFeaturesIn;
+		m = Math.max(2, mIn);
+		maxLinksBottom = 2 * m;
+		efConstruction = Math.max(efConstructionIn, m);
+		efSearch = efSearchIn;
+		levelFactor = 1 / Math.log(m);
+		random = new SplittableRandom(seed);
+		data = new double[16 * numFeatures];
+		ids = new int[16];
+		typeBits = new long[1];
+		links = new int[16][][];
+	}
+
+	/**This second constructor builds an HnswIndex by inserting every row of
+	 * a FeatureMatrix in order, with the default settings
+	 * @param train The FeatureMatrix of training tumors
+	 */
+	public HnswIndex(FeatureMatrix train) {
+		this(train, DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+	}
+
+	/**This third constructor builds an HnswIndex by inserting every row of
+	 * a FeatureMatrix in order
+	 * @param train The FeatureMatrix of training tumors
+	 * @param mIn How many links each node keeps per level
+	 * @param efConstructionIn How many candidates to keep while inserting
+	 * @param efSearchIn How many candidates to keep while querying
+	 */
+	public HnswIndex(FeatureMatrix train, int mIn, int efConstructionIn,
+			int efSearchIn) {
+		this(train.getNumFeatures(), mIn, efConstructionIn, efSearchIn, 42);
+		double[] trainData = train.getData();
+		for (int r = 0; r < train.getNumRows(); r++)
+			insert(trainData, train.offset(r), train.getID(r),
+					train.getType(r));
+	}
+
+	/**Makes a NeighborIndex.Builder that builds HnswIndexes with the given
+	 * settings, to hand to TrialRunner.setIndexBuilder
+	 * @param mIn How many links each node keeps per level
+	 * @param efConstructionIn How many candidates to keep while inserting
+	 * @param efSearchIn How many candidates to keep while querying
+	 * @return The NeighborIndex.Builder
+	 */
+	public static NeighborIndex.Builder builder(int mIn,
+			int efConstructionIn, int efSearchIn) {
+		return train -> new HnswIndex(train, mIn, efConstructionIn,
+				efSearchIn);
+	}
+
+	/**Sets how many candidates to keep while answering a query (more means
+	 * better recall but slower queries)
+	 * @param efSearchIn The new setting
+	 */
+	public void setEfSearch(int efSearchIn) {
+		efSearch = efSearchIn;
+	}
+
+	/**Returns the rows in the graph as a FeatureMatrix (which shares the
+	 * index's arrays, so it shouldn't be kept across inserts)
+	 * @return A FeatureMatrix of the rows, in the order they were inserted
+	 */
+	public FeatureMatrix getData() {
+		return new FeatureMatrix(numRows, numFeatures, data, ids, typeBits);
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**Adds a labeled tumor to the graph and links it to its neighbors
+	 * @param features The array holding the tumor's characteristics
+	 * @param offset The position in features where they start
+	 * @param id The tumor's ID number
+	 * @param type The tumor's type (true for malignant, false for benign)
+	 * @return The row number of the new tumor
+	 */
+	public synchronized int insert(double[] features, int offset, int id,
+			boolean type) {
+		// Make room for the new row if needed and copy it in
+		int node = numRows;
+		if (node == ids.length) {
+			int capacity = 2 * ids.length;
+			data = Arrays.copyOf(data, capacity * numFeatures);
+			ids = Arrays.copyOf(ids, capacity);
+			typeBits = Arrays.copyOf(typeBits,
+					FeatureMatrix.wordsFor(capacity));
+			links = Arrays.copyOf(links, capacity);
+		}
+		System.arraycopy(features, offset, data, node * numFeatures,
+				numFeatures);
+		ids[node] = id;
+		if (type) typeBits[node >>> 6] |= 1L << node;
+		version++;
+
+		// Pick the node's top level at random (each level up has about 1/M
+		// as many nodes) and make its empty link lists
+		int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+		links[node] = new int[level + 1][];
+		for (int l = 0; l <= level; l++)
+			links[node][l] = new int[maxLinks(l) + 1];
+		numRows++;
+
+		// The first node is just the entry point
+		if (entryPoint < 0) {
+			entryPoint = node;
+			maxLevel = level;
+			return node;
+		}
+
+		Scratch scratch = SCRATCH.get();
+		int queryOffset = node * numFeatures;
+		// Hop greedily down through the levels above the new node's top
+		int closest = entryPoint;
+		double closestDist = distSquared(data, queryOffset, closest);
+		for (int l = maxLevel; l > level; l--) {
+			greedyClosest(data, queryOffset, closest, closestDist, l, scratch);
+			closest = scratch.greedyNode;
+			closestDist = scratch.greedyDist;
+		}
+
+		// On each of the new node's levels, find efConstruction candidates
+		// and link the node to the best of them (and them back to it)
+		for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+			searchLayer(data, queryOffset, closest, closestDist,
+					efConstruction, l, scratch);
+			int count = scratch.results.drainSorted(scratch.sortedDist,
+					scratch.sortedNode);
+			int[] nodeLinks = links[node][l];
+			nodeLinks[0] = selectNeighbors(scratch.sortedNode,
+					scratch.sortedDist, count, m, nodeLinks);
+			for (int i = 1; i <= nodeLinks[0]; i++)
+				addLink(nodeLinks[i], node, l);
+			// Start the next level down from the closest candidate
+			closest = scratch.sortedNode[0];
+			closestDist = scratch.sortedDist[0];
+		}
+
+		// If the new node reaches higher than any before, start searches
+		// from it
+		if (level > maxLevel) {
+			entryPoint = node;
+			maxLevel = level;
+		}
+		return node;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		if (numRows == 0 || k <= 0) {
+			out.setSize(0);
+			return;
+		}
+		Scratch scratch = SCRATCH.get();
+		// Hop greedily down to the bottom level...
+		int closest = entryPoint;
+		double closestDist = distSquared(query, queryOffset, closest);
+		for (int l = maxLevel; l > 0; l--) {
+			greedyClosest(query, queryOffset, closest, closestDist, l,
+					scratch);
+			closest = scratch.greedyNode;
+			closestDist = scratch.greedyDist;
+		}
+		// ...then explore the bottom level keeping the efSearch (or at least
+		// k) closest nodes
+		searchLayer(query, queryOffset, closest, closestDist,
+				Math.max(efSearch, k), 0, scratch);
+		int count = scratch.results.drainSorted(scratch.sortedDist,
+				scratch.sortedNode);
+
+		// Write the k closest into out, turning the squared distances into
+		// distances
+		int size = Math.min(k, count);
+		out.setSize(size);
+		for (int n = 0; n < size; n++) {
+			int row = scratch.sortedNode[n];
+			out.set(n, ids[row], (typeBits[row >>> 6] & (1L << row)) != 0,
+					Math.sqrt(scratch.sortedDist[n]));
+		}
+	}
+
+	/**Returns the most links a node keeps on a level
+	 * @param level The level
+	 * @return The most links
+	 */
+	private int maxLinks(int level) {
+		return (level == 0) ? maxLinksBottom : m;
+	}
+
+	/**Calculates the square of the distance between a query and a row of
+	 * the graph
+	 */
+	private double distSquared(double[] query, int queryOffset, int node) {
+		return FeatureMatrix.distSquared(query, queryOffset, data,
+				node * numFeatures, numFeatures);
+	}
+
+	/**Hops from node to node on one level, always to the linked node
+	 * closest to the query, until no linked node is closer; the node it stops
+	 * at and its squared distance are left in scratch.greedyNode and
+	 * scratch.greedyDist
+	 */
+	private void greedyClosest(double[] query, int queryOffset, int start,
+			double startDist, int level, Scratch scratch) {
+		int current = start;
+		double currentDist = startDist;
+		boolean moved = true;
+		// Count the nodes compared and the hops, for PipelineMetrics
+		int compared = 0, hops = 0;
+		while (moved) {
+			moved = false;
+			int[] nodeLinks = links[current][level];
+			compared += nodeLinks[0];
+			for (int i = 1; i <= nodeLinks[0]; i++) {
+				double dist = distSquared(query, queryOffset, nodeLinks[i]);
+				if (dist < currentDist) {
+					current = nodeLinks[i];
+					currentDist = dist;
+					moved = true;
+					hops++;
+				}
+			}
+		}
+		PipelineMetrics.countScan(compared, hops);
+		scratch.greedyNode = current;
+		scratch.greedyDist = currentDist;
+	}
+
+	/**Explores one level of the graph outward from a starting node, always
+	 * expanding the closest candidate not yet expanded, and stops when that
+	 * candidate is farther than all of the ef closest nodes found so far;
+	 * those nodes are left in scratch.results (by squared distance)
+	 */
+	private void searchLayer(double[] query, int queryOffset, int start,
+			double startDist, int ef, int level, Scratch scratch) {
+		int generation = scratch.startVisit(numRows);
+		int[] visited = scratch.visited;
+		KnnHeap results = scratch.results;
+		results.reset(ef);
+		scratch.clearCandidates();
+
+		visited[start] = generation;
+		results.offer(startDist, start);
+		scratch.pushCandidate(startDist, start);
+		// Count the nodes compared and how many got into the ef closest,
+		// for PipelineMetrics
+		int compared = 0, kept = 0;
+		while (scratch.numCandidates > 0) {
+			// Take the closest candidate; if even it is farther than every
+			// kept node, nothing left can get in
+			double candidateDist = scratch.candidateDist[0];
+			int candidate = scratch.popCandidate();
+			if (candidateDist > results.worstDistance()) break;
+			// Look at each of its links that hasn't been seen yet
+			int[] nodeLinks = links[candidate][level];
+			for (int i = 1; i <= nodeLinks[0]; i++) {
+				int neighbor = nodeLinks[i];
+				if (visited[neighbor] == generation) continue;
+				visited[neighbor] = generation;
+				double dist = distSquared(query, queryOffset, neighbor);
+				compared++;
+				// If it is one of the ef closest so far, keep it and make it
+				// a candidate to expand
+				if (results.offer(dist, neighbor)) {
+					scratch.pushCandidate(dist, neighbor);
+					kept++;
+				}
+			}
+		}
+		PipelineMetrics.countScan(compared, kept);
+	}
+
+	/**Picks up to maxCount neighbors for a node from candidates sorted by
+	 * distance, skipping a candidate when it is closer to a neighbor already
+	 * picked than to the node (so the links point in different directions),
+	 * then filling any room left with the closest skipped candidates
+	 * @param candidates The candidate nodes, closest first
+	 * @param candidateDist Their squared distances from the node
+	 * @param count How many candidates there are
+	 * @param maxCount The most neighbors to pick
+	 * @param linksOut The link list to write the picked neighbors into,
+	 * starting at position 1
+	 * @return How many neighbors were picked
+	 */
+	private int selectNeighbors(int[] candidates, double[] candidateDist,
+			int count, int maxCount, int[] linksOut) {
+		int picked = 0;
+		boolean[] skipped = new boolean[count];
+		for (int i = 0; i < count && picked < maxCount; i++) {
+			int candidate = candidates[i];
+			boolean keep = true;
+			for (int j = 1; j <= picked && keep; j++) {
+				if (FeatureMatrix.distSquared(data, candidate * numFeatures,
+						data, linksOut[j] * numFeatures, numFeatures) <
+						candidateDist[i])
+					keep = false;
+			}
+			if (keep) linksOut[++picked] = candidate;
+			else skipped[i] = true;
+		}
+		for (int i = 0; i < count && picked < maxCount; i++)
+			if (skipped[i]) linksOut[++picked] = candidates[i];
+		return picked;
+	}
+
+	/**Links a node to a new neighbor on a level, and if the node then has
+	 * too many links, picks again which ones to keep
+	 * @param node The node to add the link to
+	 * @param neighbor The new neighbor
+	 * @param level The level
+	 */
+	private void addLink(int node, int neighbor, int level) {
+		int[] nodeLinks = links[node][level];
+		int maxCount = maxLinks(level);
+		if (nodeLinks[0] < maxCount) {
+			nodeLinks[++nodeLinks[0]] = neighbor;
+			return;
+		}
+		// Too many: sort all the links plus the new one by distance from
+		// the node and pick again
+		int count = nodeLinks[0] + 1;
+		int[] candidates = new int[count];
+		double[] candidateDist = new double[count];
+		for (int i = 0; i < count; i++) {
+			candidates[i] = (i < count - 1) ? nodeLinks[i + 1] : neighbor;
+			candidateDist[i] = FeatureMatrix.distSquared(data,
+					node * numFeatures, data, candidates[i] * numFeatures,
+					numFeatures);
+		}
+		// Insertion sort, since there are only about 2M links
+		for (int i = 1; i < count; i++) {
+			int c = candidates[i];
+			double d = candidateDist[i];
+			int j = i - 1;
+			while (j >= 0 && candidateDist[j] > d) {
+				candidates[j + 1] = candidates[j];
+				candidateDist[j + 1] = candidateDist[j];
+				j--;
+			}
+			candidates[j + 1] = c;
+			candidateDist[j + 1] = d;
+		}
+		nodeLinks[0] = selectNeighbors(candidates, candidateDist, count,
+				maxCount, nodeLinks);
+	}
+
+	/**This class holds the working space one thread needs to search the
+	 * graph, kept between searches so a query doesn't allocate anything once
+	 * the arrays are big enough
+	 */
+	private static class Scratch {
+		// The generation each node was last seen in (a node has been seen in
+		// this search if its entry equals the current generation)
+		int[] visited = new int[16];
+		int generation = 0;
+		// A min-heap of candidates to expand, by squared distance
+		double[] candidateDist = new double[16];
+		int[] candidateNode = new int[16];
+		int numCandidates = 0;
+		// The closest nodes found so far, and arrays to empty them into
+		KnnHeap results = new KnnHeap(16);
+		double[] sortedDist = new double[16];
+		int[] sortedNode = new int[16];
+		// Where the last greedy hop ended up
+		int greedyNode;
+		double greedyDist;
+
+		/**Starts a new search over a graph of numRows nodes, making sure
+		 * there is room to mark all of them as seen
+		 * @return The generation number marking nodes seen in this search
+		 */
+		int startVisit(int numRows) {
+			if (visited.length < numRows) {
+				visited = new int[Math.max(numRows, 2 * visited.length)];
+				generation = 0;
+			}
+			generation++;
+			// If the generation number wraps around, clear the marks
+			if (generation == 0) {
+				Arrays.fill(visited, 0);
+				generation = 1;
+			}
+			if (sortedDist.length < numRows) {
+				sortedDist = new double[visited.length];
+				sortedNode = new int[visited.length];
+			}
+			return generation;
+		}
+
+		void clearCandidates() {
+			numCandidates = 0;
+		}
+
+		/**Adds a candidate to the min-heap
+		 */
+		void pushCandidate(double dist, int node) {
+			if (numCandidates == candidateDist.length) {
+				candidateDist = Arrays.copyOf(candidateDist, 2 * numCandidates);
+				candidateNode = Arrays.copyOf(candidateNode, 2 * numCandidates);
+			}
+			int pos = numCandidates++;
+			while (pos > 0) {
+				int parent = (pos - 1) / 2;
+				if (candidateDist[parent] <= dist) break;
+				candidateDist[pos] = candidateDist[parent];
+				candidateNode[pos] = candidateNode[parent];
+				pos = parent;
+			}
+			candidateDist[pos] = dist;
+			candidateNode[pos] = node;
+		}
+
+		/**Takes the closest candidate off the min-heap
+		 * @return The closest candidate node
+		 */
+		int popCandidate() {
+			int top = candidateNode[0];
+			numCandidates--;
+			double dist = candidateDist[numCandidates];
+			int node = candidateNode[numCandidates];
+			int pos = 0;
+			while (2 * pos + 1 < numCandidates) {
+				int child = 2 * pos + 1;
+				if (child + 1 < numCandidates &&
+						candidateDist[child + 1] < candidateDist[child])
+					child++;
+				if (candidateDist[child] >= dist) break;
+				candidateDist[pos] = candidateDist[child];
+				candidateNode[pos] = candidateNode[child];
+				pos = child;
+			}
+			candidateDist[pos] = dist;
+			candidateNode[pos] = node;
+			return top;
+		}
+	}
+} // End of class
@@ -0,0 +1,99 @@
+// Importing classes for IO (to read file) and Scanner
+import java.io.*;
+import java.util.Scanner;
+
+/**This class shows how the settings of an HnswIndex trade recall for speed.
+ * For several values of M and efSearch it runs the 100 trials of
+ * NearestNeighbor.Accuracy100Trials on the data file with an HnswIndex and
+ * reports the accuracy and the recall against the exact search, then times
+ * queries against a large data set made from the data file with
+ * SyntheticData, where an approximate index actually pays off, and reports the
+ * recall and the time per query there next to the time for a linear scan.
+ */
+public class HnswRecallReport {
+
+	/**Main method for the HnswRecallReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally the value of k and the size of
+	 * the large data set
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int largeSize = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+		final int[] M_VALUES = {4, 8, 16};
+		final int[] EF_SEARCH_VALUES = {5, 10, 20, 50, 100};
+		final int NUM_OF_QUERIES = 500;
+		final long SEED = 1;
+
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(fileName);
+		FeatureMatrix large = SyntheticData.scale(data, largeSize, 2);
+		FeatureMatrix queries = SyntheticData.scale(data, NUM_OF_QUERIES, 3);
+
+		// Time the exact linear scan on the large data set for comparison
+		LinearScanIndex scan = new LinearScanIndex(large);
+		IndexTradeoffReport.timeQueries(scan, queries, k);
+		double scanMicros = IndexTradeoffReport.timeQueries(scan, queries, k);
+		double[] exactAccuracy =
+			NearestNeighbor.Accuracy100Trials(data, k, SEED);
+		System.out.println("k = " + k + "; exact search: " +
+				exactAccuracy[0] + "% accurate on " + fileName + ", " +
+				String.format("%.2f", scanMicros) + " us/query on " +
+				largeSize + " rows");
+		System.out.println(String.format("%4s %9s %12s %12s %12s %14s",
+				"M", "efSearch", "accuracy %", "recall %", "large rec %",
+				"large us/q"));
+
+		for (int m : M_VALUES) {
+			// Build the index over the large data set once for each M
+			HnswIndex index = new HnswIndex(large, m,
+					HnswIndex.DEFAULT_EF_CONSTRUCTION, EF_SEARCH_VALUES[0]);
+			for (int efSearch : EF_SEARCH_VALUES) {
+				// Accuracy and recall over the 100 trials on the data file
+				double[] results = NearestNeighbor.Accuracy100Trials(data, k,
+						SEED, HnswIndex.builder(m,
+								HnswIndex.DEFAULT_EF_CONSTRUCTION, efSearch));
+				// Recall and speed on the large data set
+				index.setEfSearch(efSearch);
+				IndexTradeoffReport.timeQueries(index, queries, k);
+				double micros =
+					IndexTradeoffReport.timeQueries(index, queries, k);
+				System.out.println(String.format(
+						"%4d %9d %12.2f %12.2f %12.2f %14.2f", m, efSearch,
+						results[0], results[4],
+						recall(index, scan, queries, k), micros));
+			}
+		}
+	} // End of main method
+
+	/**Measures what percent of the true nearest neighbors an index finds
+	 * for every row of a FeatureMatrix of queries
+	 * @param index The NeighborIndex to check
+	 * @param exact An exact NeighborIndex over the same rows
+	 * @param queries The FeatureMatrix of query tumors
+	 * @param k How many nearest neighbors to find
+	 * @return The recall as a percentage
+	 */
+	static double recall(NeighborIndex index, NeighborIndex exact,
+			FeatureMatrix queries, int k) {
+		AccuracyTally tally = new AccuracyTally();
+		NeighborResult found = new NeighborResult(k);
+		NeighborResult trueNeighbors = new NeighborResult(k);
+		for (int q = 0; q < queries.getNumRows(); q++) {
+			index.kNearest(queries.getData(), queries.offset(q), k, found);
+			exact.kNearest(queries.getData(), queries.offset(q), k,
+					trueNeighbors);
+			tally.recordRecall(found, trueNeighbors);
+		}
+		return tally.getRecall();
+	}
+} // End of class
@@ -0,0 +1,112 @@
+// Importing classes for IO (to read file) and Scanner
+import java.io.*;
+import java.util.Scanner;
+
+/**This class reports when it pays to build a BallTree instead of scanning
+ * every training row for each query. For data sets of several sizes (made
+ * from the data file with SyntheticData), it times building the tree and
+ * times the same queries answered by a LinearScanIndex and by the BallTree,
+ * checks that both give the same neighbors, and prints how many queries it
+ * takes for the time saved per query to pay back the time spent building.
+ */
+public class IndexTradeoffReport {
+
+	/**Main method for the IndexTradeoffReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally the value of k and the sizes
+	 * of data set to try
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int[] sizes = {569, 5000, 50000, 200000};
+		if (args.length > 2) {
+			sizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				sizes[i - 2] = Integer.parseInt(args[i]);
+		}
+		final int NUM_OF_QUERIES = 500;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		// The queries are noisy copies of the real tumors
+		FeatureMatrix queries = SyntheticData.scale(base, NUM_OF_QUERIES, 1);
+
+		System.out.println("k = " + k + ", " + NUM_OF_QUERIES +
+				" queries per size");
+		System.out.println(String.format("%10s %12s %14s %14s %9s %12s",
+				"rows", "build (ms)", "scan (us/q)", "tree (us/q)",
+				"speedup", "break-even"));
+		for (int size : sizes) {
+			FeatureMatrix train = SyntheticData.scale(base, size, 2);
+
+			// Time building the tree (the scan has nothing to build)
+			long start = System.nanoTime();
+			BallTree tree = new BallTree(train);
+			double buildMillis = (System.nanoTime() - start) / 1e6;
+			LinearScanIndex scan = new LinearScanIndex(train);
+
+			// Run the queries once through each index first so the JIT
+			// compiler has done its work before we time them
+			timeQueries(scan, queries, k);
+			timeQueries(tree, queries, k);
+			double scanMicros = timeQueries(scan, queries, k);
+			double treeMicros = timeQueries(tree, queries, k);
+			boolean same = sameNeighbors(scan, tree, queries, k);
+
+			// The number of queries after which building the tree has paid
+			// for itself
+			String breakEven = (treeMicros < scanMicros) ?
+				String.valueOf((long) Math.ceil(buildMillis * 1000 /
+						(scanMicros - treeMicros))) : "never";
+			System.out.println(String.format(
+					"%10d %12.2f %14.2f %14.2f %8.1fx %12s%s", size,
+					buildMillis, scanMicros, treeMicros,
+					scanMicros / treeMicros, breakEven,
+					same ? "" : "  (NEIGHBORS DIFFER)"));
+		}
+	} // End of main method
+
+	/**Times answering every row of a FeatureMatrix of queries with an index
+	 * @param index The NeighborIndex to query
+	 * @param queries The FeatureMatrix of query tumors
+	 * @param k How many nearest neighbors to find
+	 * @return The average time per query in microseconds
+	 */
+	static double timeQueries(NeighborIndex index, FeatureMatrix queries,
+			int k) {
+		NeighborResult out = new NeighborResult(k);
+		long start = System.nanoTime();
+		for (int q = 0; q < queries.getNumRows(); q++)
+			index.kNearest(queries.getData(), queries.offset(q), k, out);
+		return (System.nanoTime() - start) / 1e3 / queries.getNumRows();
+	}
+
+	/**Checks that two indexes give exactly the same neighbors for every row
+	 * of a FeatureMatrix of queries
+	 * @return True if all the neighbors are the same
+	 */
+	static boolean sameNeighbors(NeighborIndex a, NeighborIndex b,
+			FeatureMatrix queries, int k) {
+		NeighborResult outA = new NeighborResult(k);
+		NeighborResult outB = new NeighborResult(k);
+		for (int q = 0; q < queries.getNumRows(); q++) {
+			a.kNearest(queries.getData(), queries.offset(q), k, outA);
+			b.kNearest(queries.getData(), queries.offset(q), k, outB);
+			if (outA.size() != outB.size()) return false;
+			for (int n = 0; n < outA.size(); n++)
+				if (outA.getID(n) != outB.getID(n) ||
+						outA.getDistance(n) != outB.getDistance(n))
+					return false;
+		}
+		return true;
+	}
+} // End of class
@@ -0,0 +1,250 @@
+// Importing the collections the parsed values are put in
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**This class reads JSON text (for DiagnosisServer, which takes tumors as
+ * JSON) into plain Java objects: an object becomes a Map from its names to
+ * its values (in the order they were written), an array becomes a List, a
+ * number becomes a Double, a string becomes a String, true and false become
+ * Booleans, and null becomes null. It only reads, and it reads the whole
+ * text at once, which is all the server needs. Objects and arrays can only
+ * be nested MAX_DEPTH deep, so text from a client can't make it run out of
+ * stack.
+ */
+public class JsonReader {
+	// Initialize the most objects and arrays that can be inside each other
+	public static final int MAX_DEPTH = 64;
+	// Initialize the text being read, the position in it and how many
+	// objects and arrays the position is inside
+	private final String text;
+	private int pos = 0;
+	private int depth = 0;
+
+	/**This constructor is private: use parse
+	 */
+	private JsonReader(String textIn) {
+		text = textIn;
+	}
+
+	/**Reads a JSON value that takes up the whole of some text (apart from
+	 * spaces around it)
+	 * @param text The JSON text
+	 * @return The value, as described for the class
+	 * @throws IllegalArgumentException If the text isn't JSON
+	 */
+	public static Object parse(String text) {
+		JsonReader reader = new JsonReader(text);
+		Object value = reader.readValue();
+		reader.skipSpaces();
+		if (reader.pos < text.length())
+			throw reader.error("more text after the end of the value");
+		return value;
+	}
+
+	/**Reads the value at the position
+	 * @return The value
+	 */
+	private Object readValue() {
+		skipSpaces();
+		if (pos >= text.length()) throw error("the text ends too early");
+		char c = text.charAt(pos);
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			expectWord("true");
+			return Boolean.TRUE;
+		case 'f':
+			expectWord("false");
+			return Boolean.FALSE;
+		case 'n':
+			expectWord("null");
+			return null;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+			throw error("unexpected '" + c + "'");
+		}
+	}
+
+	/**Reads an object, starting at its '{'
+	 * @return The Map of its names to their values
+	 */
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		enter();
+		pos++;
+		skipSpaces();
+		if (peek() == '}') {
+			pos++;
+			depth--;
+			return object;
+		}
+		// While loop to read each name and value, until the '}'
+		while (true) {
+			skipSpaces();
+			if (peek() != '"') throw error("expected a name in quotes");
+			String name = readString();
+			skipSpaces();
+			expect(':');
+			object.put(name, readValue());
+			skipSpaces();
+			if (peek() == ',') pos++;
+			else {
+				expect('}');
+				depth--;
+				return object;
+			}
+		}
+	}
+
+	/**Reads an array, starting at its '['
+	 * @return The List of its values
+	 */
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<>();
+		enter();
+		pos++;
+		skipSpaces();
+		if (peek() == ']') {
+			pos++;
+			depth--;
+			return array;
+		}
+		// While loop to read each value, until the ']'
+		while (true) {
+			array.add(readValue());
+			skipSpaces();
+			if (peek() == ',') pos++;
+			else {
+				expect(']');
+				depth--;
+				return array;
+			}
+		}
+	}
+
+	/**Counts going into an object or array
+	 * @throws IllegalArgumentException If that is more than MAX_DEPTH deep
+	 */
+	private void enter() {
+		if (++depth > MAX_DEPTH)
+			throw error("objects and arrays are nested more than "
+					+ MAX_DEPTH + " deep");
+	}
+
+	/**Reads a string, starting at its opening quote, and turns its escapes
+	 * back into the characters they stand for
+	 * @return The String
+	 */
+	private String readString() {
+		StringBuilder string = new StringBuilder();
+		pos++;
+		while (true) {
+			if (pos >= text.length()) throw error("a string isn't closed");
+			char c = text.charAt(pos++);
+			if (c == '"') return string.toString();
+			if (c != '\\') {
+				string.append(c);
+				continue;
+			}
+			if (pos >= text.length()) throw error("a string isn't closed");
+			char escaped = text.charAt(pos++);
+			switch (escaped) {
+			case 'b':
+				string.append('\b');
+				break;
+			case 'f':
+				string.append('\f');
+				break;
+			case 'n':
+				string.append('\n');
+				break;
+			case 'r':
+				string.append('\r');
+				break;
+			case 't':
+				string.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > text.length())
+					throw error("a \\u escape is cut off");
+				try {
+					string.append((char) Integer.parseInt(
+							text.substring(pos, pos + 4), 16));
+				}
+				catch (NumberFormatException e) {
+					throw error("a \\u escape isn't 4 hex digits");
+				}
+				pos += 4;
+				break;
+			default:
+				// \" \\ and \/ stand for the character itself
+				string.append(escaped);
+			}
+		}
+	}
+
+	/**Reads a number
+	 * @return The number as a Double
+	 */
+	private Double readNumber() {
+		int begin = pos;
+		while (pos < text.length()
+				&& "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+			pos++;
+		try {
+			return Double.valueOf(text.substring(begin, pos));
+		}
+		catch (NumberFormatException e) {
+			pos = begin;
+			throw error("a number isn't in the right form");
+		}
+	}
+
+	/**Checks that a word (true, false or null) is at the position and
+	 * steps over it
+	 * @param word The word
+	 */
+	private void expectWord(String word) {
+		if (!text.startsWith(word, pos)) throw error("expected " + word);
+		pos += word.length();
+	}
+
+	/**Checks that a character is at the position and steps over it
+	 * @param c The character
+	 */
+	private void expect(char c) {
+		if (peek() != c) throw error("expected '" + c + "'");
+		pos++;
+	}
+
+	/**Returns the character at the position, or 0 at the end of the text
+	 * @return The character
+	 */
+	private char peek() {
+		return (pos < text.length()) ? text.charAt(pos) : 0;
+	}
+
+	/**Moves the position past any spaces, tabs and line breaks
+	 */
+	private void skipSpaces() {
+		while (pos < text.length()
+				&& Character.isWhitespace(text.charAt(pos)))
+			pos++;
+	}
+
+	/**Makes an exception saying what was wrong and where
+	 * @param problem What was wrong
+	 * @return The IllegalArgumentException
+	 */
+	private IllegalArgumentException error(String problem) {
+		return new IllegalArgumentException("bad JSON at character " + pos
+				+ ": " + problem);
+	}
+} // End of class
@@ -1,23 +1,32 @@
-// Importing classes for Scanner and IO (to read file)
+// Importing classes for Scanner, SplittableRandom (to pick a seed) and IO
+// (to read file)
 import java.io.*;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 /**
  * This class runs the k-nearest neighbor algorithm using three values for k:
  * 3, 5, and 7 for the three, five, and seven nearest neighbors. It runs 100 
- * times for each value of k on test data obtained from NearestNeighbor.import
- * on a file, using 80% of the data each time as training data and the remaining 20%
- * to check accuracy, and reports the accuracy for each value of k.
+ * times on test data obtained from NearestNeighbor.import on a file, using
+ * 80% of the data each time as training data and the remaining 20% to check
+ * accuracy, and reports the accuracy for each value of k. All three values of
+ * k are tested in the same 100 trials, from one search for the seven nearest
+ * neighbors of each testing tumor.
  */
 public class KNearestNeighborTest {
 
 	/**
 	 * @param args The command line arguments for the method (there should be
-	 * none)
+	 * none, or one: a seed for the random splits, so that a run can be
+	 * repeated exactly)
 	 * @throws IOException This exception gets thrown by the call to 
 	 * NearestNeighbor.import if the file name passed to it is not good.
 	 */
 	public static void main(String[] args) throws IOException {
+		// Uses the seed for the random splits from the command line if there
+		// is one, or picks one at random otherwise
+		long seed = (args.length > 0) ? Long.parseLong(args[0]) : 
+			new SplittableRandom().nextLong();
 		// Asks user for a file name
 		System.out.println("Please provide a file name for the data file to " +
 				"use.");
@@ -36,25 +45,29 @@ public class KNearestNeighborTest {
 			try {
 				// Tells the user it is importing the file
 				System.out.println("Importing file...");
-				// Runs the Import method from the NearestNeighbor class with
-				// the fileName provided by user. If there is an exception here
-				// it will jump to the catch block and ask the user to try 
-				// again. 
-				Tumor[] tListIn = NearestNeighbor.Import(fileName);
+				// Runs the ImportMatrix method from the NearestNeighbor class
+				// with the fileName provided by user, which reads the file 
+				// into a FeatureMatrix. If there is an exception here it will
+				// jump to the catch block and ask the user to try again. 
+				FeatureMatrix tumorData = 
+					NearestNeighbor.ImportMatrix(fileName);
 				
-				// For loop to try multiple values of k (nearest neighbors)
-				for (int numNeighbors=3; numNeighbors <= 7; numNeighbors += 2)
+				// Tells the user it is testing for the nearest 3, 5 and 7
+				// neighbors
+				int[] ks = {3, 5, 7};
+				System.out.println("Testing accuracy for the nearest 3, 5 " +
+						"and 7 neighbors...\n");
+				// Stores the results arrays of the Accuracy100Trials method
+				// for all three values of k in a creatively named new array
+				double[][] allResults = 
+					NearestNeighbor.Accuracy100Trials(tumorData, ks, seed);
+				
+				// For loop to report multiple values of k (nearest
+				// neighbors)
+				for (int i = 0; i < ks.length; i++)
 				{
-					// Tells the user it is testing for the nearest 
-					// numNeighbors neighbors (will be 3, 5, and 7)
-					System.out.println("Testing accuracy for the nearest " +
-							numNeighbors + " neighbors (k = " + numNeighbors +
-							")...");
-					// Stores the results array of the Accuracy100Trials method
-					// in a creatively named new array of doubles
-					double[] results = 
-						NearestNeighbor.Accuracy100Trials(tListIn, 
-								numNeighbors);
+					int numNeighbors = ks[i];
+					double[] results = allResults[i];
 					// Prints the overall accuracy of the algorithm for this
 					// value of k
 					System.out.println("Nearest Neighbor with nearest " +
@@ -72,13 +85,21 @@ public class KNearestNeighborTest {
 					// were not unanimous
 					System.out.println("when they were not unanimous, it " +
 							"was " + results[3] + "% accurate.\n");
-				} // End of for loop to try multiple values of k
+				} // End of for loop to report multiple values of k
 				// Sets again to false since we made it through the program 
 				// without an exception and we don't want to try again
 				again = false;
 			} // End of try block
 			
 			// If there is an exception, asks user to try again
+			catch(MalformedDataException e){
+				// Tells the user which line of the file was wrong and asks
+				// for a new file name
+				System.out.println(e.getMessage());
+				System.out.println("Please try again with a correctly " +
+						"formatted file.");
+				fileName = keyboard.next();
+			}
 			catch(IOException e){
 				// Asks user for new file name
 				System.out.println("Please try again with correct input " +
@@ -0,0 +1,205 @@
+// Importing the classes for running a batch in parallel
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**This class diagnoses new tumors with the k-nearest neighbor algorithm:
+ * it holds a NeighborIndex over the training tumors (built once) and, for
+ * each new tumor, finds its k nearest neighbors and has them vote. Tumors
+ * can be diagnosed one at a time or a batch at a time; a batch is split up
+ * and run in parallel on a ForkJoinPool, the same way TrialRunner runs the
+ * testing tumors of a trial, and each thread reuses its own NeighborResult
+ * from NeighborScratch, so diagnosing a batch into reused Diagnosis objects
+ * doesn't allocate anything per tumor. If the training tumors were
+ * transformed (by a FeatureScaler, say), each new tumor is transformed the
+ * same way first. A DiagnosisCache can be put in front of the searches with
+ * setCache, so a tumor that was diagnosed recently isn't searched for again.
+ * The searches and votes are timed in PipelineMetrics.
+ */
+public class KnnClassifier {
+	// Initialize a final int for the fewest tumors of a batch worth giving
+	// to a task of their own
+	private static final int MIN_ROWS_PER_TASK = 16;
+
+	// Initialize the index over the training tumors, k, and the pool to run
+	// batches on
+	private final NeighborIndex index;
+	private final int k;
+	private final ForkJoinPool pool;
+	// Initialize the FeatureTransform the training tumors were transformed
+	// with (null if they weren't)
+	private final FeatureTransform transform;
+	// Initialize the DiagnosisCache to look tumors up in first (null if
+	// there isn't one)
+	private DiagnosisCache cache = null;
+
+	/**This constructor creates a KnnClassifier that runs batches on the
+	 * common ForkJoinPool
+	 * @param indexIn The index over the training tumors
+	 * @param kIn How many nearest neighbors vote on each tumor
+	 */
+	public KnnClassifier(NeighborIndex indexIn, int kIn) {
+		this(indexIn, kIn, ForkJoinPool.commonPool());
+	}
+
+	/**This constructor creates a KnnClassifier that runs batches on a given
+	 * ForkJoinPool
+	 * @param indexIn The index over the training tumors
+	 * @param kIn How many nearest neighbors vote on each tumor
+	 * @param poolIn The pool to run batches on
+	 */
+	public KnnClassifier(NeighborIndex indexIn, int kIn, ForkJoinPool poolIn) {
+		index = indexIn;
+		k = kIn;
+		pool = poolIn;
+		transform = index.getTransform();
+	}
+
+	/**This simple accessor method returns k
+	 * @return How many nearest neighbors vote on each tumor
+	 */
+	public int getK() {
+		return k;
+	}
+
+	/**Puts a DiagnosisCache in front of the searches (or takes it away)
+	 * @param cacheIn The DiagnosisCache, or null for none
+	 */
+	public void setCache(DiagnosisCache cacheIn) {
+		cache = cacheIn;
+	}
+
+	/**This simple accessor method returns the DiagnosisCache
+	 * @return The DiagnosisCache, or null if there isn't one
+	 */
+	public DiagnosisCache getCache() {
+		return cache;
+	}
+
+	/**Diagnoses one tumor
+	 * @param query The array holding the tumor's characteristics (as they
+	 * were read, even if the training tumors were transformed)
+	 * @param queryOffset The position in query where they start
+	 * @param id The ID number of the tumor
+	 * @param out The Diagnosis to fill in
+	 */
+	public void classify(double[] query, int queryOffset, int id,
+			Diagnosis out) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		NeighborResult neighbors = scratch.result();
+		if (transform != null) {
+			double[] transformed =
+				scratch.query(transform.getNumFeaturesOut());
+			transform.transform(query, queryOffset, transformed, 0);
+			query = transformed;
+			queryOffset = 0;
+		}
+		int length = index.getNumFeatures();
+		DiagnosisCache cache = this.cache;
+		long version = index.getVersion();
+		if (cache != null && cache.lookup(query, queryOffset, length, k,
+				version, id, out))
+			return;
+		long start = PipelineMetrics.start();
+		PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+		index.kNearest(query, queryOffset, k, neighbors);
+		PipelineMetrics.recordQueries(start, 1, event);
+		int numMalignant = neighbors.countMalignant();
+		out.set(id, numMalignant, neighbors.size() - numMalignant);
+		if (cache != null)
+			cache.store(query, queryOffset, length, k, version, neighbors);
+	}
+
+	/**Diagnoses every tumor in a batch, in parallel
+	 * @param batch The tumors to diagnose
+	 * @param out The Diagnosis objects to fill in, one for each row of batch
+	 * (there must be at least batch.getNumRows() of them)
+	 */
+	public void classifyBatch(FeatureMatrix batch, Diagnosis[] out) {
+		// Transform the whole batch at once unless it already has been
+		if (transform != null && batch.getTransform() != transform) {
+			long start = PipelineMetrics.start();
+			PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+			batch = transform.transform(batch);
+			PipelineMetrics.stop(PipelineMetrics.TRANSFORM, start, event);
+		}
+		DiagnosisCache cache = this.cache;
+		if (cache == null) {
+			pool.invoke(new ClassifyTask(batch, out, 0, batch.getNumRows(),
+					null, 0));
+			return;
+		}
+
+		// Look every tumor up first and only search for the ones that
+		// weren't found, as a smaller batch, whose tasks remember what they
+		// find
+		long version = index.getVersion();
+		double[] data = batch.getData();
+		int length = batch.getNumFeatures();
+		int[] missed = new int[batch.getNumRows()];
+		int numMissed = 0;
+		for (int r = 0; r < batch.getNumRows(); r++) {
+			if (!cache.lookup(data, batch.offset(r), length, k, version,
+					batch.getID(r), out[r]))
+				missed[numMissed++] = r;
+		}
+		if (numMissed == 0) return;
+		FeatureMatrix misses = batch.subset(missed, 0, numMissed);
+		Diagnosis[] missOut = new Diagnosis[numMissed];
+		for (int i = 0; i < numMissed; i++) missOut[i] = out[missed[i]];
+		pool.invoke(new ClassifyTask(misses, missOut, 0, numMissed, cache,
+				version));
+	}
+
+	/**A task that diagnoses a range of rows of a batch, splitting the range
+	 * in half and running the halves in parallel until it is small, and
+	 * remembers the neighbors it finds in a DiagnosisCache if it is given one
+	 */
+	private class ClassifyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final FeatureMatrix batch;
+		private final Diagnosis[] out;
+		private final int from, to;
+		private final DiagnosisCache cache;
+		private final long version;
+
+		ClassifyTask(FeatureMatrix batch, Diagnosis[] out, int from, int to,
+				DiagnosisCache cache, long version) {
+			this.batch = batch;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.cache = cache;
+			this.version = version;
+		}
+
+		protected void compute() {
+			// If the range is small, find the neighbors of all of its rows
+			// at once and have them vote
+			if (to - from <= MIN_ROWS_PER_TASK) {
+				NeighborResult[] neighbors =
+					NeighborScratch.forCurrentThread().results(to - from);
+				long start = PipelineMetrics.start();
+				PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+				index.kNearestBatch(batch, from, to, k, neighbors);
+				PipelineMetrics.recordQueries(start, to - from, event);
+				start = PipelineMetrics.start();
+				event = PipelineMetrics.beginEvent();
+				for (int r = from; r < to; r++) {
+					int numMalignant = neighbors[r - from].countMalignant();
+					out[r].set(batch.getID(r), numMalignant,
+							neighbors[r - from].size() - numMalignant);
+					if (cache != null)
+						cache.store(batch.getData(), batch.offset(r),
+								batch.getNumFeatures(), k, version,
+								neighbors[r - from]);
+				}
+				PipelineMetrics.stop(PipelineMetrics.VOTE, start, event);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ClassifyTask(batch, out, from, middle, cache,
+					version),
+					new ClassifyTask(batch, out, middle, to, cache, version));
+		}
+	}
+} // End of class
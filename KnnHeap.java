@@ -0,0 +1,224 @@
+/**This class keeps the k closest tumors seen so far during a search for
+ * nearest neighbors. It is a max-heap ordered by distance (ties broken by
+ * row number, so the farther or later tumor counts as "bigger"), which means
+ * the farthest of the k tumors is always on top and can be thrown out as soon
+ * as something closer comes along. The heap only stores each tumor's
+ * distance and row number in arrays of primitives, and those arrays are kept
+ * between searches, so a KnnHeap that is reused doesn't allocate anything.
+ */
+public class KnnHeap {
+	// Initialize arrays for the distances and row numbers of the tumors in
+	// the heap
+	private double[] heapDist;
+	private int[] heapIndex;
+	// Initialize integers for the number of tumors the heap keeps (k) and
+	// the number it holds right now
+	private int capacity;
+	private int size;
+
+	/**This constructor creates an empty KnnHeap with room for k tumors
+	 * @param k How many of the closest tumors to keep
+	 */
+	public KnnHeap(int k) {
+		heapDist = new double[Math.max(k, 1)];
+		heapIndex = new int[Math.max(k, 1)];
+		capacity = k;
+		size = 0;
+	}
+
+	/**Empties the heap so it can be used for a new search, making room for
+	 * more tumors if k is bigger than it was before
+	 * @param k How many of the closest tumors to keep in the new search
+	 * @return True if the heap already had room, false if it had to grow
+	 */
+	public boolean reset(int k) {
+		boolean hadRoom = k <= heapDist.length;
+		if (!hadRoom) {
+			heapDist = new double[k];
+			heapIndex = new int[k];
+		}
+		capacity = k;
+		size = 0;
+		return hadRoom;
+	}
+
+	/**This simple accessor method returns how many tumors are in the heap
+	 * @return The number of tumors in the heap
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**Checks whether the heap already holds k tumors
+	 * @return True if the heap is full
+	 */
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	/**Returns the distance a new tumor has to beat to get into the heap:
+	 * the distance of the farthest tumor in the heap if the heap is full, or
+	 * infinity if it isn't
+	 * @return The distance of the farthest tumor kept, or infinity
+	 */
+	public double worstDistance() {
+		return (size >= capacity) ?
+				((capacity == 0) ? -1 : heapDist[0]) : Double.POSITIVE_INFINITY;
+	}
+
+	/**Offers a tumor to the heap, which keeps it if the heap isn't full or
+	 * if it is closer than the farthest tumor in the heap (which is then
+	 * thrown out). Tumors have to be offered in order of row number for ties
+	 * to be broken the same way as a stable sort would break them.
+	 * @param dist The distance of the tumor
+	 * @param index The row number of the tumor
+	 * @return True if the tumor was kept
+	 */
+	public boolean offer(double dist, int index) {
+		if (size < capacity) {
+			siftUp(size, dist, index);
+			size++;
+			return true;
+		}
+		else if (capacity > 0 && isFarther(heapDist[0], heapIndex[0], dist,
+				index)) {
+			siftDown(size, dist, index);
+			return true;
+		}
+		return false;
+	}
+
+	/**Takes all the tumors out of the heap and writes them into two arrays
+	 * in order from closest to farthest, leaving the heap empty
+	 * @param distOut The array to write the distances into
+	 * @param indexOut The array to write the row numbers into
+	 * @return How many tumors were written
+	 */
+	public int drainSorted(double[] distOut, int[] indexOut) {
+		return drainSorted(distOut, indexOut, 0);
+	}
+
+	/**Takes all the tumors out of the heap and writes them into two arrays
+	 * in order from closest to farthest, starting at a given position,
+	 * leaving the heap empty
+	 * @param distOut The array to write the distances into
+	 * @param indexOut The array to write the row numbers into
+	 * @param offset The position in the arrays to write the closest tumor at
+	 * @return How many tumors were written
+	 */
+	public int drainSorted(double[] distOut, int[] indexOut, int offset) {
+		int count = size;
+		// Take the farthest tumor off the top each time and fill the arrays
+		// in from the back
+		for (int n = count - 1; n >= 0; n--) {
+			distOut[offset + n] = heapDist[0];
+			indexOut[offset + n] = heapIndex[0];
+			// Move the last tumor in the heap to the top and move it down to
+			// where it belongs in the (now smaller) heap
+			siftDown(n, heapDist[n], heapIndex[n]);
+		}
+		size = 0;
+		return count;
+	}
+
+	/**Takes all the tumors out of the heap and writes them into a
+	 * NeighborResult in order from closest to farthest, looking up their ID
+	 * numbers and types in the tumors that were searched (a FeatureMatrix or
+	 * a MappedDataset), leaving the heap empty. The distances kept in the
+	 * heap are written as they are.
+	 * @param train The tumors the row numbers refer to
+	 * @param out The NeighborResult to write into
+	 */
+	public void drainInto(TumorLabels train, NeighborResult out) {
+		int count = size;
+		out.setSize(count);
+		for (int n = count - 1; n >= 0; n--) {
+			int row = heapIndex[0];
+			out.set(n, train.getID(row), train.getType(row), heapDist[0]);
+			siftDown(n, heapDist[n], heapIndex[n]);
+		}
+		size = 0;
+	}
+
+	/**Takes all the tumors out of the heap and writes them into a
+	 * NeighborResult like drainInto, for a heap that was given squared
+	 * distances: the square root is only taken here, for the k tumors that
+	 * are actually returned
+	 * @param train The tumors the row numbers refer to
+	 * @param out The NeighborResult to write into
+	 */
+	public void drainRootsInto(TumorLabels train, NeighborResult out) {
+		int count = size;
+		out.setSize(count);
+		for (int n = count - 1; n >= 0; n--) {
+			int row = heapIndex[0];
+			out.set(n, train.getID(row), train.getType(row),
+					Math.sqrt(heapDist[0]));
+			siftDown(n, heapDist[n], heapIndex[n]);
+		}
+		size = 0;
+	}
+
+	/**Checks whether the tumor at distance distA and row indexA should come
+	 * after the tumor at distance distB and row indexB when the tumors are
+	 * ordered by distance (ties are broken by row number)
+	 * @return True if tumor A is farther than tumor B
+	 */
+	static boolean isFarther(double distA, int indexA, double distB,
+			int indexB) {
+		return distA > distB || (distA == distB && indexA > indexB);
+	}
+
+	/**Puts a tumor at position pos of the heap and moves it up toward the
+	 * top until its parent is farther than it is
+	 * @param pos The position to start the new tumor at (the end of the heap)
+	 * @param dist The distance of the new tumor
+	 * @param index The row number of the new tumor
+	 */
+	private void siftUp(int pos, double dist, int index) {
+		// While the new tumor isn't at the top and is farther than its parent,
+		// move the parent down into its place
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!isFarther(dist, index, heapDist[parent], heapIndex[parent]))
+				break;
+			heapDist[pos] = heapDist[parent];
+			heapIndex[pos] = heapIndex[parent];
+			pos = parent;
+		}
+		// Put the new tumor where it belongs
+		heapDist[pos] = dist;
+		heapIndex[pos] = index;
+	}
+
+	/**Puts a tumor at the top of the first n positions of the heap,
+	 * replacing the tumor that was there, and moves it down until both of its
+	 * children are closer than it is
+	 * @param n How many positions of the heap are in use
+	 * @param dist The distance of the new tumor
+	 * @param index The row number of the new tumor
+	 */
+	private void siftDown(int n, double dist, int index) {
+		int pos = 0;
+		// While the new tumor has at least one child...
+		while (2 * pos + 1 < n) {
+			// ...pick the farther of its children...
+			int child = 2 * pos + 1;
+			if (child + 1 < n && isFarther(heapDist[child + 1],
+					heapIndex[child + 1], heapDist[child], heapIndex[child]))
+				child++;
+			// ...and stop if the new tumor is farther than that child
+			if (!isFarther(heapDist[child], heapIndex[child], dist, index))
+				break;
+			// Otherwise move the child up into the new tumor's place
+			heapDist[pos] = heapDist[child];
+			heapIndex[pos] = heapIndex[child];
+			pos = child;
+		}
+		// Put the new tumor where it belongs
+		if (n > 0) {
+			heapDist[pos] = dist;
+			heapIndex[pos] = index;
+		}
+	}
+} // End of class
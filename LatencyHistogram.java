@@ -0,0 +1,123 @@
+// Importing the atomic classes the counts are kept in, so threads can record
+// at the same time
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**This class counts how long things took (in nanoseconds) in buckets, so
+ * percentiles of the times can be read off without keeping every time, the
+ * way HdrHistogram does. Times below 64 ns each get a bucket of their own;
+ * above that, every doubling of the time (64 to 127, 128 to 255, and so on)
+ * is split into 32 equal buckets, so a time is always known to within about
+ * 3% however big it is, and the whole range of a long fits in fewer than
+ * 2,000 buckets. Recording is one atomic add, and any number of threads can
+ * record at once.
+ */
+public class LatencyHistogram {
+	// Initialize final ints for how many bits of each time are kept and how
+	// many buckets that makes
+	private static final int SUB_BITS = 5;
+	private static final int HALF = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * HALF + HALF;
+
+	// Initialize the count in each bucket, the number of times and their
+	// total, and the longest time
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**Records a time
+	 * @param nanos The time in nanoseconds (a negative one counts as 0)
+	 */
+	public void record(long nanos) {
+		record(nanos, 1);
+	}
+
+	/**Records the same time several times over (for the queries of a batch,
+	 * which all took the batch's time divided between them)
+	 * @param nanos The time in nanoseconds (a negative one counts as 0)
+	 * @param count How many times to record it
+	 */
+	public void record(long nanos, long count) {
+		if (count <= 0) return;
+		nanos = Math.max(0, nanos);
+		counts.addAndGet(bucketOf(nanos), count);
+		total.add(count);
+		sum.add(nanos * count);
+		max.accumulate(nanos);
+	}
+
+	/**Finds the bucket a time goes in
+	 * @param nanos The time, at least 0
+	 * @return The bucket
+	 */
+	static int bucketOf(long nanos) {
+		if (nanos < 2 * HALF) return (int) nanos;
+		// Keep the top SUB_BITS + 1 bits: the position of the highest one
+		// picks the doubling and the next SUB_BITS bits the bucket in it
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+		return shift * HALF + (int) (nanos >>> shift);
+	}
+
+	/**Finds the longest time that goes in a bucket
+	 * @param bucket The bucket
+	 * @return The time in nanoseconds
+	 */
+	static long highestIn(int bucket) {
+		if (bucket < 2 * HALF) return bucket;
+		int shift = bucket / HALF - 1;
+		long sub = bucket % HALF + HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**Finds a percentile of the times recorded
+	 * @param fraction The fraction of times at or below the percentile
+	 * (0.5 for the median, 0.99 for the 99th percentile)
+	 * @return The percentile in nanoseconds (to within the bucket it is in),
+	 * or 0 if nothing has been recorded
+	 */
+	public long percentile(double fraction) {
+		long count = total.sum();
+		if (count == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += counts.get(b);
+			if (seen >= rank) return Math.min(highestIn(b), max.get());
+		}
+		return max.get();
+	}
+
+	/**This simple accessor method returns how many times were recorded
+	 * @return The number of times
+	 */
+	public long getCount() {
+		return total.sum();
+	}
+
+	/**This simple accessor method returns the longest time recorded
+	 * @return The longest time in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**Works out the mean of the times recorded
+	 * @return The mean in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		long count = total.sum();
+		return (count == 0) ? 0 : (double) sum.sum() / count;
+	}
+
+	/**Throws away every time recorded (times being recorded while this
+	 * runs may or may not be kept)
+	 */
+	public void reset() {
+		for (int b = 0; b < NUM_BUCKETS; b++) counts.set(b, 0);
+		total.reset();
+		sum.reset();
+		max.reset();
+	}
+} // End of class
@@ -0,0 +1,35 @@
+/**This class is the simplest NeighborIndex: it doesn't build anything ahead
+ * of time and answers every query by scanning all of the training rows with
+ * NearestNeighbor.kNearest. It is what the other indexes are checked and
+ * timed against. A batch of queries is handed to a BlockedDistanceEngine,
+ * which scans the rows for a block of queries at a time and gives exactly
+ * the same neighbors.
+ */
+public class LinearScanIndex implements NeighborIndex {
+	// Initialize the FeatureMatrix of training tumors to scan
+	private final FeatureMatrix data;
+	// Initialize the BlockedDistanceEngine for batches of queries
+	private final BlockedDistanceEngine engine;
+
+	/**This constructor creates a LinearScanIndex over some training tumors
+	 * @param train The FeatureMatrix of training tumors
+	 */
+	public LinearScanIndex(FeatureMatrix train) {
+		data = train;
+		engine = new BlockedDistanceEngine(train, false);
+	}
+
+	public FeatureMatrix getData() {
+		return data;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		NearestNeighbor.kNearest(query, queryOffset, data, k, out);
+	}
+
+	public void kNearestBatch(FeatureMatrix queries, int from, int to, int k,
+			NeighborResult[] out) {
+		engine.kNearest(queries, from, to, k, out);
+	}
+} // End of class
@@ -0,0 +1,74 @@
+/**This class is a NeighborShard in this process: it keeps its own copy of
+ * its rows (so the whole data set doesn't have to be kept once the shards
+ * are made) and searches them with a BlockedDistanceEngine, the same way a
+ * LinearScanIndex searches all the rows.
+ */
+public class LocalShard implements NeighborShard {
+	// Initialize the shard's rows and where they start in the data set
+	private final FeatureMatrix rows;
+	private final int firstRow;
+	// Initialize the engine that searches the rows
+	private final BlockedDistanceEngine engine;
+
+	/**This constructor creates a LocalShard from a run of rows of a data set
+	 * @param data The FeatureMatrix of the whole data set
+	 * @param from The first row of the shard
+	 * @param to One past the last row of the shard
+	 */
+	public LocalShard(FeatureMatrix data, int from, int to) {
+		int[] order = new int[to - from];
+		for (int r = from; r < to; r++) order[r - from] = r;
+		rows = data.subset(order, 0, order.length);
+		firstRow = from;
+		engine = new BlockedDistanceEngine(rows, false);
+	}
+
+	public int getFirstRow() {
+		return firstRow;
+	}
+
+	public int getNumRows() {
+		return rows.getNumRows();
+	}
+
+	public int getNumFeatures() {
+		return rows.getNumFeatures();
+	}
+
+	/**This simple accessor method returns the shard's rows
+	 * @return The FeatureMatrix of the rows
+	 */
+	public FeatureMatrix getRows() {
+		return rows;
+	}
+
+	public void search(FeatureMatrix queries, int from, int to, int k,
+			ShardHits out) {
+		engine.kNearest(queries, from, to, k, out, firstRow);
+	}
+
+	/**Finds the shard's k nearest rows to one query by scanning them the
+	 * same way NearestNeighbor.kNearest scans a FeatureMatrix
+	 */
+	public void search(double[] query, int queryOffset, int k,
+			ShardHits out) {
+		int numRows = rows.getNumRows();
+		int numFeatures = rows.getNumFeatures();
+		double[] data = rows.getData();
+		KnnHeap heap =
+			NeighborScratch.forCurrentThread().heap(Math.min(k, numRows));
+		int kept = 0;
+		for (int r = 0, offset = 0; r < numRows; r++, offset += numFeatures) {
+			if (heap.offer(DistanceKernels.distSquaredBounded(query,
+					queryOffset, data, offset, numFeatures,
+					heap.worstDistance()), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(numRows, kept);
+		out.reset(1, k);
+		out.take(0, heap, rows, firstRow);
+	}
+
+	public void close() {
+	}
+} // End of class
@@ -0,0 +1,148 @@
+/**This class makes the plain Euclidean distance into the Mahalanobis
+ * distance, which measures how far apart two tumors are in units of how
+ * much the training tumors vary in that direction, so characteristics that
+ * go up and down together (like the radius, perimeter and area) are only
+ * counted once. It is fitted on some training tumors: their covariance
+ * matrix S is factored as L times L transposed (a Cholesky factorization),
+ * and each tumor x is turned into the inverse of L times (x - mean). The
+ * Euclidean distance between two transformed tumors is then exactly the
+ * Mahalanobis distance between the originals, so the whitening is done once
+ * for each tumor, when it is loaded, and the searches run the Euclidean
+ * kernels as they are.
+ *
+ * In the data file some characteristics are so nearly made from others that
+ * S is close to having no inverse, so a ridge is added first: each variance
+ * is made bigger by the ridge times itself, which keeps directions the
+ * training tumors barely vary in from counting for too much.
+ */
+public class MahalanobisWhitening implements FeatureTransform {
+	// Initialize the number of characteristics, the inverse of L (row after
+	// row, lower triangle) and what is subtracted after multiplying by it
+	// (the inverse of L times the mean)
+	private final int numFeatures;
+	private final double[] inverse;
+	private final double[] offsets;
+
+	/**This constructor creates a MahalanobisWhitening from its fitted
+	 * values
+	 * @param numFeaturesIn The number of characteristics
+	 * @param inverseIn The inverse of L
+	 * @param offsetsIn The inverse of L times the mean
+	 */
+	private MahalanobisWhitening(int numFeaturesIn, double[] inverseIn,
+			double[] offsetsIn) {
+		numFeatures = numFeaturesIn;
+		inverse = inverseIn;
+		offsets = offsetsIn;
+	}
+
+	/**Fits a MahalanobisWhitening on some training tumors
+	 * @param train The FeatureMatrix of training tumors
+	 * @param ridge What fraction of each variance to add to it (0 for the
+	 * exact Mahalanobis distance)
+	 * @return The MahalanobisWhitening
+	 * @throws IllegalArgumentException If the covariance matrix has no
+	 * inverse even with the ridge
+	 */
+	public static MahalanobisWhitening fit(FeatureMatrix train,
+			double ridge) {
+		int d = train.getNumFeatures();
+		int numRows = train.getNumRows();
+		double[] data = train.getData();
+
+		// Work out the mean of each characteristic and then the covariance
+		// matrix (only the bottom half, which is all the factoring reads)
+		double[] mean = new double[d];
+		for (int r = 0; r < numRows; r++)
+			for (int f = 0; f < d; f++)
+				mean[f] += data[train.offset(r) + f];
+		for (int f = 0; f < d; f++) mean[f] /= Math.max(numRows, 1);
+		double[] covariance = new double[d * d];
+		double[] centered = new double[d];
+		for (int r = 0; r < numRows; r++) {
+			for (int f = 0; f < d; f++)
+				centered[f] = data[train.offset(r) + f] - mean[f];
+			for (int f = 0; f < d; f++)
+				for (int g = 0; g <= f; g++)
+					covariance[f * d + g] += centered[f] * centered[g];
+		}
+		for (int f = 0; f < d; f++) {
+			for (int g = 0; g <= f; g++)
+				covariance[f * d + g] /= Math.max(numRows, 1);
+			// A characteristic that is the same for all of them gets a
+			// variance of 1, like FeatureScaler gives it a spread of 1
+			if (covariance[f * d + f] == 0) covariance[f * d + f] = 1;
+			else covariance[f * d + f] *= 1 + ridge;
+		}
+
+		double[] factor = cholesky(covariance, d);
+		// Find the inverse of L a column at a time by forward substitution
+		// (it is lower triangular too)
+		double[] inverse = new double[d * d];
+		for (int column = 0; column < d; column++) {
+			for (int f = column; f < d; f++) {
+				double sum = (f == column) ? 1 : 0;
+				for (int g = column; g < f; g++)
+					sum -= factor[f * d + g] * inverse[g * d + column];
+				inverse[f * d + column] = sum / factor[f * d + f];
+			}
+		}
+		double[] offsets = new double[d];
+		for (int f = 0; f < d; f++)
+			offsets[f] = DistanceKernels.dot(inverse, f * d, mean, 0, d);
+		return new MahalanobisWhitening(d, inverse, offsets);
+	}
+
+	/**Makes a Fitter that fits MahalanobisWhitenings with the given ridge
+	 * @param ridge What fraction of each variance to add to it
+	 * @return The Fitter
+	 */
+	public static FeatureTransform.Fitter fitter(double ridge) {
+		return train -> fit(train, ridge);
+	}
+
+	/**Factors a symmetric positive definite matrix S as L times L
+	 * transposed, with L lower triangular (the Cholesky-Banachiewicz order,
+	 * a row at a time)
+	 * @param s The matrix, row after row (only the lower triangle is read)
+	 * @param n The number of rows (and columns)
+	 * @return L, row after row, with 0s above the diagonal
+	 * @throws IllegalArgumentException If S isn't positive definite
+	 */
+	static double[] cholesky(double[] s, int n) {
+		double[] factor = new double[n * n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = s[i * n + j];
+				for (int m = 0; m < j; m++)
+					sum -= factor[i * n + m] * factor[j * n + m];
+				if (i == j) {
+					if (!(sum > 0))
+						throw new IllegalArgumentException("the covariance "
+								+ "matrix has no inverse (try a bigger "
+								+ "ridge)");
+					factor[i * n + i] = Math.sqrt(sum);
+				}
+				else factor[i * n + j] = sum / factor[j * n + j];
+			}
+		}
+		return factor;
+	}
+
+	public int getNumFeaturesIn() {
+		return numFeatures;
+	}
+
+	public int getNumFeaturesOut() {
+		return numFeatures;
+	}
+
+	public void transform(double[] in, int inOffset, double[] out,
+			int outOffset) {
+		// Row f of the inverse of L is 0 after column f
+		for (int f = 0; f < numFeatures; f++) {
+			out[outOffset + f] = DistanceKernels.dot(in, inOffset, inverse,
+					f * numFeatures, f + 1) - offsets[f];
+		}
+	}
+} // End of class
@@ -0,0 +1,35 @@
+// Importing IOException, which this exception extends
+import java.io.IOException;
+
+/**This exception is thrown by TumorDataLoader when a line of a data file
+ * isn't in the form it expects (an ID number, M or B, and then the same
+ * number of characteristics as the first line). It is an IOException so that
+ * code which already catches problems reading the file catches it too, and it
+ * remembers which line of the file was wrong.
+ */
+public class MalformedDataException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	// Initialize a long for the line of the file that was wrong (counting
+	// from 1)
+	private final long lineNumber;
+
+	/**This constructor creates a MalformedDataException for a line of a file
+	 * @param fileName The name of the file being read
+	 * @param lineNumber The line of the file that was wrong, counting from 1
+	 * @param problem What was wrong with the line
+	 */
+	public MalformedDataException(String fileName, long lineNumber,
+			String problem) {
+		super(fileName + ", line " + lineNumber + ": " + problem);
+		this.lineNumber = lineNumber;
+	}
+
+	/**This simple accessor method returns the line of the file that was
+	 * wrong
+	 * @return The line number, counting from 1
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+} // End of class
@@ -0,0 +1,385 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+// Importing classes for reading, writing and mapping files
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**This class reads tumors out of a binary data file by mapping the file into
+ * memory with FileChannel.map, so opening even a very big file takes only a
+ * few milliseconds: nothing is parsed or copied, and the operating system
+ * only reads in the parts of the file that are actually used. It is a
+ * NeighborIndex that scans the mapped characteristics directly, so tumors can
+ * be classified against the file with no copy at all; toFeatureMatrix makes
+ * an ordinary FeatureMatrix out of it when one is needed (for the trials,
+ * which shuffle the rows).
+ *
+ * The file is written by write (or by running this class to convert a text
+ * data file) and is laid out like this, with every number little-endian:
+ *
+ *   bytes 0-63    the header: "KNNB", the format version (an int), the type
+ *                 of the characteristics (an int: 1 for doubles, 2 for
+ *                 floats), the number of characteristics (an int), the
+ *                 number of rows (a long), and where in the file the
+ *                 characteristics, ID numbers and types start (three longs)
+ *   then          the characteristics, row after row
+ *   then          the ID numbers, one int per row
+ *   then          the types, one bit per row packed into longs like in
+ *                 FeatureMatrix
+ *
+ * Each section starts on a multiple of 8 bytes. Each section is mapped on
+ * its own, and a mapping can't be bigger than 2 GB, so the characteristics
+ * can take up to 2 GB.
+ */
+public class MappedDataset implements NeighborIndex, TumorLabels {
+	// Initialize final ints for the parts of the header
+	private static final int MAGIC = 0x424E4E4B; // "KNNB" read little-endian
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	/**The type code for characteristics stored as doubles
+	 */
+	public static final int FLOAT64 = 1;
+	/**The type code for characteristics stored as floats, which takes half
+	 * the space but keeps only about 7 significant digits
+	 */
+	public static final int FLOAT32 = 2;
+
+	// Initialize the size of the data and the type of its characteristics
+	private final int numRows, numFeatures, dataType;
+	// Initialize the mapped sections of the file
+	private final ByteBuffer features;
+	private final IntBuffer ids;
+	private final LongBuffer typeBits;
+	// Initialize the FeatureMatrix copy, made the first time it is asked for
+	private FeatureMatrix matrix;
+
+	/**This constructor is private: use open
+	 */
+	private MappedDataset(int numRowsIn, int numFeaturesIn, int dataTypeIn,
+			ByteBuffer featuresIn, IntBuffer idsIn, LongBuffer typeBitsIn) {
+		numRows = numRowsIn;
+		numFeatures = numFeaturesIn;
+		dataType = dataTypeIn;
+		features = featuresIn;
+		ids = idsIn;
+		typeBits = typeBitsIn;
+	}
+
+	/**Converts a text data file into a binary one
+	 * @param args The text file to read, the binary file to write, and
+	 * optionally "float32" to store the characteristics as floats
+	 * @throws IOException If a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: java MappedDataset textFile binaryFile "
+					+ "[float32]");
+			return;
+		}
+		long start = System.nanoTime();
+		FeatureMatrix data = TumorDataLoader.load(args[0]);
+		boolean asFloats = args.length > 2 && args[2].equals("float32");
+		write(data, args[1], asFloats ? FLOAT32 : FLOAT64);
+		System.out.println("Wrote " + data.getNumRows() + " tumors with "
+				+ data.getNumFeatures() + " characteristics to " + args[1]
+				+ " in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**Writes a FeatureMatrix to a binary data file
+	 * @param data The tumors to write
+	 * @param fileName The name of the file to write
+	 * @param dataTypeIn FLOAT64 or FLOAT32
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(FeatureMatrix data, String fileName,
+			int dataTypeIn) throws IOException {
+		if (dataTypeIn != FLOAT64 && dataTypeIn != FLOAT32)
+			throw new IllegalArgumentException("unknown data type "
+					+ dataTypeIn);
+		int rows = data.getNumRows(), cols = data.getNumFeatures();
+		int valueSize = (dataTypeIn == FLOAT64) ? Double.BYTES : Float.BYTES;
+		long featuresAt = HEADER_SIZE;
+		long idsAt = align((long) rows * cols * valueSize + featuresAt);
+		long typesAt = align(idsAt + (long) rows * Integer.BYTES);
+
+		try (FileChannel out = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			// Write the header
+			buf.putInt(MAGIC).putInt(VERSION).putInt(dataTypeIn).putInt(cols)
+				.putLong(rows).putLong(featuresAt).putLong(idsAt)
+				.putLong(typesAt);
+			buf.position(HEADER_SIZE);
+
+			// Write the characteristics, emptying the buffer into the file
+			// whenever it fills up
+			double[] values = data.getData();
+			for (int i = 0; i < rows * cols; i++) {
+				if (buf.remaining() < valueSize) flush(buf, out);
+				if (dataTypeIn == FLOAT64) buf.putDouble(values[i]);
+				else buf.putFloat((float) values[i]);
+			}
+			pad(buf, out, idsAt);
+
+			// Write the ID numbers, then the types
+			for (int r = 0; r < rows; r++) {
+				if (buf.remaining() < Integer.BYTES) flush(buf, out);
+				buf.putInt(data.getID(r));
+			}
+			pad(buf, out, typesAt);
+			for (int w = 0; w < FeatureMatrix.wordsFor(rows); w++) {
+				long word = 0;
+				for (int bit = 0; bit < 64 && w * 64 + bit < rows; bit++) {
+					if (data.getType(w * 64 + bit)) word |= 1L << bit;
+				}
+				if (buf.remaining() < Long.BYTES) flush(buf, out);
+				buf.putLong(word);
+			}
+			flush(buf, out);
+		}
+	}
+
+	/**Writes out what is in the buffer and empties it
+	 */
+	private static void flush(ByteBuffer buf, FileChannel out)
+			throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) out.write(buf);
+		buf.clear();
+	}
+
+	/**Writes zeros until the file (what has been written plus what is in
+	 * the buffer) reaches position at
+	 */
+	private static void pad(ByteBuffer buf, FileChannel out, long at)
+			throws IOException {
+		while (out.position() + buf.position() < at) {
+			if (!buf.hasRemaining()) flush(buf, out);
+			buf.put((byte) 0);
+		}
+	}
+
+	/**Rounds a position in the file up to a multiple of 8
+	 */
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**Checks whether a file is a binary data file (starts with "KNNB")
+	 * @param fileName The name of the file
+	 * @return True if it is a binary data file
+	 * @throws IOException If the file can't be read
+	 */
+	public static boolean isBinary(String fileName) throws IOException {
+		try (FileChannel in = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			while (magic.hasRemaining() && in.read(magic) >= 0) {
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**Opens a binary data file by mapping it into memory
+	 * @param fileName The name of the file
+	 * @return A MappedDataset reading the file
+	 * @throws IOException If the file can't be read or isn't a binary data
+	 * file this version can read
+	 */
+	public static MappedDataset open(String fileName) throws IOException {
+		// The mappings stay good after the channel is closed
+		try (FileChannel in = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.READ)) {
+			long fileSize = in.size();
+			if (fileSize < HEADER_SIZE)
+				throw new IOException(fileName + " is too short to be a "
+						+ "binary data file");
+			ByteBuffer header = map(in, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC)
+				throw new IOException(fileName + " isn't a binary data file");
+			if (header.getInt(4) != VERSION)
+				throw new IOException(fileName + " is version "
+						+ header.getInt(4) + " of the format, not " + VERSION);
+			int type = header.getInt(8);
+			int cols = header.getInt(12);
+			long rows = header.getLong(16);
+			long featuresAt = header.getLong(24);
+			long idsAt = header.getLong(32);
+			long typesAt = header.getLong(40);
+			int valueSize = (type == FLOAT64) ? Double.BYTES :
+				(type == FLOAT32) ? Float.BYTES : 0;
+			if (valueSize == 0)
+				throw new IOException(fileName + " has unknown data type "
+						+ type);
+
+			// Check the sizes add up before mapping anything: first the
+			// numbers of rows and columns, so multiplying them can't
+			// overflow, then that the parts are in order inside the file, so
+			// the gaps between them can be measured without overflowing
+			if (rows < 0 || cols < 0 || rows > Integer.MAX_VALUE)
+				throw new IOException(fileName + " has a damaged header");
+			if (cols > 0 && rows > Integer.MAX_VALUE / valueSize / cols)
+				throw new IOException(fileName + " is too big to map");
+			long featureBytes = rows * cols * valueSize;
+			long typeWords = (rows + 63) / 64;
+			if (featuresAt < HEADER_SIZE || idsAt < featuresAt
+					|| typesAt < idsAt || typesAt > fileSize
+					|| idsAt - featuresAt < featureBytes
+					|| typesAt - idsAt < rows * Integer.BYTES
+					|| fileSize - typesAt < typeWords * Long.BYTES)
+				throw new IOException(fileName + " has a damaged header or "
+						+ "is cut off");
+
+			return new MappedDataset((int) rows, cols, type,
+					map(in, featuresAt, featureBytes),
+					map(in, idsAt, rows * Integer.BYTES).asIntBuffer(),
+					map(in, typesAt, typeWords * Long.BYTES).asLongBuffer());
+		}
+	}
+
+	/**Maps part of a file as a little-endian ByteBuffer
+	 */
+	private static ByteBuffer map(FileChannel in, long position, long size)
+			throws IOException {
+		MappedByteBuffer mapped =
+			in.map(FileChannel.MapMode.READ_ONLY, position, size);
+		return mapped.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**This simple accessor method returns the number of tumors
+	 * @return The number of rows
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**This simple accessor method returns the number of characteristics of
+	 * each tumor
+	 * @return The number of characteristics
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**This simple accessor method returns how the characteristics are
+	 * stored
+	 * @return FLOAT64 or FLOAT32
+	 */
+	public int getDataType() {
+		return dataType;
+	}
+
+	public int getID(int row) {
+		return ids.get(row);
+	}
+
+	public boolean getType(int row) {
+		return (typeBits.get(row >>> 6) & (1L << row)) != 0;
+	}
+
+	/**Returns one characteristic of one tumor
+	 * @param row The row of the tumor
+	 * @param feature Which characteristic
+	 * @return The characteristic
+	 */
+	public double getFeature(int row, int feature) {
+		int index = row * numFeatures + feature;
+		return (dataType == FLOAT64) ? features.getDouble(index * Double.BYTES)
+			: features.getFloat(index * Float.BYTES);
+	}
+
+	/**Copies everything into an ordinary FeatureMatrix (the first time; the
+	 * same one is returned after that), reading the whole file
+	 * @return The FeatureMatrix
+	 */
+	public synchronized FeatureMatrix toFeatureMatrix() {
+		if (matrix == null) {
+			double[] data = new double[numRows * numFeatures];
+			if (dataType == FLOAT64)
+				features.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+					.asDoubleBuffer().get(data);
+			else {
+				for (int i = 0; i < data.length; i++)
+					data[i] = features.getFloat(i * Float.BYTES);
+			}
+			int[] idArray = new int[numRows];
+			ids.duplicate().get(idArray);
+			long[] bits = new long[FeatureMatrix.wordsFor(numRows)];
+			typeBits.duplicate().get(bits);
+			matrix = new FeatureMatrix(numRows, numFeatures, data, idArray,
+					bits);
+		}
+		return matrix;
+	}
+
+	/**Returns the tumors as a FeatureMatrix, which copies them out of the
+	 * file the first time (see toFeatureMatrix); searching with kNearest
+	 * doesn't need this
+	 */
+	public FeatureMatrix getData() {
+		return toFeatureMatrix();
+	}
+
+	/**Returns null, since the tumors in a file are as they were read (this
+	 * way asking doesn't copy them out of the file)
+	 */
+	public FeatureTransform getTransform() {
+		return null;
+	}
+
+	/**Finds the k nearest neighbors of a query tumor by scanning the mapped
+	 * characteristics directly, ranking by squared distance and giving up
+	 * early on rows that are too far, like NearestNeighbor.kNearest. With
+	 * characteristics stored as doubles the answers are exactly the same as
+	 * NearestNeighbor.kNearest on toFeatureMatrix().
+	 */
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		KnnHeap heap =
+			NeighborScratch.forCurrentThread().heap(Math.min(k, numRows));
+		int kept = 0;
+		for (int r = 0; r < numRows; r++) {
+			if (heap.offer(distSquaredBounded(query, queryOffset, r,
+					heap.worstDistance()), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(numRows, kept);
+		heap.drainRootsInto(this, out);
+	}
+
+	/**Works out the square of the distance between a query tumor and one
+	 * row of the mapped characteristics, giving up early (for doubles) once
+	 * it is past a bound, the way kNearest ranks the rows
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param row The row to compare it with
+	 * @param bound The squared distance beyond which the exact value doesn't
+	 * matter
+	 * @return The squared distance if it is no more than bound; otherwise
+	 * some number bigger than bound
+	 */
+	public double distSquaredBounded(double[] query, int queryOffset, int row,
+			double bound) {
+		if (dataType == FLOAT64)
+			return DistanceKernels.distSquaredBounded(query, queryOffset,
+					features, row * numFeatures * Double.BYTES, numFeatures,
+					bound);
+		double distSquared = 0;
+		for (int j = 0, at = row * numFeatures * Float.BYTES;
+				j < numFeatures; j++, at += Float.BYTES) {
+			double diff = query[queryOffset + j] - features.getFloat(at);
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+} // End of class
@@ -0,0 +1,173 @@
+// Importing classes for IO (to read file and write the binary ones) and
+// Scanner
+import java.io.*;
+import java.util.Scanner;
+
+/**This class checks and times searching a binary data file where it is
+ * mapped, the way ClassifyStream does. It makes a large data set from the
+ * data file (SyntheticData), writes it as a binary file with its
+ * characteristics as doubles and as floats, and for each:
+ *   - times opening the file (mapping it) against reading the text form and
+ *     copying the mapped file into a FeatureMatrix (what ImportMatrix does)
+ *   - diagnoses some queries with a KnnClassifier searching the
+ *     MappedDataset and with one searching a LinearScanIndex over the
+ *     FeatureMatrix, and counts the queries whose neighbors or diagnoses
+ *     differ, which should be none (with doubles the distances have to be
+ *     exactly the same too; with floats they are added up in a different
+ *     order than the LinearScanIndex adds them, so only the rows and the
+ *     diagnoses are compared)
+ *   - times the queries on each
+ */
+public class MappedDatasetReport {
+
+	/**Main method for the MappedDatasetReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally k, the number of rows of the
+	 * large data set and the number of queries
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read or the binary files can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int numRows = (args.length > 2) ? Integer.parseInt(args[2]) : 200000;
+		int numQueries = (args.length > 3) ? Integer.parseInt(args[3]) : 200;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		FeatureMatrix large = SyntheticData.scale(base, numRows, 2);
+		FeatureMatrix queries = SyntheticData.scale(base, numQueries, 3);
+		File text = File.createTempFile("mapped", ".data");
+		text.deleteOnExit();
+		writeText(large, text);
+		long start = System.nanoTime();
+		NearestNeighbor.ImportMatrix(text.getPath());
+		double textMillis = (System.nanoTime() - start) / 1e6;
+
+		System.out.println(String.format("k = %d, %d rows, %d queries; "
+				+ "reading the text file takes %.1f ms", k, numRows,
+				numQueries, textMillis));
+		System.out.println(String.format("%-8s %9s %9s %10s %11s %11s %10s",
+				"stored", "open (ms)", "copy (ms)", "different",
+				"mapped us/q", "copied us/q", "MB copied"));
+		String[] names = {"doubles", "floats"};
+		int[] types = {MappedDataset.FLOAT64, MappedDataset.FLOAT32};
+		// For loop to check each way of storing the characteristics
+		for (int t = 0; t < types.length; t++) {
+			File binary = File.createTempFile("mapped", ".bin");
+			binary.deleteOnExit();
+			MappedDataset.write(large, binary.getPath(), types[t]);
+
+			start = System.nanoTime();
+			MappedDataset mapped = MappedDataset.open(binary.getPath());
+			double openMillis = (System.nanoTime() - start) / 1e6;
+			start = System.nanoTime();
+			FeatureMatrix copy =
+				MappedDataset.open(binary.getPath()).toFeatureMatrix();
+			double copyMillis = (System.nanoTime() - start) / 1e6;
+
+			KnnClassifier onMapped = new KnnClassifier(mapped, k);
+			KnnClassifier onCopy =
+				new KnnClassifier(new LinearScanIndex(copy), k);
+			int different = countDifferent(mapped, new LinearScanIndex(copy),
+					onMapped, onCopy, queries, k,
+					types[t] == MappedDataset.FLOAT64);
+			// Run the queries once first so the JIT compiler has done its
+			// work before they are timed
+			timeQueries(onMapped, queries);
+			double mappedMicros = timeQueries(onMapped, queries);
+			timeQueries(onCopy, queries);
+			double copyMicros = timeQueries(onCopy, queries);
+			System.out.println(String.format("%-8s %9.2f %9.1f %10d %11.1f "
+					+ "%11.1f %10.1f", names[t], openMillis, copyMillis,
+					different, mappedMicros, copyMicros,
+					copy.getData().length * 8.0 / (1 << 20)));
+		}
+	}
+
+	/**Counts the queries whose neighbors or diagnoses differ between two
+	 * indexes
+	 * @param first The first NeighborIndex
+	 * @param second The second NeighborIndex
+	 * @param onFirst A KnnClassifier searching the first
+	 * @param onSecond A KnnClassifier searching the second
+	 * @param queries The FeatureMatrix of queries
+	 * @param k How many neighbors to find
+	 * @param exactDistances Whether the neighbors' distances have to be
+	 * exactly the same too, not just their rows
+	 * @return The number of queries that came out differently
+	 */
+	static int countDifferent(NeighborIndex first, NeighborIndex second,
+			KnnClassifier onFirst, KnnClassifier onSecond,
+			FeatureMatrix queries, int k, boolean exactDistances) {
+		int numQueries = queries.getNumRows();
+		Diagnosis[] firstDiagnoses = newDiagnoses(numQueries);
+		Diagnosis[] secondDiagnoses = newDiagnoses(numQueries);
+		onFirst.classifyBatch(queries, firstDiagnoses);
+		onSecond.classifyBatch(queries, secondDiagnoses);
+		NeighborResult a = new NeighborResult(k);
+		NeighborResult b = new NeighborResult(k);
+		int different = 0;
+		for (int q = 0; q < numQueries; q++) {
+			first.kNearest(queries.getData(), queries.offset(q), k, a);
+			second.kNearest(queries.getData(), queries.offset(q), k, b);
+			boolean same = a.size() == b.size()
+				&& firstDiagnoses[q].getNumMalignant()
+					== secondDiagnoses[q].getNumMalignant()
+				&& firstDiagnoses[q].getNumBenign()
+					== secondDiagnoses[q].getNumBenign();
+			for (int i = 0; same && i < a.size(); i++)
+				same = a.getID(i) == b.getID(i) && (!exactDistances
+						|| a.getDistance(i) == b.getDistance(i));
+			if (!same) different++;
+		}
+		return different;
+	}
+
+	/**Times diagnosing a batch of queries
+	 * @param classifier The KnnClassifier
+	 * @param queries The FeatureMatrix of queries
+	 * @return The time per query, in microseconds
+	 */
+	static double timeQueries(KnnClassifier classifier,
+			FeatureMatrix queries) {
+		Diagnosis[] out = newDiagnoses(queries.getNumRows());
+		long start = System.nanoTime();
+		classifier.classifyBatch(queries, out);
+		return (System.nanoTime() - start) / 1000.0 / queries.getNumRows();
+	}
+
+	/**Makes an array of empty Diagnosis objects
+	 * @param count How many
+	 * @return The array
+	 */
+	private static Diagnosis[] newDiagnoses(int count) {
+		Diagnosis[] out = new Diagnosis[count];
+		for (int i = 0; i < count; i++) out[i] = new Diagnosis();
+		return out;
+	}
+
+	/**Writes tumors in the form of the data file
+	 * @param data The tumors
+	 * @param file The file to write
+	 * @throws IOException If the file can't be written
+	 */
+	private static void writeText(FeatureMatrix data, File file)
+			throws IOException {
+		try (Writer out = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+			double[] features = data.getData();
+			for (int r = 0; r < data.getNumRows(); r++) {
+				out.write(data.getID(r) + (data.getType(r) ? ",M" : ",B"));
+				for (int f = 0; f < data.getNumFeatures(); f++)
+					out.write("," + features[data.offset(r) + f]);
+				out.write("\n");
+			}
+		}
+	}
+} // End of class
@@ -0,0 +1,50 @@
+/**This class is a NeighborIndex that scans every training row like
+ * LinearScanIndex, but measures the distances with a DistanceMetric of the
+ * caller's choosing. With DistanceMetric.EUCLIDEAN it finds exactly the same
+ * neighbors as a LinearScanIndex (though one query at a time, without
+ * BlockedDistanceEngine's blocking).
+ */
+public class MetricScanIndex implements NeighborIndex {
+	// Initialize the training tumors and the metric
+	private final FeatureMatrix train;
+	private final DistanceMetric metric;
+
+	/**This constructor creates a MetricScanIndex over some training tumors
+	 * @param trainIn The FeatureMatrix of training tumors
+	 * @param metricIn The DistanceMetric to measure distances with
+	 */
+	public MetricScanIndex(FeatureMatrix trainIn, DistanceMetric metricIn) {
+		train = trainIn;
+		metric = metricIn;
+	}
+
+	/**Makes a NeighborIndex.Builder that builds MetricScanIndexes with the
+	 * given metric, to hand to TrialRunner.setIndexBuilder
+	 * @param metricIn The DistanceMetric
+	 * @return The NeighborIndex.Builder
+	 */
+	public static NeighborIndex.Builder builder(DistanceMetric metricIn) {
+		return trainIn -> new MetricScanIndex(trainIn, metricIn);
+	}
+
+	public FeatureMatrix getData() {
+		return train;
+	}
+
+	/**This simple accessor method returns the DistanceMetric
+	 * @return The DistanceMetric
+	 */
+	public DistanceMetric getMetric() {
+		return metric;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		int numRows = train.getNumRows();
+		KnnHeap heap =
+			NeighborScratch.forCurrentThread().heap(Math.min(k, numRows));
+		int kept = metric.scan(query, queryOffset, train, heap);
+		PipelineMetrics.countScan(numRows, kept);
+		metric.drainInto(heap, train, out);
+	}
+} // End of class
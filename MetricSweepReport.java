@@ -0,0 +1,95 @@
+// Importing classes for IO (to read file), Scanner and SplittableRandom
+import java.io.*;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**This class compares ways of measuring the distance between tumors. For
+ * each DistanceMetric, and for weighted Euclidean and Mahalanobis distances
+ * (Euclidean after a FeatureScaler with fisherWeights or a
+ * MahalanobisWhitening), it runs the same 100 trials with a MetricScanIndex
+ * (each trial fits its transform on its own training data) and prints the
+ * accuracy. Then, with a larger data set made from the data file
+ * (SyntheticData), it times fitting the transform and transforming the
+ * tumors once (what is done at load) and scanning every row for each query,
+ * and prints the scan time per row, which is what each distance costs
+ * (less than a whole distance, for the metrics that give up on far rows
+ * early).
+ */
+public class MetricSweepReport {
+
+	/**Main method for the MetricSweepReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally k, a seed for the random
+	 * splits and the number of rows of the larger data set
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) :
+			new SplittableRandom().nextLong();
+		int numRows = (args.length > 3) ? Integer.parseInt(args[3]) : 20000;
+		final int NUM_OF_TRIALS = 100;
+		final int NUM_OF_QUERIES = 200;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		FeatureMatrix large = SyntheticData.scale(base, numRows, 2);
+		FeatureMatrix queries = SyntheticData.scale(base, NUM_OF_QUERIES, 1);
+		FeatureTransform.Fitter zScore =
+			FeatureScaler.fitter(FeatureScaler.Z_SCORE, null, null);
+		String[] names = {"euclidean", "euclidean", "manhattan",
+				"chebyshev", "cosine", "weighted euclidean", "mahalanobis",
+				"mahalanobis"};
+		String[] loads = {"as read", "z-score", "z-score", "z-score",
+				"z-score", "z-score, Fisher", "whiten, ridge .01",
+				"whiten, ridge 1"};
+		DistanceMetric[] metrics = {DistanceMetric.EUCLIDEAN,
+				DistanceMetric.EUCLIDEAN, DistanceMetric.MANHATTAN,
+				DistanceMetric.CHEBYSHEV, DistanceMetric.COSINE,
+				DistanceMetric.EUCLIDEAN, DistanceMetric.EUCLIDEAN,
+				DistanceMetric.EUCLIDEAN};
+		FeatureTransform.Fitter[] fitters = {null, zScore, zScore, zScore,
+				zScore, FeatureScaler.fisherFitter(FeatureScaler.Z_SCORE),
+				MahalanobisWhitening.fitter(0.01),
+				MahalanobisWhitening.fitter(1)};
+
+		System.out.println(NUM_OF_TRIALS + " trials, seed " + seed + ", k = "
+				+ k + "; timed on " + numRows + " rows and "
+				+ NUM_OF_QUERIES + " queries");
+		System.out.println(String.format("%-19s %-18s %9s %10s %11s",
+				"metric", "at load", "accuracy", "load (ms)", "ns per row"));
+		// For loop to run the trials and the timing with each setting
+		for (int s = 0; s < names.length; s++) {
+			TrialRunner runner = new TrialRunner(seed);
+			runner.setIndexBuilder(MetricScanIndex.builder(metrics[s]));
+			runner.setPreprocessing(fitters[s]);
+			double accuracy = runner.runTrials(base, k, NUM_OF_TRIALS)[0];
+
+			long start = System.nanoTime();
+			FeatureMatrix train = large;
+			FeatureMatrix query = queries;
+			if (fitters[s] != null) {
+				FeatureTransform transform = fitters[s].fit(large);
+				train = transform.transform(large);
+				query = transform.transform(queries);
+			}
+			double loadMillis = (System.nanoTime() - start) / 1e6;
+			MetricScanIndex index = new MetricScanIndex(train, metrics[s]);
+			// Run the queries once first so the JIT compiler has done its
+			// work before they are timed
+			IndexTradeoffReport.timeQueries(index, query, k);
+			double micros = IndexTradeoffReport.timeQueries(index, query, k);
+			System.out.println(String.format("%-19s %-18s %8.2f%% %10.1f "
+					+ "%11.2f", names[s], loads[s], accuracy, loadMillis,
+					micros * 1000 / numRows));
+		}
+	} // End of main method
+} // End of class
@@ -0,0 +1,60 @@
+// Importing classes for IO (to read file) and Scanner
+import java.io.*;
+import java.util.Scanner;
+
+/**This class shows what PipelineMetrics collects. It runs the usual trials
+ * of the k-nearest neighbor algorithm and prints where their time went, then
+ * diagnoses every tumor of the data file one at a time many times over with
+ * a KnnClassifier and prints the same for that. Run it with
+ * -Dknn.metrics=false to see how long the same work takes with the metrics
+ * switched off.
+ */
+public class MetricsReport {
+
+	/**Main method for the MetricsReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally k and the number of trials
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int numTrials = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+		final int NUM_OF_PASSES = 50;
+		PipelineMetrics.registerMBean();
+
+		// Run the trials, timing the whole thing as well
+		long start = System.nanoTime();
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(fileName);
+		double[] results = new TrialRunner(1).runTrials(data, k, numTrials);
+		System.out.println(String.format("%d trials with k = %d: %.2f%% "
+				+ "accurate, %.1f ms in all", numTrials, k, results[0],
+				(System.nanoTime() - start) / 1e6));
+		System.out.print(PipelineMetrics.summary());
+
+		// Diagnose every tumor one at a time, over and over
+		PipelineMetrics.resetAll();
+		KnnClassifier classifier =
+			new KnnClassifier(new LinearScanIndex(data), k);
+		Diagnosis diagnosis = new Diagnosis();
+		start = System.nanoTime();
+		for (int pass = 0; pass < NUM_OF_PASSES; pass++) {
+			for (int r = 0; r < data.getNumRows(); r++)
+				classifier.classify(data.getData(), data.offset(r),
+						data.getID(r), diagnosis);
+		}
+		System.out.println();
+		System.out.println(String.format("%d tumors diagnosed one at a time,"
+				+ " %.1f ms in all", NUM_OF_PASSES * data.getNumRows(),
+				(System.nanoTime() - start) / 1e6));
+		System.out.print(PipelineMetrics.summary());
+	} // End of main method
+} // End of class
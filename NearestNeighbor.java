@@ -1,9 +1,10 @@
 // Note: Throughout this program, when a boolean is used to refer to the type 
 // of tumor, true means malignant and false means benign.
 
-// Importing classes for Scanner, Arrays (to sort) and IO (to read file)
-import java.util.Scanner;
+// Importing classes for Arrays (to sort), SplittableRandom (to shuffle) and
+// IO (to read file)
 import java.util.Arrays;
+import java.util.SplittableRandom;
 import java.io.*;
 
 /**Repository of static methods used for the Nearest Neighbor algorithm.
@@ -43,6 +44,116 @@ public class NearestNeighbor {
 	}
 	
 	
+	/**Finds the k nearest neighbors to a Tumor t1 from a list of tumors 
+	 * tList with a single pass over tList. Instead of sorting all of tList, 
+	 * it keeps only the k closest tumors seen so far in a max-heap (so the 
+	 * farthest of them is always on top and can be thrown out as soon as 
+	 * something closer comes along), which takes O(n log k) time instead of
+	 * O(n log n). Tumors that are the same distance away are ordered by their
+	 * position in tList, the same way the stable sort in sortByDistanceFrom 
+	 * orders them.
+	 * @param t1 The tumor to find the nearest neighbors of
+	 * @param tList The array of Tumors to pick the closest ones to t1 out of
+	 * @param k How many nearest neighbors to find
+	 * @return A NeighborResult with the ID numbers, types and distances of
+	 * the k nearest neighbors, closest first
+	 */
+	public static NeighborResult kNearest(Tumor t1, Tumor[] tList, int k) {
+		// We can't find more neighbors than there are tumors in tList
+		int size = Math.min(k, tList.length);
+		// Make a heap to keep the closest size tumors in
+		KnnHeap heap = new KnnHeap(size);
+
+		// For loop to go through every tumor in tList once, offering each
+		// one to the heap (which keeps it only if it is one of the closest
+		// so far). Since we go through tList in order, a tumor at the same
+		// distance as the farthest one kept came later in tList and so 
+		// stays out. The heap is given squared distances, which put the 
+		// tumors in the same order without taking a square root for each.
+		for (int i = 0; i < tList.length; i++) {
+			heap.offer(t1.DistSquared(tList[i]), i);
+		} // End of for loop going through every tumor in tList
+
+		// Now take the tumors out of the heap in order from closest to 
+		// farthest, look up their ID numbers and types in tList, and take
+		// the square roots of just these k distances
+		double[] distances = new double[size];
+		int[] positions = new int[size];
+		heap.drainSorted(distances, positions);
+		int[] ids = new int[size];
+		boolean[] types = new boolean[size];
+		for (int n = 0; n < size; n++) {
+			ids[n] = tList[positions[n]].getID();
+			types[n] = tList[positions[n]].getType();
+			distances[n] = Math.sqrt(distances[n]);
+		}
+
+		// Return the k nearest neighbors, closest first
+		return new NeighborResult(ids, types, distances);
+	}
+
+
+	/**Finds the k nearest neighbors to a query tumor in a FeatureMatrix of
+	 * training tumors with a single pass over the matrix, the same way as 
+	 * kNearest(Tumor, Tumor[], int) but reading the characteristics straight
+	 * out of the matrix's arrays instead of out of Tumor objects
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param train The FeatureMatrix of tumors to pick the closest ones out of
+	 * @param k How many nearest neighbors to find
+	 * @return A new NeighborResult with the ID numbers, types and distances 
+	 * of the k nearest neighbors, closest first
+	 */
+	public static NeighborResult kNearest(double[] query, int queryOffset,
+			FeatureMatrix train, int k) {
+		NeighborResult neighbors = new NeighborResult(k);
+		kNearest(query, queryOffset, train, k, neighbors);
+		return neighbors;
+	}
+
+
+	/**Finds the k nearest neighbors to a query tumor in a FeatureMatrix of
+	 * training tumors and writes them into a NeighborResult the caller 
+	 * already has. The heap used for the search is the calling thread's own
+	 * from NeighborScratch, so once the heap and the result are big enough 
+	 * for k, a search doesn't allocate anything.
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param train The FeatureMatrix of tumors to pick the closest ones out of
+	 * @param k How many nearest neighbors to find
+	 * @param out The NeighborResult to write the k nearest neighbors into,
+	 * closest first
+	 */
+	public static void kNearest(double[] query, int queryOffset,
+			FeatureMatrix train, int k, NeighborResult out) {
+		int numRows = train.getNumRows();
+		int numFeatures = train.getNumFeatures();
+		double[] data = train.getData();
+		// Get this thread's heap, emptied and ready to keep the k closest
+		// rows (we can't find more neighbors than there are rows in train)
+		KnnHeap heap =
+			NeighborScratch.forCurrentThread().heap(Math.min(k, numRows));
+
+		// For loop to go through every row of train once, offering each
+		// one's squared distance to the heap. Once the heap is full, a row
+		// only matters if it is no farther than the farthest row kept, so
+		// the kernel is told to give up on a row as soon as its running sum
+		// passes that (the heap then turns it away, since it is farther).
+		int kept = 0;
+		for (int r = 0, offset = 0; r < numRows; r++, offset += numFeatures) {
+			if (heap.offer(DistanceKernels.distSquaredBounded(query,
+					queryOffset, data, offset, numFeatures,
+					heap.worstDistance()), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(numRows, kept);
+
+		// Empty the heap into out, closest first, taking the square roots of
+		// just the k distances kept
+		heap.drainRootsInto(train, out);
+	}
+
+
 	/**Finds type -- malignant (true) or benign (false) -- of the Nth nearest
 	 * neighbor to a Tumor t1 from a list of tumors tList (so if N is 1, it 
 	 * will find the closest; if N is 2, it will find the second closest, etc.)
@@ -55,272 +166,168 @@ public class NearestNeighbor {
 	 */
 	public static boolean FindTypeOfNthNearestNeighbor(int N, Tumor t1, 
 			Tumor[] tList) {
-		// Sorts the array of Tumors tList by their distance from the tumor t1
-		// using the sortByDistanceFrom method and stores the sorted array in 
-		// a new array of Tumors, sortedTumors
-		Tumor[] sortedTumors = sortByDistanceFrom(t1, tList);
-		// Returns the type (obtained from the getType() method of the Tumor)
-		// of the Tumor located at position N-1 in the sortedTumors array
-		// (so it will be the first if N is 1, the second if N is 2, etc.)
-		return sortedTumors[N-1].getType();	
+		// Finds the N nearest neighbors of t1 in tList with the kNearest 
+		// method, which doesn't need to sort all of tList
+		NeighborResult neighbors = kNearest(t1, tList, N);
+		// Returns the type of the last (Nth) of those neighbors (so it will
+		// be the first if N is 1, the second if N is 2, etc.)
+		return neighbors.getType(N-1);	
 	}
 
 	
 	/**Runs the nearest neighbor algorithm on an array of Tumors tListIn by
-	 * splitting the array into the first 80% (for training data) and the last
-	 * 20% (for testing), finding the k nearest neighbors in the training
-	 * data of each Tumor in the testing data, and having those neighbors vote
-	 * on whether the tumor from the testing data is malignant or benign.
+	 * copying them into a FeatureMatrix and running Accuracy(int,
+	 * FeatureMatrix) on it, which splits the tumors 80% for training and 20%
+	 * for testing with DataSplitter, finds the k nearest neighbors in the
+	 * training data of each Tumor in the testing data, and has those
+	 * neighbors vote on whether the tumor from the testing data is malignant
+	 * or benign. tListIn itself is not shuffled or changed.
 	 * @param k How many nearest neighbors to find and then have vote on 
 	 * whether the tumor is malignant or benign
 	 * @param tListIn An array of Tumors to use as training and testing data
 	 * for the nearest neighbor algorithm
 	 * @return An array of doubles representing the percent accuracy of the 
 	 * nearest neighbor algorithm for this particular run as well as some other
-	 * information
+	 * information (see Accuracy(int, FeatureMatrix))
 	 */
 	public static double[] Accuracy(int k, Tumor[] tListIn) {
-		// First we take tListIn and shuffle it up a bit:
-		for (int i = 0; i < 10000; i++) {
-			// Pick a random tumor between 0 and one less than the number of 
-			// Tumors in tListIn
-			int randomTumor1 = (int) (Math.random() * tListIn.length);
-			// Pick a second random number as above. Now we have two tumors
-			// to exchange.
-			int randomTumor2 = (int) (Math.random() * tListIn.length);
-			// Create a new temporary tumor to hold the first tumor we are 
-			// swapping
-			Tumor t1Temp = tListIn[randomTumor1];
-			// Replace the first tumor we are swapping with the second
-			tListIn[randomTumor1] = tListIn[randomTumor2];
-			// Replace the second tumor with the (original) first from the 
-			// temporary tumor t1Temp
-			tListIn[randomTumor2] = t1Temp;	
-		} // End of for loop for shuffling the array of Tumors
-		
-		// Now we take the first 80% of our list into a new array
-		// Initialize the new array with .8 times the number of values in the
-		// original array
-		Tumor[] trainingData = new Tumor[(int) (tListIn.length * .8)];
-
-		// Initialize index variable for upcoming for loop (outside of that for
-		// loop so its final value can be accessed later)
-		int i = 0;
-		
-		// Use a for loop to fill trainingData[] with the first values of 
-		// tListIn
-		for (i = 0; i < trainingData.length; i++) {
-			// Copy current value of i of tListIn into trainingData
-			trainingData[i] = tListIn[i];
-		}
-		
-		// Now we take the last 20% (starting with value i) into a new array 
-		// for testing
-		// Create a new array with length equal to the remaining number of 
-		// tumors in trainingData
-		Tumor[] testData = new Tumor[tListIn.length - trainingData.length];
-		// For loop to populate this new array with the remaining Tumors
-		for (int j = 0; j < testData.length; j++) {
-			// Copies the (i + j)th value of tListIn into testData[j] (since we
-			// took up to tListIn[i] for the training data, we start at i and 
-			// count from there by adding on j)
-			testData[j] = tListIn[i + j];
-		} // End of for loop to populate testing data array
-		
-		// Initialize variables for upcoming calculation of accuracy
-		int countCorrect = 0, countUnanimous = 0, countUnanimousCorrect = 0;
-		int countNotUnanimousCorrect = 0;
-		
-		// For loop: for each Tumor in testData, feed that Tumor along with 
-		// the entire array of Tumors trainingData to the 
-		// findTypeOfNthNearestNeighbor method (with N = k), which will guess
-		// the result based on the nearest neighbor algorithm. Then check the
-		// result. 
-		for (int j = 0; j < testData.length; j++) {
-			// Initialize a boolean for the guess
-			boolean guess;
-			// Initialize counter variables for the number of benign and 
-			// malignant tumors
-			int numBenign = 0, numMalignant = 0;
-			// Inner for loop to find the types of the closest k neighbors
-			for (int count = 1; count <= k; count++) {
-				// If the kth-closest nearest neighbor is malignant, increment
-				// numMalignant
-				if (FindTypeOfNthNearestNeighbor(count, testData[j], 
-						trainingData) == true)
-					numMalignant++;
-				// Otherwise increment numBenign
-				else numBenign++;
-			} // End of inner for loop to find types of closest k neighbors
-			
-			// If there were more malignants than benigns among the k closest
-			// neighbors, then set our guess to true (for malignant)
-			if (numMalignant > numBenign) guess = true;
-			// Otherwise set our guess to false (for benign)
-			else guess = false;
-			
-			// If the tumors were all of one type... 
-			if ((numMalignant == 0) || (numBenign == 0))
-				// ...we increment countUnanimous
-				countUnanimous++;
-			
-			// Now we check if our guess was correct by comparing it to the 
-			// actual type of that Tumor from testData
-			// If we were correct...
-			if (guess == testData[j].getType()) {
-				// ...we increment countCorrect
-				countCorrect++;
-				// If we were correct and all of the neighbors were one type...
-				if ((numMalignant == 0) || (numBenign == 0))
-					// ...we also increment countUnanimousCorrect
-					countUnanimousCorrect++;
-				// Or if we were correct and the neighbors were not all of one
-				// type, we increment countNotUnanimousCorrect
-				else countNotUnanimousCorrect++;
-			} // End of if statement checking if we were correct
-			
-		} // End of for loop checking the guess for each value in testData
-		  // against the actual type
-		
-		// Set a new double percentAccurate to the times we were correct
-		// divided by the number of Tumors in testData we checked (times 100)
-		double percentAccurate = (((double) countCorrect / 
-				(double) testData.length) * 100);
-		// Set a new double percentUnanimous to the times all the neighbors
-		// had the same type (times 100)
-		double percentUnanimous = 100 *
-			((double) countUnanimous / (double) testData.length);
-		// Set a new double percentUnanimousAccuracy to the number of times
-		// we were correct and the neighbors were unanimous divided by the 
-		// times the neighbors were unanimous (times 100)
-		double percentUnanimousAccuracy = 100 * 
-			((double) countUnanimousCorrect / (double) countUnanimous);
-		// Set a new double percentNotUnanimousAccuracy to the number of times
-		// we were correct and the neighbors were not unanimous divided by the 
-		// times the neighbors were not unanimous (times 100)
-		double percentNotUnanimousAccuracy = 100 * 
-			((double) countNotUnanimousCorrect / 
-					(double) (testData.length - countUnanimous));
-		
-		// Comment tags around this can be removed to show the result of each
-		// testing of 20% of the Tumors
-		/*
-		System.out.println("Out of " + testData.length + " tumors, " +
-				"NearestNeighbor guessed correctly " + countCorrect + 
-				" times, for " + percentAccurate + "% accuracy.");
-		*/
-		
-		// Create a new array of doubles, results, with length 4 for all the 
-		// results we want to return
-		double[] results = new double[4];
-		// Set the first value of results to overall percent accuracy for this
-		// trial
-		results[0] = percentAccurate;
-		// Set the second value of results to the percent of the time the 
-		// neighbors were unanimous for this trial
-		results[1] = percentUnanimous;
-		// Set the third value of results to percent accuracy when the 
-		// neighbors were unanimous for this trial
-		results[2] = percentUnanimousAccuracy;
-		// Set the fourth value of results to percent accuracy when the
-		// neighbors were not unanimous for this trial
-		results[3] = percentNotUnanimousAccuracy;
-
-		// Return the array results
-		return results;
+		return Accuracy(k, FeatureMatrix.fromTumors(tListIn));
+	}
+	
+	
+	/**Runs one trial of the nearest neighbor algorithm on a FeatureMatrix 
+	 * of tumors: it shuffles the rows, uses the first 80% for training and
+	 * the last 20% for testing, and has the k nearest neighbors vote on each
+	 * tumor in the testing data.
+	 * The rows are shuffled through an array of row numbers by DataSplitter
+	 * (stratified, so 80% of each type is used for training), so data itself
+	 * is never changed, and the training and testing rows are then copied 
+	 * into matrices of their own so the scan over the training data reads 
+	 * straight through memory. The testing tumors are split up between the
+	 * threads of the common ForkJoinPool (see TrialRunner).
+	 * @param k How many nearest neighbors to find and then have vote on 
+	 * whether the tumor is malignant or benign
+	 * @param data A FeatureMatrix of tumors to use as training and testing
+	 * data for the nearest neighbor algorithm
+	 * @return An array of doubles representing the percent accuracy of the 
+	 * nearest neighbor algorithm for this particular run as well as some other
+	 * information: the percent of the testing tumors guessed correctly,
+	 * the percent whose neighbors were all one type, and the percent guessed
+	 * correctly when the neighbors were and weren't all one type
+	 */
+	public static double[] Accuracy(int k, FeatureMatrix data) {
+		return TrialRunner.runTrial(data, k, 
+				DataSplitter.split(data, new SplittableRandom(), true),
+				LinearScanIndex::new, null);
 	}
 	
 	
 	/**Runs 100 trials of the Accuracy method and keeps track of the 
-	 * accuracy percentages
+	 * accuracy percentages. The Tumors are copied into a FeatureMatrix first
+	 * and the trials are run on that, so tListIn itself is no longer 
+	 * shuffled and the trials can run at the same time.
 	 * @param tListIn An array of Tumors to use as training and testing data
 	 * for the nearest neighbor algorithm (probably extracted from the data 
-	 * file; passed to Accuracy method)
+	 * file)
 	 * @param numNeighbors How many nearest neighbors to find and then have 
-	 * vote on whether the tumor is malignant or benign (passed to Accuracy
-	 * method as k)
+	 * vote on whether the tumor is malignant or benign
 	 * @return An array of doubles representing the overall percent accuracy 
 	 * of the nearest neighbor algorithm for all 100 runs as well as some other
 	 * information
 	 */
 	public static double[] Accuracy100Trials(Tumor[] tListIn, 
 			int numNeighbors) {
-		// Now we run NearestNeighbor.Accuracy on tListIn 100 times.
-		// That static method divides the list up 80-20 each time it is
-		// run, runs the Nearest Neighbor algorithm on the 20% using 
-		// the 80% as training data, and reports back an array of 
-		// doubles containing percent accuracy as well as other 
-		// information, like how often the neighbors were unanimous
-		// and how accurate it was when they were and weren't. 
-		// We do this 100 times and take the average of the 
-		// various results.
-		
-		// Initialize variables for the sum of the percentAccuracy and 
-		// percentUnanimousAccuracy percentages that will be reported back from
-		// the Accuracy method
-		double totalAccuracy = 0, totalUnanimousAccuracy = 0;
-		// Same as above for the sum of the percentNotUnanimousAccuracy 
-		double totalNotUnanimousAccuracy = 0;
-		// Same as above for the sum of the percentUnanimous
-		double totalUnanimousPercent = 0;
-		
-		// Initialize a final int for the number of trials, which will be 100
+		return Accuracy100Trials(FeatureMatrix.fromTumors(tListIn), 
+				numNeighbors);
+	} // End of method Accuracy100Trials
+	
+	
+	/**Runs 100 trials of the Accuracy method on a FeatureMatrix of tumors
+	 * and averages the accuracy percentages. The trials (and the testing 
+	 * tumors inside each trial) run at the same time on all the cores of the
+	 * machine using a TrialRunner, with each trial shuffling its own array 
+	 * of row numbers.
+	 * @param data A FeatureMatrix of tumors to use as training and testing
+	 * data for the nearest neighbor algorithm
+	 * @param numNeighbors How many nearest neighbors to find and then have 
+	 * vote on whether the tumor is malignant or benign
+	 * @return An array of doubles representing the overall percent accuracy 
+	 * of the nearest neighbor algorithm for all 100 runs as well as some other
+	 * information
+	 */
+	public static double[] Accuracy100Trials(FeatureMatrix data, 
+			int numNeighbors) {
+		return Accuracy100Trials(data, numNeighbors, 
+				new SplittableRandom().nextLong());
+	} // End of method Accuracy100Trials
+	
+	
+	/**Runs 100 trials of the Accuracy method on a FeatureMatrix of tumors
+	 * the same way as Accuracy100Trials(FeatureMatrix, int), but with the 
+	 * random splits coming from a seed, so that running it again with the 
+	 * same seed gives exactly the same results
+	 * @param data A FeatureMatrix of tumors to use as training and testing
+	 * data for the nearest neighbor algorithm
+	 * @param numNeighbors How many nearest neighbors to find and then have 
+	 * vote on whether the tumor is malignant or benign
+	 * @param seed The seed for the random splits
+	 * @return An array of doubles representing the overall percent accuracy 
+	 * of the nearest neighbor algorithm for all 100 runs as well as some other
+	 * information
+	 */
+	public static double[] Accuracy100Trials(FeatureMatrix data, 
+			int numNeighbors, long seed) {
 		final int NUM_OF_TRIALS = 100;
-		
-		// For loop to run Accuracy method 100 times
-		for (int i = 0; i < NUM_OF_TRIALS; i++) {
-			// Runs Accuracy method for the array of Tumors tListIn and the
-			// value of k for k-nearest neighbor numNeighbors
-			double[] resultsOfAccuracy = 
-				NearestNeighbor.Accuracy(numNeighbors, tListIn);
-			// Adds the result from the Accuracy method's return array for
-			// overall accuracy onto totalAccuracy
-			totalAccuracy += resultsOfAccuracy[0];
-			// Adds the result from the Accuracy method's return array for
-			// unanimous percentage onto totalUnanimousPercent
-			totalUnanimousPercent += resultsOfAccuracy[1];
-			// Adds the result from the Accuracy method's return array for
-			// unanimous accuracy onto totalUnanimousAccuracy
-			totalUnanimousAccuracy += resultsOfAccuracy[2];
-			// Adds the result from the Accuracy method's return array for
-			// non-unanimous accuracy onto totalNotUnanimousAccuracy
-			totalNotUnanimousAccuracy += resultsOfAccuracy[3];
-		} // End of for loop to run Accuracy method 100 times 
-		
-		// Creates double avgAccuracy for the average of the overall accuracy
-		// of each run
-		double avgAccuracy = totalAccuracy / (double) NUM_OF_TRIALS;
-		// Creates double avgUnanimousPercent for the average of the percentage
-		// of times the neighbors were unanimous of each run
-		double avgUnanimousPercent = 
-			totalUnanimousPercent / (double) NUM_OF_TRIALS;
-		// Creates double avgUnanimousPercent for the average of the accuracy
-		// when the neighbors were unanimous of each run
-		double avgUnanimousAccuracy = 
-			totalUnanimousAccuracy / (double) NUM_OF_TRIALS;
-		// Creates double avgNotUnanimousPercent for the average of the accuracy
-		// when the neighbors were not unanimous of each run
-		double avgNotUnanimousAccuracy = 
-			totalNotUnanimousAccuracy / (double) NUM_OF_TRIALS;
-		
-		// Creates a new array of doubles, results, with length 4 for all the 
-		// results we want to return
-		double[] results = new double[4];
-		// Set the first value of results to the overall accuracy of nearest 
-		// neighbor for 100 trials
-		results[0] = avgAccuracy;
-		// Set the second value of results to the overall percentage of times
-		// the neighbors were unanimous
-		results[1] = avgUnanimousPercent;
-		// Set the third value of results to the overall percentage of times
-		// the guesses were accurate when the neighbors were unanimous
-		results[2] = avgUnanimousAccuracy;
-		// Set the third value of results to the overall percentage of times
-		// the guesses were accurate when the neighbors were not unanimous
-		results[3] = avgNotUnanimousAccuracy;
-		
-		// Return the array of results
-		return results;
+		return new TrialRunner(seed).runTrials(data, numNeighbors, 
+				NUM_OF_TRIALS);
+	} // End of method Accuracy100Trials
+	
+	
+	/**Runs 100 trials of the Accuracy method on a FeatureMatrix of tumors
+	 * the same way as Accuracy100Trials(FeatureMatrix, int, long), but for
+	 * several values of k at once: each testing tumor's neighbors are found
+	 * once, for the biggest k, and the closest k of them vote for each value
+	 * of k, so all the values of k are tested on the same splits for about
+	 * the cost of one. The results for each value of k are exactly the same
+	 * as calling Accuracy100Trials(FeatureMatrix, int, long) for it with the
+	 * same seed.
+	 * @param data A FeatureMatrix of tumors to use as training and testing
+	 * data for the nearest neighbor algorithm
+	 * @param ks The values of k to test, smallest first
+	 * @param seed The seed for the random splits
+	 * @return An array with the results of Accuracy100Trials(FeatureMatrix,
+	 * int, long) for each value of k, in the same order as ks
+	 */
+	public static double[][] Accuracy100Trials(FeatureMatrix data, int[] ks,
+			long seed) {
+		final int NUM_OF_TRIALS = 100;
+		return new TrialRunner(seed).runTrials(data, ks, NUM_OF_TRIALS);
+	} // End of method Accuracy100Trials
+	
+	
+	/**Runs 100 trials of the Accuracy method on a FeatureMatrix of tumors
+	 * the same way as Accuracy100Trials(FeatureMatrix, int, long), but finds
+	 * the neighbors with an index of the caller's choosing (for example an
+	 * approximate HnswIndex) and also measures how many of the true nearest 
+	 * neighbors that index found, by checking against a LinearScanIndex
+	 * @param data A FeatureMatrix of tumors to use as training and testing
+	 * data for the nearest neighbor algorithm
+	 * @param numNeighbors How many nearest neighbors to find and then have 
+	 * vote on whether the tumor is malignant or benign
+	 * @param seed The seed for the random splits
+	 * @param builder The NeighborIndex.Builder to build each trial's index
+	 * with
+	 * @return An array of five doubles: the four results of 
+	 * Accuracy100Trials(FeatureMatrix, int), then the average percent of the
+	 * true nearest neighbors the index found (its recall)
+	 */
+	public static double[] Accuracy100Trials(FeatureMatrix data, 
+			int numNeighbors, long seed, NeighborIndex.Builder builder) {
+		final int NUM_OF_TRIALS = 100;
+		TrialRunner runner = new TrialRunner(seed);
+		runner.setIndexBuilder(builder);
+		runner.setRecallBaseline(LinearScanIndex::new);
+		return runner.runTrials(data, numNeighbors, NUM_OF_TRIALS);
 	} // End of method Accuracy100Trials
 	
 	
@@ -333,63 +340,38 @@ public class NearestNeighbor {
 	 * that invoke this method
 	 */
 	public static Tumor[] Import(String fileName) throws IOException {
-		// Creates a new File object based on the file name the user gives
-		File inFile = new File(fileName);
-		// Creates a new Scanner object to scan the File object
-		Scanner fileScanner = new Scanner(inFile);
-		// Sets a final int for the number of tumors to 569 because that's 
-		// how many tumors are in the data file
-		final int NUM_OF_TUMORS = 569;
-				
-		// Creates a new array for all the tumors with size equal to the number
-		// of tumors
-		Tumor[] tListIn = new Tumor[NUM_OF_TUMORS];
-		
-		// For loop to populate the array tListIn with the tumors from
-		// the input file; runs until there are no more lines in the file
-		for (int i = 0; fileScanner.hasNextLine(); i++) {
-			// Makes a string of each line of the file, from the scanner 
-			// fileScanner
-			String line = fileScanner.nextLine();
-			// Creates a new scanner to scan the strings made by the previous
-			// line
-			Scanner lineScanner = new Scanner(line);
-			// Sets the delimiter of this scanner to a comma for separating 
-			// the values in the input file
-			lineScanner.useDelimiter(",");
-
-			// Initializes an integer idNumber for the ID number of the tumor
-			// obtained from the first item in the line returned by lineScanner
-			int idNumber = lineScanner.nextInt();
-			// Obtains a string (which should be "M" or "B") from the second 
-			// item in the line returned by lineScanner
-			String typeString = lineScanner.next();
-			// Initializes a boolean type for the type of the tumor (M or B)
-			boolean type;
-			// Sets the boolean to true if the string obtained above is "M"...
-			if (typeString.equals("M")) type = true;
-			// ... or false if it's not.
-			else type = false;
-
-			// Creates a new array of doubles for the remaining 
-			// characteristics of each tumor
-			double[] characteristics = new double[30];
-			
-			// Fills the characteristics array with the rest of the doubles 
-			// making up the Tumor's characteristics from lineScanner
-			for (int j = 0; lineScanner.hasNextDouble(); j++) {
-				characteristics[j] = lineScanner.nextDouble();
-			}
-			
-			// Fills tListIn array with Tumor objects, which each have 
-			// an int idNumber, boolean type (true for malignant, false
-			// for benign) and array of 30 doubles for their other 
-			// characteristics
-			tListIn[i] = new Tumor(idNumber, type, characteristics);
-		} // End of for loop creating tListIn array of tumors
-		
-		// Returns the array of Tumors that we just made from the input file
-		return tListIn;
+		// Reads the file into a FeatureMatrix with ImportMatrix and then 
+		// makes a Tumor object for each of its rows
+		return ImportMatrix(fileName).toTumors();
 	} // End of import method
+	
+	
+	/**Imports a file and generates a FeatureMatrix based on the contents of
+	 * the file, with one row for each line of the file. The file is read by
+	 * TumorDataLoader, which works on the raw bytes instead of making a 
+	 * Scanner for each line, and can read a file with any number of tumors.
+	 * A binary data file written by MappedDataset is mapped instead of
+	 * parsed, and copied into the FeatureMatrix.
+	 * @param fileName The name of the file to try opening
+	 * @return The FeatureMatrix of tumors gotten from the file
+	 * @throws IOException Throws this exception if the fileName is not good
+	 * or there is some other problem with I/O; dealt with in the main methods
+	 * that invoke this method
+	 * @throws MalformedDataException (a kind of IOException) if a line of
+	 * the file isn't an ID number, M or B, and the characteristics; its 
+	 * message says which line
+	 */
+	public static FeatureMatrix ImportMatrix(String fileName) 
+			throws IOException {
+		// Maps the file if it is a binary one, or reads it as text otherwise,
+		// and returns the FeatureMatrix
+		long start = PipelineMetrics.start();
+		PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+		FeatureMatrix data = MappedDataset.isBinary(fileName) ?
+			MappedDataset.open(fileName).toFeatureMatrix() :
+			TumorDataLoader.load(fileName);
+		PipelineMetrics.stop(PipelineMetrics.LOAD, start, event);
+		return data;
+	} // End of ImportMatrix method
 
 } // End of class
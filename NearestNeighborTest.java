@@ -1,6 +1,8 @@
-// Importing classes for Scanner and IO (to read file)
+// Importing classes for Scanner, SplittableRandom (to pick a seed) and IO
+// (to read file)
 import java.io.*;
 import java.util.Scanner;
+import java.util.SplittableRandom;
 
 
 /**This class runs the Nearest Neighbor algorithm (using only the first nearest
@@ -13,11 +15,16 @@ public class NearestNeighborTest {
 
 	/**Main method for the NearestNeighborTest class
 	 * @param args The command-line arguments for the method (there should be
-	 * none)
+	 * none, or one: a seed for the random splits, so that a run can be
+	 * repeated exactly)
 	 * @throws IOException This exception gets thrown by the call to 
 	 * NearestNeighbor.import if the file name passed to it is not good.
 	 */
 	public static void main(String[] args) throws IOException {
+		// Uses the seed for the random splits from the command line if there
+		// is one, or picks one at random otherwise
+		long seed = (args.length > 0) ? Long.parseLong(args[0]) : 
+			new SplittableRandom().nextLong();
 		// Asks user for a file name
 		System.out.println("Please provide a file name for the data file to " +
 				"use.");
@@ -39,11 +46,12 @@ public class NearestNeighborTest {
 			try {
 				// Tells the user it is importing the file
 				System.out.println("Importing file...");
-				// Runs the Import method from the NearestNeighbor class with
-				// the fileName provided by user. If there is an exception here
-				// it will jump to the catch block and ask the user to try 
-				// again. 
-				Tumor[] tListIn = NearestNeighbor.Import(fileName);
+				// Runs the ImportMatrix method from the NearestNeighbor class
+				// with the fileName provided by user, which reads the file 
+				// into a FeatureMatrix. If there is an exception here it will
+				// jump to the catch block and ask the user to try again. 
+				FeatureMatrix tumorData = 
+					NearestNeighbor.ImportMatrix(fileName);
 				
 				// Tells the user it is testing for the nearest numNeighbors
 				// neighbors (will always be 1 because this program only checks
@@ -54,7 +62,8 @@ public class NearestNeighborTest {
 				// Stores the results array of the Accuracy100Trials method in
 				// a creatively named new array of doubles
 				double[] results = 
-					NearestNeighbor.Accuracy100Trials(tListIn, numNeighbors);
+					NearestNeighbor.Accuracy100Trials(tumorData, numNeighbors,
+							seed);
 				
 				// Prints the overall accuracy of the algorithm
 				System.out.println("Nearest Neighbor with nearest " +
@@ -67,6 +76,14 @@ public class NearestNeighborTest {
 			} // End of try block
 			
 			// If there is an exception, asks user to try again
+			catch(MalformedDataException e){
+				// Tells the user which line of the file was wrong and asks
+				// for a new file name
+				System.out.println(e.getMessage());
+				System.out.println("Please try again with a correctly " +
+						"formatted file.");
+				fileName = keyboard.next();
+			}
 			catch(IOException e){
 				// Asks user for new file name
 				System.out.println("Please try again with correct input " +
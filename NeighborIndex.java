@@ -0,0 +1,83 @@
+/**This interface is for anything that can find the k nearest neighbors of a
+ * query tumor among a fixed set of training tumors held in a FeatureMatrix:
+ * a plain scan of every row (LinearScanIndex) or a spatial index built ahead
+ * of time that can skip most of the rows (BallTree). TrialRunner builds one
+ * of these from the training data of each trial with a NeighborIndex.Builder
+ * and asks it for the neighbors of each testing tumor, so any kind of index
+ * can be plugged in without changing how the trials are run.
+ */
+public interface NeighborIndex {
+
+	/**This interface is for something that builds a NeighborIndex over a
+	 * FeatureMatrix of training tumors (for example LinearScanIndex::new)
+	 */
+	public interface Builder {
+		/**Builds a NeighborIndex over some training tumors
+		 * @param train The FeatureMatrix of training tumors
+		 * @return The NeighborIndex
+		 */
+		NeighborIndex build(FeatureMatrix train);
+	}
+
+	/**Returns the FeatureMatrix of training tumors this index searches
+	 * @return The FeatureMatrix of training tumors
+	 */
+	FeatureMatrix getData();
+
+	/**Returns how many characteristics the training tumors (and so the
+	 * queries) have
+	 * @return The number of characteristics
+	 */
+	default int getNumFeatures() {
+		return getData().getNumFeatures();
+	}
+
+	/**Returns the FeatureTransform the training tumors were transformed
+	 * with, so that queries can be transformed the same way before they are
+	 * searched for
+	 * @return The FeatureTransform, or null if the training tumors are as
+	 * they were read
+	 */
+	default FeatureTransform getTransform() {
+		return getData().getTransform();
+	}
+
+	/**Returns a number that changes every time the training tumors change
+	 * (such as when a tumor is inserted into an HnswIndex), so that answers
+	 * remembered from before (by a DiagnosisCache) can be thrown out. This
+	 * returns 0, for an index whose training tumors never change.
+	 * @return The version of the training tumors
+	 */
+	default long getVersion() {
+		return 0;
+	}
+
+	/**Finds the k nearest neighbors of a query tumor among the training
+	 * tumors and writes them into a NeighborResult, closest first, with
+	 * tumors at the same distance ordered by their row in getData()
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param k How many nearest neighbors to find
+	 * @param out The NeighborResult to write the neighbors into
+	 */
+	void kNearest(double[] query, int queryOffset, int k, NeighborResult out);
+
+	/**Finds the k nearest neighbors of each of a range of rows of a
+	 * FeatureMatrix of queries. This just calls kNearest for one row after
+	 * another, but an index that can do better by working on many queries at
+	 * once (like LinearScanIndex) replaces it.
+	 * @param queries The FeatureMatrix holding the query tumors
+	 * @param from The first query row
+	 * @param to One past the last query row
+	 * @param k How many nearest neighbors to find for each query
+	 * @param out The NeighborResults to write the neighbors into, one for
+	 * each query, with the neighbors of row from in out[0]
+	 */
+	default void kNearestBatch(FeatureMatrix queries, int from, int to, int k,
+			NeighborResult[] out) {
+		double[] queryData = queries.getData();
+		for (int q = from; q < to; q++) {
+			kNearest(queryData, queries.offset(q), k, out[q - from]);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+/**This class holds the result of a single k-nearest neighbor query: the ID
+ * numbers, types and distances of the k closest tumors to some query tumor,
+ * ordered from closest to farthest. It is returned by
+ * NearestNeighbor.kNearest so that the neighbors can all vote from one search
+ * instead of re-sorting the training data once for every neighbor. A
+ * NeighborResult can also be made with room for some number of neighbors and
+ * then filled in again for each new query, so that searching doesn't have to
+ * allocate anything.
+ */
+public class NeighborResult {
+	// Initialize an array of integers ids to store the ID numbers of the
+	// neighbors, closest first
+	private int[] ids;
+	// Initialize an array of booleans types to store the types of the
+	// neighbors (true for malignant, false for benign), closest first
+	private boolean[] types;
+	// Initialize an array of doubles distances to store how far each
+	// neighbor is from the query tumor, closest first
+	private double[] distances;
+	// Initialize an integer for how many of the entries in the arrays are
+	// in use
+	private int size;
+
+	/**This constructor creates a NeighborResult from three arrays that have
+	 * already been put in order from closest to farthest
+	 * @param idsIn The ID numbers of the neighbors
+	 * @param typesIn The types of the neighbors (true for malignant, false
+	 * for benign)
+	 * @param distancesIn The distances of the neighbors from the query tumor
+	 */
+	public NeighborResult(int[] idsIn, boolean[] typesIn,
+			double[] distancesIn) {
+		// Sets the arrays of this result to the actual parameter inputs
+		ids = idsIn;
+		types = typesIn;
+		distances = distancesIn;
+		size = idsIn.length;
+	}
+
+	/**This second constructor creates an empty NeighborResult with room for
+	 * some number of neighbors, to be filled in (and filled in again) by a
+	 * neighbor search
+	 * @param capacity How many neighbors to make room for
+	 */
+	public NeighborResult(int capacity) {
+		this(new int[capacity], new boolean[capacity], new double[capacity]);
+		size = 0;
+	}
+
+	/**Sets how many neighbors are in this result, making more room first if
+	 * there isn't enough (the entries are then filled in with set)
+	 * @param sizeIn The number of neighbors
+	 */
+	public void setSize(int sizeIn) {
+		if (sizeIn > ids.length) {
+			ids = new int[sizeIn];
+			types = new boolean[sizeIn];
+			distances = new double[sizeIn];
+		}
+		size = sizeIn;
+	}
+
+	/**Fills in the Nth nearest neighbor of this result
+	 * @param n Which neighbor, counting from 0 for the closest
+	 * @param id The ID number of that neighbor
+	 * @param type The type of that neighbor
+	 * @param distance The distance of that neighbor from the query tumor
+	 */
+	public void set(int n, int id, boolean type, double distance) {
+		ids[n] = id;
+		types[n] = type;
+		distances[n] = distance;
+	}
+
+	/**This simple accessor method returns how many neighbors were found
+	 * (which is k, unless the training data had fewer than k tumors)
+	 * @return The number of neighbors in this result
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**This accessor method returns the ID number of the Nth nearest neighbor
+	 * @param n Which neighbor, counting from 0 for the closest
+	 * @return The ID number of that neighbor
+	 */
+	public int getID(int n) {
+		return ids[n];
+	}
+
+	/**This accessor method returns the type of the Nth nearest neighbor
+	 * @param n Which neighbor, counting from 0 for the closest
+	 * @return True if that neighbor is malignant, false if it is benign
+	 */
+	public boolean getType(int n) {
+		return types[n];
+	}
+
+	/**This accessor method returns the distance of the Nth nearest neighbor
+	 * from the query tumor
+	 * @param n Which neighbor, counting from 0 for the closest
+	 * @return The distance of that neighbor from the query tumor
+	 */
+	public double getDistance(int n) {
+		return distances[n];
+	}
+
+	/**Counts how many of the neighbors in this result are malignant
+	 * @return The number of malignant neighbors
+	 */
+	public int countMalignant() {
+		// Initialize a counter for the malignant neighbors
+		int numMalignant = 0;
+		// For loop to go through all the neighbors and count the malignant
+		// ones
+		for (int i = 0; i < size; i++) {
+			if (types[i]) numMalignant++;
+		}
+		// Return the number of malignant neighbors
+		return numMalignant;
+	}
+} // End of class
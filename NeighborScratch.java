@@ -0,0 +1,232 @@
+// Importing Arrays (to grow the arrays)
+import java.util.Arrays;
+
+/**This class holds the working space a thread needs to search for nearest
+ * neighbors -- a KnnHeap for the k closest rows seen so far and a
+ * NeighborResult to write the answer into (plus a second one for the answer
+ * of an exact search to compare it with, a heap and a result for each query
+ * of a batch, the lists of candidates QuantizedIndex re-ranks, and the
+ * shards' hits for ShardedIndex) -- so
+ * that the same arrays can be used over and over for every query the thread
+ * runs instead of being allocated fresh each time.
+ * Each thread gets its own NeighborScratch from forCurrentThread, so threads
+ * never share one. Each time a heap or the results for a search are handed
+ * out without having to be grown, PipelineMetrics counts an allocation
+ * avoided.
+ */
+public class NeighborScratch {
+	// Initialize a ThreadLocal that makes one NeighborScratch for each thread
+	// the first time that thread asks for it
+	private static final ThreadLocal<NeighborScratch> SCRATCH =
+		ThreadLocal.withInitial(NeighborScratch::new);
+
+	// Initialize the heap and the result this thread reuses
+	private final KnnHeap heap = new KnnHeap(1);
+	private final NeighborResult result = new NeighborResult(1);
+	private final NeighborResult baselineResult = new NeighborResult(1);
+	// Initialize the arrays of heaps and results for searching for a batch
+	// of queries at once, and a buffer of doubles, all grown when needed
+	private KnnHeap[] heaps = new KnnHeap[0];
+	private NeighborResult[] results = new NeighborResult[0];
+	private double[] buffer = new double[0];
+	// Initialize an array for a transformed query, grown when needed
+	private double[] query = new double[0];
+	// Initialize a second heap, a float copy of a query, a buffer of floats,
+	// and the rows and lower bounds of the candidates for re-ranking, for
+	// QuantizedIndex
+	private final KnnHeap boundHeap = new KnnHeap(1);
+	private float[] floatQuery = new float[0];
+	private float[] floatBuffer = new float[0];
+	private int[] candidateRows = new int[0];
+	private double[] candidateBounds = new double[0];
+	// Initialize the array of the shards' hits, whether a search has taken
+	// it, and how far the merge is through each shard's hits, for
+	// ShardedIndex
+	private ShardHits[] shardHits = new ShardHits[0];
+	private boolean shardHitsTaken;
+	private int[] shardPositions = new int[0];
+
+	/**Returns the NeighborScratch belonging to the thread that calls it
+	 * @return This thread's NeighborScratch
+	 */
+	public static NeighborScratch forCurrentThread() {
+		return SCRATCH.get();
+	}
+
+	/**Empties this thread's heap and returns it, ready to keep the k closest
+	 * rows of a new search
+	 * @param k How many of the closest rows to keep
+	 * @return The emptied KnnHeap
+	 */
+	public KnnHeap heap(int k) {
+		if (heap.reset(k)) PipelineMetrics.count(PipelineMetrics.REUSED, 1);
+		return heap;
+	}
+
+	/**Returns this thread's reusable NeighborResult. Its contents are only
+	 * good until the thread's next search, so callers that want to keep them
+	 * have to copy them out.
+	 * @return The reusable NeighborResult
+	 */
+	public NeighborResult result() {
+		return result;
+	}
+
+	/**Returns this thread's second reusable NeighborResult, for the answer
+	 * of an exact search to compare an approximate one with
+	 * @return The second reusable NeighborResult
+	 */
+	public NeighborResult baselineResult() {
+		return baselineResult;
+	}
+
+	/**Empties the first count of this thread's batch heaps and returns
+	 * them, ready to keep the k closest rows for each of a batch of queries
+	 * @param count How many heaps are needed
+	 * @param k How many of the closest rows each keeps
+	 * @return The array of heaps (which may be longer than count)
+	 */
+	public KnnHeap[] heaps(int count, int k) {
+		boolean grew = count > heaps.length;
+		if (grew) {
+			int old = heaps.length;
+			heaps = Arrays.copyOf(heaps, count);
+			for (int i = old; i < count; i++) heaps[i] = new KnnHeap(k);
+		}
+		// Only count them as reused if none of them had to grow either
+		for (int i = 0; i < count; i++)
+			if (!heaps[i].reset(k)) grew = true;
+		if (!grew) PipelineMetrics.count(PipelineMetrics.REUSED, count);
+		return heaps;
+	}
+
+	/**Returns this thread's reusable NeighborResults for a batch of queries
+	 * (only good until the thread's next batch, like result)
+	 * @param count How many are needed
+	 * @return The array of NeighborResults (which may be longer than count)
+	 */
+	public NeighborResult[] results(int count) {
+		if (count > results.length) {
+			int old = results.length;
+			results = Arrays.copyOf(results, count);
+			for (int i = old; i < count; i++)
+				results[i] = new NeighborResult(1);
+		}
+		else PipelineMetrics.count(PipelineMetrics.REUSED, count);
+		return results;
+	}
+
+	/**Returns this thread's reusable array for a transformed query
+	 * @param numFeatures How many characteristics the query has
+	 * @return The array (which may be longer than numFeatures)
+	 */
+	public double[] query(int numFeatures) {
+		if (numFeatures > query.length) query = new double[numFeatures];
+		return query;
+	}
+
+	/**Empties this thread's second heap and returns it, for keeping the k
+	 * smallest upper bounds on the distance while QuantizedIndex scans
+	 * @param k How many of the smallest bounds to keep
+	 * @return The emptied KnnHeap
+	 */
+	public KnnHeap boundHeap(int k) {
+		boundHeap.reset(k);
+		return boundHeap;
+	}
+
+	/**Returns this thread's reusable array for a query as floats
+	 * @param length How many floats are needed
+	 * @return The array (which may be longer than length)
+	 */
+	public float[] floatQuery(int length) {
+		if (length > floatQuery.length) floatQuery = new float[length];
+		return floatQuery;
+	}
+
+	/**Returns this thread's reusable buffer of floats
+	 * @param count How many floats are needed
+	 * @return The buffer (which may be longer than count)
+	 */
+	public float[] floatBuffer(int count) {
+		if (count > floatBuffer.length) floatBuffer = new float[count];
+		return floatBuffer;
+	}
+
+	/**Returns this thread's array for the row numbers of candidates,
+	 * keeping what is already in it if it has to be grown
+	 * @param count How many are needed
+	 * @return The array (which may be longer than count)
+	 */
+	public int[] candidateRows(int count) {
+		if (count > candidateRows.length)
+			candidateRows = Arrays.copyOf(candidateRows,
+					Math.max(count, 2 * candidateRows.length));
+		return candidateRows;
+	}
+
+	/**Returns this thread's array for the lower bounds on the distances of
+	 * candidates, keeping what is already in it if it has to be grown
+	 * @param count How many are needed
+	 * @return The array (which may be longer than count)
+	 */
+	public double[] candidateBounds(int count) {
+		if (count > candidateBounds.length)
+			candidateBounds = Arrays.copyOf(candidateBounds,
+					Math.max(count, 2 * candidateBounds.length));
+		return candidateBounds;
+	}
+
+	/**Takes this thread's reusable ShardHits, one for each shard of a
+	 * ShardedIndex, until they are given back with returnShardHits. While a
+	 * search has them (a thread waiting for its shards can run another
+	 * search), new ones are made instead.
+	 * @param count How many are needed
+	 * @return The array of ShardHits (which may be longer than count)
+	 */
+	public ShardHits[] takeShardHits(int count) {
+		if (shardHitsTaken) {
+			ShardHits[] fresh = new ShardHits[count];
+			for (int i = 0; i < count; i++) fresh[i] = new ShardHits();
+			return fresh;
+		}
+		shardHitsTaken = true;
+		if (count > shardHits.length) {
+			int old = shardHits.length;
+			shardHits = Arrays.copyOf(shardHits, count);
+			for (int i = old; i < count; i++) shardHits[i] = new ShardHits();
+		}
+		else PipelineMetrics.count(PipelineMetrics.REUSED, count);
+		return shardHits;
+	}
+
+	/**Gives back ShardHits taken with takeShardHits
+	 * @param hits The array takeShardHits returned
+	 * @param reusable Whether they can be used again, which they can't if
+	 * a search failed and left shards still writing into them
+	 */
+	public void returnShardHits(ShardHits[] hits, boolean reusable) {
+		if (hits != shardHits) return;
+		if (!reusable) shardHits = new ShardHits[0];
+		shardHitsTaken = false;
+	}
+
+	/**Returns this thread's array for how far a merge is through each
+	 * shard's hits
+	 * @param count How many shards there are
+	 * @return The array (which may be longer than count)
+	 */
+	public int[] shardPositions(int count) {
+		if (count > shardPositions.length) shardPositions = new int[count];
+		return shardPositions;
+	}
+
+	/**Returns this thread's reusable buffer of doubles
+	 * @param count How many doubles are needed
+	 * @return The buffer (which may be longer than count)
+	 */
+	public double[] buffer(int count) {
+		if (count > buffer.length) buffer = new double[count];
+		return buffer;
+	}
+} // End of class
@@ -0,0 +1,66 @@
+// Importing IOException, for shards in other processes
+import java.io.IOException;
+
+/**This interface is for one shard of a ShardedIndex: a run of consecutive
+ * rows of the data set that is searched on its own, either in this process
+ * (LocalShard) or in another one (RemoteShard, talking to a ShardServer).
+ * Each shard finds its own k nearest rows to each query and the ShardedIndex
+ * merges them.
+ */
+public interface NeighborShard extends AutoCloseable {
+
+	/**Returns the row number, in the whole data set, of the shard's first
+	 * row
+	 * @return The first row
+	 */
+	int getFirstRow();
+
+	/**Returns how many rows the shard has
+	 * @return The number of rows
+	 */
+	int getNumRows();
+
+	/**Returns how many characteristics each row has
+	 * @return The number of characteristics
+	 */
+	int getNumFeatures();
+
+	/**Finds the shard's k nearest rows to each of a range of queries
+	 * @param queries The FeatureMatrix holding the queries
+	 * @param from The first query row
+	 * @param to One past the last query row
+	 * @param k How many rows to find for each query
+	 * @param out The ShardHits to write them into (reset for to - from
+	 * queries)
+	 * @throws IOException If the shard is in another process and can't be
+	 * reached
+	 */
+	void search(FeatureMatrix queries, int from, int to, int k, ShardHits out)
+			throws IOException;
+
+	/**Finds the shard's k nearest rows to one query
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param k How many rows to find
+	 * @param out The ShardHits to write them into (reset for one query)
+	 * @throws IOException If the shard is in another process and can't be
+	 * reached
+	 */
+	void search(double[] query, int queryOffset, int k, ShardHits out)
+			throws IOException;
+
+	/**Returns whether a search waits on something other than the processor
+	 * (like a RemoteShard waiting for its ShardServer), so a ShardedIndex
+	 * searching it on a ForkJoinPool can let the pool make another thread
+	 * while it waits
+	 * @return True if a search blocks; this returns false
+	 */
+	default boolean isBlocking() {
+		return false;
+	}
+
+	/**Lets go of whatever the shard holds (a connection, say)
+	 * @throws IOException If it can't be closed cleanly
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,226 @@
+// Importing classes for IO (to read file), lists of samples, random numbers
+// and Scanner
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**This class shows the training tumors changing while they are searched,
+ * with a TrainingStore and a StoreIndex. With a data set made from the data
+ * file (SyntheticData), it starts the store with 80% of the rows, then:
+ *   - times appending the other 20% one at a time and removing a tenth of
+ *     the rows one at a time, against copying the rows out and building a
+ *     new LinearScanIndex, and checks that the StoreIndex then finds exactly
+ *     the same neighbors as a LinearScanIndex over the rows left
+ *   - searches on another thread while the rows are being appended and
+ *     removed, and checks that each search it sampled found exactly what a
+ *     search of its Snapshot alone would have
+ *   - diagnoses the same queries after every change with a DiagnosisCache
+ *     that listens to the store, and checks that every diagnosis matches a
+ *     search without a cache, printing how many came from the cache compared
+ *     with a cache that has to throw everything out at each change
+ */
+public class OnlineUpdateReport {
+
+	/**Main method for the OnlineUpdateReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally k and the number of rows
+	 * @throws Exception This exception gets thrown if the data file can't
+	 * be read or the searching thread is interrupted
+	 */
+	public static void main(String[] args) throws Exception {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int numRows = (args.length > 2) ? Integer.parseInt(args[2]) : 20000;
+		final int NUM_OF_QUERIES = 200;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		FeatureMatrix all = SyntheticData.scale(base, numRows, 2);
+		FeatureMatrix queries = SyntheticData.scale(base, NUM_OF_QUERIES, 1);
+		int numInitial = DataSplitter.trainingSize(numRows);
+		int[] rows = order(numRows);
+		FeatureMatrix initial = all.subset(rows, 0, numInitial);
+		int numRemoves = numRows / 10;
+
+		// Time appending and removing one tumor at a time
+		TrainingStore store = new TrainingStore(initial);
+		long start = System.nanoTime();
+		for (int r = numInitial; r < numRows; r++)
+			store.append(all.getData(), all.offset(r), all.getID(r),
+					all.getType(r));
+		double appendMicros =
+			(System.nanoTime() - start) / 1e3 / (numRows - numInitial);
+		int[] removeIds = removals(numRows, numRemoves, 3);
+		start = System.nanoTime();
+		for (int id : removeIds) store.remove(id);
+		double removeMicros = (System.nanoTime() - start) / 1e3 / numRemoves;
+		start = System.nanoTime();
+		LinearScanIndex rebuilt =
+			new LinearScanIndex(store.snapshot().toFeatureMatrix());
+		double rebuildMicros = (System.nanoTime() - start) / 1e3;
+		boolean same = IndexTradeoffReport.sameNeighbors(
+				new StoreIndex(store), rebuilt, queries, k);
+		System.out.println(String.format("%d rows to start with; appending "
+				+ "took %.2f us per tumor, removing %.2f us per tumor, "
+				+ "rebuilding %.0f us; neighbors %s", numInitial,
+				appendMicros, removeMicros, rebuildMicros,
+				same ? "the same" : "DIFFER"));
+
+		// Search on another thread while the rows change (pausing for a
+		// millisecond after each change, so the searches get to run even on
+		// one core), keeping every 5th search to check against its Snapshot
+		// afterward
+		TrainingStore live = new TrainingStore(initial);
+		List<TrainingStore.Snapshot> sampleSnapshots = new ArrayList<>();
+		List<Integer> sampleQueries = new ArrayList<>();
+		List<NeighborResult> sampleResults = new ArrayList<>();
+		int[] numSearches = new int[1];
+		Thread searcher = new Thread(() -> {
+			NeighborResult out = new NeighborResult(k);
+			for (int n = 0; !Thread.currentThread().isInterrupted(); n++) {
+				int q = n % NUM_OF_QUERIES;
+				TrainingStore.Snapshot snapshot = live.snapshot();
+				StoreIndex.kNearest(snapshot, queries.getData(),
+						queries.offset(q), k, out);
+				if (n % 5 == 0) {
+					sampleSnapshots.add(snapshot);
+					sampleQueries.add(q);
+					sampleResults.add(copy(out));
+				}
+				numSearches[0] = n + 1;
+			}
+		});
+		searcher.start();
+		int numChanges = 0;
+		for (int r = numInitial; r < numRows; r += 10, numChanges++) {
+			live.appendAll(all.subset(rows, r, Math.min(numRows, r + 10)));
+			if (live.remove(removeIds[numChanges % numRemoves])) numChanges++;
+			Thread.sleep(1);
+		}
+		searcher.interrupt();
+		searcher.join();
+		int numWrong = 0;
+		NeighborResult expected = new NeighborResult(k);
+		for (int i = 0; i < sampleSnapshots.size(); i++) {
+			int q = sampleQueries.get(i);
+			new LinearScanIndex(sampleSnapshots.get(i).toFeatureMatrix())
+				.kNearest(queries.getData(), queries.offset(q), k, expected);
+			if (!sameResult(expected, sampleResults.get(i))) numWrong++;
+		}
+		System.out.println(String.format("%d searches during %d changes; "
+				+ "%d of them checked against their Snapshots, %d wrong",
+				numSearches[0], numChanges, sampleSnapshots.size(),
+				numWrong));
+
+		// Diagnose the same queries after every change, with a cache that
+		// listens to the store, one that doesn't, and no cache
+		TrainingStore cached = new TrainingStore(initial);
+		StoreIndex index = new StoreIndex(cached);
+		KnnClassifier listening = new KnnClassifier(index, k);
+		DiagnosisCache listeningCache = new DiagnosisCache(4096);
+		cached.addListener(listeningCache);
+		listening.setCache(listeningCache);
+		KnnClassifier clearing = new KnnClassifier(index, k);
+		clearing.setCache(new DiagnosisCache(4096));
+		KnnClassifier uncached = new KnnClassifier(index, k);
+		Diagnosis[] withCache = diagnoses(NUM_OF_QUERIES);
+		Diagnosis[] cleared = diagnoses(NUM_OF_QUERIES);
+		Diagnosis[] fresh = diagnoses(NUM_OF_QUERIES);
+		int numMismatches = 0;
+		final int NUM_OF_ROUNDS = 200;
+		for (int round = 0; round < NUM_OF_ROUNDS; round++) {
+			// Every other round appends a tumor, and the rest remove one
+			if (round % 2 == 0) {
+				int r = numInitial + round / 2;
+				cached.append(all.getData(), all.offset(r), all.getID(r),
+						all.getType(r));
+			}
+			else cached.remove(removeIds[round / 2]);
+			listening.classifyBatch(queries, withCache);
+			clearing.classifyBatch(queries, cleared);
+			uncached.classifyBatch(queries, fresh);
+			for (int q = 0; q < NUM_OF_QUERIES; q++)
+				if (withCache[q].getNumMalignant()
+						!= fresh[q].getNumMalignant()
+						|| withCache[q].getNumBenign()
+						!= fresh[q].getNumBenign())
+					numMismatches++;
+		}
+		System.out.println(String.format("%d rounds of one change and %d "
+				+ "queries: %d diagnoses differed from a search", NUM_OF_ROUNDS,
+				NUM_OF_QUERIES, numMismatches));
+		System.out.println("  listening cache: " + listeningCache);
+		System.out.println("  clearing cache:  " + clearing.getCache());
+	} // End of main method
+
+	/**Makes an array of the row numbers 0 to n - 1 in order
+	 * @param n How many
+	 * @return The array
+	 */
+	private static int[] order(int n) {
+		int[] rows = new int[n];
+		for (int r = 0; r < n; r++) rows[r] = r;
+		return rows;
+	}
+
+	/**Picks ID numbers to remove at random (SyntheticData numbers its rows'
+	 * ID numbers from 1)
+	 * @param numRows How many rows there are
+	 * @param count How many to pick
+	 * @param seed The seed for the random numbers
+	 * @return The ID numbers, all different
+	 */
+	private static int[] removals(int numRows, int count, long seed) {
+		int[] rows = DataSplitter.permutation(numRows,
+				new SplittableRandom(seed));
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) ids[i] = rows[i] + 1;
+		return ids;
+	}
+
+	/**Makes an array of new Diagnosis objects
+	 * @param count How many
+	 * @return The array
+	 */
+	private static Diagnosis[] diagnoses(int count) {
+		Diagnosis[] out = new Diagnosis[count];
+		for (int i = 0; i < count; i++) out[i] = new Diagnosis();
+		return out;
+	}
+
+	/**Copies a NeighborResult
+	 * @param result The NeighborResult
+	 * @return A new NeighborResult with the same neighbors
+	 */
+	private static NeighborResult copy(NeighborResult result) {
+		NeighborResult copy = new NeighborResult(result.size());
+		copy.setSize(result.size());
+		for (int n = 0; n < result.size(); n++)
+			copy.set(n, result.getID(n), result.getType(n),
+					result.getDistance(n));
+		return copy;
+	}
+
+	/**Checks whether two NeighborResults have the same neighbors at the
+	 * same distances
+	 * @param a The first
+	 * @param b The second
+	 * @return True if they do
+	 */
+	private static boolean sameResult(NeighborResult a, NeighborResult b) {
+		if (a.size() != b.size()) return false;
+		for (int n = 0; n < a.size(); n++)
+			if (a.getID(n) != b.getID(n)
+					|| a.getDistance(n) != b.getDistance(n))
+				return false;
+		return true;
+	}
+} // End of class
@@ -0,0 +1,286 @@
+/**This class projects the characteristics of tumors onto their first few
+ * principal components, so every distance is worked out over a few numbers
+ * instead of all 30. It is fitted on training tumors: their characteristics
+ * are rescaled first (with a FeatureScaler, usually to z-scores, since
+ * otherwise the biggest characteristics would be nearly all of the
+ * variance), then the covariance matrix of the rescaled characteristics is
+ * worked out and its eigenvectors are found with the Jacobi method (it is
+ * small and symmetric). The eigenvectors with the biggest eigenvalues are the
+ * directions the training tumors vary the most in, and each tumor is
+ * replaced by how far it lies along each of them from the training mean.
+ *
+ * The number of components can be chosen directly, or as the fewest that
+ * keep some fraction of the variance. The rescaling, the centering and the
+ * projection are all folded into one weight for each characteristic and one
+ * offset for each component, so transforming a tumor is one dot product per
+ * component.
+ */
+public class PcaProjection implements FeatureTransform {
+	// Initialize a final int for the most sweeps of the Jacobi method (it
+	// usually needs under 10)
+	private static final int MAX_SWEEPS = 100;
+
+	// Initialize the number of characteristics before and after projecting
+	private final int numFeaturesIn, numComponents;
+	// Initialize the arrays of weights (component j's weight for
+	// characteristic f is at j * numFeaturesIn + f) and offsets
+	private final double[] weights, offsets;
+	// Initialize the array of all the eigenvalues, biggest first
+	private final double[] eigenvalues;
+
+	/**This constructor creates a PcaProjection from its fitted values
+	 * @param numFeaturesInIn How many characteristics the tumors have
+	 * @param numComponentsIn How many components it projects onto
+	 * @param weightsIn Each component's weight for each characteristic
+	 * @param offsetsIn What to subtract from each component
+	 * @param eigenvaluesIn All the eigenvalues, biggest first
+	 */
+	private PcaProjection(int numFeaturesInIn, int numComponentsIn,
+			double[] weightsIn, double[] offsetsIn, double[] eigenvaluesIn) {
+		numFeaturesIn = numFeaturesInIn;
+		numComponents = numComponentsIn;
+		weights = weightsIn;
+		offsets = offsetsIn;
+		eigenvalues = eigenvaluesIn;
+	}
+
+	/**Fits a PcaProjection onto a given number of components
+	 * @param train The FeatureMatrix of training tumors to fit it on
+	 * @param scaling How to rescale the characteristics first
+	 * (FeatureScaler.NONE, Z_SCORE or MIN_MAX)
+	 * @param numComponents How many components to keep
+	 * @return The PcaProjection
+	 */
+	public static PcaProjection fitComponents(FeatureMatrix train,
+			int scaling, int numComponents) {
+		if (numComponents < 1 || numComponents > train.getNumFeatures())
+			throw new IllegalArgumentException("can't keep " + numComponents
+					+ " components of " + train.getNumFeatures()
+					+ " characteristics");
+		return fit(train, scaling, numComponents, 0);
+	}
+
+	/**Fits a PcaProjection onto the fewest components that keep at least
+	 * some fraction of the variance of the training tumors
+	 * @param train The FeatureMatrix of training tumors to fit it on
+	 * @param scaling How to rescale the characteristics first
+	 * (FeatureScaler.NONE, Z_SCORE or MIN_MAX)
+	 * @param fraction The fraction of the variance to keep (up to 1)
+	 * @return The PcaProjection
+	 */
+	public static PcaProjection fitVariance(FeatureMatrix train, int scaling,
+			double fraction) {
+		if (!(fraction > 0 && fraction <= 1))
+			throw new IllegalArgumentException("the fraction of the variance "
+					+ "to keep must be more than 0 and at most 1");
+		return fit(train, scaling, 0, fraction);
+	}
+
+	/**Makes a Fitter that fits PcaProjections onto a given number of
+	 * components
+	 * @param scaling How to rescale the characteristics first
+	 * @param numComponents How many components to keep
+	 * @return The Fitter
+	 */
+	public static FeatureTransform.Fitter fitter(int scaling,
+			int numComponents) {
+		return train -> fitComponents(train, scaling, numComponents);
+	}
+
+	/**Makes a Fitter that fits PcaProjections onto the fewest components
+	 * that keep some fraction of the variance
+	 * @param scaling How to rescale the characteristics first
+	 * @param fraction The fraction of the variance to keep
+	 * @return The Fitter
+	 */
+	public static FeatureTransform.Fitter varianceFitter(int scaling,
+			double fraction) {
+		return train -> fitVariance(train, scaling, fraction);
+	}
+
+	/**Fits a PcaProjection onto either a number of components or a fraction
+	 * of the variance
+	 * @param train The FeatureMatrix of training tumors
+	 * @param scaling How to rescale the characteristics first
+	 * @param numComponents How many components to keep, or 0 to go by the
+	 * fraction
+	 * @param fraction The fraction of the variance to keep
+	 * @return The PcaProjection
+	 */
+	private static PcaProjection fit(FeatureMatrix train, int scaling,
+			int numComponents, double fraction) {
+		FeatureScaler scaler = FeatureScaler.fit(train, scaling);
+		FeatureMatrix scaled = scaler.transform(train);
+		int d = scaled.getNumFeatures();
+		int numRows = scaled.getNumRows();
+		double[] data = scaled.getData();
+
+		// Work out the mean of each rescaled characteristic and then the
+		// covariance matrix (only the top half, then copied to the bottom)
+		double[] mean = new double[d];
+		for (int r = 0; r < numRows; r++)
+			for (int f = 0; f < d; f++)
+				mean[f] += data[scaled.offset(r) + f];
+		for (int f = 0; f < d; f++) mean[f] /= Math.max(numRows, 1);
+		double[] covariance = new double[d * d];
+		double[] centered = new double[d];
+		for (int r = 0; r < numRows; r++) {
+			for (int f = 0; f < d; f++)
+				centered[f] = data[scaled.offset(r) + f] - mean[f];
+			for (int f = 0; f < d; f++)
+				for (int g = f; g < d; g++)
+					covariance[f * d + g] += centered[f] * centered[g];
+		}
+		for (int f = 0; f < d; f++) {
+			for (int g = f; g < d; g++) {
+				covariance[f * d + g] /= Math.max(numRows, 1);
+				covariance[g * d + f] = covariance[f * d + g];
+			}
+		}
+
+		// Find the eigenvectors and put them in order of their eigenvalues,
+		// biggest first
+		double[] vectors = new double[d * d];
+		eigen(covariance, d, vectors);
+		int[] order = new int[d];
+		for (int i = 0; i < d; i++) order[i] = i;
+		for (int i = 1; i < d; i++) {
+			int column = order[i];
+			int n = i - 1;
+			while (n >= 0 && covariance[order[n] * d + order[n]]
+					< covariance[column * d + column]) {
+				order[n + 1] = order[n];
+				n--;
+			}
+			order[n + 1] = column;
+		}
+		double[] eigenvalues = new double[d];
+		double total = 0;
+		for (int i = 0; i < d; i++) {
+			// Rounding can leave an eigenvalue a tiny bit below 0
+			eigenvalues[i] = Math.max(0, covariance[order[i] * d + order[i]]);
+			total += eigenvalues[i];
+		}
+
+		// If going by the fraction of the variance, keep components until
+		// enough of it is kept
+		if (numComponents == 0) {
+			double kept = 0;
+			while (numComponents < d) {
+				kept += eigenvalues[numComponents++];
+				if (kept >= fraction * total) break;
+			}
+		}
+
+		// Fold the rescaling and the centering into the weights and offsets:
+		// component j is the sum over f of ((x[f] - shift[f]) * scale[f] -
+		// mean[f]) * v[f], which is the sum of x[f] * scale[f] * v[f] minus
+		// the sum of (shift[f] * scale[f] + mean[f]) * v[f]
+		double[] weights = new double[numComponents * d];
+		double[] offsets = new double[numComponents];
+		for (int j = 0; j < numComponents; j++) {
+			int column = order[j];
+			for (int f = 0; f < d; f++) {
+				double v = vectors[f * d + column];
+				weights[j * d + f] = scaler.getScale(f) * v;
+				offsets[j] += (scaler.getShift(f) * scaler.getScale(f)
+						+ mean[f]) * v;
+			}
+		}
+		return new PcaProjection(d, numComponents, weights, offsets,
+				eigenvalues);
+	}
+
+	/**Finds the eigenvalues and eigenvectors of a symmetric matrix with the
+	 * cyclic Jacobi method: each step rotates two of the coordinates so that
+	 * one of the entries off the diagonal becomes 0, and sweeping over all of
+	 * them again and again shrinks them all toward 0, leaving the eigenvalues
+	 * on the diagonal
+	 * @param a The symmetric matrix, row after row; the eigenvalues are left
+	 * on its diagonal
+	 * @param n The number of rows (and columns)
+	 * @param vectors An array of n * n doubles that the eigenvectors are
+	 * written into, one in each column, matching the diagonal of a
+	 */
+	static void eigen(double[] a, int n, double[] vectors) {
+		for (int i = 0; i < n * n; i++) vectors[i] = 0;
+		for (int i = 0; i < n; i++) vectors[i * n + i] = 1;
+		double norm = 0;
+		for (int i = 0; i < n * n; i++) norm += a[i] * a[i];
+
+		// For loop to sweep over the entries above the diagonal until they
+		// are all too small to matter
+		for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+			double offDiagonal = 0;
+			for (int p = 0; p < n; p++)
+				for (int q = p + 1; q < n; q++)
+					offDiagonal += a[p * n + q] * a[p * n + q];
+			if (offDiagonal <= 1e-30 * norm) break;
+
+			for (int p = 0; p < n; p++) {
+				for (int q = p + 1; q < n; q++) {
+					double apq = a[p * n + q];
+					if (apq == 0) continue;
+					// Pick the rotation that makes a[p][q] 0, taking the
+					// smaller of the two angles that do
+					double theta = (a[q * n + q] - a[p * n + p]) / (2 * apq);
+					double t = (Math.abs(theta) > 1e150) ? 0.5 / theta :
+						Math.signum(theta) / (Math.abs(theta)
+								+ Math.sqrt(theta * theta + 1));
+					if (theta == 0) t = 1;
+					double c = 1 / Math.sqrt(t * t + 1);
+					double s = t * c;
+					// Rotate columns p and q, then rows p and q, then the
+					// eigenvectors
+					for (int k = 0; k < n; k++) {
+						double akp = a[k * n + p], akq = a[k * n + q];
+						a[k * n + p] = c * akp - s * akq;
+						a[k * n + q] = s * akp + c * akq;
+					}
+					for (int k = 0; k < n; k++) {
+						double apk = a[p * n + k], aqk = a[q * n + k];
+						a[p * n + k] = c * apk - s * aqk;
+						a[q * n + k] = s * apk + c * aqk;
+					}
+					for (int k = 0; k < n; k++) {
+						double vkp = vectors[k * n + p];
+						double vkq = vectors[k * n + q];
+						vectors[k * n + p] = c * vkp - s * vkq;
+						vectors[k * n + q] = s * vkp + c * vkq;
+					}
+				}
+			}
+		} // End of for loop through the sweeps
+	}
+
+	public int getNumFeaturesIn() {
+		return numFeaturesIn;
+	}
+
+	public int getNumFeaturesOut() {
+		return numComponents;
+	}
+
+	/**Returns the fraction of the training tumors' variance kept by the
+	 * first few components
+	 * @param count How many components (up to the number of
+	 * characteristics, not just the ones this projection keeps)
+	 * @return The fraction of the variance, from 0 to 1
+	 */
+	public double getVarianceFraction(int count) {
+		double total = 0, kept = 0;
+		for (int i = 0; i < eigenvalues.length; i++) {
+			total += eigenvalues[i];
+			if (i < count) kept += eigenvalues[i];
+		}
+		return (total == 0) ? 1 : kept / total;
+	}
+
+	public void transform(double[] in, int inOffset, double[] out,
+			int outOffset) {
+		for (int j = 0; j < numComponents; j++) {
+			out[outOffset + j] = DistanceKernels.dot(in, inOffset, weights,
+					j * numFeaturesIn, numFeaturesIn) - offsets[j];
+		}
+	}
+} // End of class
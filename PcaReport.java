@@ -0,0 +1,122 @@
+// Importing classes for IO (to read file), Scanner and SplittableRandom
+import java.io.*;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**This class helps pick how many principal components to project the
+ * tumors onto. For each number of components it runs the same 100 trials as
+ * NearestNeighbor.Accuracy100Trials (from one seed), with each trial fitting
+ * a PcaProjection (after z-scores) on its own training data, and it times
+ * queries scanned against a large data set made from the data file with
+ * SyntheticData, projected the same way. It prints the fraction of the
+ * variance kept, the accuracy, and the scan speed next to z-scores of all 30
+ * characteristics without any projection, then the fewest components that
+ * are within one point of that accuracy.
+ */
+public class PcaReport {
+
+	/**Main method for the PcaReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally the value of k, a seed for the
+	 * random splits and the size of the large data set
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) :
+			new SplittableRandom().nextLong();
+		int largeSize = (args.length > 3) ? Integer.parseInt(args[3]) :
+			200000;
+		final int NUM_OF_TRIALS = 100;
+		final int NUM_OF_QUERIES = 500;
+		final int[] COMPONENTS = {1, 2, 3, 4, 5, 6, 8, 10, 15, 20, 30};
+
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(fileName);
+		FeatureMatrix large = SyntheticData.scale(data, largeSize, 2);
+		FeatureMatrix queries = SyntheticData.scale(data, NUM_OF_QUERIES, 3);
+		// The fraction of the variance kept, from a projection fitted on all
+		// of the data file
+		PcaProjection whole = PcaProjection.fitComponents(data,
+				FeatureScaler.Z_SCORE, data.getNumFeatures());
+
+		// Z-scores of all the characteristics, without projecting, to
+		// compare with
+		FeatureTransform.Fitter zScores =
+			FeatureScaler.fitter(FeatureScaler.Z_SCORE, null, null);
+		double baseAccuracy = accuracy(data, k, seed, zScores, NUM_OF_TRIALS);
+		double baseMicros = scanMicros(zScores, large, queries, k);
+		System.out.println(String.format("k = %d, %d trials, seed %d; "
+				+ "scanning %d rows", k, NUM_OF_TRIALS, seed, largeSize));
+		System.out.println(String.format("%10s %10s %10s %10s %9s",
+				"components", "variance", "accuracy", "scan us/q", "speedup"));
+		System.out.println(String.format("%10s %10s %9.2f%% %10.2f %8.2fx",
+				"none", "", baseAccuracy, baseMicros, 1.0));
+
+		int best = -1;
+		double bestSpeedup = 0;
+		// For loop to try each number of components
+		for (int numComponents : COMPONENTS) {
+			if (numComponents > data.getNumFeatures()) break;
+			FeatureTransform.Fitter fitter =
+				PcaProjection.fitter(FeatureScaler.Z_SCORE, numComponents);
+			double accuracy = accuracy(data, k, seed, fitter, NUM_OF_TRIALS);
+			double micros = scanMicros(fitter, large, queries, k);
+			System.out.println(String.format("%10d %9.2f%% %9.2f%% %10.2f "
+					+ "%8.2fx", numComponents,
+					100 * whole.getVarianceFraction(numComponents), accuracy,
+					micros, baseMicros / micros));
+			if (best < 0 && accuracy > baseAccuracy - 1) {
+				best = numComponents;
+				bestSpeedup = baseMicros / micros;
+			}
+		} // End of for loop through the numbers of components
+		if (best > 0)
+			System.out.println(String.format("The fewest components within "
+					+ "1 point of the accuracy without projecting: %d (scans "
+					+ "%.1f times as fast)", best, bestSpeedup));
+	} // End of main method
+
+	/**Runs the trials with a FeatureTransform fitted on each trial's
+	 * training data
+	 * @param data The FeatureMatrix of tumors from the data file
+	 * @param k How many nearest neighbors vote
+	 * @param seed The seed for the random splits
+	 * @param fitter The FeatureTransform.Fitter for each trial
+	 * @param numTrials How many trials to run
+	 * @return The average percent accuracy
+	 */
+	private static double accuracy(FeatureMatrix data, int k, long seed,
+			FeatureTransform.Fitter fitter, int numTrials) {
+		TrialRunner runner = new TrialRunner(seed);
+		runner.setPreprocessing(fitter);
+		return runner.runTrials(data, k, numTrials)[0];
+	}
+
+	/**Times scanning a large data set for queries after fitting a
+	 * FeatureTransform on it and transforming both
+	 * @param fitter The FeatureTransform.Fitter
+	 * @param large The FeatureMatrix to scan
+	 * @param queries The FeatureMatrix of queries
+	 * @param k How many nearest neighbors to find
+	 * @return The average time per query in microseconds
+	 */
+	private static double scanMicros(FeatureTransform.Fitter fitter,
+			FeatureMatrix large, FeatureMatrix queries, int k) {
+		FeatureTransform transform = fitter.fit(large);
+		LinearScanIndex scan = new LinearScanIndex(transform.transform(large));
+		FeatureMatrix projected = transform.transform(queries);
+		// Run the queries once first so the JIT compiler has done its work
+		// before we time them
+		IndexTradeoffReport.timeQueries(scan, projected, k);
+		return IndexTradeoffReport.timeQueries(scan, projected, k);
+	}
+} // End of class
@@ -0,0 +1,345 @@
+// Importing the classes for counting from many threads at once, for JMX,
+// and for JFR events
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**This class keeps track of where the time goes in the k-nearest neighbor
+ * pipeline while it runs, so a real run can be looked at without a profiler.
+ * It times each stage (loading the data, splitting it into training and
+ * testing tumors, transforming it, building the index, searching and
+ * voting), counts the queries, the training rows they were compared with,
+ * how many of those were turned away without getting into the k nearest,
+ * and how many times a thread's NeighborScratch saved allocating new working
+ * space, and keeps a LatencyHistogram of how long each query took. Queries
+ * searched as a batch each count as the batch's time divided between them,
+ * and the time of a stage is added up over every thread that ran it, so it
+ * can be more than the time the program took.
+ *
+ * The numbers can be printed with summary, read through JMX once
+ * registerMBean has been called (see PipelineMetricsMBean), and, if the
+ * program is run with -Dknn.metrics.jfr=true, sent to a Java Flight Recorder
+ * recording as knn.Stage events. Everything is counted with LongAdders, so
+ * threads counting at once don't slow each other down much, and everything
+ * is in static methods the hot loops call directly. Running with
+ * -Dknn.metrics=false switches it all off: ENABLED is then a constant false,
+ * so the JIT compiler drops every call along with the counting it guards.
+ */
+public final class PipelineMetrics implements PipelineMetricsMBean {
+	// Initialize final booleans for whether metrics are collected at all
+	// and whether JFR events are sent
+	public static final boolean ENABLED =
+		!"false".equalsIgnoreCase(System.getProperty("knn.metrics"));
+	static final boolean JFR_EVENTS =
+		ENABLED && Boolean.getBoolean("knn.metrics.jfr");
+
+	// Initialize final ints for the stages that are timed
+	public static final int LOAD = 0;
+	public static final int SPLIT = 1;
+	public static final int TRANSFORM = 2;
+	public static final int BUILD = 3;
+	public static final int SEARCH = 4;
+	public static final int VOTE = 5;
+	private static final String[] STAGE_NAMES =
+		{"load", "split", "transform", "build", "search", "vote"};
+
+	// Initialize final ints for the things that are counted
+	public static final int DISTANCES = 0;
+	public static final int PRUNED = 1;
+	public static final int REUSED = 2;
+	private static final int NUM_COUNTERS = 3;
+
+	// Initialize the counters, each stage's total time and number of times
+	// it ran, the queries and their times, and when counting started
+	private static final LongAdder[] COUNTERS = adders(NUM_COUNTERS);
+	private static final LongAdder[] STAGE_NANOS =
+		adders(STAGE_NAMES.length);
+	private static final LongAdder[] STAGE_CALLS =
+		adders(STAGE_NAMES.length);
+	private static final LongAdder QUERIES = new LongAdder();
+	private static final LatencyHistogram LATENCY = new LatencyHistogram();
+	private static volatile long startNanos = System.nanoTime();
+
+	// Initialize the one object registered with JMX (null until it is)
+	private static PipelineMetrics registered = null;
+
+	/**This constructor is private: the metrics are all static, and the one
+	 * object is only for JMX
+	 */
+	private PipelineMetrics() {
+	}
+
+	/**Makes an array of LongAdders
+	 * @param count How many
+	 * @return The array
+	 */
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) adders[i] = new LongAdder();
+		return adders;
+	}
+
+	/**Starts timing something
+	 * @return The time now in nanoseconds, to hand to stop or
+	 * recordQueries (0 if metrics are off)
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**Begins the JFR event for a stage, along with start, so the event
+	 * covers the stage
+	 * @return The StageEvent, to hand to stop or recordQueries, or null if
+	 * events aren't being sent or no recording wants them
+	 */
+	public static StageEvent beginEvent() {
+		if (!JFR_EVENTS) return null;
+		StageEvent event = new StageEvent();
+		if (!event.isEnabled()) return null;
+		event.begin();
+		return event;
+	}
+
+	/**Stops timing a stage and adds the time to it
+	 * @param stage The stage (LOAD, SPLIT, TRANSFORM, BUILD, SEARCH or VOTE)
+	 * @param startNanos What start returned when the stage began
+	 * @param event What beginEvent returned when the stage began
+	 */
+	public static void stop(int stage, long startNanos, StageEvent event) {
+		if (!ENABLED) return;
+		long nanos = System.nanoTime() - startNanos;
+		STAGE_NANOS[stage].add(nanos);
+		STAGE_CALLS[stage].increment();
+		if (event != null) event.finish(stage, 0);
+	}
+
+	/**Stops timing a search for some queries: adds the time to SEARCH,
+	 * counts the queries, and records each one's share of the time in the
+	 * histogram
+	 * @param startNanos What start returned when the search began
+	 * @param numQueries How many queries were searched for
+	 * @param event What beginEvent returned when the search began
+	 */
+	public static void recordQueries(long startNanos, int numQueries,
+			StageEvent event) {
+		if (!ENABLED || numQueries <= 0) return;
+		long nanos = System.nanoTime() - startNanos;
+		STAGE_NANOS[SEARCH].add(nanos);
+		STAGE_CALLS[SEARCH].increment();
+		QUERIES.add(numQueries);
+		LATENCY.record(nanos / numQueries, numQueries);
+		if (event != null) event.finish(SEARCH, numQueries);
+	}
+
+	/**Adds to one of the counters
+	 * @param counter The counter (DISTANCES, PRUNED or REUSED)
+	 * @param amount How much to add
+	 */
+	public static void count(int counter, long amount) {
+		if (ENABLED) COUNTERS[counter].add(amount);
+	}
+
+	/**Counts a run of training rows compared with a query
+	 * @param rows How many rows were compared
+	 * @param kept How many of them got into the query's k nearest (for the
+	 * time being)
+	 */
+	public static void countScan(int rows, int kept) {
+		if (!ENABLED) return;
+		COUNTERS[DISTANCES].add(rows);
+		COUNTERS[PRUNED].add(rows - kept);
+	}
+
+	/**Registers the metrics with the platform's JMX server as
+	 * knn:type=PipelineMetrics (doing nothing if they already are, or if
+	 * they are switched off)
+	 */
+	public static synchronized void registerMBean() {
+		if (!ENABLED || registered != null) return;
+		try {
+			PipelineMetrics bean = new PipelineMetrics();
+			ManagementFactory.getPlatformMBeanServer().registerMBean(bean,
+					new ObjectName("knn:type=PipelineMetrics"));
+			registered = bean;
+		}
+		catch (JMException e) {
+			// Someone else registered the name first; the numbers are the
+			// same static ones either way
+			System.err.println("Couldn't register the metrics with JMX: "
+					+ e.getMessage());
+		}
+	}
+
+	/**Sets every counter, timer and the histogram back to 0
+	 */
+	public static void resetAll() {
+		for (LongAdder adder : COUNTERS) adder.reset();
+		for (LongAdder adder : STAGE_NANOS) adder.reset();
+		for (LongAdder adder : STAGE_CALLS) adder.reset();
+		QUERIES.reset();
+		LATENCY.reset();
+		startNanos = System.nanoTime();
+	}
+
+	/**Returns the total time spent in a stage
+	 * @param stage The stage
+	 * @return The time in nanoseconds
+	 */
+	public static long stageNanos(int stage) {
+		return STAGE_NANOS[stage].sum();
+	}
+
+	/**Returns how many times a stage ran
+	 * @param stage The stage
+	 * @return The number of times
+	 */
+	public static long stageCalls(int stage) {
+		return STAGE_CALLS[stage].sum();
+	}
+
+	/**Returns one of the counters
+	 * @param counter The counter (DISTANCES, PRUNED or REUSED)
+	 * @return Its value
+	 */
+	public static long counter(int counter) {
+		return COUNTERS[counter].sum();
+	}
+
+	/**Returns the histogram of the times of the queries
+	 * @return The LatencyHistogram
+	 */
+	public static LatencyHistogram latency() {
+		return LATENCY;
+	}
+
+	/**Describes everything: each stage's time, the counters, and the
+	 * percentiles of the times of the queries
+	 * @return The summary, several lines long
+	 */
+	public static String summary() {
+		if (!ENABLED) return "Metrics are switched off (-Dknn.metrics=false)\n";
+		StringBuilder text = new StringBuilder(stageTimes());
+		long queries = QUERIES.sum();
+		long distances = counter(DISTANCES);
+		text.append(String.format("%d queries (%.0f per second)%n%d "
+				+ "distances computed, %.1f%% of them pruned, %d allocations "
+				+ "avoided%n", queries, queriesPerSecond(), distances,
+				(distances == 0) ? 0.0 : 100.0 * counter(PRUNED) / distances,
+				counter(REUSED)));
+		text.append(String.format("query time (us): mean %.2f, p50 %.2f, "
+				+ "p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+				LATENCY.getMean() / 1e3, LATENCY.percentile(0.5) / 1e3,
+				LATENCY.percentile(0.9) / 1e3, LATENCY.percentile(0.99) / 1e3,
+				LATENCY.percentile(0.999) / 1e3, LATENCY.getMax() / 1e3));
+		return text.toString();
+	}
+
+	/**Describes the time spent in each stage
+	 * @return One line per stage that ran: its name, total time in
+	 * milliseconds, and how many times it ran
+	 */
+	static String stageTimes() {
+		StringBuilder text = new StringBuilder();
+		for (int s = 0; s < STAGE_NAMES.length; s++) {
+			long calls = stageCalls(s);
+			if (calls == 0) continue;
+			text.append(String.format("%-10s %10.2f ms %10d times%n",
+					STAGE_NAMES[s], stageNanos(s) / 1e6, calls));
+		}
+		return text.toString();
+	}
+
+	/**Works out the queries per second since the start or the last reset
+	 * @return The queries per second
+	 */
+	static double queriesPerSecond() {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return (seconds <= 0) ? 0 : QUERIES.sum() / seconds;
+	}
+
+	// The methods JMX calls, which just hand back the static numbers
+
+	public boolean isEnabled() {
+		return ENABLED;
+	}
+
+	public long getQueries() {
+		return QUERIES.sum();
+	}
+
+	public double getQueriesPerSecond() {
+		return queriesPerSecond();
+	}
+
+	public long getDistancesComputed() {
+		return counter(DISTANCES);
+	}
+
+	public long getCandidatesPruned() {
+		return counter(PRUNED);
+	}
+
+	public long getAllocationsAvoided() {
+		return counter(REUSED);
+	}
+
+	public double getLatencyP50Micros() {
+		return LATENCY.percentile(0.5) / 1e3;
+	}
+
+	public double getLatencyP99Micros() {
+		return LATENCY.percentile(0.99) / 1e3;
+	}
+
+	public double getLatencyP999Micros() {
+		return LATENCY.percentile(0.999) / 1e3;
+	}
+
+	public double getLatencyMaxMicros() {
+		return LATENCY.getMax() / 1e3;
+	}
+
+	public String getStageTimes() {
+		return stageTimes();
+	}
+
+	public String getSummary() {
+		return summary();
+	}
+
+	public void reset() {
+		resetAll();
+	}
+
+	/**This class is the JFR event sent for each stage (only if the program
+	 * was run with -Dknn.metrics.jfr=true, and only if a recording is
+	 * running that has it switched on). It begins when the stage does, so
+	 * its duration is the stage's time.
+	 */
+	@Name("knn.Stage")
+	@Label("k-NN Stage")
+	@Category("k-NN")
+	public static final class StageEvent extends Event {
+		@Label("Stage")
+		String stage;
+
+		@Label("Queries")
+		int queries;
+
+		/**Ends the event and sends it
+		 * @param stageIn The stage that finished
+		 * @param queriesIn How many queries it searched for (0 if it isn't
+		 * SEARCH)
+		 */
+		void finish(int stageIn, int queriesIn) {
+			stage = STAGE_NAMES[stageIn];
+			queries = queriesIn;
+			commit();
+		}
+	}
+} // End of class
@@ -0,0 +1,73 @@
+/**This interface is what PipelineMetrics shows through JMX (in JConsole or
+ * VisualVM, say, under knn:type=PipelineMetrics once registerMBean has been
+ * called). Every value counts from the start of the program or the last
+ * reset.
+ */
+public interface PipelineMetricsMBean {
+
+	/**Checks whether the metrics are being collected at all
+	 * @return False if they were switched off with -Dknn.metrics=false
+	 */
+	boolean isEnabled();
+
+	/**Returns how many queries (testing or new tumors) were searched for
+	 * @return The number of queries
+	 */
+	long getQueries();
+
+	/**Works out the queries per second since the start or the last reset
+	 * @return The queries per second
+	 */
+	double getQueriesPerSecond();
+
+	/**Returns how many training rows queries were compared with
+	 * @return The number of distances computed (or started)
+	 */
+	long getDistancesComputed();
+
+	/**Returns how many of the rows compared were turned away without
+	 * getting into the k nearest (most of them given up on partway)
+	 * @return The number of candidates pruned
+	 */
+	long getCandidatesPruned();
+
+	/**Returns how many times a thread's NeighborScratch was reused instead
+	 * of allocating new working space
+	 * @return The number of allocations avoided
+	 */
+	long getAllocationsAvoided();
+
+	/**Returns the median time of a query
+	 * @return The median in microseconds
+	 */
+	double getLatencyP50Micros();
+
+	/**Returns the 99th percentile time of a query
+	 * @return The 99th percentile in microseconds
+	 */
+	double getLatencyP99Micros();
+
+	/**Returns the 99.9th percentile time of a query
+	 * @return The 99.9th percentile in microseconds
+	 */
+	double getLatencyP999Micros();
+
+	/**Returns the longest time of a query
+	 * @return The longest time in microseconds
+	 */
+	double getLatencyMaxMicros();
+
+	/**Returns the total time spent in each stage
+	 * @return The stage names and their times in milliseconds, one per line
+	 */
+	String getStageTimes();
+
+	/**Describes everything, the way PipelineMetrics.summary does
+	 * @return The summary
+	 */
+	String getSummary();
+
+	/**Sets every counter, timer and the histogram back to 0
+	 */
+	void reset();
+}
@@ -0,0 +1,127 @@
+// Importing classes for IO (to read file) and Scanner
+import java.io.*;
+import java.util.Scanner;
+
+/**This class reports what scanning a smaller copy of the characteristics
+ * (floats or bytes, with QuantizedIndex) saves over scanning the doubles with
+ * a LinearScanIndex. For data sets of several sizes (made from the data file
+ * with SyntheticData), it times the same queries answered by each index,
+ * checks that they all give exactly the same neighbors, and prints how many
+ * rows of the doubles each query of the byte copy had to re-rank. Then, for
+ * the biggest size, it writes the tumors to a binary data file and builds
+ * the indexes over the MappedDataset instead, so the doubles stay in the
+ * file, checks the neighbors are still the same, and prints how many bytes
+ * a row each index keeps on the heap.
+ */
+public class QuantizationReport {
+
+	/**Main method for the QuantizationReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally the value of k and the sizes
+	 * of data set to try
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int[] sizes = {569, 50000, 200000, 1000000};
+		if (args.length > 2) {
+			sizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				sizes[i - 2] = Integer.parseInt(args[i]);
+		}
+		final int NUM_OF_QUERIES = 500;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		// The queries are noisy copies of the real tumors
+		FeatureMatrix queries = SyntheticData.scale(base, NUM_OF_QUERIES, 1);
+		int numFeatures = base.getNumFeatures();
+
+		System.out.println("k = " + k + ", " + NUM_OF_QUERIES + " queries "
+				+ "per size; bytes scanned per row: " + numFeatures
+				* Double.BYTES + " (doubles), " + numFeatures * Float.BYTES
+				+ " (float32), " + numFeatures + " (int8)");
+		System.out.println(String.format("%10s %12s %12s %12s %9s %9s %10s",
+				"rows", "scan (us/q)", "f32 (us/q)", "int8 (us/q)",
+				"f32", "int8", "re-ranked"));
+		for (int size : sizes) {
+			FeatureMatrix train = SyntheticData.scale(base, size, 2);
+			LinearScanIndex scan = new LinearScanIndex(train);
+			QuantizedIndex floats =
+				new QuantizedIndex(train, QuantizedIndex.FLOAT32);
+			QuantizedIndex bytes =
+				new QuantizedIndex(train, QuantizedIndex.INT8);
+
+			// Run the queries once through each index first so the JIT
+			// compiler has done its work before we time them
+			IndexTradeoffReport.timeQueries(scan, queries, k);
+			IndexTradeoffReport.timeQueries(floats, queries, k);
+			IndexTradeoffReport.timeQueries(bytes, queries, k);
+			double scanMicros =
+				IndexTradeoffReport.timeQueries(scan, queries, k);
+			double floatMicros =
+				IndexTradeoffReport.timeQueries(floats, queries, k);
+			double byteMicros =
+				IndexTradeoffReport.timeQueries(bytes, queries, k);
+			boolean same =
+				IndexTradeoffReport.sameNeighbors(scan, floats, queries, k)
+				&& IndexTradeoffReport.sameNeighbors(scan, bytes, queries, k);
+
+			// Count the rows the byte copy sent back to the doubles
+			NeighborResult out = new NeighborResult(k);
+			long reRanked = 0;
+			for (int q = 0; q < queries.getNumRows(); q++)
+				reRanked += bytes.countCandidates(queries.getData(),
+						queries.offset(q), k, out);
+
+			System.out.println(String.format(
+					"%10d %12.2f %12.2f %12.2f %8.1fx %8.1fx %10.1f%s", size,
+					scanMicros, floatMicros, byteMicros,
+					scanMicros / floatMicros, scanMicros / byteMicros,
+					(double) reRanked / queries.getNumRows(),
+					same ? "" : "  (NEIGHBORS DIFFER)"));
+		}
+
+		// Build the indexes over a binary file of the biggest size, which
+		// re-rank from the mapped doubles instead of keeping them
+		int size = sizes[sizes.length - 1];
+		FeatureMatrix train = SyntheticData.scale(base, size, 2);
+		File binary = File.createTempFile("quantized", ".bin");
+		binary.deleteOnExit();
+		MappedDataset.write(train, binary.getPath(), MappedDataset.FLOAT64);
+		MappedDataset mapped = MappedDataset.open(binary.getPath());
+		LinearScanIndex scan = new LinearScanIndex(train);
+		QuantizedIndex[] onHeap = {
+				new QuantizedIndex(train, QuantizedIndex.FLOAT32),
+				new QuantizedIndex(train, QuantizedIndex.INT8)};
+		QuantizedIndex[] onFile = {
+				new QuantizedIndex(mapped, QuantizedIndex.FLOAT32),
+				new QuantizedIndex(mapped, QuantizedIndex.INT8)};
+		String[] names = {"float32", "int8"};
+		System.out.println();
+		System.out.println("Heap bytes per row with " + size + " rows (the "
+				+ "doubles alone take " + numFeatures * Double.BYTES + "):");
+		System.out.println(String.format("%8s %16s %16s %12s %10s", "",
+				"from the matrix", "from the file", "file (us/q)",
+				"neighbors"));
+		for (int i = 0; i < onFile.length; i++) {
+			IndexTradeoffReport.timeQueries(onFile[i], queries, k);
+			double micros =
+				IndexTradeoffReport.timeQueries(onFile[i], queries, k);
+			boolean same = IndexTradeoffReport.sameNeighbors(scan, onFile[i],
+					queries, k);
+			System.out.println(String.format("%8s %16.1f %16.1f %12.2f %10s",
+					names[i], (double) onHeap[i].heapBytes() / size,
+					(double) onFile[i].heapBytes() / size, micros,
+					same ? "same" : "DIFFER"));
+		}
+	} // End of main method
+} // End of class
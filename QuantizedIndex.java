@@ -0,0 +1,379 @@
+/**This class is a NeighborIndex that scans a smaller copy of the training
+ * tumors' characteristics -- floats (FLOAT32, half the size of doubles) or
+ * one byte per characteristic (INT8, an eighth of the size) -- and then
+ * re-ranks the few rows that could still be among the k nearest using the
+ * full doubles, so it finds exactly the same neighbors, with exactly the same
+ * distances, as LinearScanIndex.
+ *
+ * For INT8, each characteristic is shifted by the middle of its range over
+ * the training tumors and divided into 254 steps, so a byte from -127 to 127
+ * stands for a multiple of that characteristic's step. The small copy is
+ * stored in blocks of as many rows as a SIMD vector holds floats, a
+ * characteristic at a time, so that DistanceKernels.distSquaredBlock works
+ * out a whole block's distances at once, one row in each lane.
+ *
+ * The re-ranking is exact because each row keeps how far its small copy is
+ * from its real characteristics (the length of the difference, worked out in
+ * doubles when the index is built). By the triangle inequality the real
+ * distance to a query is within that much (plus how much the query moved
+ * when it was rounded to floats, plus a little for the rounding of the float
+ * sum) of the distance worked out from the small copy. That gives each row a
+ * lower and an upper bound on its real distance. While scanning, the k
+ * smallest upper bounds so far are kept in a heap, and a row is only kept as
+ * a candidate if its lower bound isn't past the k-th of them. At the end, the
+ * candidates whose lower bound isn't past the final k-th upper bound are the
+ * only rows that can be among the k nearest (including ties), and they are
+ * compared with the query again in doubles, in row order, like
+ * NearestNeighbor.kNearest does.
+ *
+ * Only the candidates' rows of the doubles are read, so each query reads
+ * about a half (FLOAT32) or an eighth (INT8) as many bytes as a scan of the
+ * doubles. An index built from a FeatureMatrix (as the trials build it)
+ * keeps that FeatureMatrix, so it takes more memory than the doubles alone.
+ * An index built from a MappedDataset keeps only the small copy and a float
+ * for each row's error on the heap (34 bytes a row instead of 240 for INT8
+ * and the 30 characteristics of the data file, 124 for FLOAT32), and
+ * re-ranks the candidates by reading their rows out of the mapped file.
+ */
+public class QuantizedIndex implements NeighborIndex {
+	/**The storage code for keeping the characteristics as floats
+	 */
+	public static final int FLOAT32 = 1;
+	/**The storage code for keeping each characteristic as one byte
+	 */
+	public static final int INT8 = 2;
+	// Initialize a final double for a float's relative rounding error
+	private static final double FLOAT_ERROR = Math.ulp(1.0f) / 2;
+
+	// Initialize where the full characteristics are (the FeatureMatrix of
+	// training tumors, or the mapped file, with the other one null) and
+	// their ID numbers and types
+	private final FeatureMatrix data;
+	private final MappedDataset file;
+	private final TumorLabels labels;
+	// Initialize the storage code, the numbers of rows and characteristics,
+	// and the number of rows in a block
+	private final int storage, numRows, numFeatures, lanes;
+	// Initialize the small copy of the characteristics, block after block
+	// (only one of these is used, depending on the storage; the last block
+	// is padded out with 0s)
+	private final float[] floatBlocks;
+	private final byte[] codeBlocks;
+	// Initialize the arrays of what is subtracted from each characteristic
+	// before it is stored, and what each byte is multiplied by
+	private final double[] shift;
+	private final float[] scales;
+	// Initialize the arrays of how far each row's small copy is from its
+	// real characteristics, and the biggest of those in each block
+	private final float[] rowErrors, blockErrors;
+	// Initialize the factors that widen the square root of a float sum into
+	// a bound on the real value
+	private final double lowFactor, highFactor;
+
+	/**This constructor creates a QuantizedIndex over some training tumors,
+	 * which it keeps for re-ranking
+	 * @param train The FeatureMatrix of training tumors
+	 * @param storageIn FLOAT32 or INT8
+	 */
+	public QuantizedIndex(FeatureMatrix train, int storageIn) {
+		this(train, null, train, train.getNumRows(), train.getNumFeatures(),
+				storageIn);
+	}
+
+	/**This constructor creates a QuantizedIndex over the tumors in a binary
+	 * data file, which re-ranks by reading the file where it is mapped, so
+	 * the only copy of the characteristics on the heap is the small one
+	 * @param fileIn The MappedDataset of training tumors
+	 * @param storageIn FLOAT32 or INT8
+	 */
+	public QuantizedIndex(MappedDataset fileIn, int storageIn) {
+		this(null, fileIn, fileIn, fileIn.getNumRows(),
+				fileIn.getNumFeatures(), storageIn);
+	}
+
+	/**This constructor builds the small copy from whichever of a
+	 * FeatureMatrix and a MappedDataset holds the training tumors
+	 * @param train The FeatureMatrix of training tumors, or null
+	 * @param fileIn The MappedDataset of training tumors, or null
+	 * @param labelsIn Whichever of the two isn't null
+	 * @param numRowsIn The number of training tumors
+	 * @param numFeaturesIn The number of characteristics
+	 * @param storageIn FLOAT32 or INT8
+	 */
+	private QuantizedIndex(FeatureMatrix train, MappedDataset fileIn,
+			TumorLabels labelsIn, int numRowsIn, int numFeaturesIn,
+			int storageIn) {
+		if (storageIn != FLOAT32 && storageIn != INT8)
+			throw new IllegalArgumentException("unknown storage " + storageIn);
+		data = train;
+		file = fileIn;
+		labels = labelsIn;
+		storage = storageIn;
+		numRows = numRowsIn;
+		numFeatures = numFeaturesIn;
+		lanes = DistanceKernels.floatLanes();
+		// Read a row at a time into one array, so both sources are read
+		// the same way
+		double[] row = new double[numFeatures];
+
+		// Work out the shift and the step of each characteristic (a float
+		// copy is just rounded, with no shift)
+		shift = new double[numFeatures];
+		scales = new float[numFeatures];
+		if (storage == INT8) {
+			for (int f = 0; f < numFeatures; f++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for (int r = 0; r < numRows; r++) {
+					double value = feature(r, f);
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+				}
+				if (numRows == 0) min = max = 0;
+				shift[f] = min / 2 + max / 2;
+				scales[f] = (float) ((max - min) / 254);
+				if (!(scales[f] > 0)) scales[f] = 1;
+			}
+		}
+
+		// Make the small copy of each row and work out how far it is from
+		// the real row
+		int size = (numRows + lanes - 1) / lanes * lanes * numFeatures;
+		floatBlocks = (storage == FLOAT32) ? new float[size] : null;
+		codeBlocks = (storage == INT8) ? new byte[size] : null;
+		rowErrors = new float[numRows];
+		blockErrors = new float[(numRows + lanes - 1) / lanes];
+		for (int r = 0; r < numRows; r++) {
+			double errorSquared = 0, normSquared = 0;
+			for (int f = 0; f < numFeatures; f++) row[f] = feature(r, f);
+			for (int f = 0; f < numFeatures; f++) {
+				double value = row[f] - shift[f];
+				int at = position(r, f);
+				float stored;
+				if (storage == FLOAT32) {
+					stored = (float) value;
+					floatBlocks[at] = stored;
+				}
+				else {
+					long code = Math.round(value / scales[f]);
+					code = Math.max(-127, Math.min(127, code));
+					codeBlocks[at] = (byte) code;
+					// The same product, rounded to a float, that the kernel
+					// works out
+					stored = codeBlocks[at] * scales[f];
+				}
+				errorSquared += (value - stored) * (value - stored);
+				normSquared += value * value;
+			}
+			rowErrors[r] = (float) widen(errorSquared, normSquared);
+			blockErrors[r / lanes] =
+				Math.max(blockErrors[r / lanes], rowErrors[r]);
+		}
+
+		// The float sum of numFeatures squared differences is within this
+		// fraction of the real sum; the square roots are widened by more
+		// than enough to cover it
+		double sumError = (numFeatures + 4) * 2 * FLOAT_ERROR;
+		lowFactor = Math.sqrt(Math.max(0, 1 - sumError));
+		highFactor = Math.sqrt(1 + sumError);
+	}
+
+	/**Makes a NeighborIndex.Builder that builds QuantizedIndexes with the
+	 * given storage, to hand to TrialRunner.setIndexBuilder
+	 * @param storageIn FLOAT32 or INT8
+	 * @return The NeighborIndex.Builder
+	 */
+	public static NeighborIndex.Builder builder(int storageIn) {
+		return train -> new QuantizedIndex(train, storageIn);
+	}
+
+	/**Turns the name of a storage into its code
+	 * @param name "float32" or "int8"
+	 * @return FLOAT32 or INT8
+	 */
+	public static int storageFor(String name) {
+		switch (name.toLowerCase()) {
+		case "float32":
+			return FLOAT32;
+		case "int8":
+			return INT8;
+		default:
+			throw new IllegalArgumentException("unknown storage \"" + name
+					+ "\" (use float32 or int8)");
+		}
+	}
+
+	/**Reads one characteristic of one row from wherever the full
+	 * characteristics are
+	 * @param row The row number
+	 * @param feature Which characteristic
+	 * @return The characteristic
+	 */
+	private double feature(int row, int feature) {
+		return (data != null) ? data.getData()[data.offset(row) + feature] :
+			file.getFeature(row, feature);
+	}
+
+	/**Returns where one characteristic of one row is in the small copy
+	 * @param row The row number
+	 * @param feature Which characteristic
+	 * @return The position in floatBlocks or codeBlocks
+	 */
+	private int position(int row, int feature) {
+		return (row / lanes * numFeatures + feature) * lanes + row % lanes;
+	}
+
+	/**Turns the square of the distance between a row (or query) and its
+	 * rounded copy into a bound on that distance, rounded up, with a little
+	 * extra for the rounding of the sums of doubles that worked it out
+	 * @param errorSquared The square of the distance to the rounded copy
+	 * @param normSquared The sum of the squares of the (shifted) row
+	 * @return The bound
+	 */
+	private static double widen(double errorSquared, double normSquared) {
+		return Math.sqrt(errorSquared) * (1 + 0x1p-20)
+			+ Math.sqrt(normSquared) * 0x1p-45;
+	}
+
+	/**Returns the training tumors as a FeatureMatrix, which for an index
+	 * built from a MappedDataset copies them out of the file (see
+	 * MappedDataset.toFeatureMatrix); searching doesn't need this
+	 */
+	public FeatureMatrix getData() {
+		return (data != null) ? data : file.toFeatureMatrix();
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	public FeatureTransform getTransform() {
+		return (data != null) ? data.getTransform() : null;
+	}
+
+	/**This simple accessor method returns how the characteristics are
+	 * stored
+	 * @return FLOAT32 or INT8
+	 */
+	public int getStorage() {
+		return storage;
+	}
+
+	/**Returns how many bytes of the small copy are read for each row
+	 * @return The number of bytes per row
+	 */
+	public int bytesPerRow() {
+		return numFeatures * ((storage == FLOAT32) ? Float.BYTES : 1);
+	}
+
+	/**Returns how many bytes of arrays this index keeps on the heap: the
+	 * small copy and the errors, plus the FeatureMatrix's characteristics
+	 * if it was built from one
+	 * @return The number of bytes
+	 */
+	public long heapBytes() {
+		long bytes = (storage == FLOAT32) ? (long) floatBlocks.length
+			* Float.BYTES : codeBlocks.length;
+		bytes += (long) (rowErrors.length + blockErrors.length) * Float.BYTES;
+		if (data != null) bytes += (long) data.getData().length * Double.BYTES;
+		return bytes;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		countCandidates(query, queryOffset, k, out);
+	}
+
+	/**Finds the k nearest neighbors of a query like kNearest and returns
+	 * how many rows had to be re-ranked in doubles
+	 * @param query The array holding the query tumor's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param k How many nearest neighbors to find
+	 * @param out The NeighborResult to write the neighbors into
+	 * @return How many candidates were compared in doubles
+	 */
+	int countCandidates(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		k = Math.min(k, numRows);
+
+		// Round the (shifted) query to floats and work out how far it moved
+		float[] smallQuery = scratch.floatQuery(numFeatures);
+		double errorSquared = 0, normSquared = 0;
+		for (int f = 0; f < numFeatures; f++) {
+			double value = query[queryOffset + f] - shift[f];
+			smallQuery[f] = (float) value;
+			errorSquared += (value - smallQuery[f]) * (value - smallQuery[f]);
+			normSquared += value * value;
+		}
+		double queryError = widen(errorSquared, normSquared);
+
+		// Scan the small copy a block at a time, keeping the k smallest
+		// upper bounds and every row whose lower bound isn't past the k-th of
+		// them so far
+		KnnHeap upper = scratch.boundHeap(k);
+		float[] approx = scratch.floatBuffer(lanes);
+		int[] rows = scratch.candidateRows(Math.max(k, 16));
+		double[] lower = scratch.candidateBounds(rows.length);
+		int count = 0;
+		double worstUpper = upper.worstDistance();
+		double lowSquared = lowFactor * lowFactor;
+		int blockSize = lanes * numFeatures;
+		for (int first = 0, at = 0; first < numRows;
+				first += lanes, at += blockSize) {
+			double closest = (storage == INT8) ?
+				DistanceKernels.distSquaredBlock(smallQuery, codeBlocks, at,
+						scales, numFeatures, approx) :
+				DistanceKernels.distSquaredBlock(smallQuery, floatBlocks, at,
+						numFeatures, approx);
+			// Skip the whole block if even its closest row is too far with
+			// the block's biggest error
+			double blockReach = worstUpper + queryError
+				+ blockErrors[first / lanes];
+			if (closest * lowSquared > blockReach * blockReach) continue;
+			int last = Math.min(first + lanes, numRows);
+			for (int r = first; r < last; r++) {
+				double slack = queryError + rowErrors[r];
+				// The same test as lowFactor * sqrt(approx) - slack >
+				// worstUpper, without the square root
+				double reach = worstUpper + slack;
+				double distSquared = approx[r - first];
+				if (distSquared * lowSquared > reach * reach) continue;
+				double root = Math.sqrt(distSquared);
+				if (upper.offer(root * highFactor + slack, r))
+					worstUpper = upper.worstDistance();
+				if (count == rows.length) {
+					rows = scratch.candidateRows(count + 1);
+					lower = scratch.candidateBounds(rows.length);
+				}
+				rows[count] = r;
+				lower[count] = root * lowFactor - slack;
+				count++;
+			}
+		} // End of for loop through the blocks
+		// Every row was compared in the small copy (even in a block that
+		// was skipped), and the ones kept are the candidates
+		PipelineMetrics.countScan(numRows, count);
+
+		// Compare the candidates that are left with the query in doubles,
+		// in row order
+		KnnHeap heap = scratch.heap(k);
+		double[] trainData = (data != null) ? data.getData() : null;
+		int reRanked = 0, kept = 0;
+		for (int c = 0; c < count; c++) {
+			if (lower[c] > worstUpper) continue;
+			int row = rows[c];
+			if (heap.offer((data != null) ?
+				DistanceKernels.distSquaredBounded(query, queryOffset,
+						trainData, data.offset(row), numFeatures,
+						heap.worstDistance()) :
+				file.distSquaredBounded(query, queryOffset, row,
+						heap.worstDistance()), row))
+				kept++;
+			reRanked++;
+		}
+		PipelineMetrics.countScan(reRanked, kept);
+		heap.drainRootsInto(labels, out);
+		return reRanked;
+	}
+} // End of class
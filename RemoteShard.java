@@ -0,0 +1,165 @@
+// Importing classes for the connection to the ShardServer
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**This class is a NeighborShard whose rows are in another process, a
+ * ShardServer, which it talks to over a socket. Each search sends the
+ * queries' characteristics and reads back the shard's ShardHits (see
+ * ShardServer for what goes over the connection). A search is synchronized,
+ * since the connection can only carry one at a time. If a search fails
+ * partway through, nobody can tell how much of it the ShardServer read or
+ * sent, so the connection is closed and every search after that fails too.
+ */
+public class RemoteShard implements NeighborShard {
+	// Initialize the connection and its streams
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+	// Initialize what the ShardServer said about its rows
+	private final int firstRow, numRows, numFeatures;
+	// Initialize a boolean for whether a search failed and the connection
+	// was closed
+	private boolean broken;
+
+	/**This constructor connects to a ShardServer
+	 * @param host The host name the ShardServer runs on
+	 * @param port The port it listens on
+	 * @throws IOException If it can't be connected to
+	 */
+	public RemoteShard(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+		in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+		if (in.readInt() != ShardServer.MAGIC) {
+			socket.close();
+			throw new IOException(host + ":" + port
+					+ " is not a ShardServer");
+		}
+		firstRow = in.readInt();
+		numRows = in.readInt();
+		numFeatures = in.readInt();
+	}
+
+	public int getFirstRow() {
+		return firstRow;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**Sends a search to the ShardServer and reads back its hits
+	 * @throws IOException If the connection fails (after which the shard is
+	 * broken), or failed before, or the search is more than the ShardServer
+	 * would take
+	 */
+	public synchronized void search(FeatureMatrix queries, int from, int to,
+			int k, ShardHits hits) throws IOException {
+		start(k, to - from);
+		boolean finished = false;
+		try {
+			out.writeInt(k);
+			out.writeInt(to - from);
+			for (int q = from; q < to; q++)
+				writeQuery(queries.getData(), queries.offset(q));
+			out.flush();
+			hits.readFrom(in, to - from, k);
+			finished = true;
+		}
+		finally {
+			if (!finished) fail();
+		}
+	}
+
+	/**Sends a search for one query to the ShardServer and reads back its
+	 * hits
+	 * @throws IOException If the connection fails (after which the shard is
+	 * broken), or failed before, or k is more than the ShardServer would
+	 * take
+	 */
+	public synchronized void search(double[] query, int queryOffset, int k,
+			ShardHits hits) throws IOException {
+		start(k, 1);
+		boolean finished = false;
+		try {
+			out.writeInt(k);
+			out.writeInt(1);
+			writeQuery(query, queryOffset);
+			out.flush();
+			hits.readFrom(in, 1, k);
+			finished = true;
+		}
+		finally {
+			if (!finished) fail();
+		}
+	}
+
+	/**Returns true, since a search waits for the ShardServer
+	 * @return True
+	 */
+	public boolean isBlocking() {
+		return true;
+	}
+
+	/**Checks that a search can be sent
+	 * @param k How many neighbors it asks for
+	 * @param numQueries How many queries it sends
+	 * @throws IOException If the connection failed before, or the search is
+	 * more than the ShardServer would take
+	 */
+	private void start(int k, int numQueries) throws IOException {
+		if (broken)
+			throw new IOException("the connection to the shard at row "
+					+ firstRow + " failed earlier");
+		ShardServer.checkSearch(k, numQueries, numFeatures);
+	}
+
+	/**Writes one query's characteristics to the connection
+	 * @param data The array holding them
+	 * @param offset The position in data where they start
+	 * @throws IOException If they can't be written
+	 */
+	private void writeQuery(double[] data, int offset) throws IOException {
+		for (int f = 0; f < numFeatures; f++)
+			out.writeDouble(data[offset + f]);
+	}
+
+	/**Marks the shard broken and closes the connection, after a search
+	 * failed partway through
+	 */
+	private void fail() {
+		broken = true;
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			// The search's own exception is the one worth reporting
+		}
+	}
+
+	/**Tells the ShardServer this connection is finished and closes it
+	 * @throws IOException If it can't be closed cleanly
+	 */
+	public synchronized void close() throws IOException {
+		if (broken) return;
+		broken = true;
+		try {
+			out.writeInt(0);
+			out.flush();
+		}
+		finally {
+			socket.close();
+		}
+	}
+} // End of class
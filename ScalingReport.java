@@ -0,0 +1,90 @@
+// Importing classes for IO (to read file), Scanner and SplittableRandom
+import java.io.*;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+
+/**This class shows what rescaling the characteristics does to the accuracy
+ * of the k-nearest neighbor algorithm and to how long it takes. It runs the
+ * same 100 trials as NearestNeighbor.Accuracy100Trials (from one seed) for
+ * several FeatureScaler settings: the characteristics as they were read,
+ * z-scores and min-max scaling of all 30 of them, and z-scores of only some
+ * of them (in the data file the first 10 characteristics are means, the next
+ * 10 are standard errors and the last 10 are the worst values). Each trial
+ * fits its scaler on its own training data. For each setting it prints the
+ * accuracy for several values of k and how long the 100 trials took.
+ */
+public class ScalingReport {
+
+	/**Main method for the ScalingReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally a seed for the random splits
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read
+	 */
+	public static void main(String[] args) throws IOException {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) :
+			new SplittableRandom().nextLong();
+		final int NUM_OF_TRIALS = 100;
+		final int[] KS = {1, 3, 5, 7, 9};
+		final int[] MEANS = range(0, 10);
+		final int[] WORST = range(20, 30);
+		final int[] MEANS_AND_WORST = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9,
+				20, 21, 22, 23, 24, 25, 26, 27, 28, 29};
+
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(fileName);
+		String[] names = {"as read", "z-score", "min-max", "z-score means",
+				"z-score worst", "z-score means+worst"};
+		FeatureTransform.Fitter[] fitters = {null,
+				FeatureScaler.fitter(FeatureScaler.Z_SCORE, null, null),
+				FeatureScaler.fitter(FeatureScaler.MIN_MAX, null, null),
+				FeatureScaler.fitter(FeatureScaler.Z_SCORE, MEANS, null),
+				FeatureScaler.fitter(FeatureScaler.Z_SCORE, WORST, null),
+				FeatureScaler.fitter(FeatureScaler.Z_SCORE, MEANS_AND_WORST,
+						null)};
+
+		System.out.println(NUM_OF_TRIALS + " trials, seed " + seed
+				+ "; percent accurate for each k");
+		StringBuilder header = new StringBuilder(String.format("%-20s %8s",
+				"scaling", "features"));
+		for (int k : KS) header.append(String.format(" %7s", "k = " + k));
+		System.out.println(header.append(String.format(" %9s", "ms")));
+		// For loop to run the trials with each setting
+		for (int s = 0; s < names.length; s++) {
+			TrialRunner runner = new TrialRunner(seed);
+			runner.setPreprocessing(fitters[s]);
+			// Run the trials once first so the JIT compiler has done its
+			// work before we time them
+			runner.runTrials(data, KS, NUM_OF_TRIALS);
+			long start = System.nanoTime();
+			double[][] results = runner.runTrials(data, KS, NUM_OF_TRIALS);
+			double millis = (System.nanoTime() - start) / 1e6;
+			int numFeatures = (fitters[s] == null) ? data.getNumFeatures() :
+				fitters[s].fit(data).getNumFeaturesOut();
+			StringBuilder line = new StringBuilder(String.format(
+					"%-20s %8d", names[s], numFeatures));
+			for (double[] result : results)
+				line.append(String.format(" %7.2f", result[0]));
+			System.out.println(line.append(String.format(" %9.1f",
+					millis)));
+		} // End of for loop through the settings
+	} // End of main method
+
+	/**Makes an array of the numbers from one number up to another
+	 * @param from The first number
+	 * @param to One past the last number
+	 * @return The array of numbers
+	 */
+	private static int[] range(int from, int to) {
+		int[] values = new int[to - from];
+		for (int i = 0; i < values.length; i++) values[i] = from + i;
+		return values;
+	}
+} // End of class
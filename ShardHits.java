@@ -0,0 +1,161 @@
+// Importing classes for writing the hits to and reading them from a stream
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**This class holds what one shard of a ShardedIndex found for a batch of
+ * queries: for each query, up to k of the shard's rows closest to it, closest
+ * first, each with its squared distance, its row number in the whole data
+ * set, its ID number and its type. Keeping the squared distances and the
+ * whole data set's row numbers (instead of the square roots and the shard's
+ * own row numbers) is what lets ShardedIndex merge the shards' hits into
+ * exactly the order one search over all the rows would have given. The hits
+ * can be written to a stream and read back, for a shard in another process.
+ */
+public class ShardHits {
+	// Initialize ints for the number of queries and the most hits each
+	private int numQueries, k;
+	// Initialize arrays for the hits, k places for each query, and how many
+	// hits each query has
+	private double[] distances = new double[0];
+	private int[] rows = new int[0];
+	private int[] ids = new int[0];
+	private boolean[] types = new boolean[0];
+	private int[] counts = new int[0];
+
+	/**Empties the hits and makes room for a batch of queries
+	 * @param numQueriesIn How many queries there are
+	 * @param kIn The most hits each can have
+	 */
+	public void reset(int numQueriesIn, int kIn) {
+		numQueries = numQueriesIn;
+		k = kIn;
+		int size = numQueries * k;
+		if (size > distances.length) {
+			distances = new double[size];
+			rows = new int[size];
+			ids = new int[size];
+			types = new boolean[size];
+		}
+		if (numQueries > counts.length) counts = new int[numQueries];
+		for (int q = 0; q < numQueries; q++) counts[q] = 0;
+	}
+
+	/**Takes the hits of a query out of a heap of a shard's rows (which holds
+	 * squared distances), leaving the heap empty
+	 * @param q The query's number in the batch
+	 * @param heap The KnnHeap
+	 * @param labels The shard's rows, for looking up ID numbers and types
+	 * @param firstRow The row number of the shard's first row in the whole
+	 * data set
+	 */
+	public void take(int q, KnnHeap heap, TumorLabels labels, int firstRow) {
+		int start = q * k;
+		int count = heap.drainSorted(distances, rows, start);
+		for (int i = start; i < start + count; i++) {
+			ids[i] = labels.getID(rows[i]);
+			types[i] = labels.getType(rows[i]);
+			rows[i] += firstRow;
+		}
+		counts[q] = count;
+	}
+
+	/**This simple accessor method returns how many queries there are
+	 * @return The number of queries
+	 */
+	public int getNumQueries() {
+		return numQueries;
+	}
+
+	/**Returns how many hits a query has
+	 * @param q The query's number in the batch
+	 * @return The number of hits (k, unless the shard has fewer rows)
+	 */
+	public int count(int q) {
+		return counts[q];
+	}
+
+	/**Returns the squared distance of a hit
+	 * @param q The query's number in the batch
+	 * @param n Which hit, counting from 0 for the closest
+	 * @return The squared distance
+	 */
+	public double getDistSquared(int q, int n) {
+		return distances[q * k + n];
+	}
+
+	/**Returns the row number of a hit in the whole data set
+	 * @param q The query's number in the batch
+	 * @param n Which hit
+	 * @return The row number
+	 */
+	public int getRow(int q, int n) {
+		return rows[q * k + n];
+	}
+
+	/**Returns the ID number of a hit
+	 * @param q The query's number in the batch
+	 * @param n Which hit
+	 * @return The ID number
+	 */
+	public int getID(int q, int n) {
+		return ids[q * k + n];
+	}
+
+	/**Returns the type of a hit
+	 * @param q The query's number in the batch
+	 * @param n Which hit
+	 * @return True if it is malignant
+	 */
+	public boolean getType(int q, int n) {
+		return types[q * k + n];
+	}
+
+	/**Writes the hits to a stream
+	 * @param out The stream
+	 * @throws IOException If it can't be written
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(numQueries);
+		out.writeInt(k);
+		for (int q = 0; q < numQueries; q++) {
+			out.writeInt(counts[q]);
+			for (int i = q * k; i < q * k + counts[q]; i++) {
+				out.writeDouble(distances[i]);
+				out.writeInt(rows[i]);
+				out.writeInt(ids[i]);
+				out.writeBoolean(types[i]);
+			}
+		}
+	}
+
+	/**Reads hits written by writeTo, replacing these
+	 * @param in The stream
+	 * @param numQueriesIn How many queries the hits should be for
+	 * @param kIn The most hits each should have
+	 * @throws IOException If they can't be read or aren't for that many
+	 * queries and k
+	 */
+	public void readFrom(DataInputStream in, int numQueriesIn, int kIn)
+			throws IOException {
+		int numQueriesSent = in.readInt();
+		int kSent = in.readInt();
+		if (numQueriesSent != numQueriesIn || kSent != kIn)
+			throw new IOException("a shard sent hits for " + numQueriesSent
+					+ " queries with k = " + kSent + " instead of "
+					+ numQueriesIn + " with k = " + kIn);
+		reset(numQueriesIn, kIn);
+		for (int q = 0; q < numQueries; q++) {
+			counts[q] = in.readInt();
+			if (counts[q] < 0 || counts[q] > k)
+				throw new IOException("a shard sent " + counts[q]
+						+ " hits for a query instead of at most " + k);
+			for (int i = q * k; i < q * k + counts[q]; i++) {
+				distances[i] = in.readDouble();
+				rows[i] = in.readInt();
+				ids[i] = in.readInt();
+				types[i] = in.readBoolean();
+			}
+		}
+	}
+} // End of class
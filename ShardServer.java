@@ -0,0 +1,198 @@
+// Importing classes for the connections and the data file
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**This class is one shard of a ShardedIndex running as its own process: it
+ * reads the data file, keeps only its run of the rows (shard number
+ * shardIndex of numShards, the same runs ShardedIndex.ranges gives) in a
+ * LocalShard, and answers searches from RemoteShards over sockets, one
+ * thread for each connection. Nothing checks who is connecting, so it only
+ * listens on the loopback address unless it is given a host to listen on,
+ * as host:port, and a search asking for more than MAX_K neighbors or
+ * sending more than MAX_QUERY_VALUES characteristics is refused (and its
+ * connection closed) before anything is made for it.
+ *
+ * What goes over a connection, all written with DataOutputStream:
+ *   - the server first sends MAGIC, then the first row, the number of rows
+ *     and the number of characteristics (4 ints)
+ *   - each search is k and the number of queries (2 ints, with k 0 meaning
+ *     the connection is finished) and then the queries' characteristics
+ *     (doubles), and the server answers with ShardHits.writeTo
+ *
+ * The rows are scaled the way NearestNeighbor.ImportMatrix reads them, and
+ * the queries sent have to be scaled the same way.
+ */
+public class ShardServer {
+	// Initialize the number a ShardServer starts each connection with
+	static final int MAGIC = 0x4b4e4e53;
+	// Initialize final ints for the most neighbors a search can ask for,
+	// and the most characteristics (and hits) one search can send (or get
+	// back)
+	static final int MAX_K = 1 << 16;
+	static final int MAX_QUERY_VALUES = 1 << 24;
+	// Initialize the shard and the socket it listens on
+	private final LocalShard shard;
+	private final ServerSocket serverSocket;
+
+	/**This constructor creates a ShardServer for a shard, listening on a
+	 * port
+	 * @param shardIn The LocalShard to search
+	 * @param host The host name or address to listen on, or null for the
+	 * loopback address
+	 * @param port The port to listen on (0 for any free port)
+	 * @throws IOException If the port can't be listened on
+	 */
+	public ShardServer(LocalShard shardIn, String host, int port)
+			throws IOException {
+		shard = shardIn;
+		InetAddress address = (host == null) ?
+			InetAddress.getLoopbackAddress() : InetAddress.getByName(host);
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(address, port));
+	}
+
+	/**This simple accessor method returns the port the server listens on
+	 * @return The port
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**Accepts connections until the server socket is closed, answering each
+	 * on its own daemon thread
+	 */
+	public void serve() {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (IOException e) {
+				// Closing the server socket ends the loop
+				break;
+			}
+			Thread thread = new Thread(() -> answer(socket),
+					"shard-" + shard.getFirstRow());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**Stops accepting connections
+	 * @throws IOException If the server socket can't be closed
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	/**Answers the searches sent over one connection until the RemoteShard
+	 * says it is finished or goes away
+	 * @param socket The connection
+	 */
+	private void answer(Socket socket) {
+		int numFeatures = shard.getNumFeatures();
+		ShardHits hits = new ShardHits();
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(
+					new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(s.getOutputStream()));
+			out.writeInt(MAGIC);
+			out.writeInt(shard.getFirstRow());
+			out.writeInt(shard.getNumRows());
+			out.writeInt(numFeatures);
+			out.flush();
+			// While loop to answer one search after another
+			int k;
+			while ((k = in.readInt()) != 0) {
+				int numQueries = in.readInt();
+				checkSearch(k, numQueries, numFeatures);
+				double[] queryData = new double[numQueries * numFeatures];
+				for (int i = 0; i < queryData.length; i++)
+					queryData[i] = in.readDouble();
+				FeatureMatrix queries = new FeatureMatrix(numQueries,
+						numFeatures, queryData, new int[numQueries],
+						new long[FeatureMatrix.wordsFor(numQueries)]);
+				shard.search(queries, 0, numQueries, k, hits);
+				hits.writeTo(out);
+				out.flush();
+			}
+		}
+		catch (EOFException e) {
+			// The RemoteShard went away without saying it was finished
+		}
+		catch (IOException e) {
+			System.err.println("Shard connection failed: " + e);
+		}
+	}
+
+	/**Checks that a search sent over a connection is one the server can
+	 * answer without making anything too big
+	 * @param k How many neighbors it asks for
+	 * @param numQueries How many queries it sends
+	 * @param numFeatures How many characteristics each query has
+	 * @throws IOException If k or numQueries is out of range
+	 */
+	static void checkSearch(int k, int numQueries, int numFeatures)
+			throws IOException {
+		if (k < 1 || k > MAX_K)
+			throw new IOException("a search asked for " + k
+					+ " neighbors (it can be from 1 to " + MAX_K + ")");
+		if (numQueries < 0)
+			throw new IOException("a search sent " + numQueries
+					+ " queries");
+		if ((long) numQueries * Math.max(numFeatures, k) > MAX_QUERY_VALUES)
+			throw new IOException("a search sent " + numQueries
+					+ " queries (too many to answer at once)");
+	}
+
+	/**Main method for the ShardServer class
+	 * @param args The command-line arguments for the method: the data file,
+	 * the shard number, the number of shards and optionally the port (with
+	 * the host to listen on in front of it, as host:port, to listen on more
+	 * than the loopback address)
+	 * @throws IOException This exception gets thrown if the data file can't
+	 * be read or the port can't be listened on
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: java ShardServer dataFile shardIndex "
+					+ "numShards [[host:]port]");
+			return;
+		}
+		int shardIndex = Integer.parseInt(args[1]);
+		int numShards = Integer.parseInt(args[2]);
+		if (shardIndex < 0 || shardIndex >= numShards) {
+			System.out.println("The shard number must be from 0 to "
+					+ (numShards - 1));
+			return;
+		}
+		String host = null;
+		int port = 0;
+		if (args.length > 3) {
+			int colon = args[3].lastIndexOf(':');
+			if (colon >= 0) host = args[3].substring(0, colon);
+			port = Integer.parseInt(args[3].substring(colon + 1));
+		}
+		FeatureMatrix data = NearestNeighbor.ImportMatrix(args[0]);
+		int[] ranges = ShardedIndex.ranges(data.getNumRows(), numShards);
+		ShardServer server = new ShardServer(new LocalShard(data,
+				ranges[shardIndex], ranges[shardIndex + 1]), host, port);
+		// Printed as one line so a process that started this one can read
+		// the port from it
+		System.out.println("Shard " + shardIndex + " of " + numShards
+				+ " (rows " + ranges[shardIndex] + " to "
+				+ ranges[shardIndex + 1] + ") listening on port "
+				+ server.getPort());
+		server.serve();
+	} // End of main method
+} // End of class
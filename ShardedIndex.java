@@ -0,0 +1,318 @@
+// Importing classes for running the shards at the same time
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**This class is a NeighborIndex split into shards, each a run of consecutive
+ * rows of the training tumors, so that the data set doesn't have to fit in
+ * one process: a shard can be a LocalShard in this process or a RemoteShard
+ * talking to a ShardServer in another. Each search asks every shard at the
+ * same time for its own k nearest rows and merges them into the k nearest
+ * overall. Since a shard keeps the squared distances and the whole data
+ * set's row numbers, and the runs are in order, merging by (squared
+ * distance, row) the way KnnHeap orders them gives exactly the neighbors,
+ * in exactly the order, that a LinearScanIndex over all the rows would, so
+ * the votes and the accuracy don't change with the number of shards.
+ * The shards after the first are searched as ForkJoinTasks, so a search
+ * called from a ForkJoinPool (as TrialRunner does) lets that pool's threads
+ * share the shards instead of waiting on threads of its own.
+ */
+public class ShardedIndex implements NeighborIndex, AutoCloseable {
+	// Initialize the shards, in the order of their rows
+	private final NeighborShard[] shards;
+	// Initialize the training tumors (null when the shards are remote)
+	private final FeatureMatrix data;
+	// Initialize the number of characteristics and the transform
+	private final int numFeatures;
+	private final FeatureTransform transform;
+
+	/**This constructor creates a ShardedIndex over some training tumors,
+	 * split into LocalShards of (nearly) the same size
+	 * @param train The FeatureMatrix of training tumors
+	 * @param numShards How many shards to split them into
+	 */
+	public ShardedIndex(FeatureMatrix train, int numShards) {
+		int[] ranges = ranges(train.getNumRows(), numShards);
+		shards = new NeighborShard[numShards];
+		for (int s = 0; s < numShards; s++)
+			shards[s] = new LocalShard(train, ranges[s], ranges[s + 1]);
+		data = train;
+		numFeatures = train.getNumFeatures();
+		transform = train.getTransform();
+	}
+
+	/**This constructor creates a ShardedIndex over shards that already
+	 * exist (such as RemoteShards), which must hold consecutive runs of rows
+	 * in order, starting from row 0
+	 * @param shardsIn The shards
+	 * @param transformIn The FeatureTransform the rows were transformed with
+	 * (queries have to be transformed the same way), or null
+	 * @throws IllegalArgumentException If the shards' rows aren't one run in
+	 * order or they have different numbers of characteristics
+	 */
+	public ShardedIndex(NeighborShard[] shardsIn,
+			FeatureTransform transformIn) {
+		if (shardsIn.length == 0)
+			throw new IllegalArgumentException("there are no shards");
+		int nextRow = 0;
+		for (NeighborShard shard : shardsIn) {
+			if (shard.getFirstRow() != nextRow)
+				throw new IllegalArgumentException("a shard starts at row "
+						+ shard.getFirstRow() + " instead of " + nextRow);
+			if (shard.getNumFeatures() != shardsIn[0].getNumFeatures())
+				throw new IllegalArgumentException("the shards have "
+						+ "different numbers of characteristics");
+			nextRow += shard.getNumRows();
+		}
+		shards = shardsIn.clone();
+		data = null;
+		numFeatures = shardsIn[0].getNumFeatures();
+		transform = transformIn;
+	}
+
+	/**Makes a NeighborIndex.Builder that builds ShardedIndexes with the
+	 * given number of LocalShards, to hand to TrialRunner.setIndexBuilder
+	 * @param numShards How many shards to split the training tumors into
+	 * @return The NeighborIndex.Builder
+	 */
+	public static NeighborIndex.Builder builder(int numShards) {
+		return train -> new ShardedIndex(train, numShards);
+	}
+
+	/**Splits a number of rows into runs for the shards, the first ones one
+	 * row longer when they don't divide evenly
+	 * @param numRows How many rows there are
+	 * @param numShards How many shards
+	 * @return An array of numShards + 1 row numbers, where shard s has the
+	 * rows from element s up to (but not including) element s + 1
+	 */
+	public static int[] ranges(int numRows, int numShards) {
+		if (numShards < 1 || numShards > Math.max(1, numRows))
+			throw new IllegalArgumentException("can't split " + numRows
+					+ " rows into " + numShards + " shards");
+		int[] ranges = new int[numShards + 1];
+		for (int s = 0; s < numShards; s++)
+			ranges[s + 1] = ranges[s] + numRows / numShards
+				+ (s < numRows % numShards ? 1 : 0);
+		return ranges;
+	}
+
+	/**This simple accessor method returns the number of shards
+	 * @return The number of shards
+	 */
+	public int getNumShards() {
+		return shards.length;
+	}
+
+	/**Returns the training tumors, if this index was made from them
+	 * @return The FeatureMatrix of training tumors
+	 * @throws UnsupportedOperationException If the shards were made
+	 * elsewhere, so the tumors aren't all in this process
+	 */
+	public FeatureMatrix getData() {
+		if (data == null)
+			throw new UnsupportedOperationException("the training tumors "
+					+ "are in the shards' processes");
+		return data;
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	public FeatureTransform getTransform() {
+		return transform;
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		ShardHits[] hits = scratch.takeShardHits(shards.length);
+		searchShards(hits, null, 0, 1, query, queryOffset, k);
+		merge(hits, 0, k, out);
+		scratch.returnShardHits(hits, true);
+	}
+
+	/**Asks every shard for its k nearest rows to each query and merges them
+	 * @throws UncheckedIOException If a RemoteShard can't be reached
+	 */
+	public void kNearestBatch(FeatureMatrix queries, int from, int to, int k,
+			NeighborResult[] out) {
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		ShardHits[] hits = scratch.takeShardHits(shards.length);
+		searchShards(hits, queries, from, to, null, 0, k);
+		for (int q = 0; q < to - from; q++) merge(hits, q, k, out[q]);
+		scratch.returnShardHits(hits, true);
+	}
+
+	/**Searches every shard at the same time, each as a new ShardTask: the
+	 * others are forked onto the ForkJoinPool this thread belongs to (or the
+	 * common pool) and this thread searches the first, then joins the
+	 * others, searching any the pool hasn't started itself. If a shard
+	 * fails, the tasks that haven't started are cancelled and the failure is
+	 * thrown, and the hits are dropped from this thread's NeighborScratch
+	 * since shards may still be writing into them. This thread may run other
+	 * tasks while it joins, so a single query is copied first, in case it
+	 * is in this thread's NeighborScratch, where those tasks could write
+	 * over it.
+	 * @param hits The ShardHits to write each shard's hits into, taken from
+	 * this thread's NeighborScratch
+	 * @param queries The FeatureMatrix holding the queries, or null for the
+	 * one query in query
+	 * @param from The first query row
+	 * @param to One past the last query row
+	 * @param query The array holding the one query, if queries is null
+	 * @param queryOffset The position in query where it starts
+	 * @param k How many rows to find for each query
+	 * @throws UncheckedIOException If a RemoteShard can't be reached
+	 */
+	private void searchShards(ShardHits[] hits, FeatureMatrix queries,
+			int from, int to, double[] query, int queryOffset, int k) {
+		if (queries == null) {
+			query = Arrays.copyOfRange(query, queryOffset,
+					queryOffset + numFeatures);
+			queryOffset = 0;
+		}
+		ShardTask[] tasks = new ShardTask[shards.length];
+		for (int s = 0; s < shards.length; s++)
+			tasks[s] = new ShardTask(shards[s], queries, from, to, query,
+					queryOffset, k, hits[s]);
+		try {
+			ForkJoinTask.invokeAll(tasks);
+		}
+		catch (RuntimeException | Error e) {
+			NeighborScratch.forCurrentThread().returnShardHits(hits, false);
+			throw e;
+		}
+	}
+
+	/**Merges the shards' hits for one query into the k nearest overall,
+	 * taking the closest of the shards' next hits each time
+	 * @param hits The shards' hits (at least one for each shard)
+	 * @param q The query's number in the batch
+	 * @param k How many neighbors to keep
+	 * @param out The NeighborResult to write the neighbors into
+	 */
+	private void merge(ShardHits[] hits, int q, int k, NeighborResult out) {
+		int[] positions =
+			NeighborScratch.forCurrentThread().shardPositions(shards.length);
+		int total = 0;
+		for (int s = 0; s < shards.length; s++) {
+			positions[s] = 0;
+			total += hits[s].count(q);
+		}
+		int size = Math.min(k, total);
+		out.setSize(size);
+		for (int n = 0; n < size; n++) {
+			// Find the shard whose next hit comes first
+			int best = -1;
+			for (int s = 0; s < shards.length; s++) {
+				if (positions[s] == hits[s].count(q)) continue;
+				if (best < 0 || KnnHeap.isFarther(
+						hits[best].getDistSquared(q, positions[best]),
+						hits[best].getRow(q, positions[best]),
+						hits[s].getDistSquared(q, positions[s]),
+						hits[s].getRow(q, positions[s])))
+					best = s;
+			}
+			int p = positions[best]++;
+			out.set(n, hits[best].getID(q, p), hits[best].getType(q, p),
+					Math.sqrt(hits[best].getDistSquared(q, p)));
+		}
+	}
+
+	/**Closes every shard (for RemoteShards, their connections)
+	 * @throws IOException If a shard can't be closed cleanly
+	 */
+	public void close() throws IOException {
+		for (NeighborShard shard : shards) shard.close();
+	}
+
+	/**This class searches one shard as a ForkJoinTask. A shard whose search
+	 * blocks (a RemoteShard) is searched inside ForkJoinPool.managedBlock,
+	 * so the pool can run other work on another thread while it waits.
+	 */
+	static final class ShardTask extends RecursiveAction
+			implements ForkJoinPool.ManagedBlocker {
+		private static final long serialVersionUID = 1L;
+		// Initialize what to search and where to write the hits
+		private final NeighborShard shard;
+		private final FeatureMatrix queries;
+		private final double[] query;
+		private final int from, to, queryOffset, k;
+		private final ShardHits hits;
+		// Initialize a boolean for whether a blocking search has returned
+		private boolean searched;
+
+		/**This constructor creates a ShardTask for one search of a shard
+		 * @param shardIn The shard to search
+		 * @param queriesIn The FeatureMatrix holding the queries, or null
+		 * for the one query in queryIn
+		 * @param fromIn The first query row
+		 * @param toIn One past the last query row
+		 * @param queryIn The array holding the one query, if queriesIn is
+		 * null
+		 * @param queryOffsetIn The position in queryIn where it starts
+		 * @param kIn How many rows to find for each query
+		 * @param hitsIn The ShardHits to write them into
+		 */
+		ShardTask(NeighborShard shardIn, FeatureMatrix queriesIn, int fromIn,
+				int toIn, double[] queryIn, int queryOffsetIn, int kIn,
+				ShardHits hitsIn) {
+			shard = shardIn;
+			queries = queriesIn;
+			from = fromIn;
+			to = toIn;
+			query = queryIn;
+			queryOffset = queryOffsetIn;
+			k = kIn;
+			hits = hitsIn;
+		}
+
+		/**Searches the shard
+		 * @throws UncheckedIOException If the shard can't be reached
+		 * @throws IllegalStateException If the thread is interrupted while
+		 * it waits for a RemoteShard
+		 */
+		protected void compute() {
+			try {
+				if (shard.isBlocking()) ForkJoinPool.managedBlock(this);
+				else search();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while "
+						+ "searching a shard", e);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**Searches the shard
+		 * @throws IOException If the shard can't be reached
+		 */
+		private void search() throws IOException {
+			if (queries == null) shard.search(query, queryOffset, k, hits);
+			else shard.search(queries, from, to, k, hits);
+		}
+
+		public boolean block() {
+			try {
+				search();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			searched = true;
+			return true;
+		}
+
+		public boolean isReleasable() {
+			return searched;
+		}
+	} // End of class
+} // End of class
@@ -0,0 +1,170 @@
+// Importing classes for IO (to read file and the shard processes' output),
+// the loopback address, lists of processes and Scanner
+import java.io.*;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/**This class checks and times a ShardedIndex. For several numbers of shards
+ * it:
+ *   - runs the trials with ShardedIndexes and with LinearScanIndexes and
+ *     checks that the accuracies are exactly the same
+ *   - with a large data set made from the data file (SyntheticData), checks
+ *     that the ShardedIndex finds exactly the same neighbors as a
+ *     LinearScanIndex and times batches of queries, to show how the
+ *     throughput changes with the number of shards (the shards are searched
+ *     at the same time, so it can only go up with more cores than this
+ *     machine's availableProcessors() if that is 1)
+ * Then it starts ShardServers as separate processes over the data file,
+ * connects RemoteShards to them and checks those find the same neighbors
+ * too.
+ */
+public class ShardingReport {
+
+	/**Main method for the ShardingReport class
+	 * @param args The command-line arguments for the method: the data file
+	 * (asked for if missing), then optionally k, the number of rows of the
+	 * large data set and the numbers of shards to try
+	 * @throws Exception This exception gets thrown if the data file can't be
+	 * read or the shard processes can't be started
+	 */
+	public static void main(String[] args) throws Exception {
+		// Gets the file name from the command line or asks the user for it
+		String fileName;
+		if (args.length > 0) fileName = args[0];
+		else {
+			System.out.println("Please provide a file name for the data " +
+					"file to use.");
+			fileName = new Scanner(System.in).next();
+		}
+		int k = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		int numRows = (args.length > 2) ? Integer.parseInt(args[2]) : 200000;
+		int[] shardCounts = {1, 2, 4, 8};
+		if (args.length > 3) {
+			shardCounts = new int[args.length - 3];
+			for (int i = 3; i < args.length; i++)
+				shardCounts[i - 3] = Integer.parseInt(args[i]);
+		}
+		final int NUM_OF_TRIALS = 100;
+		final int NUM_OF_QUERIES = 500;
+		final int BATCH_SIZE = 50;
+
+		FeatureMatrix base = NearestNeighbor.ImportMatrix(fileName);
+		TrialRunner linear = new TrialRunner(7);
+		double[] expected = linear.runTrials(base, k, NUM_OF_TRIALS);
+		FeatureMatrix large = SyntheticData.scale(base, numRows, 2);
+		FeatureMatrix queries = SyntheticData.scale(base, NUM_OF_QUERIES, 1);
+		LinearScanIndex scan = new LinearScanIndex(large);
+
+		System.out.println("k = " + k + ", " + NUM_OF_TRIALS + " trials, "
+				+ numRows + " rows for the timing, " + Runtime.getRuntime()
+				.availableProcessors() + " processor(s)");
+		System.out.println(String.format("%8s %10s %10s %14s %14s",
+				"shards", "accuracy", "neighbors", "batch (us/q)",
+				"queries/s"));
+		timeBatches(scan, queries, k, BATCH_SIZE);
+		double scanMicros = timeBatches(scan, queries, k, BATCH_SIZE);
+		System.out.println(String.format("%8s %10s %10s %14.2f %14.0f",
+				"linear", "", "", scanMicros, 1e6 / scanMicros));
+		for (int numShards : shardCounts) {
+			TrialRunner sharded = new TrialRunner(7);
+			sharded.setIndexBuilder(ShardedIndex.builder(numShards));
+			double[] accuracy = sharded.runTrials(base, k, NUM_OF_TRIALS);
+			ShardedIndex index = new ShardedIndex(large, numShards);
+			boolean same = IndexTradeoffReport.sameNeighbors(scan, index,
+					queries, k);
+			timeBatches(index, queries, k, BATCH_SIZE);
+			double micros = timeBatches(index, queries, k, BATCH_SIZE);
+			System.out.println(String.format("%8d %10s %10s %14.2f %14.0f",
+					numShards, Arrays.equals(accuracy, expected) ?
+					"same" : "DIFFERS", same ? "same" : "DIFFER", micros,
+					1e6 / micros));
+		}
+
+		// Start two shards as their own processes and search them
+		final int NUM_OF_PROCESSES = 2;
+		List<Process> processes = new ArrayList<>();
+		NeighborShard[] remote = new NeighborShard[NUM_OF_PROCESSES];
+		try {
+			for (int s = 0; s < NUM_OF_PROCESSES; s++) {
+				Process process = startShard(fileName, s, NUM_OF_PROCESSES);
+				processes.add(process);
+				remote[s] = new RemoteShard(InetAddress.getLoopbackAddress()
+						.getHostAddress(), readPort(process));
+			}
+			try (ShardedIndex index = new ShardedIndex(remote, null)) {
+				LinearScanIndex baseScan = new LinearScanIndex(base);
+				boolean same = IndexTradeoffReport.sameNeighbors(baseScan,
+						index, queries, k);
+				timeBatches(index, queries, k, BATCH_SIZE);
+				double micros = timeBatches(index, queries, k, BATCH_SIZE);
+				System.out.println(String.format("%d shard processes over "
+						+ "the %d rows of %s: neighbors %s, %.2f us per "
+						+ "query in batches of %d", NUM_OF_PROCESSES,
+						base.getNumRows(), fileName,
+						same ? "the same" : "DIFFER", micros, BATCH_SIZE));
+			}
+		}
+		finally {
+			for (Process process : processes) process.destroy();
+		}
+	} // End of main method
+
+	/**Times answering every row of a FeatureMatrix of queries with an
+	 * index, a batch at a time
+	 * @param index The NeighborIndex to query
+	 * @param queries The FeatureMatrix of query tumors
+	 * @param k How many nearest neighbors to find
+	 * @param batchSize How many queries to ask for at once
+	 * @return The average time per query in microseconds
+	 */
+	private static double timeBatches(NeighborIndex index,
+			FeatureMatrix queries, int k, int batchSize) {
+		NeighborResult[] out = new NeighborResult[batchSize];
+		for (int i = 0; i < batchSize; i++) out[i] = new NeighborResult(k);
+		int numQueries = queries.getNumRows();
+		long start = System.nanoTime();
+		for (int q = 0; q < numQueries; q += batchSize)
+			index.kNearestBatch(queries, q, Math.min(numQueries,
+					q + batchSize), k, out);
+		return (System.nanoTime() - start) / 1e3 / numQueries;
+	}
+
+	/**Starts a ShardServer in a new process, with the same Java and class
+	 * path as this one and any free port
+	 * @param fileName The data file
+	 * @param shardIndex The shard's number
+	 * @param numShards How many shards there are
+	 * @return The Process
+	 * @throws IOException If it can't be started
+	 */
+	private static Process startShard(String fileName, int shardIndex,
+			int numShards) throws IOException {
+		String java = System.getProperty("java.home") + File.separator
+			+ "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java,
+				"--add-modules", "jdk.incubator.vector",
+				"-cp", System.getProperty("java.class.path"), "ShardServer",
+				fileName, String.valueOf(shardIndex),
+				String.valueOf(numShards));
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	/**Reads the port a ShardServer process is listening on from the line it
+	 * prints when it is ready
+	 * @param process The Process
+	 * @return The port
+	 * @throws IOException If the process ends without printing it
+	 */
+	private static int readPort(Process process) throws IOException {
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream()));
+		String line = reader.readLine();
+		if (line == null || !line.contains(" port "))
+			throw new IOException("a ShardServer didn't start: " + line);
+		return Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+	}
+} // End of class
@@ -0,0 +1,89 @@
+/**This class is a NeighborIndex over a TrainingStore, so tumors can be
+ * diagnosed against training tumors that are being appended and removed at
+ * the same time. Like LinearScanIndex it builds nothing ahead of time, so
+ * there is nothing to rebuild when the store changes: each search takes the
+ * store's latest Snapshot and scans its rows, skipping the removed ones, and
+ * a batch of queries all use the same Snapshot, so every answer comes from
+ * one consistent set of training tumors. The neighbors are exactly the ones
+ * a LinearScanIndex over Snapshot.toFeatureMatrix() would find (in the same
+ * order, since removing rows doesn't change the order of the rest).
+ */
+public class StoreIndex implements NeighborIndex {
+	// Initialize the TrainingStore to search
+	private final TrainingStore store;
+
+	/**This constructor creates a StoreIndex over a TrainingStore
+	 * @param storeIn The TrainingStore
+	 */
+	public StoreIndex(TrainingStore storeIn) {
+		store = storeIn;
+	}
+
+	/**This simple accessor method returns the TrainingStore
+	 * @return The TrainingStore
+	 */
+	public TrainingStore getStore() {
+		return store;
+	}
+
+	/**Returns a copy of the tumors in the store now (see
+	 * Snapshot.toFeatureMatrix), which won't follow later changes
+	 * @return A FeatureMatrix of the tumors
+	 */
+	public FeatureMatrix getData() {
+		return store.snapshot().toFeatureMatrix();
+	}
+
+	public int getNumFeatures() {
+		return store.getNumFeatures();
+	}
+
+	public FeatureTransform getTransform() {
+		return store.getTransform();
+	}
+
+	public long getVersion() {
+		return store.getVersion();
+	}
+
+	public void kNearest(double[] query, int queryOffset, int k,
+			NeighborResult out) {
+		kNearest(store.snapshot(), query, queryOffset, k, out);
+	}
+
+	public void kNearestBatch(FeatureMatrix queries, int from, int to, int k,
+			NeighborResult[] out) {
+		TrainingStore.Snapshot snapshot = store.snapshot();
+		double[] queryData = queries.getData();
+		for (int q = from; q < to; q++)
+			kNearest(snapshot, queryData, queries.offset(q), k, out[q - from]);
+	}
+
+	/**Finds the k nearest neighbors of a query among the rows of a
+	 * Snapshot that aren't removed, the same way NearestNeighbor.kNearest
+	 * scans a FeatureMatrix
+	 * @param snapshot The Snapshot to search
+	 * @param query The array holding the query's characteristics
+	 * @param queryOffset The position in query where they start
+	 * @param k How many nearest neighbors to find
+	 * @param out The NeighborResult to write them into, closest first
+	 */
+	static void kNearest(TrainingStore.Snapshot snapshot, double[] query,
+			int queryOffset, int k, NeighborResult out) {
+		int numRows = snapshot.getNumRows();
+		int numFeatures = snapshot.getNumFeatures();
+		double[] data = snapshot.getData();
+		KnnHeap heap = NeighborScratch.forCurrentThread().heap(
+				Math.min(k, snapshot.getNumLive()));
+		int kept = 0;
+		for (int r = 0, offset = 0; r < numRows; r++, offset += numFeatures) {
+			if (snapshot.isRemoved(r)) continue;
+			if (heap.offer(DistanceKernels.distSquaredBounded(query,
+					queryOffset, data, offset, numFeatures,
+					heap.worstDistance()), r))
+				kept++;
+		}
+		PipelineMetrics.countScan(snapshot.getNumLive(), kept);
+		heap.drainRootsInto(snapshot, out);
+	}
+} // End of class
@@ -0,0 +1,100 @@
+// Importing SplittableRandom (for repeatable random numbers)
+import java.util.SplittableRandom;
+
+/**This class makes bigger (or smaller) data sets out of a real one, so the
+ * speed of the algorithm can be measured on more tumors than are in the
+ * data file. Each new row is a copy of a random row of the real data with a
+ * little random noise added to each characteristic (5% of how spread out that
+ * characteristic is in the real data), and it keeps the type of the row it was
+ * copied from. The same seed always makes the same rows.
+ */
+public class SyntheticData {
+	// Initialize a final double for the size of the noise, as a fraction of
+	// each characteristic's standard deviation
+	private static final double NOISE = .05;
+
+	/**Makes a new FeatureMatrix with a given number of rows copied from a
+	 * real one with noise added
+	 * @param base The real FeatureMatrix to copy rows from
+	 * @param numRows How many rows to make
+	 * @param seed The seed for the random numbers
+	 * @return The new FeatureMatrix, with ID numbers 1 to numRows
+	 */
+	public static FeatureMatrix scale(FeatureMatrix base, int numRows,
+			long seed) {
+		int numFeatures = base.getNumFeatures();
+		double[] baseData = base.getData();
+		// Work out the standard deviation of each characteristic
+		double[] stdDev = new double[numFeatures];
+		double[] mean = new double[numFeatures];
+		for (int r = 0; r < base.getNumRows(); r++)
+			for (int f = 0; f < numFeatures; f++)
+				mean[f] += baseData[base.offset(r) + f];
+		for (int f = 0; f < numFeatures; f++)
+			mean[f] /= base.getNumRows();
+		for (int r = 0; r < base.getNumRows(); r++)
+			for (int f = 0; f < numFeatures; f++) {
+				double diff = baseData[base.offset(r) + f] - mean[f];
+				stdDev[f] += diff * diff;
+			}
+		for (int f = 0; f < numFeatures; f++)
+			stdDev[f] = Math.sqrt(stdDev[f] / base.getNumRows());
+
+		// Make each new row from a random real row plus noise
+		SplittableRandom random = new SplittableRandom(seed);
+		double[] data = new double[numRows * numFeatures];
+		int[] ids = new int[numRows];
+		long[] typeBits = new long[FeatureMatrix.wordsFor(numRows)];
+		for (int r = 0; r < numRows; r++) {
+			int source = random.nextInt(base.getNumRows());
+			for (int f = 0; f < numFeatures; f++)
+				data[r * numFeatures + f] = baseData[base.offset(source) + f] +
+					NOISE * stdDev[f] * gaussian(random);
+			ids[r] = r + 1;
+			if (base.getType(source))
+				typeBits[r >>> 6] |= 1L << r;
+		}
+		return new FeatureMatrix(numRows, numFeatures, data, ids, typeBits);
+	}
+
+	/**Makes a new FeatureMatrix with the same rows as a real one but a
+	 * different number of characteristics per row, by repeating the real
+	 * characteristics over again (or cutting them off) until each row has
+	 * enough, so the cost of the distance calculation can be measured for
+	 * different numbers of characteristics
+	 * @param base The real FeatureMatrix
+	 * @param numFeatures How many characteristics each row should have
+	 * @return The new FeatureMatrix, or base itself if it already has that
+	 * many characteristics
+	 */
+	public static FeatureMatrix withNumFeatures(FeatureMatrix base,
+			int numFeatures) {
+		int baseFeatures = base.getNumFeatures();
+		if (numFeatures == baseFeatures) return base;
+		int numRows = base.getNumRows();
+		double[] baseData = base.getData();
+		double[] data = new double[numRows * numFeatures];
+		int[] ids = new int[numRows];
+		long[] typeBits = new long[FeatureMatrix.wordsFor(numRows)];
+		for (int r = 0; r < numRows; r++) {
+			for (int f = 0; f < numFeatures; f++)
+				data[r * numFeatures + f] =
+					baseData[base.offset(r) + f % baseFeatures];
+			ids[r] = base.getID(r);
+			if (base.getType(r))
+				typeBits[r >>> 6] |= 1L << r;
+		}
+		return new FeatureMatrix(numRows, numFeatures, data, ids, typeBits);
+	}
+
+	/**Picks a random number from the standard normal distribution (with the
+	 * Box-Muller method)
+	 * @param random The random number generator to use
+	 * @return The random number
+	 */
+	static double gaussian(SplittableRandom random) {
+		double u1 = 1.0 - random.nextDouble();
+		double u2 = random.nextDouble();
+		return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+	}
+} // End of class
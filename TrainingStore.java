@@ -0,0 +1,400 @@
+// Importing the classes for growing the arrays, finding rows by ID number,
+// and the list of listeners
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**This class holds a set of training tumors that can change while it is
+ * being searched: newly confirmed tumors can be appended and tumors can be
+ * removed by ID number at any time, from any thread, without rebuilding
+ * anything or reading the data file again.
+ *
+ * Searches never see a change halfway through. Each one works on a Snapshot,
+ * which is the store as it was after some change and never changes itself.
+ * Appending writes the new rows past the end of the rows any Snapshot can
+ * see (moving to bigger arrays when the arrays are full, which leaves the
+ * old ones to the old Snapshots), and removing a tumor only marks its row in
+ * a fresh copy of the bits saying which rows are removed, so a change never
+ * has to copy the characteristics. Once a quarter of the rows are removed,
+ * the rows left are copied into new arrays without them (in the same order,
+ * so the neighbors found don't change). Each change then publishes its
+ * Snapshot with a version one higher than the last, and searches that start
+ * after that see it. Changes are made one at a time (the methods that make
+ * them are synchronized); searches are never held up by them.
+ *
+ * Anything built on top of the store (a DiagnosisCache, say) can listen for
+ * the changes with addListener and update itself a little at a time instead
+ * of starting over. Listeners hear about each change before its Snapshot is
+ * published. StoreIndex searches the store for KnnClassifier.
+ */
+public class TrainingStore {
+	// Initialize final ints for the fewest rows the arrays have room for
+	// and the fewest removed rows worth compacting
+	private static final int MIN_CAPACITY = 16;
+	private static final int MIN_COMPACT = 64;
+
+	/**This interface is for something that wants to hear about every change
+	 * to a TrainingStore
+	 */
+	public interface Listener {
+		/**Called after rows have been appended, before the Snapshot with
+		 * them in it is published
+		 * @param after The Snapshot with the new rows
+		 * @param fromRow The first new row in after
+		 * @param toRow One past the last new row
+		 */
+		void appended(Snapshot after, int fromRow, int toRow);
+
+		/**Called after a tumor has been removed, before the Snapshot
+		 * without it is published
+		 * @param after The Snapshot without the tumor
+		 * @param id The ID number of the tumor removed
+		 */
+		void removed(Snapshot after, int id);
+	}
+
+	// Initialize the number of characteristics and the transform the rows
+	// were put through (null if none)
+	private final int numFeatures;
+	private final FeatureTransform transform;
+	// Initialize the arrays of rows (characteristics row after row, ID
+	// numbers, types as bits, and removed rows as bits), which only ever
+	// have rows added past the end of the last Snapshot
+	private double[] data;
+	private int[] ids;
+	private long[] typeBits;
+	private long[] removedBits;
+	private int numRows = 0, numRemoved = 0;
+	// Initialize the map from ID numbers to rows, for the rows not removed
+	private HashMap<Integer, Integer> rowOf = new HashMap<>();
+	// Initialize the Snapshot searches start from, and the listeners
+	private volatile Snapshot current;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/**This constructor creates a TrainingStore holding the tumors of a
+	 * FeatureMatrix to start with (its characteristics already transformed,
+	 * if it has a transform, like the training tumors of an index)
+	 * @param initial The FeatureMatrix of tumors to start with, whose ID
+	 * numbers must all be different
+	 */
+	public TrainingStore(FeatureMatrix initial) {
+		numFeatures = initial.getNumFeatures();
+		transform = initial.getTransform();
+		int capacity = Math.max(MIN_CAPACITY, initial.getNumRows());
+		data = new double[capacity * numFeatures];
+		ids = new int[capacity];
+		typeBits = new long[FeatureMatrix.wordsFor(capacity)];
+		removedBits = new long[FeatureMatrix.wordsFor(capacity)];
+		appendRows(initial);
+		current = new Snapshot(this, 0);
+	}
+
+	/**Appends a confirmed tumor
+	 * @param features The array holding its characteristics, as they were
+	 * read (they are put through the store's transform, if it has one)
+	 * @param offset The position in features where they start
+	 * @param id Its ID number
+	 * @param malignant True if it is malignant, false if benign
+	 * @throws IllegalArgumentException If a tumor with that ID number is
+	 * already in the store
+	 */
+	public synchronized void append(double[] features, int offset, int id,
+			boolean malignant) {
+		int length =
+			(transform == null) ? numFeatures : transform.getNumFeaturesIn();
+		appendAll(new FeatureMatrix(1, length, Arrays.copyOfRange(features,
+				offset, offset + length), new int[] {id},
+				new long[] {malignant ? 1 : 0}));
+	}
+
+	/**Appends a batch of confirmed tumors as one change
+	 * @param tumors The tumors, with their characteristics as they were read
+	 * (they are put through the store's transform, if it has one)
+	 * @throws IllegalArgumentException If one of their ID numbers is already
+	 * in the store or is there twice
+	 */
+	public synchronized void appendAll(FeatureMatrix tumors) {
+		if (tumors.getNumRows() == 0) return;
+		if (transform != null && tumors.getTransform() != transform)
+			tumors = transform.transform(tumors);
+		if (tumors.getNumFeatures() != numFeatures)
+			throw new IllegalArgumentException("the tumors have "
+					+ tumors.getNumFeatures() + " characteristics instead of "
+					+ numFeatures);
+		int from = numRows;
+		appendRows(tumors);
+		publish(current.getVersion() + 1, from, numRows, 0);
+	}
+
+	/**Removes a tumor
+	 * @param id Its ID number
+	 * @return True if it was in the store (false if there was nothing to
+	 * remove)
+	 */
+	public synchronized boolean remove(int id) {
+		Integer row = rowOf.remove(id);
+		if (row == null) return false;
+		// Mark the row in a fresh copy of the bits, so the Snapshots already
+		// out keep seeing it
+		removedBits = removedBits.clone();
+		removedBits[row >>> 6] |= 1L << row;
+		numRemoved++;
+		if (numRemoved >= MIN_COMPACT && 4 * numRemoved >= numRows)
+			compact();
+		publish(current.getVersion() + 1, numRows, numRows, id);
+		return true;
+	}
+
+	/**Copies rows onto the end of the arrays, growing them if they are full
+	 * (into new arrays, so the Snapshots already out keep the old ones)
+	 * @param rows The FeatureMatrix of rows to copy
+	 */
+	private void appendRows(FeatureMatrix rows) {
+		int count = rows.getNumRows();
+		// Check all the ID numbers before copying anything, so a bad batch
+		// leaves the store as it was
+		HashSet<Integer> batchIds = new HashSet<>();
+		for (int r = 0; r < count; r++) {
+			if (rowOf.containsKey(rows.getID(r)))
+				throw new IllegalArgumentException("tumor " + rows.getID(r)
+						+ " is already in the store");
+			if (!batchIds.add(rows.getID(r)))
+				throw new IllegalArgumentException("tumor " + rows.getID(r)
+						+ " is in the batch twice");
+		}
+		if (numRows + count > ids.length) {
+			int capacity = Math.max(numRows + count, 2 * ids.length);
+			data = Arrays.copyOf(data, capacity * numFeatures);
+			ids = Arrays.copyOf(ids, capacity);
+			typeBits = Arrays.copyOf(typeBits,
+					FeatureMatrix.wordsFor(capacity));
+			removedBits = Arrays.copyOf(removedBits,
+					FeatureMatrix.wordsFor(capacity));
+		}
+		for (int r = 0; r < count; r++) {
+			int row = numRows++;
+			rowOf.put(rows.getID(r), row);
+			System.arraycopy(rows.getData(), rows.offset(r), data,
+					row * numFeatures, numFeatures);
+			ids[row] = rows.getID(r);
+			if (rows.getType(r)) typeBits[row >>> 6] |= 1L << row;
+		}
+	}
+
+	/**Copies the rows that aren't removed into new arrays, in the same
+	 * order (the Snapshots already out keep the old arrays)
+	 */
+	private void compact() {
+		int live = numRows - numRemoved;
+		int capacity = Math.max(MIN_CAPACITY, 2 * live);
+		double[] newData = new double[capacity * numFeatures];
+		int[] newIds = new int[capacity];
+		long[] newTypeBits = new long[FeatureMatrix.wordsFor(capacity)];
+		HashMap<Integer, Integer> newRowOf = new HashMap<>();
+		int next = 0;
+		for (int r = 0; r < numRows; r++) {
+			if ((removedBits[r >>> 6] & (1L << r)) != 0) continue;
+			System.arraycopy(data, r * numFeatures, newData,
+					next * numFeatures, numFeatures);
+			newIds[next] = ids[r];
+			if ((typeBits[r >>> 6] & (1L << r)) != 0)
+				newTypeBits[next >>> 6] |= 1L << next;
+			newRowOf.put(ids[r], next);
+			next++;
+		}
+		data = newData;
+		ids = newIds;
+		typeBits = newTypeBits;
+		removedBits = new long[FeatureMatrix.wordsFor(capacity)];
+		rowOf = newRowOf;
+		numRows = live;
+		numRemoved = 0;
+	}
+
+	/**Tells the listeners about a change and then publishes its Snapshot
+	 * @param version The version of the new Snapshot
+	 * @param fromRow The first row appended (if any were)
+	 * @param toRow One past the last row appended
+	 * @param removedId The ID number of the tumor removed (if one was)
+	 */
+	private void publish(long version, int fromRow, int toRow,
+			int removedId) {
+		Snapshot after = new Snapshot(this, version);
+		for (Listener listener : listeners) {
+			if (toRow > fromRow) listener.appended(after, fromRow, toRow);
+			else listener.removed(after, removedId);
+		}
+		current = after;
+	}
+
+	/**Adds a listener to hear about every change from now on
+	 * @param listener The Listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**Takes away a listener
+	 * @param listener The Listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**Returns the store as it is now, which won't change however the store
+	 * changes afterward
+	 * @return The latest Snapshot
+	 */
+	public Snapshot snapshot() {
+		return current;
+	}
+
+	/**This simple accessor method returns the version of the latest
+	 * Snapshot, which goes up by one with every change
+	 * @return The version
+	 */
+	public long getVersion() {
+		return current.getVersion();
+	}
+
+	/**This simple accessor method returns how many characteristics each row
+	 * has (after the transform)
+	 * @return The number of characteristics
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**This simple accessor method returns the transform the rows were put
+	 * through
+	 * @return The FeatureTransform, or null if there isn't one
+	 */
+	public FeatureTransform getTransform() {
+		return transform;
+	}
+
+	/**Checks whether a tumor is in the store
+	 * @param id Its ID number
+	 * @return True if it is
+	 */
+	public synchronized boolean contains(int id) {
+		return rowOf.containsKey(id);
+	}
+
+	/**This class is the store as it was after one change. Its rows are
+	 * numbered the way the store's arrays were then, including removed rows
+	 * (which searches skip), and none of what it can see ever changes.
+	 */
+	public static final class Snapshot implements TumorLabels {
+		private final long version;
+		private final int numRows, numLive, numFeatures;
+		private final double[] data;
+		private final int[] ids;
+		private final long[] typeBits, removedBits;
+		private final FeatureTransform transform;
+
+		/**This constructor takes a Snapshot of a store (called with the
+		 * store's lock held)
+		 * @param store The TrainingStore
+		 * @param versionIn The version of the Snapshot
+		 */
+		private Snapshot(TrainingStore store, long versionIn) {
+			version = versionIn;
+			numRows = store.numRows;
+			numLive = store.numRows - store.numRemoved;
+			numFeatures = store.numFeatures;
+			data = store.data;
+			ids = store.ids;
+			typeBits = store.typeBits;
+			removedBits = store.removedBits;
+			transform = store.transform;
+		}
+
+		/**This simple accessor method returns the version of the Snapshot
+		 * @return The version
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**This simple accessor method returns how many rows there are,
+		 * including removed ones
+		 * @return The number of rows
+		 */
+		public int getNumRows() {
+			return numRows;
+		}
+
+		/**This simple accessor method returns how many rows aren't removed
+		 * @return The number of tumors in the Snapshot
+		 */
+		public int getNumLive() {
+			return numLive;
+		}
+
+		/**This simple accessor method returns how many characteristics
+		 * each row has
+		 * @return The number of characteristics
+		 */
+		public int getNumFeatures() {
+			return numFeatures;
+		}
+
+		/**Returns the array of characteristics, row after row (it may be
+		 * longer than the rows; it must not be changed)
+		 * @return The array
+		 */
+		public double[] getData() {
+			return data;
+		}
+
+		/**Finds where a row starts in the array of characteristics
+		 * @param row The row
+		 * @return Its position in getData()
+		 */
+		public int offset(int row) {
+			return row * numFeatures;
+		}
+
+		/**Checks whether a row has been removed
+		 * @param row The row
+		 * @return True if it has
+		 */
+		public boolean isRemoved(int row) {
+			return (removedBits[row >>> 6] & (1L << row)) != 0;
+		}
+
+		public int getID(int row) {
+			return ids[row];
+		}
+
+		public boolean getType(int row) {
+			return (typeBits[row >>> 6] & (1L << row)) != 0;
+		}
+
+		/**Copies the rows that aren't removed into a FeatureMatrix, in
+		 * order (for building another index over, or checking against)
+		 * @return The FeatureMatrix, with the store's transform
+		 */
+		public FeatureMatrix toFeatureMatrix() {
+			double[] liveData = new double[numLive * numFeatures];
+			int[] liveIds = new int[numLive];
+			long[] liveTypes = new long[FeatureMatrix.wordsFor(numLive)];
+			int next = 0;
+			for (int r = 0; r < numRows; r++) {
+				if (isRemoved(r)) continue;
+				System.arraycopy(data, r * numFeatures, liveData,
+						next * numFeatures, numFeatures);
+				liveIds[next] = ids[r];
+				if (getType(r)) liveTypes[next >>> 6] |= 1L << next;
+				next++;
+			}
+			FeatureMatrix matrix = new FeatureMatrix(numLive, numFeatures,
+					liveData, liveIds, liveTypes);
+			return (transform == null) ? matrix :
+				matrix.withData(numFeatures, liveData, transform);
+		}
+	}
+} // End of class
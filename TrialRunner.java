@@ -0,0 +1,400 @@
+// Importing classes for the fork-join pool the trials run on, the random 
+// number generators they split the data with, and Arrays
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**This class runs many trials of the k-nearest neighbor algorithm at once on
+ * a ForkJoinPool, so they use all the cores of the machine. Every trial gets
+ * its own shuffled array of row numbers to split into training and testing
+ * data, so the FeatureMatrix being tested is never changed and the trials
+ * don't get in each other's way, and the testing tumors inside each trial are
+ * also split up between threads. The results of the trials are kept in an
+ * array and added up in trial order at the end, so the averages don't depend
+ * on which trials happened to finish first.
+ * Each trial splits the data with its own SplittableRandom, all split off in
+ * trial order from one generator made from the TrialRunner's seed, so running
+ * the same trials with the same seed gives exactly the same results.
+ * The neighbors of the testing tumors are found with a NeighborIndex built
+ * over each trial's training data, a LinearScanIndex unless another
+ * NeighborIndex.Builder is set with setIndexBuilder. If an approximate index
+ * is used, a second (exact) index can be set with setRecallBaseline, and each
+ * trial then also reports what percent of the true nearest neighbors the
+ * approximate index found. If a FeatureTransform.Fitter is set with
+ * setPreprocessing, each trial fits a FeatureTransform (such as a
+ * FeatureScaler) on its training data alone and transforms both its training
+ * and testing data with it before searching.
+ * Several values of k can be tested in the same trials: the neighbors of
+ * each testing tumor are found once, for the biggest k, and the closest k of
+ * them vote for each smaller k, so every value of k is tested on exactly the
+ * same splits for about the cost of one.
+ * How long the trials spend splitting, transforming, building, searching and
+ * voting is added up in PipelineMetrics.
+ */
+public class TrialRunner {
+	// Initialize a final int for the fewest testing tumors worth handing to
+	// a thread of their own
+	private static final int MIN_TESTS_PER_TASK = 16;
+
+	// Initialize the ForkJoinPool the trials run on
+	private final ForkJoinPool pool;
+	// Initialize a long for the seed the trials' random numbers come from
+	private final long seed;
+	// Initialize a boolean for whether the splits are stratified by type
+	private final boolean stratified;
+	// Initialize the builder for the index each trial searches
+	private NeighborIndex.Builder indexBuilder = LinearScanIndex::new;
+	// Initialize the builder for the exact index to measure recall against
+	// (null to not measure it)
+	private NeighborIndex.Builder recallBaseline = null;
+	// Initialize the fitter for each trial's FeatureTransform (null to not
+	// transform)
+	private FeatureTransform.Fitter preprocessing = null;
+
+	/**This constructor creates a TrialRunner that runs trials on the common
+	 * ForkJoinPool, which has a thread for every core, with stratified splits
+	 * from a random seed
+	 */
+	public TrialRunner() {
+		this(new SplittableRandom().nextLong());
+	}
+
+	/**This second constructor creates a TrialRunner that runs trials on the
+	 * common ForkJoinPool with stratified splits from the given seed
+	 * @param seedIn The seed for the trials' random numbers
+	 */
+	public TrialRunner(long seedIn) {
+		this(ForkJoinPool.commonPool(), seedIn, true);
+	}
+
+	/**This third constructor creates a TrialRunner that runs trials on a
+	 * ForkJoinPool of the caller's choosing
+	 * @param poolIn The ForkJoinPool to run trials on
+	 * @param seedIn The seed for the trials' random numbers
+	 * @param stratifiedIn True to split each type 80-20 separately, false to
+	 * split all the tumors 80-20 without looking at their types
+	 */
+	public TrialRunner(ForkJoinPool poolIn, long seedIn,
+			boolean stratifiedIn) {
+		pool = poolIn;
+		seed = seedIn;
+		stratified = stratifiedIn;
+	}
+
+	/**Sets how the index each trial searches for neighbors is built
+	 * @param builder The NeighborIndex.Builder to build indexes with
+	 */
+	public void setIndexBuilder(NeighborIndex.Builder builder) {
+		indexBuilder = builder;
+	}
+
+	/**Sets the exact index each trial's results are compared against to
+	 * measure recall
+	 * @param builder The NeighborIndex.Builder to build exact indexes with,
+	 * or null to not measure recall
+	 */
+	public void setRecallBaseline(NeighborIndex.Builder builder) {
+		recallBaseline = builder;
+	}
+
+	/**Sets how each trial's characteristics are transformed: a
+	 * FeatureTransform is fitted on the trial's training data with this
+	 * fitter, and both the training and the testing data are transformed
+	 * with it
+	 * @param fitter The FeatureTransform.Fitter to fit transforms with, or
+	 * null to not transform
+	 */
+	public void setPreprocessing(FeatureTransform.Fitter fitter) {
+		preprocessing = fitter;
+	}
+
+	/**Runs a number of trials of the nearest neighbor algorithm at once and
+	 * averages their results
+	 * @param data The FeatureMatrix of tumors to use as training and testing
+	 * data
+	 * @param k How many nearest neighbors vote on each testing tumor
+	 * @param numTrials How many trials to run
+	 * @return An array of four doubles with the averages over all the trials
+	 * of the four results NearestNeighbor.Accuracy returns, and a fifth with
+	 * the average recall if a recall baseline is set
+	 * @throws IllegalArgumentException If numTrials or k is less than 1
+	 */
+	public double[] runTrials(FeatureMatrix data, int k, int numTrials) {
+		return runTrials(data, new int[] {k}, numTrials)[0];
+	}
+
+	/**Runs a number of trials of the nearest neighbor algorithm at once for
+	 * several values of k, finding each testing tumor's neighbors once for
+	 * the biggest k, and averages each value of k's results
+	 * @param data The FeatureMatrix of tumors to use as training and testing
+	 * data
+	 * @param ks The values of k to test, smallest first
+	 * @param numTrials How many trials to run
+	 * @return An array with the averaged results of runTrials(FeatureMatrix,
+	 * int, int) for each value of k, in the same order as ks
+	 * @throws IllegalArgumentException If numTrials is less than 1 or the
+	 * values of k aren't all at least 1 and in order
+	 */
+	public double[][] runTrials(FeatureMatrix data, int[] ks, int numTrials) {
+		// Check the number of trials and the values of k before starting any
+		// trials
+		if (numTrials < 1)
+			throw new IllegalArgumentException("there must be at least one "
+					+ "trial");
+		AccuracyTally.forEachK(ks);
+		double[][][] trialResults = pool.invoke(new TrialsTask(data, ks,
+				stratified, indexBuilder, recallBaseline, preprocessing,
+				trialRandoms(numTrials), 0, numTrials,
+				new double[numTrials][][]));
+		// Average each value of k's results over the trials, in trial order
+		double[][] results = new double[ks.length][];
+		double[][] oneK = new double[numTrials][];
+		for (int i = 0; i < ks.length; i++) {
+			for (int t = 0; t < numTrials; t++) oneK[t] = trialResults[t][i];
+			results[i] = average(oneK);
+		}
+		return results;
+	}
+
+	/**Makes one random number generator for each trial by splitting them
+	 * off, in trial order, from a generator made from the seed
+	 * @param numTrials How many trials there are
+	 * @return An array with each trial's random number generator
+	 */
+	SplittableRandom[] trialRandoms(int numTrials) {
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] randoms = new SplittableRandom[numTrials];
+		for (int t = 0; t < numTrials; t++)
+			randoms[t] = root.split();
+		return randoms;
+	}
+
+	/**Averages the results of a set of trials, adding them up in trial order
+	 * @param trialResults The four results of each trial
+	 * @return An array of the four averages
+	 */
+	static double[] average(double[][] trialResults) {
+		double[] results = new double[trialResults[0].length];
+		for (int t = 0; t < trialResults.length; t++)
+			for (int r = 0; r < results.length; r++)
+				results[r] += trialResults[t][r];
+		for (int r = 0; r < results.length; r++)
+			results[r] /= (double) trialResults.length;
+		return results;
+	}
+
+	/**Runs one trial: copies the training rows of a split into the training
+	 * data and the testing rows into the testing data, builds an index over 
+	 * the training data, then tests the testing tumors in parallel (when 
+	 * called from inside a ForkJoinPool)
+	 * @param data The FeatureMatrix of tumors
+	 * @param k How many nearest neighbors vote on each testing tumor
+	 * @param split The split of the rows of data for this trial
+	 * @param builder The NeighborIndex.Builder to build the index with
+	 * @param baseline The NeighborIndex.Builder to build an exact index to
+	 * measure recall against with, or null to not measure recall
+	 * @return The four results of the trial, and the recall as a fifth if
+	 * baseline isn't null
+	 */
+	static double[] runTrial(FeatureMatrix data, int k,
+			DataSplitter.Split split, NeighborIndex.Builder builder,
+			NeighborIndex.Builder baseline) {
+		return runTrial(data, new int[] {k}, split, builder, baseline,
+				null)[0];
+	}
+
+	/**Runs one trial the same way for several values of k, finding each
+	 * testing tumor's neighbors once for the biggest k
+	 * @param data The FeatureMatrix of tumors
+	 * @param ks The values of k to test, smallest first
+	 * @param split The split of the rows into training and testing rows
+	 * @param builder The NeighborIndex.Builder to build the index with
+	 * @param baseline The NeighborIndex.Builder to build an exact index to
+	 * measure recall against with, or null to not measure recall
+	 * @param preprocessing The FeatureTransform.Fitter to fit a transform
+	 * on the training data with, or null to not transform
+	 * @return The results of the trial for each value of k, in the same
+	 * order as ks
+	 */
+	static double[][] runTrial(FeatureMatrix data, int[] ks,
+			DataSplitter.Split split, NeighborIndex.Builder builder,
+			NeighborIndex.Builder baseline,
+			FeatureTransform.Fitter preprocessing) {
+		int[] order = split.getOrder();
+		int numTraining = split.getNumTraining();
+		FeatureMatrix trainingData = data.subset(order, 0, numTraining);
+		FeatureMatrix testData = data.subset(order, numTraining,
+				order.length);
+		// Fit the transform on the training data only, then transform both
+		if (preprocessing != null) {
+			long start = PipelineMetrics.start();
+			PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+			FeatureTransform transform = preprocessing.fit(trainingData);
+			trainingData = transform.transform(trainingData);
+			testData = transform.transform(testData);
+			PipelineMetrics.stop(PipelineMetrics.TRANSFORM, start, event);
+		}
+		long start = PipelineMetrics.start();
+		PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+		NeighborIndex index = builder.build(trainingData);
+		PipelineMetrics.stop(PipelineMetrics.BUILD, start, event);
+		NeighborIndex exact = 
+			(baseline == null) ? null : baseline.build(trainingData);
+		AccuracyTally[] tallies = new TestTask(testData, index, exact, ks, 0,
+				testData.getNumRows()).invoke();
+		double[][] results = new double[ks.length][];
+		for (int i = 0; i < ks.length; i++) {
+			results[i] = tallies[i].getResults();
+			if (exact == null) continue;
+			// Add the recall onto the end of the results
+			results[i] = Arrays.copyOf(results[i], 5);
+			results[i][4] = tallies[i].getRecall();
+		}
+		return results;
+	}
+
+	/**Tests a range of rows of the testing data against an index over the
+	 * training data on the calling thread, finding the neighbors of all of
+	 * them in one batch, for the biggest k, into that thread's reusable
+	 * NeighborResults
+	 * @param testData The FeatureMatrix of testing tumors
+	 * @param index The NeighborIndex over the training tumors
+	 * @param exact An exact NeighborIndex over the training tumors to 
+	 * measure recall against, or null to not measure recall
+	 * @param ks The values of k to test, smallest first
+	 * @param from The first testing row to test
+	 * @param to One past the last testing row to test
+	 * @return An AccuracyTally of how the guesses went for each value of k
+	 */
+	static AccuracyTally[] testRows(FeatureMatrix testData, 
+			NeighborIndex index, NeighborIndex exact, int[] ks, int from, 
+			int to) {
+		AccuracyTally[] tallies = AccuracyTally.forEachK(ks);
+		int maxK = ks[ks.length - 1];
+		NeighborScratch scratch = NeighborScratch.forCurrentThread();
+		NeighborResult[] batch = scratch.results(to - from);
+		long start = PipelineMetrics.start();
+		PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+		index.kNearestBatch(testData, from, to, maxK, batch);
+		PipelineMetrics.recordQueries(start, to - from, event);
+		// Tally the votes (the time this takes counts as voting, even when
+		// it includes the exact searches for measuring recall)
+		start = PipelineMetrics.start();
+		event = PipelineMetrics.beginEvent();
+		double[] testFeatures = testData.getData();
+		for (int j = from; j < to; j++) {
+			NeighborResult neighbors = batch[j - from];
+			AccuracyTally.recordEachK(tallies, ks, neighbors,
+					testData.getType(j));
+			if (exact != null) {
+				NeighborResult trueNeighbors = scratch.baselineResult();
+				exact.kNearest(testFeatures, testData.offset(j), maxK, 
+						trueNeighbors);
+				for (int i = 0; i < ks.length; i++)
+					tallies[i].recordRecall(neighbors, trueNeighbors, ks[i]);
+			}
+		}
+		PipelineMetrics.stop(PipelineMetrics.VOTE, start, event);
+		return tallies;
+	}
+
+	/**A task that runs a range of trials, splitting the range in half and
+	 * running the halves in parallel until there is only one trial left
+	 */
+	private static class TrialsTask extends RecursiveTask<double[][][]> {
+		private static final long serialVersionUID = 1L;
+		private final FeatureMatrix data;
+		private final int[] ks;
+		private final int from, to;
+		private final boolean stratified;
+		private final NeighborIndex.Builder builder, baseline;
+		private final FeatureTransform.Fitter preprocessing;
+		// Each trial's random number generator
+		private final SplittableRandom[] randoms;
+		// The array each trial writes its results into, at its own position
+		private final double[][][] trialResults;
+
+		TrialsTask(FeatureMatrix data, int[] ks, boolean stratified,
+				NeighborIndex.Builder builder, NeighborIndex.Builder baseline,
+				FeatureTransform.Fitter preprocessing,
+				SplittableRandom[] randoms, int from, int to,
+				double[][][] trialResults) {
+			this.data = data;
+			this.ks = ks;
+			this.stratified = stratified;
+			this.builder = builder;
+			this.baseline = baseline;
+			this.preprocessing = preprocessing;
+			this.randoms = randoms;
+			this.from = from;
+			this.to = to;
+			this.trialResults = trialResults;
+		}
+
+		protected double[][][] compute() {
+			// If there is only one trial in the range, split the rows for it
+			// with its own random number generator and run it
+			if (to - from == 1) {
+				long start = PipelineMetrics.start();
+				PipelineMetrics.StageEvent event = PipelineMetrics.beginEvent();
+				DataSplitter.Split split =
+					DataSplitter.split(data, randoms[from], stratified);
+				PipelineMetrics.stop(PipelineMetrics.SPLIT, start, event);
+				trialResults[from] = runTrial(data, ks, split, builder,
+						baseline, preprocessing);
+			}
+			// Otherwise split the range in half and run both halves
+			else if (to > from) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TrialsTask(data, ks, stratified, builder, 
+						baseline, preprocessing, randoms, from, middle,
+						trialResults),
+						new TrialsTask(data, ks, stratified, builder, baseline,
+						preprocessing, randoms, middle, to, trialResults));
+			}
+			return trialResults;
+		}
+	}
+
+	/**A task that tests a range of rows of the testing data, splitting the
+	 * range in half and testing the halves in parallel until the range is
+	 * small, then adding the two halves' tallies together
+	 */
+	private static class TestTask extends RecursiveTask<AccuracyTally[]> {
+		private static final long serialVersionUID = 1L;
+		private final FeatureMatrix testData;
+		private final NeighborIndex index, exact;
+		private final int[] ks;
+		private final int from, to;
+
+		TestTask(FeatureMatrix testData, NeighborIndex index,
+				NeighborIndex exact, int[] ks, int from, int to) {
+			this.testData = testData;
+			this.index = index;
+			this.exact = exact;
+			this.ks = ks;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected AccuracyTally[] compute() {
+			// If the range is small, just test it on this thread
+			if (to - from <= MIN_TESTS_PER_TASK)
+				return testRows(testData, index, exact, ks, from, to);
+			// Otherwise test the second half on another thread while this
+			// thread tests the first half, then add the tallies (the counts
+			// are whole numbers, so the order doesn't matter)
+			int middle = (from + to) >>> 1;
+			TestTask secondHalf =
+				new TestTask(testData, index, exact, ks, middle, to);
+			secondHalf.fork();
+			AccuracyTally[] tallies = new TestTask(testData, index, exact,
+					ks, from, middle).compute();
+			AccuracyTally[] secondTallies = secondHalf.join();
+			for (int i = 0; i < tallies.length; i++)
+				tallies[i].add(secondTallies[i]);
+			return tallies;
+		}
+	}
+} // End of class
@@ -120,18 +120,43 @@ public class Tumor implements Comparable<Tumor> {
 	 * @return The double for the distance between the Tumors
 	 */
 	public double Dist(Tumor other) {
+		// Takes the square root of the square of the distance and returns it
+		return Math.sqrt(DistSquared(other));
+	} // End of Dist method
+
+	/**This method calculates the distance from another supplied Tumor to
+	 * this tumor with some other DistanceMetric than the Pythagorean Theorem
+	 * @param other The other Tumor to calculate the distance between
+	 * @param metric The DistanceMetric to measure it with
+	 * @return The double for the distance between the Tumors
+	 */
+	public double Dist(Tumor other, DistanceMetric metric) {
+		return metric.distance(characteristics, 0, other.characteristics, 0,
+				characteristics.length);
+	} // End of Dist method
+
+	/**This method calculates the square of the distance from another
+	 * supplied Tumor to this tumor, which is all that is needed to tell which
+	 * of two tumors is closer (so the square root can be left until the end)
+	 * @param other The other Tumor to calculate the distance between
+	 * @return The double for the square of the distance between the Tumors
+	 */
+	public double DistSquared(Tumor other) {
 		// Initializes a double for the square of the distance
 		double distSquared = 0;
+		// Gets the other tumor's characteristics array once, instead of on
+		// every pass through the loop
+		double[] otherCharacteristics = other.characteristics;
 		// For loop to run through the characteristics arrays running the 
 		// Pythagorean Theorem for all the characteristics
 		for (int i = 0; i < this.characteristics.length; i++) {
 			// Adds onto the distSquared double the square of the difference
-			// between the two characteristics
-			distSquared += (Math.pow(this.characteristics[i] - 
-				other.getCharacteristics()[i], 2));
+			// between the two characteristics (multiplying the difference by
+			// itself, which is much faster than calling Math.pow)
+			double diff = this.characteristics[i] - otherCharacteristics[i];
+			distSquared += diff * diff;
 		} // End of for loop to run through characteristics array and doing
 		  // Pythagorean Theorem for the characteristics
-		// Takes the square root of distSquared and returns it
-		return Math.sqrt(distSquared);
-	} // End of Dist method	
+		return distSquared;
+	} // End of DistSquared method	
 }
\ No newline at end of file
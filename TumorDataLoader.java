@@ -0,0 +1,575 @@
+// Note: Throughout this program, when a boolean is used to refer to the type
+// of tumor, true means malignant and false means benign.
+
+// Importing classes for reading the file through a channel, Arrays (to grow
+// the arrays) and the character set for the rare numbers handed to
+// Double.parseDouble
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**This class reads a data file in the WDBC form (each line an ID number, M
+ * or B, and then the characteristics, separated by commas) into a
+ * FeatureMatrix. Instead of making a Scanner for every line, it reads the
+ * file through a channel a big block of bytes at a time and picks the
+ * numbers out of the bytes itself, so reading a big file is limited by how
+ * fast the disk is, not by parsing. The arrays it fills grow as needed, so a
+ * file can have any number of tumors; the number of characteristics is taken
+ * from the first line, and every other line has to have the same number.
+ * Blank lines are skipped. A line that can't be read throws a
+ * MalformedDataException saying which line it was and what was wrong.
+ */
+public class TumorDataLoader {
+	// Initialize a final int for how many bytes to read from the file at a
+	// time
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Initialize a final int for how many rows to make room for at first
+	private static final int INITIAL_ROWS = 1024;
+	// Initialize a final long for the biggest whole number a double holds
+	// exactly (2^53)
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	// Initialize an array of the powers of ten a double holds exactly
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+		1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// Initialize the channel being read, the name of what is being read,
+	// for error messages, and how many bytes it has (or 0 if that isn't
+	// known)
+	private final ReadableByteChannel in;
+	private final String sourceName;
+	private final long sourceSize;
+	// Initialize a boolean for whether lines may leave out the type (when
+	// reading tumors to classify)
+	private final boolean typeOptional;
+	// Initialize the growing arrays for the FeatureMatrix and the number of
+	// rows and characteristics read so far (numFeatures is -1 until the first
+	// line has been read), plus one bit per row for whether its line had a
+	// type
+	private double[] data = new double[0];
+	private int[] ids = new int[INITIAL_ROWS];
+	private long[] typeBits = new long[FeatureMatrix.wordsFor(INITIAL_ROWS)];
+	private long[] knownBits = new long[FeatureMatrix.wordsFor(INITIAL_ROWS)];
+	private int numRows = 0;
+	private int numFeatures;
+	// Initialize a long for the number of the line being read
+	private long lineNumber = 0;
+	// Initialize the buffer of bytes read from the channel, the ByteBuffer
+	// the channel reads into, where the unfinished line starts in the
+	// buffer, where to look for the next line break, where the bytes read so
+	// far end, and whether the channel has run out
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private ByteBuffer window = ByteBuffer.wrap(buf);
+	private int start = 0, scanFrom = 0, end = 0;
+	private boolean atEnd = false;
+	// Initialize ints for where the current line starts in the buffer and
+	// where the parser is in it
+	private int lineStart, pos;
+
+	/**This constructor is private: use one of the static load methods, or
+	 * streaming
+	 * @param inIn The channel to read from
+	 * @param sourceNameIn The name of what is being read
+	 * @param sourceSizeIn How many bytes there are to read, or 0 if that
+	 * isn't known
+	 * @param numFeaturesIn How many characteristics each line must have, or
+	 * -1 to take it from the first line
+	 * @param typeOptionalIn Whether lines may leave out the type
+	 */
+	private TumorDataLoader(ReadableByteChannel inIn, String sourceNameIn,
+			long sourceSizeIn, int numFeaturesIn, boolean typeOptionalIn) {
+		in = inIn;
+		sourceName = sourceNameIn;
+		sourceSize = sourceSizeIn;
+		numFeatures = numFeaturesIn;
+		typeOptional = typeOptionalIn;
+		if (numFeatures > 0) data = new double[ids.length * numFeatures];
+	}
+
+	/**Reads a data file into a FeatureMatrix
+	 * @param fileName The name of the file to read
+	 * @return A FeatureMatrix with one row for each tumor in the file, in
+	 * order
+	 * @throws IOException If the file can't be read
+	 * @throws MalformedDataException If a line of the file isn't in the right
+	 * form
+	 */
+	public static FeatureMatrix load(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.READ)) {
+			return load(channel, fileName);
+		}
+	}
+
+	/**Reads data in the same form from any channel (a file, standard input,
+	 * a network connection...) into a FeatureMatrix, until the channel has no
+	 * more to give. The channel isn't closed.
+	 * @param in The channel to read from
+	 * @param sourceName The name of what is being read, for error messages
+	 * @return A FeatureMatrix with one row for each tumor read, in order
+	 * @throws IOException If the channel can't be read
+	 * @throws MalformedDataException If a line isn't in the right form
+	 */
+	public static FeatureMatrix load(ReadableByteChannel in,
+			String sourceName) throws IOException {
+		// If it is a file, its size tells us roughly how many rows to make
+		// room for, which saves growing the arrays over and over
+		long size =
+			(in instanceof FileChannel) ? ((FileChannel) in).size() : 0;
+		TumorDataLoader loader =
+			new TumorDataLoader(in, sourceName, size, -1, false);
+		// Parse every complete line we have, then read some more, until the
+		// channel runs out
+		do {
+			while (loader.parseNextLine()) {
+			}
+		} while (loader.fill());
+		loader.parseLastLine();
+		return loader.toMatrix();
+	}
+
+	/**Makes a TumorDataLoader that reads tumors to classify from a channel a
+	 * batch at a time with readBatch, instead of all at once. The lines are
+	 * in the same form as a data file, except that the type may be left out
+	 * (each line is then just an ID number and the characteristics).
+	 * @param in The channel to read from (it isn't closed)
+	 * @param sourceName The name of what is being read, for error messages
+	 * @param numFeatures How many characteristics each line must have (the
+	 * same as the training data)
+	 * @return The TumorDataLoader
+	 */
+	public static TumorDataLoader streaming(ReadableByteChannel in,
+			String sourceName, int numFeatures) {
+		return new TumorDataLoader(in, sourceName, 0, numFeatures, true);
+	}
+
+	/**Reads the next batch of tumors: every complete line that has already
+	 * arrived, up to maxRows of them, waiting for more only if none have.
+	 * That way tumors coming in quickly are handled in big batches, and a
+	 * tumor typed in by hand doesn't wait for a batch to fill up. The batch
+	 * can then be looked at with batch and hasType, until the next call.
+	 * @param maxRows The most tumors to put in one batch
+	 * @return How many tumors are in the batch, or 0 if the channel has run
+	 * out
+	 * @throws IOException If the channel can't be read
+	 * @throws MalformedDataException If a line isn't in the right form
+	 */
+	public int readBatch(int maxRows) throws IOException {
+		// Start a new batch at the front of the arrays
+		Arrays.fill(typeBits, 0, FeatureMatrix.wordsFor(numRows), 0);
+		Arrays.fill(knownBits, 0, FeatureMatrix.wordsFor(numRows), 0);
+		numRows = 0;
+		while (true) {
+			while (numRows < maxRows && parseNextLine()) {
+			}
+			if (numRows > 0) return numRows;
+			if (!fill()) {
+				parseLastLine();
+				return numRows;
+			}
+		}
+	}
+
+	/**Returns the batch read by the last call to readBatch as a FeatureMatrix
+	 * (which shares its arrays with this TumorDataLoader, so it is only good
+	 * until the next call). Tumors whose lines left out the type are listed
+	 * as benign; use hasType to tell them apart.
+	 * @return The FeatureMatrix of the batch
+	 */
+	public FeatureMatrix batch() {
+		return new FeatureMatrix(numRows, numFeatures, data, ids, typeBits);
+	}
+
+	/**Checks whether the line of a tumor in the batch gave its type
+	 * @param row The row of the tumor in the batch
+	 * @return True if the line had M or B
+	 */
+	public boolean hasType(int row) {
+		return (knownBits[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**Parses the next complete line in the buffer, if there is one
+	 * @return True if there was a complete line
+	 * @throws MalformedDataException If the line isn't in the right form
+	 */
+	private boolean parseNextLine() throws MalformedDataException {
+		for (int i = scanFrom; i < end; i++) {
+			if (buf[i] == '\n') {
+				parseLine(buf, start, i);
+				start = scanFrom = i + 1;
+				return true;
+			}
+		}
+		scanFrom = end;
+		return false;
+	}
+
+	/**Parses what is left in the buffer once the channel has run out, since
+	 * the last line might not end with a line break
+	 * @throws MalformedDataException If the line isn't in the right form
+	 */
+	private void parseLastLine() throws MalformedDataException {
+		if (start < end) {
+			parseLine(buf, start, end);
+			start = scanFrom = end;
+		}
+	}
+
+	/**Reads more bytes from the channel onto the end of the buffer, first
+	 * making room: sliding the unfinished line to the front, or making the
+	 * buffer bigger if the line fills all of it
+	 * @return False if the channel has run out
+	 * @throws IOException If the channel can't be read
+	 */
+	private boolean fill() throws IOException {
+		if (atEnd) return false;
+		if (end == buf.length) {
+			if (start > 0) {
+				System.arraycopy(buf, start, buf, 0, end - start);
+				end -= start;
+				scanFrom -= start;
+				start = 0;
+			}
+			else {
+				buf = Arrays.copyOf(buf, buf.length * 2);
+				window = ByteBuffer.wrap(buf);
+			}
+		}
+		window.limit(buf.length).position(end);
+		int read = in.read(window);
+		if (read < 0) {
+			atEnd = true;
+			return false;
+		}
+		end += read;
+		return true;
+	}
+
+	/**Parses one line into the next row of the arrays, or skips it if it is
+	 * blank
+	 * @param buf The bytes holding the line
+	 * @param from Where the line starts in buf
+	 * @param to Where the line ends in buf (just past its last byte, not
+	 * counting the line break)
+	 * @throws MalformedDataException If the line isn't in the right form
+	 */
+	private void parseLine(byte[] buf, int from, int to)
+			throws MalformedDataException {
+		lineNumber++;
+		// Leave off a carriage return (from Windows line breaks) and any
+		// spaces at the end, and skip the line if there is nothing left
+		while (to > from && isBlank(buf[to - 1])) to--;
+		lineStart = pos = from;
+		skipSpaces(buf, to);
+		if (pos == to) return;
+
+		// Make room for one more row
+		if (numRows == ids.length) {
+			if ((long) ids.length * 2 * Math.max(numFeatures, 1)
+					> Integer.MAX_VALUE - 8)
+				throw error("there are too many tumors to hold in memory");
+			growRows(ids.length * 2);
+		}
+
+		// Read the ID number and the type (which can be left out if
+		// typeOptional is set: it is there if the next field is just M or B)
+		ids[numRows] = parseId(buf, to);
+		int idComma = pos;
+		expectComma(buf, to);
+		int afterType = pos + 1;
+		while (afterType < to && isBlank(buf[afterType])) afterType++;
+		boolean hasType = pos < to && (buf[pos] == 'M' || buf[pos] == 'B')
+			&& (afterType == to || buf[afterType] == ',');
+		if (hasType) {
+			if (buf[pos] == 'M') typeBits[numRows >>> 6] |= 1L << numRows;
+			knownBits[numRows >>> 6] |= 1L << numRows;
+			pos = afterType;
+		}
+		else if (!typeOptional) throw error("the type should be M or B");
+		// If there was no type, go back to the comma after the ID number,
+		// since the loop below expects a comma before every characteristic
+		else pos = idComma;
+
+		// If this is the first line, count its characteristics to learn how
+		// many each line has (and, if we know how big the file is, guess how
+		// many lines it has from the length of this one)
+		if (numFeatures < 0) {
+			numFeatures = countCommas(buf, pos, to);
+			if (numFeatures == 0) throw error("there are no characteristics");
+			long expectedRows = sourceSize / (to - from + 1) + 1;
+			if (expectedRows > ids.length && expectedRows * numFeatures
+					< Integer.MAX_VALUE - 8)
+				growRows((int) expectedRows);
+			data = new double[ids.length * numFeatures];
+		}
+		if (data.length < ids.length * numFeatures)
+			data = Arrays.copyOf(data, ids.length * numFeatures);
+
+		// Read the characteristics
+		int offset = numRows * numFeatures;
+		for (int j = 0; j < numFeatures; j++) {
+			if (pos == to)
+				throw error("found " + j + " characteristics instead of "
+						+ numFeatures);
+			expectComma(buf, to);
+			data[offset + j] = parseDouble(buf, to);
+		}
+		if (pos != to)
+			throw error("there are more than " + numFeatures
+					+ " characteristics, or something after the last one");
+		numRows++;
+	}
+
+	/**Parses the ID number at the parser's position
+	 * @param buf The bytes holding the line
+	 * @param to Where the line ends
+	 * @return The ID number
+	 * @throws MalformedDataException If it isn't a whole number that fits in
+	 * an int
+	 */
+	private int parseId(byte[] buf, int to) throws MalformedDataException {
+		int begin = pos;
+		boolean negative = pos < to && buf[pos] == '-';
+		if (negative) pos++;
+		long value = 0;
+		int digits = 0;
+		while (pos < to && isDigit(buf[pos])) {
+			value = value * 10 + (buf[pos++] - '0');
+			if (++digits > 10) break;
+		}
+		if (negative) value = -value;
+		skipSpaces(buf, to);
+		if (digits == 0 || digits > 10 || value != (int) value
+				|| (pos < to && buf[pos] != ','))
+			throw error("the ID number \"" + field(buf, begin, to)
+					+ "\" isn't a whole number that fits in an int");
+		return (int) value;
+	}
+
+	/**Parses the number at the parser's position. Numbers with up to 15 or
+	 * so significant digits and a small exponent (which is all of them in
+	 * WDBC files) are worked out from their digits with one multiplication or
+	 * division, which gives exactly the same double Double.parseDouble would
+	 * (both numbers are exact as doubles, and one operation is rounded
+	 * correctly); anything else is handed to Double.parseDouble.
+	 * @param buf The bytes holding the line
+	 * @param to Where the line ends
+	 * @return The number
+	 * @throws MalformedDataException If it isn't a number
+	 */
+	private double parseDouble(byte[] buf, int to)
+			throws MalformedDataException {
+		skipSpaces(buf, to);
+		int begin = pos;
+		boolean negative = false;
+		if (pos < to && (buf[pos] == '-' || buf[pos] == '+'))
+			negative = buf[pos++] == '-';
+
+		// Read the digits before and after the decimal point into a long,
+		// counting how many came after the point (in a local copy of the
+		// position, which the JIT compiler can keep in a register)
+		long mantissa = 0;
+		int p = pos;
+		while (p < to && isDigit(buf[p])) {
+			mantissa = mantissa * 10 + (buf[p++] - '0');
+		}
+		int exponent = 0;
+		int anyDigits = p - pos;
+		if (p < to && buf[p] == '.') {
+			int fractionStart = ++p;
+			while (p < to && isDigit(buf[p])) {
+				mantissa = mantissa * 10 + (buf[p++] - '0');
+			}
+			exponent = fractionStart - p;
+			anyDigits += p - fractionStart;
+		}
+		pos = p;
+		if (anyDigits == 0) return parseSlowly(buf, begin, to);
+
+		// Read the exponent, if there is one
+		if (pos < to && (buf[pos] == 'e' || buf[pos] == 'E')) {
+			pos++;
+			boolean negativeExponent = false;
+			if (pos < to && (buf[pos] == '-' || buf[pos] == '+'))
+				negativeExponent = buf[pos++] == '-';
+			int written = 0, exponentDigits = 0;
+			while (pos < to && isDigit(buf[pos])) {
+				if (written < 100000)
+					written = written * 10 + (buf[pos] - '0');
+				exponentDigits++;
+				pos++;
+			}
+			if (exponentDigits == 0) return parseSlowly(buf, begin, to);
+			exponent += negativeExponent ? -written : written;
+		}
+		skipSpaces(buf, to);
+		if (pos < to && buf[pos] != ',') return parseSlowly(buf, begin, to);
+
+		// Work the number out directly if that is exact, or have
+		// Double.parseDouble do it (more than 18 digits can overflow the
+		// long, even to 0, so those always go the slow way)
+		double value;
+		if (anyDigits > 18) return parseSlowly(buf, begin, to);
+		if (mantissa == 0) value = 0;
+		else if (mantissa <= MAX_EXACT_MANTISSA
+				&& exponent >= -22 && exponent <= 22) {
+			value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] :
+				mantissa / POWERS_OF_TEN[-exponent];
+		}
+		else return parseSlowly(buf, begin, to);
+		return negative ? -value : value;
+	}
+
+	/**Parses the field starting at begin with Double.parseDouble, for
+	 * numbers the quick way can't do exactly (or that aren't numbers at all,
+	 * which then throw an error). Only plain decimal numbers are let
+	 * through, since Double.parseDouble would also take "NaN", "Infinity"
+	 * and numbers ending in d or f, and a number too big for a double (which
+	 * would come back as infinity) is an error too.
+	 * @param buf The bytes holding the line
+	 * @param begin Where the field starts
+	 * @param to Where the line ends
+	 * @return The number
+	 * @throws MalformedDataException If the field isn't a number
+	 */
+	private double parseSlowly(byte[] buf, int begin, int to)
+			throws MalformedDataException {
+		String text = field(buf, begin, to);
+		pos = begin + text.length();
+		skipSpaces(buf, to);
+		String number = text.trim();
+		if (isPlainNumber(number)) {
+			double value = Double.parseDouble(number);
+			if (!Double.isInfinite(value)) return value;
+		}
+		throw error("\"" + number + "\" isn't a number");
+	}
+
+	/**Checks whether some text is a plain decimal number: a sign if any,
+	 * digits with a decimal point if any (and at least one digit), then an
+	 * exponent if any, which is e or E, a sign if any and at least one digit
+	 * @param text The text
+	 * @return True if it is
+	 */
+	private static boolean isPlainNumber(String text) {
+		int i = 0, length = text.length();
+		if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+			i++;
+		int digits = 0;
+		while (i < length && isDigit(text.charAt(i))) {
+			i++;
+			digits++;
+		}
+		if (i < length && text.charAt(i) == '.') {
+			i++;
+			while (i < length && isDigit(text.charAt(i))) {
+				i++;
+				digits++;
+			}
+		}
+		if (digits == 0) return false;
+		if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+			i++;
+			if (i < length
+					&& (text.charAt(i) == '-' || text.charAt(i) == '+'))
+				i++;
+			int exponentDigits = 0;
+			while (i < length && isDigit(text.charAt(i))) {
+				i++;
+				exponentDigits++;
+			}
+			if (exponentDigits == 0) return false;
+		}
+		return i == length;
+	}
+
+	/**Returns the text from begin up to the next comma or the end of the
+	 * line
+	 */
+	private static String field(byte[] buf, int begin, int to) {
+		int end = begin;
+		while (end < to && buf[end] != ',') end++;
+		return new String(buf, begin, end - begin,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	/**Steps over the comma at the parser's position and any spaces after it
+	 * @throws MalformedDataException If there isn't a comma there
+	 */
+	private void expectComma(byte[] buf, int to)
+			throws MalformedDataException {
+		if (pos >= to || buf[pos] != ',')
+			throw error("expected a comma at column " + (pos + 1 - lineStart));
+		pos++;
+		skipSpaces(buf, to);
+	}
+
+	/**Moves the parser's position past any spaces or tabs
+	 */
+	private void skipSpaces(byte[] buf, int to) {
+		while (pos < to && (buf[pos] == ' ' || buf[pos] == '\t')) pos++;
+	}
+
+	/**Counts the commas between from and to
+	 */
+	private static int countCommas(byte[] buf, int from, int to) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (buf[i] == ',') count++;
+		}
+		return count;
+	}
+
+	/**Checks whether a byte is a digit
+	 */
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**Checks whether a character is a digit from 0 to 9
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**Checks whether a byte is a space, tab or carriage return
+	 */
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**Makes a MalformedDataException for the line being read
+	 * @param problem What was wrong with the line
+	 * @return The exception, to be thrown
+	 */
+	private MalformedDataException error(String problem) {
+		return new MalformedDataException(sourceName, lineNumber, problem);
+	}
+
+	/**Makes the row arrays bigger
+	 * @param rows How many rows to make room for
+	 */
+	private void growRows(int rows) {
+		ids = Arrays.copyOf(ids, rows);
+		typeBits = Arrays.copyOf(typeBits, FeatureMatrix.wordsFor(rows));
+		knownBits = Arrays.copyOf(knownBits, FeatureMatrix.wordsFor(rows));
+	}
+
+	/**Puts the arrays read into a FeatureMatrix, trimmed to the number of
+	 * rows read
+	 * @return The FeatureMatrix
+	 */
+	private FeatureMatrix toMatrix() {
+		int features = Math.max(numFeatures, 0);
+		return new FeatureMatrix(numRows, features,
+				Arrays.copyOf(data, numRows * features),
+				Arrays.copyOf(ids, numRows),
+				Arrays.copyOf(typeBits, FeatureMatrix.wordsFor(numRows)));
+	}
+} // End of class
@@ -0,0 +1,19 @@
+/**This interface is for anything that can tell the ID number and type of
+ * each of a set of tumors by row number: a FeatureMatrix, or a MappedDataset
+ * reading them straight out of a file. KnnHeap uses it to turn the row
+ * numbers of the nearest neighbors it found into ID numbers and types.
+ */
+public interface TumorLabels {
+
+	/**Returns the ID number of a row
+	 * @param row The row number
+	 * @return The ID number of that tumor
+	 */
+	int getID(int row);
+
+	/**Returns the type of a row
+	 * @param row The row number
+	 * @return True if that tumor is malignant; false if it is benign
+	 */
+	boolean getType(int row);
+}
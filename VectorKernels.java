@@ -0,0 +1,237 @@
+// Importing the classes of the (incubating) Java Vector API, and ByteBuffer
+// and ByteOrder for rows read straight out of a mapped file
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**This class holds the SIMD versions of the distance kernels, written with
+ * the Java Vector API so that each instruction works on as many
+ * characteristics at once as the processor's vector registers hold (4 doubles
+ * with AVX2, 8 with AVX-512). It should only be used through DistanceKernels,
+ * which checks that the jdk.incubator.vector module is there before this
+ * class is ever loaded.
+ */
+final class VectorKernels {
+	// Initialize the vector shapes to use: the widest the processor has
+	private static final VectorSpecies<Double> DOUBLES =
+		DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS =
+		FloatVector.SPECIES_PREFERRED;
+	// Initialize the shape of bytes that holds one byte for each lane of
+	// FLOATS (there is no shape small enough if FLOATS is only 128 bits)
+	private static final VectorSpecies<Byte> BYTES =
+		(FLOATS.vectorBitSize() >= 256) ? VectorSpecies.of(byte.class,
+				VectorShape.forBitSize(FLOATS.vectorBitSize() / 4)) : null;
+
+	private VectorKernels() {
+	}
+
+	/**Calculates the square of the distance between two rows of doubles,
+	 * a vector's worth of characteristics at a time, then the last few that
+	 * don't fill a vector one at a time
+	 */
+	static double distSquared(double[] a, int aOffset, double[] b,
+			int bOffset, int length) {
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int i = 0;
+		int upperBound = DOUBLES.loopBound(length);
+		for (; i < upperBound; i += DOUBLES.length()) {
+			DoubleVector diff = DoubleVector.fromArray(DOUBLES, a, aOffset + i)
+				.sub(DoubleVector.fromArray(DOUBLES, b, bOffset + i));
+			sums = diff.fma(diff, sums);
+		}
+		double distSquared = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			double diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**Calculates the square of the distance between two rows of doubles
+	 * like distSquared, but adds up the vector of sums after each step and
+	 * gives up as soon as it has passed bound. The sums in each lane only
+	 * grow, so once the added-up sums pass bound the whole distance will too.
+	 * If it doesn't give up, the answer is exactly what distSquared gives.
+	 */
+	static double distSquaredBounded(double[] a, int aOffset, double[] b,
+			int bOffset, int length, double bound) {
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int i = 0;
+		int upperBound = DOUBLES.loopBound(length);
+		for (; i < upperBound; i += DOUBLES.length()) {
+			DoubleVector diff = DoubleVector.fromArray(DOUBLES, a, aOffset + i)
+				.sub(DoubleVector.fromArray(DOUBLES, b, bOffset + i));
+			sums = diff.fma(diff, sums);
+			double partial = sums.reduceLanes(VectorOperators.ADD);
+			if (partial > bound) return partial;
+		}
+		double distSquared = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			double diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**Calculates the square of the distance between a row of doubles and a
+	 * row of little-endian doubles in a ByteBuffer exactly like
+	 * distSquaredBounded does for two arrays
+	 */
+	static double distSquaredBounded(double[] a, int aOffset, ByteBuffer b,
+			int bByteOffset, int length, double bound) {
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int i = 0;
+		int upperBound = DOUBLES.loopBound(length);
+		for (; i < upperBound; i += DOUBLES.length()) {
+			DoubleVector diff = DoubleVector.fromArray(DOUBLES, a, aOffset + i)
+				.sub(DoubleVector.fromByteBuffer(DOUBLES, b, bByteOffset
+						+ i * Double.BYTES, ByteOrder.LITTLE_ENDIAN));
+			sums = diff.fma(diff, sums);
+			double partial = sums.reduceLanes(VectorOperators.ADD);
+			if (partial > bound) return partial;
+		}
+		double distSquared = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			double diff = a[aOffset + i] - b.getDouble(bByteOffset
+					+ i * Double.BYTES);
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**Calculates the dot product of two rows of doubles, a vector's worth
+	 * of characteristics at a time
+	 */
+	static double dot(double[] a, int aOffset, double[] b, int bOffset,
+			int length) {
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int i = 0;
+		int upperBound = DOUBLES.loopBound(length);
+		for (; i < upperBound; i += DOUBLES.length()) {
+			sums = DoubleVector.fromArray(DOUBLES, a, aOffset + i).fma(
+					DoubleVector.fromArray(DOUBLES, b, bOffset + i), sums);
+		}
+		double dot = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			dot += a[aOffset + i] * b[bOffset + i];
+		}
+		return dot;
+	}
+
+	/**Calculates the square of the distance between two rows of floats the
+	 * same way
+	 */
+	static float distSquared(float[] a, int aOffset, float[] b, int bOffset,
+			int length) {
+		FloatVector sums = FloatVector.zero(FLOATS);
+		int i = 0;
+		int upperBound = FLOATS.loopBound(length);
+		for (; i < upperBound; i += FLOATS.length()) {
+			FloatVector diff = FloatVector.fromArray(FLOATS, a, aOffset + i)
+				.sub(FloatVector.fromArray(FLOATS, b, bOffset + i));
+			sums = diff.fma(diff, sums);
+		}
+		float distSquared = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			float diff = a[aOffset + i] - b[bOffset + i];
+			distSquared += diff * diff;
+		}
+		return distSquared;
+	}
+
+	/**Calculates the squared distances from a query to a block of as many
+	 * rows of floats as a vector has lanes, stored a characteristic at a
+	 * time (characteristic f of the block's row j is at blockOffset +
+	 * f * lanes + j), so each lane works out one row's distance and nothing
+	 * has to be added up across the lanes. Two sums are kept, for the even
+	 * and odd characteristics, so each step doesn't have to wait for the one
+	 * before it to finish. Returns the smallest of the distances.
+	 */
+	static float distSquaredBlock(float[] query, float[] block,
+			int blockOffset, int numFeatures, float[] out) {
+		FloatVector evenSums = FloatVector.zero(FLOATS);
+		FloatVector oddSums = FloatVector.zero(FLOATS);
+		int lanes = FLOATS.length();
+		int f = 0, at = blockOffset;
+		for (; f + 1 < numFeatures; f += 2, at += 2 * lanes) {
+			FloatVector even =
+				FloatVector.fromArray(FLOATS, block, at).sub(query[f]);
+			FloatVector odd = FloatVector.fromArray(FLOATS, block,
+					at + lanes).sub(query[f + 1]);
+			evenSums = even.fma(even, evenSums);
+			oddSums = odd.fma(odd, oddSums);
+		}
+		if (f < numFeatures) {
+			FloatVector even =
+				FloatVector.fromArray(FLOATS, block, at).sub(query[f]);
+			evenSums = even.fma(even, evenSums);
+		}
+		FloatVector sums = evenSums.add(oddSums);
+		sums.intoArray(out, 0);
+		return sums.reduceLanes(VectorOperators.MIN);
+	}
+
+	/**Calculates the squared distances from a query to a block of rows of
+	 * bytes laid out like distSquaredBlock's floats, turning a vector's worth
+	 * of bytes into floats and multiplying them by their scale at a time,
+	 * and returns the smallest of them
+	 */
+	static float distSquaredBlock(float[] query, byte[] block,
+			int blockOffset, float[] scales, int numFeatures, float[] out) {
+		FloatVector evenSums = FloatVector.zero(FLOATS);
+		FloatVector oddSums = FloatVector.zero(FLOATS);
+		int lanes = FLOATS.length();
+		int f = 0, at = blockOffset;
+		for (; f + 1 < numFeatures; f += 2, at += 2 * lanes) {
+			FloatVector even = bytesToFloats(block, at).mul(scales[f])
+				.sub(query[f]);
+			FloatVector odd = bytesToFloats(block, at + lanes)
+				.mul(scales[f + 1]).sub(query[f + 1]);
+			evenSums = even.fma(even, evenSums);
+			oddSums = odd.fma(odd, oddSums);
+		}
+		if (f < numFeatures) {
+			FloatVector even = bytesToFloats(block, at).mul(scales[f])
+				.sub(query[f]);
+			evenSums = even.fma(even, evenSums);
+		}
+		FloatVector sums = evenSums.add(oddSums);
+		sums.intoArray(out, 0);
+		return sums.reduceLanes(VectorOperators.MIN);
+	}
+
+	/**Reads a vector's worth of bytes and turns them into floats
+	 */
+	private static FloatVector bytesToFloats(byte[] block, int offset) {
+		return (FloatVector) ByteVector.fromArray(BYTES, block, offset)
+			.convertShape(VectorOperators.B2F, FLOATS, 0);
+	}
+
+	/**Checks whether the processor's vectors are wide enough for the byte
+	 * kernel
+	 * @return True if the byte kernel can be used
+	 */
+	static boolean hasByteKernel() {
+		return BYTES != null;
+	}
+
+	/**Returns how many floats fit in one vector
+	 * @return The number of lanes
+	 */
+	static int floatLanes() {
+		return FLOATS.length();
+	}
+
+	/**Returns how many doubles fit in one vector
+	 * @return The number of lanes
+	 */
+	static int doubleLanes() {
+		return DOUBLES.length();
+	}
+} // End of class
@@ -0,0 +1,59 @@
+package knnbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Measures the distance kernel on its own: Tumor.Dist between two tumors,
+ * and DistanceKernels.distSquared between two rows of a FeatureMatrix, once
+ * with the Vector API module loaded (so the SIMD kernel is used) and once
+ * without it, for several numbers of characteristics per tumor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1,
+	jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class DistanceBenchmark {
+
+	@Param("wdbc.data")
+	public String dataFile;
+
+	@Param({"10", "30", "60"})
+	public int numFeatures;
+
+	private KnnWorkload workload;
+
+	@Setup
+	public void setUp() throws Exception {
+		workload = Workloads.create(dataFile, 569, numFeatures, 1);
+	}
+
+	@Benchmark
+	public double tumorDist() {
+		return workload.dist();
+	}
+
+	@Benchmark
+	public double vectorDistSquared() {
+		return workload.distSquared();
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dknn.vector=false")
+	public double scalarDistSquared() {
+		return workload.distSquared();
+	}
+}
@@ -0,0 +1,83 @@
+package knnbench;
+
+/**This interface is the bridge between the JMH benchmarks and the program.
+ * JMH won't run benchmarks in the default package and classes in a package
+ * can't name classes in the default package, so the benchmarks load the
+ * program's BenchmarkWorkload class (which implements this interface) by name
+ * once during setup, and then call each operation through this interface.
+ * Each operation works on data set up by setUp and rotates through the query
+ * tumors from one call to the next, so the JIT compiler can't hoist the work
+ * out of the benchmark loop.
+ */
+public interface KnnWorkload {
+
+	/**The name of the class in the default package that implements this
+	 * interface
+	 */
+	String IMPLEMENTATION = "BenchmarkWorkload";
+
+	/**Loads the data file and makes the data set to benchmark on
+	 * @param dataFile The path to wdbc.data
+	 * @param numRows How many rows the data set should have (made by adding
+	 * noise to copies of the real rows)
+	 * @param numFeatures How many characteristics each row should have (the
+	 * real ones are repeated or cut off to get this many)
+	 * @param k How many nearest neighbors to find
+	 * @param seed The seed for the random numbers
+	 * @throws Exception If the data file can't be read
+	 */
+	void setUp(String dataFile, int numRows, int numFeatures, int k, long seed)
+			throws Exception;
+
+	/**Calculates Tumor.Dist between a query tumor and a data set tumor
+	 * @return The distance
+	 */
+	double dist();
+
+	/**Calculates the squared distance between a query row and a data set
+	 * row with DistanceKernels, straight out of the FeatureMatrix arrays
+	 * @return The squared distance
+	 */
+	double distSquared();
+
+	/**Runs NearestNeighbor.sortByDistanceFrom for a query tumor over the data
+	 * set as an array of Tumors
+	 * @return The sorted array
+	 */
+	Object sortByDistanceFrom();
+
+	/**Runs NearestNeighbor.FindTypeOfNthNearestNeighbor with N = k for a
+	 * query tumor over the data set as an array of Tumors
+	 * @return The type of the kth nearest neighbor
+	 */
+	boolean findTypeOfNthNearestNeighbor();
+
+	/**Runs the allocation-free NearestNeighbor.kNearest for a query tumor
+	 * over the data set as a FeatureMatrix
+	 * @return The NeighborResult
+	 */
+	Object kNearest();
+
+	/**Runs BlockedDistanceEngine.kNearest for a batch of all the query
+	 * tumors over the data set, working out distances the direct way
+	 * @return The NeighborResults
+	 */
+	Object kNearestBatch();
+
+	/**Runs BlockedDistanceEngine.kNearest for a batch of all the query
+	 * tumors over the data set, ruling rows out with the norm identity
+	 * first
+	 * @return The NeighborResults
+	 */
+	Object kNearestBatchWithNorms();
+
+	/**Runs one trial of NearestNeighbor.Accuracy on the data set
+	 * @return The four results of the trial
+	 */
+	double[] accuracy();
+
+	/**Runs NearestNeighbor.Accuracy100Trials on the data set
+	 * @return The four averaged results
+	 */
+	double[] accuracy100Trials();
+}
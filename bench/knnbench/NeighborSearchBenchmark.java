@@ -0,0 +1,76 @@
+package knnbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Measures a single neighbor search for one query tumor: the original
+ * sortByDistanceFrom and FindTypeOfNthNearestNeighbor on an array of Tumors,
+ * and the allocation-free kNearest on a FeatureMatrix, by k, number of
+ * training rows and number of characteristics. Also measures a batch of 64
+ * queries through BlockedDistanceEngine, with and without the norm identity
+ * (each operation is the whole batch).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1,
+	jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class NeighborSearchBenchmark {
+
+	@Param("wdbc.data")
+	public String dataFile;
+
+	@Param({"1", "3", "7"})
+	public int k;
+
+	@Param({"569", "5000", "50000"})
+	public int numRows;
+
+	@Param({"30"})
+	public int numFeatures;
+
+	private KnnWorkload workload;
+
+	@Setup
+	public void setUp() throws Exception {
+		workload = Workloads.create(dataFile, numRows, numFeatures, k);
+	}
+
+	@Benchmark
+	public Object sortByDistanceFrom() {
+		return workload.sortByDistanceFrom();
+	}
+
+	@Benchmark
+	public boolean findTypeOfNthNearestNeighbor() {
+		return workload.findTypeOfNthNearestNeighbor();
+	}
+
+	@Benchmark
+	public Object kNearest() {
+		return workload.kNearest();
+	}
+
+	@Benchmark
+	public Object kNearestBatch() {
+		return workload.kNearestBatch();
+	}
+
+	@Benchmark
+	public Object kNearestBatchWithNorms() {
+		return workload.kNearestBatchWithNorms();
+	}
+}
@@ -0,0 +1,57 @@
+package knnbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Measures whole accuracy runs: one trial of NearestNeighbor.Accuracy and
+ * the full NearestNeighbor.Accuracy100Trials, by k and number of rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1,
+	jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TrialBenchmark {
+
+	@Param("wdbc.data")
+	public String dataFile;
+
+	@Param({"1", "3", "7"})
+	public int k;
+
+	@Param({"569", "2000"})
+	public int numRows;
+
+	@Param({"30"})
+	public int numFeatures;
+
+	private KnnWorkload workload;
+
+	@Setup
+	public void setUp() throws Exception {
+		workload = Workloads.create(dataFile, numRows, numFeatures, k);
+	}
+
+	@Benchmark
+	public double[] accuracy() {
+		return workload.accuracy();
+	}
+
+	@Benchmark
+	public double[] accuracy100Trials() {
+		return workload.accuracy100Trials();
+	}
+}
@@ -0,0 +1,28 @@
+package knnbench;
+
+/**This class loads the program's KnnWorkload implementation by name, since
+ * the benchmarks can't refer to classes in the default package directly.
+ */
+final class Workloads {
+
+	private Workloads() {
+	}
+
+	/**Makes a new KnnWorkload and sets it up
+	 * @param dataFile The path to wdbc.data
+	 * @param numRows How many rows the data set should have
+	 * @param numFeatures How many characteristics each row should have
+	 * @param k How many nearest neighbors to find
+	 * @return The KnnWorkload, ready to use
+	 * @throws Exception If the class can't be loaded or the data file can't
+	 * be read
+	 */
+	static KnnWorkload create(String dataFile, int numRows, int numFeatures,
+			int k) throws Exception {
+		KnnWorkload workload = (KnnWorkload) Class.forName(
+				KnnWorkload.IMPLEMENTATION).getDeclaredConstructor()
+				.newInstance();
+		workload.setUp(dataFile, numRows, numFeatures, k, 42);
+		return workload;
+	}
+}